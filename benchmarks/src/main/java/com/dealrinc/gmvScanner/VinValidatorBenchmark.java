@@ -0,0 +1,73 @@
+package com.dealrinc.gmvScanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VIN clean up and check digit validation, which run for every barcode read in VIN mode, and the
+ * repair of a VIN that fails the check digit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VinValidatorBenchmark {
+    private final String mValidVin = "1M8GDM9AXKP042788";
+    private final String mInvalidVin = "1M8GDM9A1KP042788";
+    private final String mVinCharacters = "0123456789ABCDEFGHJKLMNPRSTUVWXYZ";
+    // As read from a label with an import marker in front.
+    private final String mMarkedVin = "I1M8GDM9AXKP042788";
+    // The valid VIN with an 8 misread as a B.
+    private final String mMisreadVin = "1MBGDM9AXKP042788";
+
+    @Benchmark
+    public boolean validateValidVin() {
+        return VinValidator.validateVin(mValidVin);
+    }
+
+    @Benchmark
+    public boolean validateInvalidVin() {
+        return VinValidator.validateVin(mInvalidVin);
+    }
+
+    @Benchmark
+    public char getCheckDigit() {
+        return VinValidator.getCheckDigit(mValidVin);
+    }
+
+    @Benchmark
+    public int transliterate() {
+        int sum = 0;
+        for (int i = 0; i < mVinCharacters.length(); ++i) {
+            sum += VinValidator.transliterate(mVinCharacters.charAt(i));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public String normalizeCleanVin() {
+        return VinValidator.normalize(mValidVin);
+    }
+
+    @Benchmark
+    public String normalizeMarkedVin() {
+        return VinValidator.normalize(mMarkedVin);
+    }
+
+    @Benchmark
+    public List<String> repairMisreadVin() {
+        return VinValidator.repair(mMisreadVin);
+    }
+}
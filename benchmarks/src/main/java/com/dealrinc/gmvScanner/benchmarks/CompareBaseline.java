@@ -0,0 +1,132 @@
+package com.dealrinc.gmvScanner.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares a JMH result file against a checked-in baseline, both written with
+ * {@code -prof gc -rf csv}.  For every benchmark this prints the change in time per operation and
+ * in bytes allocated per operation, and exits with status 1 if any benchmark got slower or
+ * allocates more than the allowed percentage.
+ * <p/>
+ * Usage: {@code CompareBaseline <baseline.csv> <results.csv> [max regression %, default 10]}
+ */
+public final class CompareBaseline {
+    private static final String ALLOCATION_SUFFIX = ":gc.alloc.rate.norm";
+    private static final String ALLOCATION_UNIT = " [B/op]";
+    private static final String PACKAGE_PREFIX = "com.dealrinc.gmvScanner.";
+
+    private CompareBaseline() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if ((args.length < 2) || (args.length > 3)) {
+            System.err.println(
+                    "Usage: CompareBaseline <baseline.csv> <results.csv> [max regression %]");
+            System.exit(2);
+        }
+        double maxRegression = args.length == 3 ? Double.parseDouble(args[2]) : 10;
+
+        Map<String, Double> baseline = read(args[0]);
+        Map<String, Double> results = read(args[1]);
+
+        boolean regressed = false;
+        System.out.println(String.format(Locale.US, "%-60s %12s %12s %8s",
+                "Benchmark", "Baseline", "Result", "Change"));
+        for (Map.Entry<String, Double> result : results.entrySet()) {
+            String key = result.getKey();
+            Double before = baseline.get(key);
+            double after = result.getValue();
+            if (before == null) {
+                System.out.println(String.format(Locale.US, "%-60s %12s %12.3f %8s",
+                        key, "-", after, "new"));
+                continue;
+            }
+
+            double change = before == 0 ? (after == 0 ? 0 : 100) : (after - before) * 100 / before;
+            // Allocation is deterministic, so a benchmark that didn't allocate must keep not
+            // allocating; timing noise is only judged against the threshold.
+            boolean worse = key.endsWith(ALLOCATION_UNIT)
+                    ? (after > before + 0.5) && (change > maxRegression)
+                    : change > maxRegression;
+            regressed |= worse;
+            System.out.println(String.format(Locale.US, "%-60s %12.3f %12.3f %+7.1f%%%s",
+                    key, before, after, change, worse ? "  REGRESSION" : ""));
+        }
+
+        System.exit(regressed ? 1 : 0);
+    }
+
+    /**
+     * Reads the primary score and the normalized allocation rate of each benchmark, keyed by the
+     * benchmark name with its parameters and unit.
+     */
+    private static Map<String, Double> read(String path) throws IOException {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(path), "UTF-8"));
+        try {
+            List<String> header = parse(reader.readLine());
+            int scoreColumn = header.indexOf("Score");
+            int unitColumn = header.indexOf("Unit");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> row = parse(line);
+                String name = row.get(0);
+                boolean allocation = name.endsWith(ALLOCATION_SUFFIX);
+                if (name.contains(":") && !allocation) {
+                    continue;
+                }
+
+                if (allocation) {
+                    name = name.substring(0, name.length() - ALLOCATION_SUFFIX.length());
+                }
+                if (name.startsWith(PACKAGE_PREFIX)) {
+                    name = name.substring(PACKAGE_PREFIX.length());
+                }
+
+                StringBuilder key = new StringBuilder(name);
+                for (int i = unitColumn + 1; i < row.size(); ++i) {
+                    if (!row.get(i).isEmpty()) {
+                        key.append(' ').append(header.get(i).replace("Param: ", ""))
+                                .append('=').append(row.get(i));
+                    }
+                }
+                key.append(allocation ? ALLOCATION_UNIT : " [" + row.get(unitColumn) + "]");
+                scores.put(key.toString(), Double.parseDouble(row.get(scoreColumn)));
+            }
+        } finally {
+            reader.close();
+        }
+        return scores;
+    }
+
+    /**
+     * Splits a CSV line as written by JMH, where every text field is quoted.
+     */
+    private static List<String> parse(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); ++i) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if ((c == ',') && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
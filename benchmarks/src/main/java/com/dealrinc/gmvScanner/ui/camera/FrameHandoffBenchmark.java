@@ -0,0 +1,102 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preview buffer allocation and the hand over of filled slots from the camera thread to the
+ * processing thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameHandoffBenchmark {
+    // Preview size requested by the capture activity, and the buffer count for a single worker
+    // behind a one frame queue.
+    private static final int WIDTH = 1600;
+    private static final int HEIGHT = 1024;
+    private static final int SLOTS = 4;
+
+    @State(Scope.Thread)
+    public static class Ring {
+        final FrameBufferRing mRing =
+                new FrameBufferRing(SLOTS, Nv21Utils.bufferSize(WIDTH, HEIGHT));
+        final FrameQueue mQueue = new FrameQueue(1, true);
+        final FrameDropPolicy mPolicy = FrameDropPolicy.latestOnly();
+        int mNextSlot;
+        int mFrameId;
+    }
+
+    @State(Scope.Group)
+    public static class SharedQueue {
+        final FrameQueue mQueue = new FrameQueue(1, true);
+    }
+
+    @State(Scope.Thread)
+    public static class ProducerSlot {
+        int mNextSlot;
+    }
+
+    /**
+     * Allocates a full ring of preview buffers, as happens when the camera is opened.
+     */
+    @Benchmark
+    public FrameBufferRing createPreviewBuffers() {
+        return new FrameBufferRing(SLOTS, Nv21Utils.bufferSize(WIDTH, HEIGHT));
+    }
+
+    /**
+     * Matches a buffer handed back by the camera to its slot.
+     */
+    @Benchmark
+    public int slotOf(Ring ring) {
+        ring.mNextSlot = (ring.mNextSlot + 1) % SLOTS;
+        return ring.mRing.slotOf(ring.mRing.getData(ring.mNextSlot));
+    }
+
+    /**
+     * The camera thread's side of one frame on a single thread: slot lookup, drop policy and
+     * queueing, followed by the processing thread taking the frame.
+     */
+    @Benchmark
+    public int handoffRoundTrip(Ring ring) {
+        ring.mNextSlot = (ring.mNextSlot + 1) % SLOTS;
+        int slot = ring.mRing.slotOf(ring.mRing.getData(ring.mNextSlot));
+        if (!ring.mPolicy.admit(++ring.mFrameId, ring.mQueue.size(), 66000000L, 40000000L)) {
+            return -1;
+        }
+        ring.mQueue.offer(slot);
+        return ring.mQueue.poll();
+    }
+
+    /**
+     * The camera thread queueing frames while the processing thread takes them, on two threads.
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public int offer(SharedQueue queue, ProducerSlot producer) {
+        producer.mNextSlot = (producer.mNextSlot + 1) % SLOTS;
+        return queue.mQueue.offer(producer.mNextSlot);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public int poll(SharedQueue queue) {
+        return queue.mQueue.poll();
+    }
+}
@@ -0,0 +1,64 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link SnapshotArray} that {@link GraphicOverlay} keeps its graphics in: the walk over the
+ * active graphics on every draw, the list of them that the capture activity takes on every tap,
+ * and the copy made when a tracker adds or removes a graphic.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GraphicSnapshotBenchmark {
+    // Number of barcodes being tracked at once.
+    @Param({"1", "8", "32"})
+    public int graphicCount;
+
+    private final SnapshotArray<Object> mGraphics = new SnapshotArray<>(new Object[0]);
+    private final Object mExtra = new Object();
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < graphicCount; ++i) {
+            mGraphics.add(new Object());
+        }
+    }
+
+    @Benchmark
+    public void draw(Blackhole blackhole) {
+        Object[] graphics = mGraphics.get();
+        for (int i = 0; i < graphics.length; ++i) {
+            blackhole.consume(graphics[i]);
+        }
+    }
+
+    @Benchmark
+    public List<Object> getGraphics() {
+        return mGraphics.asList();
+    }
+
+    @Benchmark
+    public Object[] addRemove() {
+        mGraphics.add(mExtra);
+        mGraphics.remove(mExtra);
+        return mGraphics.get();
+    }
+}
@@ -0,0 +1,132 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NV21 cropping and the luma helpers behind the pre-detection gates and auto torch, on frames of the preview
+ * size requested by the capture activity.  Camera1 frames are tightly packed NV21 arrays, while
+ * Camera2 frames are direct luma planes with padded rows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Nv21Benchmark {
+    private static final int WIDTH = 1600;
+    private static final int HEIGHT = 1024;
+    private static final int PADDED_STRIDE = 1664;
+    // Frame.ROTATION_90, as for a back camera in portrait.
+    private static final int ROTATION = 1;
+
+    private byte[] mFrame;
+    private ByteBuffer mFrameBuffer;
+    private ByteBuffer mPaddedLuma;
+    private byte[] mCropData;
+
+    // The default detector box of the capture activity: half the width, 70% of the height.
+    private final FrameCropper mViewFinderCropper = new FrameCropper();
+    private final FrameCropper mPaddedCropper = new FrameCropper();
+    private final FrameCropper mFullFrameCropper = new FrameCropper();
+
+    private SharpnessGate mSharpnessGate;
+    private StaticSceneGate mStaticSceneGate;
+    private AutoTorch mAutoTorch;
+    private long mNow;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mFrame = new byte[Nv21Utils.bufferSize(WIDTH, HEIGHT)];
+        random.nextBytes(mFrame);
+        mFrameBuffer = ByteBuffer.wrap(mFrame);
+
+        mPaddedLuma = ByteBuffer.allocateDirect(PADDED_STRIDE * HEIGHT);
+        byte[] row = new byte[PADDED_STRIDE];
+        for (int y = 0; y < HEIGHT; ++y) {
+            random.nextBytes(row);
+            mPaddedLuma.put(row);
+        }
+        mPaddedLuma.clear();
+
+        mViewFinderCropper.update(0, WIDTH, HEIGHT, ROTATION, .25f, .15f, .75f, .85f);
+        mPaddedCropper.update(0, WIDTH, HEIGHT, ROTATION, .25f, .15f, .75f, .85f);
+        mFullFrameCropper.update(FrameCropper.FULL_FRAME, WIDTH, HEIGHT, 0, 0, 0, 1, 1);
+        mCropData = new byte[Nv21Utils.bufferSize(mViewFinderCropper.getWidth(),
+                mViewFinderCropper.getHeight())];
+
+        mSharpnessGate = new SharpnessGate(.5f, .75f);
+        // A threshold no frame reaches and a refresh interval that never passes, so every call
+        // does the full comparison.
+        mStaticSceneGate = new StaticSceneGate(255, Long.MAX_VALUE);
+        mStaticSceneGate.hasChanged(mFrameBuffer, WIDTH, 0, 0, WIDTH, HEIGHT, 0);
+        mStaticSceneGate.markDetected(0);
+        mAutoTorch = new AutoTorch(40, 170, 1000, 3000);
+        mAutoTorch.reset(true, false);
+    }
+
+    @Benchmark
+    public int autoTorch() {
+        return mAutoTorch.update(mPaddedLuma, PADDED_STRIDE, 0, 0, WIDTH, HEIGHT, ++mNow);
+    }
+
+    @Benchmark
+    public byte[] cropArray() {
+        Nv21Utils.crop(mFrame, WIDTH, HEIGHT, mViewFinderCropper.getLeft(),
+                mViewFinderCropper.getTop(), mViewFinderCropper.getWidth(),
+                mViewFinderCropper.getHeight(), mCropData);
+        return mCropData;
+    }
+
+    @Benchmark
+    public ByteBuffer cropViewFinder() {
+        return mViewFinderCropper.crop(mFrameBuffer, WIDTH, true);
+    }
+
+    @Benchmark
+    public ByteBuffer cropViewFinderPaddedLuma() {
+        return mPaddedCropper.crop(mPaddedLuma, PADDED_STRIDE, false);
+    }
+
+    @Benchmark
+    public ByteBuffer packPaddedFullFrame() {
+        return mFullFrameCropper.crop(mPaddedLuma, PADDED_STRIDE, false);
+    }
+
+    @Benchmark
+    public int sharpnessViewFinder() {
+        return Nv21Utils.sharpness(mFrameBuffer, WIDTH, mViewFinderCropper.getLeft(),
+                mViewFinderCropper.getTop(), mViewFinderCropper.getWidth(),
+                mViewFinderCropper.getHeight(), 4);
+    }
+
+    @Benchmark
+    public int sharpnessFullFrame() {
+        return Nv21Utils.sharpness(mFrameBuffer, WIDTH, 0, 0, WIDTH, HEIGHT, 4);
+    }
+
+    @Benchmark
+    public boolean sharpnessGate() {
+        return mSharpnessGate.accept(mPaddedLuma, PADDED_STRIDE, 0, 0, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    public boolean staticSceneGate() {
+        return mStaticSceneGate.hasChanged(mPaddedLuma, PADDED_STRIDE, 0, 0, WIDTH, HEIGHT,
+                ++mNow);
+    }
+}
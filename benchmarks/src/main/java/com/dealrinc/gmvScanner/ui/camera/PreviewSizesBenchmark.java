@@ -0,0 +1,55 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Camera1 preview size selection, over the size lists reported by a typical phone camera.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PreviewSizesBenchmark {
+    // Supported preview and picture sizes of a typical back camera, in the order reported.
+    private final int[] mPreviewSizes = {
+        1920, 1080, 1600, 1200, 1440, 1080, 1280, 960, 1280, 768, 1280, 720, 1024, 768,
+        800, 600, 800, 480, 720, 480, 640, 480, 640, 360, 480, 360, 480, 320, 352, 288,
+        320, 240, 176, 144
+    };
+    private final int[] mPictureSizes = {
+        4032, 3024, 4000, 3000, 4032, 2268, 3264, 2448, 3264, 1836, 2592, 1944, 2688, 1512,
+        2048, 1536, 1920, 1080, 1600, 1200, 1440, 1080, 1280, 960, 1280, 768, 1280, 720,
+        1024, 768, 800, 600, 800, 480, 720, 480, 640, 480, 352, 288, 320, 240, 176, 144
+    };
+    private final int[] mSizePairs = PreviewSizes.generateValidSizePairs(mPreviewSizes,
+            mPictureSizes);
+
+    @Benchmark
+    public int[] generateValidSizePairs() {
+        return PreviewSizes.generateValidSizePairs(mPreviewSizes, mPictureSizes);
+    }
+
+    @Benchmark
+    public int selectSizePair() {
+        // The size requested by the capture activity.
+        return PreviewSizes.selectSizePair(mSizePairs, 1600, 1024);
+    }
+
+    @Benchmark
+    public int generateAndSelect() {
+        int[] sizePairs = PreviewSizes.generateValidSizePairs(mPreviewSizes, mPictureSizes);
+        return PreviewSizes.selectSizePair(sizePairs, 1600, 1024);
+    }
+}
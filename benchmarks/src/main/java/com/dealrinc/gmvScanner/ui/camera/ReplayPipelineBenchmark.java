@@ -0,0 +1,357 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A recorded session played back through the frame pipeline with the barcode detector stubbed
+ * out, to measure the throughput of the pipeline without a camera.  {@link ReplayFrameSource}
+ * hands the frames to the drop policy and the frame queue, and a processing thread runs the
+ * {@link FrameGates} on the viewfinder region, crops it and passes it to the stub detector, as
+ * the processing thread of CameraSource does with a single detection worker.  Each operation
+ * plays the whole recording back as fast as the pipeline takes frames.
+ * <p/>
+ * Played back that fast, the drop policies discard most frames, as they would for a camera that
+ * outruns the detector, so their scores mostly measure the playback.  The {@code all} policy keeps
+ * every frame instead, and the source waits for the pipeline to take the next one, so that the
+ * whole session goes through the gates, the crop and the detector.
+ * <p/>
+ * The recording is made with {@link FrameRecorder} during setup, from synthetic frames: a static
+ * scene, then a label moving across the viewfinder, then the same label out of focus, so that
+ * the static scene gate and the sharpness gate each skip part of the session.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReplayPipelineBenchmark {
+    private static final int WIDTH = 1600;
+    private static final int HEIGHT = 1024;
+    // Frame.ROTATION_90, as for a back camera in portrait.
+    private static final int ROTATION = 1;
+    // Frames in each part of the session, recorded at 15 fps.
+    private static final int SEGMENT_FRAMES = 10;
+    private static final long FRAME_INTERVAL_NANOS = 1000000000L / 15;
+
+    // Slots the camera fills while others wait or are detected, as in CameraSource.
+    private static final int CAMERA_BUFFER_COUNT = 2;
+
+    // The default detector box of the capture activity: half the width, 70% of the height.
+    private static final float VIEW_FINDER_LEFT = .25f;
+    private static final float VIEW_FINDER_TOP = .15f;
+    private static final float VIEW_FINDER_RIGHT = .75f;
+    private static final float VIEW_FINDER_BOTTOM = .85f;
+
+    // The frame drop policy, as named by the frameDropPolicy option, or all to keep every frame.
+    @Param({"all", "latest", "queue", "everyNth"})
+    public String policy;
+
+    private File mRecording;
+    // Kept from one playback to the next, like a camera source that is stopped and restarted,
+    // so that the slots and the crop buffer are only allocated once.
+    private ReplayFrameSource mSource;
+    private Pipeline mPipeline;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mRecording = File.createTempFile("replay", ".gmvf");
+        mRecording.deleteOnExit();
+        record(mRecording);
+        mSource = new ReplayFrameSource(mRecording, ReplayFrameSource.AS_FAST_AS_POSSIBLE, false);
+        if ("all".equals(policy)) {
+            // No slots to spare, so that the queue always has room for the frame offered.
+            FrameDropPolicy keepAll = new KeepAll();
+            mPipeline = new Pipeline(mSource, keepAll, keepAll.getQueueCapacity());
+        } else {
+            FrameDropPolicy dropPolicy = createPolicy(policy);
+            mPipeline = new Pipeline(mSource, dropPolicy,
+                    CAMERA_BUFFER_COUNT + dropPolicy.getQueueCapacity() + 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (mRecording != null) {
+            mRecording.delete();
+        }
+    }
+
+    /**
+     * Plays the session back, and returns the number of frames that reached the detector.
+     */
+    @Benchmark
+    public long replay() throws IOException, InterruptedException {
+        mSource.open(mPipeline.getSlotCount(), mPipeline);
+        mPipeline.start();
+        mSource.start();
+        try {
+            if (!mSource.awaitEnd(60000)) {
+                throw new IllegalStateException("Replay didn't finish.");
+            }
+        } finally {
+            mPipeline.finish();
+            mSource.close();
+        }
+        if (mSource.getError() != null) {
+            throw mSource.getError();
+        }
+        return mPipeline.getStats().getProcessedFrames();
+    }
+
+    private static FrameDropPolicy createPolicy(String name) {
+        if ("queue".equals(name)) {
+            return FrameDropPolicy.boundedQueue(3);
+        } else if ("everyNth".equals(name)) {
+            return FrameDropPolicy.everyNth(2);
+        }
+        return FrameDropPolicy.latestOnly();
+    }
+
+    /**
+     * Records the synthetic session.  Each frame is waited for, so that the writer never falls
+     * behind and skips one.
+     */
+    private static void record(File file) throws IOException {
+        byte[] frame = new byte[Nv21Utils.bufferSize(WIDTH, HEIGHT)];
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        Arrays.fill(frame, WIDTH * HEIGHT, frame.length, (byte) 128);
+        // A plain surface with a little sensor noise, less sharp than a label.
+        byte[] scene = new byte[WIDTH * HEIGHT];
+        Random random = new Random(42);
+        for (int i = 0; i < scene.length; ++i) {
+            scene[i] = (byte) (120 + random.nextInt(16));
+        }
+
+        FrameRecorder recorder = new FrameRecorder(file);
+        try {
+            for (int i = 0; i < 3 * SEGMENT_FRAMES; ++i) {
+                int segment = i / SEGMENT_FRAMES;
+                if (segment == 0) {
+                    System.arraycopy(scene, 0, frame, 0, scene.length);
+                } else {
+                    drawLabel(frame, i * 24, segment == 2, random);
+                }
+                recorder.record(buffer, WIDTH, WIDTH, HEIGHT, ROTATION, true,
+                        i * FRAME_INTERVAL_NANOS);
+                while (recorder.getRecordedFrames() + recorder.getSkippedFrames() <= i) {
+                    Thread.yield();
+                }
+            }
+        } finally {
+            recorder.close();
+        }
+        if (recorder.getRecordedFrames() != 3 * SEGMENT_FRAMES) {
+            throw new IllegalStateException("Recorded " + recorder.getRecordedFrames()
+                    + " frames.");
+        }
+    }
+
+    /**
+     * Draws bars across the luma plane, shifted by the given offset: hard edged and with the fine
+     * grain of the paper for a label in focus, a smooth ripple for one out of focus.
+     */
+    private static void drawLabel(byte[] frame, int offset, boolean blurred, Random random) {
+        for (int x = 0; x < WIDTH; ++x) {
+            int phase = (x + offset) & 63;
+            int value;
+            if (blurred) {
+                value = 128 + (int) (24 * Math.sin(phase * Math.PI / 32));
+            } else {
+                value = phase < 32 ? 48 : 200;
+            }
+            for (int y = 0; y < HEIGHT; ++y) {
+                int grain = blurred ? random.nextInt(3) - 1 : random.nextInt(16) - 8;
+                frame[y * WIDTH + x] = (byte) (value + grain);
+            }
+        }
+    }
+
+    /**
+     * Queues every frame.  Given as many slots as the queue holds, the queue is never full when
+     * a frame is offered, so nothing is dropped.
+     */
+    private static final class KeepAll extends FrameDropPolicy {
+        @Override
+        int getQueueCapacity() {
+            return 3;
+        }
+
+        @Override
+        boolean replacesWaitingFrame() {
+            return false;
+        }
+
+        @Override
+        boolean admit(long frameNumber, int queued, long frameIntervalNanos,
+                      long latencyNanos) {
+            return true;
+        }
+    }
+
+    /**
+     * The frame pipeline of CameraSource with a single detection worker, without its Android
+     * parts.  The replay thread offers frames to the drop policy and the queue, and the
+     * processing thread takes them off the queue, runs the gates and detects the crop.
+     */
+    private static final class Pipeline implements FrameSource.FrameListener, Runnable {
+        private final FrameSource mSource;
+        private final FrameDropPolicy mPolicy;
+        private final FrameQueue mQueue;
+        private final int mSlotCount;
+        private final PipelineStats mStats = new PipelineStats();
+        private volatile Thread mProcessingThread;
+        private volatile boolean mActive;
+
+        // Only touched by the replay thread.
+        private long mNextFrameId;
+        private long mLastFrameNanos;
+        private long mFrameIntervalNanos;
+
+        // Only touched by the processing thread.
+        private final FrameCropper mCropper = new FrameCropper();
+        private final AutoTorch mAutoTorch = new AutoTorch(40, 170, 1000, 3000);
+        private final FrameGates mGates;
+        private long mChecksum;
+
+        Pipeline(FrameSource source, FrameDropPolicy policy, int slotCount) {
+            mSource = source;
+            mPolicy = policy;
+            mSlotCount = slotCount;
+            mQueue = new FrameQueue(policy.getQueueCapacity(), policy.replacesWaitingFrame());
+            mGates = new FrameGates(new SharpnessGate(.5f, .75f),
+                    new StaticSceneGate(6, 1000000000L), mAutoTorch, mStats);
+        }
+
+        int getSlotCount() {
+            return mSlotCount;
+        }
+
+        PipelineStats getStats() {
+            return mStats;
+        }
+
+        /**
+         * Starts over with an empty queue and fresh gates, and starts the processing thread.
+         */
+        void start() {
+            mQueue.clear();
+            mStats.reset();
+            mGates.reset();
+            mAutoTorch.reset(true, false);
+            mNextFrameId = 0;
+            mLastFrameNanos = 0;
+            mFrameIntervalNanos = 0;
+            mActive = true;
+            mProcessingThread = new Thread(this, "ReplayPipeline");
+            mProcessingThread.start();
+        }
+
+        /**
+         * Lets the processing thread finish the frames still queued, and waits for it.
+         */
+        void finish() throws InterruptedException {
+            mActive = false;
+            LockSupport.unpark(mProcessingThread);
+            mProcessingThread.join();
+        }
+
+        @Override
+        public void onFrame(int slot) {
+            long now = System.nanoTime();
+            mStats.recordFrameArrival(now);
+            if (mLastFrameNanos != 0) {
+                long interval = now - mLastFrameNanos;
+                mFrameIntervalNanos = mFrameIntervalNanos == 0
+                        ? interval : mFrameIntervalNanos + (interval - mFrameIntervalNanos) / 8;
+            }
+            mLastFrameNanos = now;
+
+            if (!mPolicy.admit(++mNextFrameId, mQueue.size(), mFrameIntervalNanos,
+                    mStats.getAverageDetectionNanos())) {
+                mSource.releaseFrame(slot);
+                mStats.recordDroppedFrame();
+                return;
+            }
+            int dropped = mQueue.offer(slot);
+            if (dropped != FrameQueue.NO_SLOT) {
+                mSource.releaseFrame(dropped);
+                mStats.recordDroppedFrame();
+            }
+            LockSupport.unpark(mProcessingThread);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                int slot = mQueue.poll();
+                if (slot == FrameQueue.NO_SLOT) {
+                    if (!mActive) {
+                        return;
+                    }
+                    LockSupport.park(this);
+                    continue;
+                }
+                try {
+                    process(slot);
+                } finally {
+                    mSource.releaseFrame(slot);
+                }
+            }
+        }
+
+        private void process(int slot) {
+            ByteBuffer data = mSource.getFrameData(slot);
+            int rowStride = mSource.getRowStride(slot);
+            int width = mSource.getFrameWidth();
+            int height = mSource.getFrameHeight();
+            boolean crop = mCropper.update(0, width, height, mSource.getRotation(),
+                    VIEW_FINDER_LEFT, VIEW_FINDER_TOP, VIEW_FINDER_RIGHT, VIEW_FINDER_BOTTOM);
+            int left = crop ? mCropper.getLeft() : 0;
+            int top = crop ? mCropper.getTop() : 0;
+            int regionWidth = crop ? mCropper.getWidth() : width;
+            int regionHeight = crop ? mCropper.getHeight() : height;
+            if (!mGates.accept(data, rowStride, left, top, regionWidth, regionHeight,
+                    System.nanoTime())) {
+                return;
+            }
+
+            long detectionStart = System.nanoTime();
+            ByteBuffer frame = crop ? mCropper.crop(data, rowStride, mSource.hasChroma()) : data;
+            mChecksum += detect(frame, regionWidth, regionHeight);
+            mStats.recordDetection(System.nanoTime() - detectionStart);
+        }
+
+        /**
+         * Stands in for the barcode detector: reads every luma sample of the frame, as the
+         * binarizer of a real detector does, and finds nothing.
+         */
+        private static long detect(ByteBuffer frame, int width, int height) {
+            long sum = 0;
+            for (int i = width * height - 1; i >= 0; --i) {
+                sum += frame.get(i) & 0xff;
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.dealrinc.gmvScanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ConsensusFilterTest {
+    // Barcode format constants, as in com.google.android.gms.vision.barcode.Barcode.
+    private static final int CODE_39 = 2;
+    private static final int CODABAR = 8;
+    private static final int QR_CODE = 256;
+
+    private static final long WINDOW = 1000;
+
+    @Test
+    public void formatsWithErrorCorrectionNeedOneRead() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.MODE_AGREE, WINDOW, null,
+                null);
+
+        assertEquals("ABC", filter.accept(1, QR_CODE, "ABC", 0));
+    }
+
+    @Test
+    public void votesCanBeOverriddenPerFormat() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.MODE_AGREE, WINDOW,
+                new int[]{QR_CODE, CODE_39}, new int[]{2, 100});
+
+        assertEquals(2, filter.votesFor(QR_CODE));
+        assertEquals(ConsensusFilter.MAX_READS, filter.votesFor(CODE_39));
+        assertEquals(2, filter.votesFor(CODABAR));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyWindow() {
+        new ConsensusFilter(ConsensusFilter.MODE_AGREE, 0, null, null);
+    }
+
+    @Test
+    public void agreeAcceptsOnceEnoughReadsMatch() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.MODE_AGREE, WINDOW, null,
+                null);
+
+        assertNull(filter.accept(1, CODE_39, "ABC", 0));
+        assertNull(filter.accept(1, CODE_39, "ABX", 10));
+        assertNull(filter.accept(1, CODE_39, "ABC", 20));
+        assertEquals("ABC", filter.accept(1, CODE_39, "ABC", 30));
+        // The misread is never accepted on its own.
+        assertNull(filter.accept(1, CODE_39, "ABX", 40));
+    }
+
+    @Test
+    public void majorityTakesTheMostCommonCharacterAtEachPosition() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.MODE_MAJORITY, WINDOW, null,
+                null);
+
+        assertNull(filter.accept(1, CODE_39, "AXC", 0));
+        assertNull(filter.accept(1, CODE_39, "ABY", 10));
+        // No single read is right, but every position has a majority.
+        assertEquals("ABC", filter.accept(1, CODE_39, "ZBC", 20));
+    }
+
+    @Test
+    public void majorityNeedsAStrictMajorityAtEveryPosition() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.MODE_MAJORITY, WINDOW, null,
+                null);
+
+        filter.accept(1, CODABAR, "A1", 0);
+        assertNull(filter.accept(1, CODABAR, "A2", 10));
+        assertEquals("A2", filter.accept(1, CODABAR, "A2", 20));
+    }
+
+    @Test
+    public void majorityOnlyCountsReadsOfTheMostCommonLength() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.MODE_MAJORITY, WINDOW, null,
+                null);
+
+        filter.accept(1, CODE_39, "ABC", 0);
+        filter.accept(1, CODE_39, "AB", 10);
+        assertNull(filter.accept(1, CODE_39, "ABC", 20));
+        assertEquals("ABC", filter.accept(1, CODE_39, "ABC", 30));
+    }
+
+    @Test
+    public void readsExpireAfterTheWindow() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.MODE_AGREE, WINDOW, null,
+                null);
+
+        filter.accept(1, CODE_39, "ABC", 0);
+        filter.accept(1, CODE_39, "ABC", 900);
+        // The first read is out of the window by now.
+        assertNull(filter.accept(1, CODE_39, "ABC", 1500));
+        assertEquals("ABC", filter.accept(1, CODE_39, "ABC", 1600));
+    }
+
+    @Test
+    public void trackersAreCountedSeparately() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.MODE_AGREE, WINDOW, null,
+                null);
+
+        filter.accept(1, CODABAR, "A1", 0);
+        assertNull(filter.accept(2, CODABAR, "A1", 10));
+        assertEquals("A1", filter.accept(1, CODABAR, "A1", 20));
+    }
+
+    @Test
+    public void trackerDoneForgetsItsReads() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.MODE_AGREE, WINDOW, null,
+                null);
+
+        filter.accept(1, CODABAR, "A1", 0);
+        filter.trackerDone(1);
+        assertNull(filter.accept(1, CODABAR, "A1", 10));
+    }
+
+    @Test
+    public void leastRecentlyReadTrackIsEvicted() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.MODE_AGREE, WINDOW, null,
+                null);
+
+        filter.accept(1, CODABAR, "A1", 0);
+        filter.accept(2, CODABAR, "A2", 0);
+        // Fill the remaining tracks, then read tracker 2 again so that tracker 1 is the least
+        // recently read when one more tracker comes along.
+        for (int tracker = 3; tracker <= 16; ++tracker) {
+            filter.accept(tracker, CODABAR, "B", 0);
+        }
+        filter.accept(2, CODABAR, "A2", 0);
+        filter.accept(17, CODABAR, "B", 0);
+
+        assertNull(filter.accept(1, CODABAR, "A1", 10));
+        assertEquals("A2", filter.accept(2, CODABAR, "A2", 10));
+    }
+}
@@ -0,0 +1,81 @@
+package com.dealrinc.gmvScanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateFilterTest {
+    private static final int FORMAT = 256;
+    private static final long TTL = 1000;
+
+    @Test
+    public void reportsATrackerOnce() {
+        DuplicateFilter filter = new DuplicateFilter(8, 0);
+
+        assertTrue(filter.accept(1, FORMAT, "A", 0));
+        assertFalse(filter.accept(1, FORMAT, "A", 5000));
+        filter.trackerDone(1);
+        assertTrue(filter.accept(1, FORMAT, "A", 5000));
+    }
+
+    @Test
+    public void suppressesTheSameBarcodeWithinTheTtl() {
+        DuplicateFilter filter = new DuplicateFilter(8, TTL);
+
+        assertTrue(filter.accept(1, FORMAT, "A", 0));
+        assertFalse(filter.accept(2, FORMAT, "A", 999));
+        // Another format is another barcode.
+        assertTrue(filter.accept(3, FORMAT + 1, "A", 999));
+    }
+
+    @Test
+    public void seeingABarcodeAgainRestartsItsTtl() {
+        DuplicateFilter filter = new DuplicateFilter(8, TTL);
+
+        filter.accept(1, FORMAT, "A", 0);
+        assertFalse(filter.accept(2, FORMAT, "A", 800));
+        assertFalse(filter.accept(3, FORMAT, "A", 1500));
+        assertTrue(filter.accept(4, FORMAT, "A", 2500));
+    }
+
+    @Test
+    public void forgetsTheLeastRecentlySeenBarcode() {
+        DuplicateFilter filter = new DuplicateFilter(2, TTL);
+
+        filter.accept(1, FORMAT, "A", 0);
+        filter.accept(2, FORMAT, "B", 0);
+        // Seeing A again makes B the least recently seen, so C pushes B out.
+        filter.accept(3, FORMAT, "A", 0);
+        filter.accept(4, FORMAT, "C", 0);
+
+        assertEquals(2, filter.getEntryCount());
+        assertFalse(filter.accept(5, FORMAT, "A", 10));
+        assertTrue(filter.accept(6, FORMAT, "B", 10));
+    }
+
+    @Test
+    public void forgetsTheLeastRecentlyReportedTracker() {
+        DuplicateFilter filter = new DuplicateFilter(1, 0);
+
+        filter.accept(1, FORMAT, "A", 0);
+        filter.accept(2, FORMAT, "B", 0);
+
+        assertTrue(filter.accept(1, FORMAT, "A", 10));
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        DuplicateFilter filter = new DuplicateFilter(8, TTL);
+
+        filter.accept(1, FORMAT, "A", 0);
+        filter.accept(1, FORMAT, "A", 10);
+        filter.accept(1, FORMAT, "A", 20);
+        filter.accept(2, FORMAT, "B", 30);
+
+        assertEquals(2, filter.getHits());
+        assertEquals(2, filter.getMisses());
+        assertEquals(.5f, filter.getHitRate(), 0);
+    }
+}
@@ -0,0 +1,68 @@
+package com.dealrinc.gmvScanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+    private static final long MILLIS = 1000000;
+
+    @Test
+    public void emptyHistogramReportsZeros() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMinNanos());
+        assertEquals(0, histogram.getMeanNanos());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void bucketBoundsAreInclusive() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(MILLIS);
+        histogram.record(MILLIS + 1);
+        histogram.record(30000 * MILLIS);
+        histogram.record(-5);
+
+        assertEquals(2, histogram.getCountInBucket(0));
+        assertEquals(1, histogram.getCountInBucket(1));
+        assertEquals(1, histogram.getCountInBucket(LatencyHistogram.BUCKET_BOUNDS_MILLIS.length));
+        assertEquals(0, histogram.getMinNanos());
+    }
+
+    @Test
+    public void keepsMinMeanAndMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10 * MILLIS);
+        histogram.record(20 * MILLIS);
+        histogram.record(60 * MILLIS);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(10 * MILLIS, histogram.getMinNanos());
+        assertEquals(30 * MILLIS, histogram.getMeanNanos());
+        assertEquals(60 * MILLIS, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void percentilesAreBucketBoundsCappedAtTheMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 9; ++i) {
+            histogram.record(3 * MILLIS);
+        }
+        histogram.record(150 * MILLIS);
+
+        assertEquals(5 * MILLIS, histogram.getPercentileNanos(50));
+        assertEquals(5 * MILLIS, histogram.getPercentileNanos(90));
+        assertEquals(150 * MILLIS, histogram.getPercentileNanos(99));
+        assertEquals(150 * MILLIS, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void overflowPercentileIsTheMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(45000 * MILLIS);
+
+        assertEquals(45000 * MILLIS, histogram.getPercentileNanos(50));
+    }
+}
@@ -0,0 +1,122 @@
+package com.dealrinc.gmvScanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResultChainTest {
+    private static final int CODE_39 = 2;
+    private static final int QR_CODE = 256;
+
+    @Test
+    public void runsStepsInTheOrderTheyWereAdded() {
+        StringBuilder log = new StringBuilder();
+        ResultChain chain = new ResultChain.Builder()
+                .add(new LoggingStep(log, "a"))
+                .add(new LoggingStep(log, "b"))
+                .add(new LoggingStep(log, "c"))
+                .build();
+
+        assertEquals("xabc", chain.apply(1, QR_CODE, "x", 0));
+        assertEquals("abc", log.toString());
+    }
+
+    @Test
+    public void eachStepSeesTheValueOfTheStepBefore() {
+        ResultChain stripThenLength = new ResultChain.Builder()
+                .prefix("ID:", true)
+                .length(3, 3)
+                .build();
+        ResultChain lengthThenStrip = new ResultChain.Builder()
+                .length(3, 3)
+                .prefix("ID:", true)
+                .build();
+
+        assertEquals("ABC", stripThenLength.apply(1, QR_CODE, "ID:ABC", 0));
+        assertNull(lengthThenStrip.apply(1, QR_CODE, "ID:ABC", 0));
+    }
+
+    @Test
+    public void stopsAtTheFirstRejection() {
+        StringBuilder log = new StringBuilder();
+        ResultChain chain = new ResultChain.Builder()
+                .regex("[0-9]+")
+                .add(new LoggingStep(log, "a"))
+                .build();
+
+        assertNull(chain.apply(1, QR_CODE, "ABC", 0));
+        assertEquals("", log.toString());
+        assertEquals(ResultChain.REJECTED_FILTERED, chain.getRejection());
+    }
+
+    @Test
+    public void readsWaitingForConsensusAreUnread() {
+        ResultChain chain = new ResultChain.Builder()
+                .consensus(new ConsensusFilter(ConsensusFilter.MODE_AGREE, 1000, null, null))
+                .length(1, 3)
+                .build();
+
+        assertNull(chain.apply(1, CODE_39, "ABC", 0));
+        assertEquals(ResultChain.REJECTED_UNREAD, chain.getRejection());
+        chain.apply(1, CODE_39, "ABC", 10);
+        assertEquals("ABC", chain.apply(1, CODE_39, "ABC", 20));
+        assertEquals(ResultChain.NOT_REJECTED, chain.getRejection());
+
+        // Long values are turned down by the filter once they are agreed on.
+        chain.apply(2, CODE_39, "ABCD", 0);
+        chain.apply(2, CODE_39, "ABCD", 10);
+        assertNull(chain.apply(2, CODE_39, "ABCD", 20));
+        assertEquals(ResultChain.REJECTED_FILTERED, chain.getRejection());
+    }
+
+    @Test
+    public void trackerDoneReachesEveryStep() {
+        ResultChain chain = new ResultChain.Builder()
+                .consensus(new ConsensusFilter(ConsensusFilter.MODE_AGREE, 1000, null, null))
+                .build();
+
+        chain.apply(1, CODE_39, "ABC", 0);
+        chain.apply(1, CODE_39, "ABC", 10);
+        chain.trackerDone(1);
+
+        assertNull(chain.apply(1, CODE_39, "ABC", 20));
+    }
+
+    @Test
+    public void vinStepsCleanUpAndRepairReads() {
+        ResultChain chain = new ResultChain.Builder()
+                .normalizeVin()
+                .validateVin()
+                .build();
+
+        assertEquals("1M8GDM9AXKP042788", chain.apply(1, CODE_39, "I1M8GDM9AXKP042788", 0));
+        // Only one swap of a commonly confused character makes this one valid.
+        assertEquals("1M8GDM9AXKP042788", chain.apply(1, CODE_39, "1M8GDM9AXKP04Z788", 0));
+
+        assertNull(chain.apply(1, CODE_39, "1M8GDM9A1KP042788", 0));
+        assertEquals(ResultChain.REJECTED_UNREAD, chain.getRejection());
+        assertNull(chain.apply(1, CODE_39, "1M8GDM", 0));
+        assertEquals(ResultChain.REJECTED_FILTERED, chain.getRejection());
+    }
+
+    private static final class LoggingStep implements ResultChain.Step {
+        private final StringBuilder mLog;
+        private final String mName;
+
+        LoggingStep(StringBuilder log, String name) {
+            mLog = log;
+            mName = name;
+        }
+
+        @Override
+        public String apply(int trackerId, int format, String value, long nowMillis) {
+            mLog.append(mName);
+            return value + mName;
+        }
+
+        @Override
+        public void trackerDone(int trackerId) {
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.dealrinc.gmvScanner;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class VinValidatorTest {
+    private static final String VIN = "1M8GDM9AXKP042788";
+
+    @Test
+    public void validatesTheCheckDigit() {
+        assertEquals('X', VinValidator.getCheckDigit(VIN));
+        assertTrue(VinValidator.validateVin(VIN));
+        assertFalse(VinValidator.validateVin("1M8GDM9A1KP042788"));
+        // Too short, and with a letter that VINs don't use.
+        assertFalse(VinValidator.validateVin("1M8GDM9AXKP04278"));
+        assertFalse(VinValidator.validateVin("1M8GDM9AXKPO42788"));
+    }
+
+    @Test
+    public void normalizeDropsMarkersAndExtraCharacters() {
+        assertSame(VIN, VinValidator.normalize(VIN));
+        assertEquals(VIN, VinValidator.normalize("I" + VIN));
+        assertEquals(VIN, VinValidator.normalize(VIN + "123"));
+        assertEquals(VIN, VinValidator.normalize("1M8GDM9AXKPq042788Q"));
+    }
+
+    @Test
+    public void repairRanksLikelierConfusionsFirst() {
+        // B/8 is a likelier confusion than M/N, whatever the position.
+        assertEquals(Arrays.asList("1MBGDN9AXKP042788", VIN),
+                VinValidator.repair("1M8GDN9AXKP042788"));
+        assertEquals(Arrays.asList(VIN, "1MBGDN9AXKP042788"),
+                VinValidator.repair("1MBGDM9AXKP042788"));
+    }
+
+    @Test
+    public void repairRanksEqualConfusionsByPosition() {
+        assertEquals(Arrays.asList("1M8G0M9AXKR042788", "1M8GDM9AXKRD42788",
+                        "1M86DM9AXKR042788", VIN),
+                VinValidator.repair("1M8GDM9AXKR042788"));
+    }
+
+    @Test
+    public void repairLeavesValidAndMalformedVinsAlone() {
+        assertEquals(Collections.<String>emptyList(), VinValidator.repair(VIN));
+        assertEquals(Collections.<String>emptyList(), VinValidator.repair("1M8GDM9A"));
+        assertEquals(Collections.<String>emptyList(),
+                VinValidator.repair("1M8GDM9A#KP042788"));
+    }
+}
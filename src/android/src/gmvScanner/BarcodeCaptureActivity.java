@@ -17,18 +17,13 @@ package com.dealrinc.gmvScanner;
 
 
 import android.Manifest;
-import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.pm.ActivityInfo;
-import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.pm.PackageManager;
-import android.hardware.Camera;
-import android.os.Build;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.design.widget.Snackbar;
@@ -40,10 +35,7 @@ import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.Toast;
 import android.view.WindowManager;
-import android.view.Display;
-import android.graphics.Point;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
@@ -52,12 +44,11 @@ import com.dealrinc.gmvScanner.ui.camera.CameraSource;
 import com.dealrinc.gmvScanner.ui.camera.CameraSourcePreview;
 
 import com.dealrinc.gmvScanner.ui.camera.GraphicOverlay;
-import com.google.android.gms.vision.MultiProcessor;
 import com.google.android.gms.vision.barcode.Barcode;
-import com.google.android.gms.vision.barcode.BarcodeDetector;
 import com.google.android.gms.common.images.Size;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Activity for the multi-tracker app.  This app detects barcodes and displays the value with the
@@ -73,14 +64,18 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
     // permission request codes need to be < 256
     private static final int RC_HANDLE_CAMERA_PERM = 2;
 
-    // constants used to pass extra data in the intent
-    public Integer DetectionTypes;
+    // constants used to pass extra data in the intent.  The detection settings are read by the
+    // ScannerPipeline straight from the intent extras.
     public double ViewFinderWidth = .5;
     public double ViewFinderHeight = .7;
 
     public static final String BarcodeObject = "Barcode";
 
+    private ScannerPipeline mPipeline;
     private CameraSource mCameraSource;
+    private ScanSession mSession;
+    // Set once a single scan has a barcode to return; reads after that are ignored.
+    private final AtomicBoolean mReturned = new AtomicBoolean();
     private CameraSourcePreview mPreview;
     private GraphicOverlay<BarcodeGraphic> mGraphicOverlay;
 
@@ -93,6 +88,7 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
      */
     @Override
     public void onCreate(Bundle icicle) {
+        ScanTimeline.get().mark(ScanTimeline.CAPTURE_ACTIVITY_CREATED);
         super.onCreate(icicle);
 
         // Hide the status bar and action bar.
@@ -115,17 +111,25 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
 
         setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_PORTRAIT);
 
+        // read parameters from the intent used to launch the activity.
+        ViewFinderWidth = getIntent().getDoubleExtra("ViewFinderWidth", .5);
+        ViewFinderHeight = getIntent().getDoubleExtra("ViewFinderHeight", .7);
+
+        mSession = ScanSession.getCurrent();
+        if (mSession != null) {
+            mSession.attach(this, new Runnable() {
+                @Override
+                public void run() {
+                    finish();
+                }
+            });
+        }
+
         mPreview = (CameraSourcePreview) findViewById(getResources().getIdentifier("preview", "id", getPackageName()));
         mPreview.ViewFinderWidth = ViewFinderWidth;
         mPreview.ViewFinderHeight = ViewFinderHeight;
         mGraphicOverlay = (GraphicOverlay<BarcodeGraphic>) findViewById(getResources().getIdentifier("graphicOverlay", "id", getPackageName()));
 
-
-        // read parameters from the intent used to launch the activity.
-        DetectionTypes = getIntent().getIntExtra("DetectionTypes", 1234);
-        ViewFinderWidth = getIntent().getDoubleExtra("ViewFinderWidth", .5);
-        ViewFinderHeight = getIntent().getDoubleExtra("ViewFinderHeight", .7);
-
         // Check for the camera permission before accessing the camera.  If the
         // permission is not granted yet, request permission.
         int rc = ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA);
@@ -182,84 +186,12 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
     }
 
     /**
-     * Creates and starts the camera.  Note that this uses a higher resolution in comparison
-     * to other detection examples to enable the barcode detector to detect small barcodes
-     * at long distances.
-     *
-     * Suppressing InlinedApi since there is a check that the minimum version is met before using
-     * the constant.
+     * Creates the camera source and the detection pipeline behind it from the intent settings.
      */
-    @SuppressLint("InlinedApi")
     private void createCameraSource(boolean autoFocus, boolean useFlash) {
-        Context context = getApplicationContext();
-
-
-        int detectionType = 0;
-
-        if(DetectionTypes == 0) {
-            detectionType = (Barcode.CODE_39|Barcode.DATA_MATRIX);
-        } else if(DetectionTypes == 1234) {
-
-        } else {
-            detectionType = DetectionTypes;
-        }
-
-
-        // A barcode detector is created to track barcodes.  An associated multi-processor instance
-        // is set to receive the barcode detection results, track the barcodes, and maintain
-        // graphics for each barcode on screen.  The factory is used by the multi-processor to
-        // create a separate tracker instance for each barcode.
-        BarcodeDetector barcodeDetector = new BarcodeDetector.Builder(context).setBarcodeFormats(detectionType).build();
-        BarcodeTrackerFactory barcodeFactory = new BarcodeTrackerFactory(mGraphicOverlay, this);
-        barcodeDetector.setProcessor(
-                new MultiProcessor.Builder<>(barcodeFactory).build());
-
-        if (!barcodeDetector.isOperational()) {
-            // Note: The first time that an app using the barcode or face API is installed on a
-            // device, GMS will download a native libraries to the device in order to do detection.
-            // Usually this completes before the app is run for the first time.  But if that
-            // download has not yet completed, then the above call will not detect any barcodes
-            // and/or faces.
-            //
-            // isOperational() can be used to check if the required native libraries are currently
-            // available.  The detectors will automatically become operational once the library
-            // downloads complete on device.
-            Log.w(TAG, "Detector dependencies are not yet available.");
-
-            // Check for low storage.  If there is low storage, the native library will not be
-            // downloaded, so detection will not become operational.
-            IntentFilter lowstorageFilter = new IntentFilter(Intent.ACTION_DEVICE_STORAGE_LOW);
-            boolean hasLowStorage = registerReceiver(null, lowstorageFilter) != null;
-
-            if (hasLowStorage) {
-                Toast.makeText(this, getResources().getIdentifier("low_storage_error", "string", getPackageName()), Toast.LENGTH_LONG).show();
-                Log.w(TAG, getString(getResources().getIdentifier("low_storage_error", "string", getPackageName())));
-            }
-        }
-
-        Display display = getWindowManager().getDefaultDisplay();
-        Point size = new Point();
-        display.getSize(size);
-        int width = size.x;
-        int height = size.y;
-
-        // Creates and starts the camera.  Note that this uses a higher resolution in comparison
-        // to other detection examples to enable the barcode detector to detect small barcodes
-        // at long distances.
-        CameraSource.Builder builder = new CameraSource.Builder(getApplicationContext(), barcodeDetector)
-                .setFacing(CameraSource.CAMERA_FACING_BACK)
-                .setRequestedPreviewSize(1600, 1024)
-                .setRequestedFps(15.0f);
-
-        // make sure that auto focus is an available option
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
-            builder = builder.setFocusMode(
-                    autoFocus ? Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE : null);
-        }
-
-        mCameraSource = builder
-                .setFlashMode(useFlash ? Camera.Parameters.FLASH_MODE_TORCH : null)
-                .build();
+        mPipeline = new ScannerPipeline(this, getIntent().getExtras(), mGraphicOverlay, this,
+                autoFocus, useFlash);
+        mCameraSource = mPipeline.getCameraSource();
     }
 
     /**
@@ -289,10 +221,16 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (mSession != null) {
+            mSession.detach(this);
+        }
         setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
         if (mPreview != null) {
             mPreview.release();
         }
+        if (mPipeline != null) {
+            mPipeline.finishRecording();
+        }
     }
 
     /**
@@ -324,10 +262,6 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
         if (grantResults.length != 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
             Log.d(TAG, "Camera permission granted - initialize the camera source");
             // we have permission, so create the camerasource
-            DetectionTypes = getIntent().getIntExtra("DetectionTypes", 0);
-            ViewFinderWidth = getIntent().getDoubleExtra("ViewFinderWidth", .5);
-            ViewFinderHeight = getIntent().getDoubleExtra("ViewFinderHeight", .7);
-
             createCameraSource(true, false);
             return;
         }
@@ -480,53 +414,49 @@ public final class BarcodeCaptureActivity extends AppCompatActivity implements B
         }
     }
 
-    private static int transliterate(char c) {
-        return "0123456789.ABCDEFGH..JKLMN.P.R..STUVWXYZ".indexOf(c) % 10;
-    }
+    @Override
+    public void onBarcodeDetected(int trackerId, Barcode barcode) {
+        //do something with barcode data returned
+        ScanTimeline.get().mark(ScanTimeline.FIRST_DETECTION);
 
-    private static char getCheckDigit(String vin) {
-        String map = "0123456789X";
-        String weights = "8765432X098765432";
-        int sum = 0;
-        for (int i = 0; i < 17; ++i) {
-            sum += transliterate(vin.charAt(i)) * map.indexOf(weights.charAt(i));
+        ScanResult result = mPipeline.accept(trackerId, barcode);
+        if (result != null) {
+            returnBarcode(result);
         }
-        return map.charAt(sum % 11);
-    }
-
-    private static boolean validateVin(String vin) {
-        if(vin.length()!=17) return false;
-        return getCheckDigit(vin) == vin.charAt(8);
     }
 
     @Override
-    public void onBarcodeDetected(Barcode barcode) {
-        //do something with barcode data returned
-
-        if(DetectionTypes == 0) {
-            String val = barcode.rawValue;
-            if(val.length() < 17) {
-                return;
-            }
-            val = val.replaceAll("[ioqIOQ]", "");
+    public void onBarcodeGone(int trackerId) {
+        mPipeline.trackerDone(trackerId);
+        if (mSession != null) {
+            mSession.trackerDone(trackerId);
+        }
+    }
 
-            val = val.substring(0, Math.min(val.length(), 17));
-            
-            barcode.rawValue = val;
+    /**
+     * Hands an accepted barcode back, from the detection thread.  A continuous scan streams it
+     * straight to JavaScript and keeps the camera running; otherwise it becomes the result of
+     * this activity, which closes on the main thread.
+     */
+    private void returnBarcode(ScanResult result) {
+        if ((mSession != null) && mSession.isContinuous()) {
+            mSession.deliver(result, mPipeline);
+            return;
+        }
 
-            if(validateVin(val)) {
-                Intent data = new Intent();
-                data.putExtra(BarcodeObject, barcode);
+        if (!mReturned.compareAndSet(false, true)) {
+            // A barcode was already returned.
+            return;
+        }
+        mPipeline.markBarcodeDetected();
+        final Intent data = new Intent();
+        result.writeTo(data);
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
                 setResult(CommonStatusCodes.SUCCESS, data);
                 finish();
             }
-
-        } else {
-            Intent data = new Intent();
-            data.putExtra(BarcodeObject, barcode);
-            setResult(CommonStatusCodes.SUCCESS, data);
-            finish();
-        }
-
+        });
     }
 }
@@ -18,6 +18,7 @@ package com.dealrinc.gmvScanner;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Point;
 import android.graphics.RectF;
 
 import com.dealrinc.gmvScanner.ui.camera.GraphicOverlay;
@@ -25,7 +26,8 @@ import com.google.android.gms.vision.barcode.Barcode;
 
 /**
  * Graphic instance for rendering barcode position, size, and ID within an associated graphic
- * overlay view.
+ * overlay view.  The paints are shared between all graphics, and the box is drawn through a rect
+ * that is reused, so drawing allocates nothing.
  */
 public class BarcodeGraphic extends GraphicOverlay.Graphic {
 
@@ -37,26 +39,37 @@ public class BarcodeGraphic extends GraphicOverlay.Graphic {
             Color.GREEN
     };
 
+    // The paints for each of the colors.  They are only used to draw, on one thread at a time.
+    private static final Paint[] RECT_PAINTS = new Paint[COLOR_CHOICES.length];
+    private static final Paint[] TEXT_PAINTS = new Paint[COLOR_CHOICES.length];
+
+    static {
+        for (int i = 0; i < COLOR_CHOICES.length; ++i) {
+            RECT_PAINTS[i] = new Paint();
+            RECT_PAINTS[i].setColor(COLOR_CHOICES[i]);
+            RECT_PAINTS[i].setStyle(Paint.Style.STROKE);
+            RECT_PAINTS[i].setStrokeWidth(4.0f);
+
+            TEXT_PAINTS[i] = new Paint();
+            TEXT_PAINTS[i].setColor(COLOR_CHOICES[i]);
+            TEXT_PAINTS[i].setTextSize(36.0f);
+        }
+    }
+
     private static int mCurrentColorIndex = 0;
 
-    private Paint mRectPaint;
-    private Paint mTextPaint;
+    private final Paint mRectPaint;
+    private final Paint mTextPaint;
+    // Only used while drawing.
+    private final RectF mRect = new RectF();
     private volatile Barcode mBarcode;
 
     BarcodeGraphic(GraphicOverlay overlay) {
         super(overlay);
 
         mCurrentColorIndex = (mCurrentColorIndex + 1) % COLOR_CHOICES.length;
-        final int selectedColor = COLOR_CHOICES[mCurrentColorIndex];
-
-        mRectPaint = new Paint();
-        mRectPaint.setColor(selectedColor);
-        mRectPaint.setStyle(Paint.Style.STROKE);
-        mRectPaint.setStrokeWidth(4.0f);
-
-        mTextPaint = new Paint();
-        mTextPaint.setColor(selectedColor);
-        mTextPaint.setTextSize(36.0f);
+        mRectPaint = RECT_PAINTS[mCurrentColorIndex];
+        mTextPaint = TEXT_PAINTS[mCurrentColorIndex];
     }
 
     public int getId() {
@@ -91,7 +104,10 @@ public class BarcodeGraphic extends GraphicOverlay.Graphic {
         }
 
         // Draws the bounding box around the barcode.
-        RectF rect = new RectF(barcode.getBoundingBox());
+        RectF rect = mRect;
+        if (!setBounds(rect, barcode.cornerPoints)) {
+            rect.set(barcode.getBoundingBox());
+        }
         rect.left = translateX(rect.left);
         rect.top = translateY(rect.top);
         rect.right = translateX(rect.right);
@@ -101,4 +117,27 @@ public class BarcodeGraphic extends GraphicOverlay.Graphic {
         // Draws a label at the bottom of the barcode indicate the barcode value that was detected.
         canvas.drawText(barcode.rawValue, rect.left, rect.bottom, mTextPaint);
     }
+
+    /**
+     * Sets the rect to the bounds of the corner points, the same box that {@link
+     * Barcode#getBoundingBox()} returns, but without allocating a new one.  Returns false if
+     * there are no corner points.
+     */
+    private static boolean setBounds(RectF rect, Point[] points) {
+        if ((points == null) || (points.length == 0)) {
+            return false;
+        }
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE;
+        int bottom = Integer.MIN_VALUE;
+        for (Point point : points) {
+            left = Math.min(left, point.x);
+            top = Math.min(top, point.y);
+            right = Math.max(right, point.x);
+            bottom = Math.max(bottom, point.y);
+        }
+        rect.set(left, top, right, bottom);
+        return true;
+    }
 }
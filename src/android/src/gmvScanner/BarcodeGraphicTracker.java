@@ -15,8 +15,7 @@
  */
 package com.dealrinc.gmvScanner;
 
-import android.content.Context;
-import android.support.annotation.UiThread;
+import android.support.annotation.WorkerThread;
 
 import com.dealrinc.gmvScanner.ui.camera.GraphicOverlay;
 import com.google.android.gms.vision.Detector;
@@ -34,25 +33,37 @@ public class BarcodeGraphicTracker extends Tracker<Barcode> {
     private BarcodeGraphic mGraphic;
 
     private BarcodeUpdateListener mBarcodeUpdateListener;
+    private int mId;
 
     /**
      * Consume the item instance detected from an Activity or Fragment level by implementing the
      * BarcodeUpdateListener interface method onBarcodeDetected.
      */
     public interface BarcodeUpdateListener {
-        @UiThread
-        void onBarcodeDetected(Barcode barcode);
+        /**
+         * Called with every read of a tracked barcode, starting with the one that found it.  The
+         * tracker id stays the same for as long as the barcode is followed across frames.  This
+         * is called on the detection thread; post only accepted results to the main thread.
+         */
+        @WorkerThread
+        void onBarcodeDetected(int trackerId, Barcode barcode);
+
+        /**
+         * Called when the barcode followed by a tracker is assumed to have left the frame, on the
+         * detection thread.
+         */
+        @WorkerThread
+        void onBarcodeGone(int trackerId);
     }
 
     BarcodeGraphicTracker(GraphicOverlay<BarcodeGraphic> mOverlay, BarcodeGraphic mGraphic,
-                          Context context) {
+                          BarcodeUpdateListener listener) {
         this.mOverlay = mOverlay;
         this.mGraphic = mGraphic;
-        if (context instanceof BarcodeUpdateListener) {
-            this.mBarcodeUpdateListener = (BarcodeUpdateListener) context;
-        } else {
-            throw new RuntimeException("Hosting activity must implement BarcodeUpdateListener");
+        if (listener == null) {
+            throw new IllegalArgumentException("No barcode update listener supplied.");
         }
+        this.mBarcodeUpdateListener = listener;
     }
 
     /**
@@ -61,7 +72,8 @@ public class BarcodeGraphicTracker extends Tracker<Barcode> {
     @Override
     public void onNewItem(int id, Barcode item) {
        // mGraphic.setId(id);
-        mBarcodeUpdateListener.onBarcodeDetected(item);
+        mId = id;
+        mBarcodeUpdateListener.onBarcodeDetected(id, item);
     }
 
     /**
@@ -71,6 +83,8 @@ public class BarcodeGraphicTracker extends Tracker<Barcode> {
     public void onUpdate(Detector.Detections<Barcode> detectionResults, Barcode item) {
         //mOverlay.add(mGraphic);
        // mGraphic.updateItem(item);
+        // Later reads get another chance, e.g. when the first read of a VIN failed validation.
+        mBarcodeUpdateListener.onBarcodeDetected(mId, item);
     }
 
     /**
@@ -90,5 +104,6 @@ public class BarcodeGraphicTracker extends Tracker<Barcode> {
     @Override
     public void onDone() {
         /*mOverlay.remove(mGraphic);*/
+        mBarcodeUpdateListener.onBarcodeGone(mId);
     }
 }
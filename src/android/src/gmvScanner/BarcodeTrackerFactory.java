@@ -15,8 +15,6 @@
  */
 package com.dealrinc.gmvScanner;
 
-import android.content.Context;
-
 import com.dealrinc.gmvScanner.ui.camera.GraphicOverlay;
 import com.google.android.gms.vision.MultiProcessor;
 import com.google.android.gms.vision.Tracker;
@@ -28,18 +26,18 @@ import com.google.android.gms.vision.barcode.Barcode;
  */
 class BarcodeTrackerFactory implements MultiProcessor.Factory<Barcode> {
     private GraphicOverlay<BarcodeGraphic> mGraphicOverlay;
-    private Context mContext;
+    private BarcodeGraphicTracker.BarcodeUpdateListener mListener;
 
     public BarcodeTrackerFactory(GraphicOverlay<BarcodeGraphic> mGraphicOverlay,
-                                 Context mContext) {
+                                 BarcodeGraphicTracker.BarcodeUpdateListener mListener) {
         this.mGraphicOverlay = mGraphicOverlay;
-        this.mContext = mContext;
+        this.mListener = mListener;
     }
 
     @Override
     public Tracker<Barcode> create(Barcode barcode) {
         BarcodeGraphic graphic = new BarcodeGraphic(mGraphicOverlay);
-        return new BarcodeGraphicTracker(mGraphicOverlay, graphic, mContext);
+        return new BarcodeGraphicTracker(mGraphicOverlay, graphic, mListener);
     }
 
 }
@@ -4,17 +4,20 @@ import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaWebView;
 import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.PermissionHelper;
 
 import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
+import android.Manifest;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.util.Log;
 import com.google.android.gms.common.api.CommonStatusCodes;
-import com.google.android.gms.vision.barcode.Barcode;
 
 import javax.security.auth.callback.Callback;
 
@@ -27,6 +30,15 @@ public class CDVAndroidScanner extends CordovaPlugin {
     protected CallbackContext mCallbackContext;
 
     private static final int RC_BARCODE_CAPTURE = 9001;
+    // Request code of a capture activity launched without the SecondaryActivity in between.
+    private static final int RC_DIRECT_CAPTURE = 9002;
+    // Request code of the camera permission for an embedded scan.
+    private static final int RC_CAMERA_PERMISSION = 9003;
+
+    // The embedded scanner that is showing, if any.  Only touched on the main thread.
+    private EmbeddedScanner mEmbeddedScanner;
+    // Settings of an embedded scan that is waiting for the camera permission.
+    private JSONArray mPendingEmbeddedArgs;
 
     public void initialize(CordovaInterface cordova, CordovaWebView webView) {
         super.initialize(cordova, webView);
@@ -35,63 +47,369 @@ public class CDVAndroidScanner extends CordovaPlugin {
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
 		Context context = cordova.getActivity().getApplicationContext();
-        mCallbackContext = callbackContext;
 		if (action.equals("startScan")) {
+            ScanSession current = ScanSession.getCurrent();
+            if ((current != null) && current.isOpen()) {
+                sendError(callbackContext, "SCANNER_OPEN");
+                return true;
+            }
+
+            ScanTimeline.get().begin();
+            mCallbackContext = callbackContext;
+            JSONObject options = args.optJSONObject(3);
+            // An embedded scan shows the camera under the page until it is stopped, so it is
+            // always continuous.
+            boolean embedded = (options != null) && options.optBoolean("embedded", false);
+            DuplicateFilter duplicateFilter = null;
+            ResultBatcher resultBatcher = null;
+            if (embedded || ((options != null) && options.optBoolean("continuous", false))) {
+                JSONObject filterOptions = options.optJSONObject("duplicateFilter");
+                if (filterOptions == null) {
+                    filterOptions = new JSONObject();
+                }
+                duplicateFilter = new DuplicateFilter(Math.max(1, filterOptions.optInt("size", 100)),
+                        Math.max(0, filterOptions.optLong("ttl", 3000)));
+
+                JSONObject batchOptions = options.optJSONObject("batch");
+                if (batchOptions == null) {
+                    batchOptions = new JSONObject();
+                }
+                resultBatcher = new ResultBatcher(callbackContext,
+                        Math.max(1, batchOptions.optInt("size", 1)),
+                        Math.max(0, batchOptions.optLong("window", 100)),
+                        batchOptions.optBoolean("binary", false));
+            }
+            ScanSession.begin(callbackContext, duplicateFilter, resultBatcher);
+
+            if (embedded) {
+                if (PermissionHelper.hasPermission(this, Manifest.permission.CAMERA)) {
+                    startEmbeddedScanner(args);
+                } else {
+                    mPendingEmbeddedArgs = args;
+                    PermissionHelper.requestPermission(this, RC_CAMERA_PERMISSION,
+                            Manifest.permission.CAMERA);
+                }
+                return true;
+            }
 
             class OneShotTask implements Runnable {
                 private Context context;
                 private JSONArray args;
                 private OneShotTask(Context ctx, JSONArray as) { context = ctx; args = as; }
                 public void run() {
+                    ScanTimeline.get().mark(ScanTimeline.THREAD_STARTED);
                     openNewActivity(context, args);
                 }
             }
-            Thread t = new Thread(new OneShotTask(context, args));
-            t.start();
+            cordova.getThreadPool().execute(new OneShotTask(context, args));
+            return true;
+        } else if (action.equals("prepare")) {
+            // Builds and warms up the detectors of a scan ahead of time, off the main thread.
+            final DetectorPool pool = DetectorPool.get(context);
+            final int formats = DetectorPool.formatsFor(args.optInt(0, 1234));
+            final int workers = Math.max(1, args.optInt(1, 1));
+            final CallbackContext prepareCallback = callbackContext;
+            cordova.getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    pool.prepare(formats, workers);
+                    prepareCallback.success();
+                }
+            });
+            return true;
+        } else if (action.equals("stopScan")) {
+            ScanSession session = ScanSession.getCurrent();
+            boolean stopped = (session != null) && session.stop();
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, stopped));
+            return true;
+        } else if (action.equals("getStats")) {
+            // Doesn't touch mCallbackContext, so it can be called while a scan is open.
+            JSONObject stats = ScanTimeline.get().getStats();
+            ScanSession session = ScanSession.getLast();
+            DuplicateFilter filter = session != null ? session.getDuplicateFilter() : null;
+            if (filter != null) {
+                JSONObject duplicates = new JSONObject();
+                duplicates.put("size", filter.getMaxEntries());
+                duplicates.put("ttl", filter.getTtlMillis());
+                duplicates.put("entries", filter.getEntryCount());
+                duplicates.put("hits", filter.getHits());
+                duplicates.put("misses", filter.getMisses());
+                duplicates.put("hitRate", (double) filter.getHitRate());
+                stats.put("duplicateFilter", duplicates);
+            }
+            ResultBatcher batcher = session != null ? session.getResultBatcher() : null;
+            if (batcher != null) {
+                JSONObject delivery = new JSONObject();
+                delivery.put("size", batcher.getMaxCount());
+                delivery.put("window", batcher.getWindowMillis());
+                delivery.put("binary", batcher.isBinary());
+                delivery.put("results", batcher.getResults());
+                delivery.put("bridgeCalls", batcher.getBridgeCalls());
+                delivery.put("bridgeCallsPerSecond", batcher.getBridgeCallsPerSecond());
+                delivery.put("meanLatencyMillis", batcher.getMeanLatencyNanos() / 1000000.0);
+                delivery.put("maxLatencyMillis", batcher.getMaxLatencyNanos() / 1000000.0);
+                stats.put("delivery", delivery);
+            }
+            callbackContext.success(stats);
             return true;
         }
         return false;
     }
 
     private void openNewActivity(Context context, JSONArray args) {
-		Intent intent = new Intent(context, SecondaryActivity.class);
-        intent.putExtra("DetectionTypes", args.optInt(0, 1234));
-        intent.putExtra("ViewFinderWidth", args.optDouble(1, .5));
-        intent.putExtra("ViewFinderHeight", args.optDouble(1, .7));
+        // Newer settings are passed as an options object after the positional settings.
+        JSONObject options = args.optJSONObject(3);
+
+        // The capture activity is started straight away unless the SecondaryActivity is asked for,
+        // which costs an extra activity transition and layout before the camera opens.
+        boolean directLaunch = (options == null) || options.optBoolean("directLaunch", true);
+
+		Intent intent = new Intent(context,
+                directLaunch ? BarcodeCaptureActivity.class : SecondaryActivity.class);
+        intent.putExtras(toSettings(args));
 
         this.cordova.setActivityResultCallback(this);
-        this.cordova.startActivityForResult(this, intent, RC_BARCODE_CAPTURE);
+        this.cordova.startActivityForResult(this, intent,
+                directLaunch ? RC_DIRECT_CAPTURE : RC_BARCODE_CAPTURE);
 	}
 
+    /**
+     * Turns the scan settings passed from JavaScript into the extras that the scanner reads them
+     * from, both for the capture activity and for the embedded scanner.
+     */
+    private static Bundle toSettings(JSONArray args) {
+        Bundle settings = new Bundle();
+        settings.putInt("DetectionTypes", args.optInt(0, 1234));
+        settings.putDouble("ViewFinderWidth", args.optDouble(1, .5));
+        settings.putDouble("ViewFinderHeight", args.optDouble(2, .7));
+
+        // Newer settings are passed as an options object after the positional settings.
+        JSONObject options = args.optJSONObject(3);
+        if (options != null) {
+            settings.putBoolean("FullFrameDetection", options.optBoolean("fullFrameDetection", false));
+            settings.putInt("DetectorWorkers", options.optInt("detectorWorkers", 1));
+            settings.putInt("CameraApi", options.optInt("cameraApi", 1));
+            settings.putString("RecordFrames", options.optString("recordFrames", ""));
+
+            JSONObject frameDropPolicy = options.optJSONObject("frameDropPolicy");
+            if (frameDropPolicy != null) {
+                settings.putString("FrameDropPolicy", frameDropPolicy.optString("type", "latest"));
+                settings.putInt("FrameDropPolicySize", frameDropPolicy.optInt("size", 1));
+            }
+
+            JSONObject sharpnessGate = options.optJSONObject("sharpnessGate");
+            if (sharpnessGate != null) {
+                settings.putFloat("SharpnessThreshold", (float) sharpnessGate.optDouble("threshold", 0));
+                settings.putFloat("SharpnessMaxSkipRatio", (float) sharpnessGate.optDouble("maxSkipRatio", .75));
+            }
+
+            JSONObject staticSceneGate = options.optJSONObject("staticSceneGate");
+            if (staticSceneGate != null) {
+                settings.putInt("StaticSceneThreshold", staticSceneGate.optInt("threshold", 0));
+                settings.putInt("StaticSceneRefreshInterval", staticSceneGate.optInt("refreshInterval", 1000));
+            }
+
+            JSONObject viewFinderFocus = options.optJSONObject("viewFinderFocus");
+            if (viewFinderFocus != null) {
+                settings.putBoolean("ViewFinderFocus", viewFinderFocus.optBoolean("enabled", true));
+                settings.putInt("RefocusTimeout", viewFinderFocus.optInt("refocusTimeout", 2000));
+            }
+
+            JSONObject autoZoom = options.optJSONObject("autoZoom");
+            if (autoZoom != null) {
+                settings.putBoolean("AutoZoom", autoZoom.optBoolean("enabled", false));
+                settings.putFloat("AutoZoomTargetFill", (float) autoZoom.optDouble("targetFill", .4));
+                settings.putInt("AutoZoomTimeout", autoZoom.optInt("timeout", 3000));
+            }
+
+            JSONObject autoTorch = options.optJSONObject("autoTorch");
+            if (autoTorch != null) {
+                settings.putBoolean("AutoTorch", autoTorch.optBoolean("enabled", false));
+                settings.putInt("AutoTorchDarkLuma", autoTorch.optInt("darkLuma", 40));
+                settings.putInt("AutoTorchBrightLuma", autoTorch.optInt("brightLuma", 170));
+            }
+
+            JSONArray filters = options.optJSONArray("filters");
+            if (filters != null) {
+                settings.putString("Filters", filters.toString());
+            }
+
+            JSONObject consensus = options.optJSONObject("consensus");
+            if (consensus != null) {
+                settings.putString("ConsensusMode", consensus.optString("mode", "agree"));
+                settings.putInt("ConsensusWindow", consensus.optInt("window", 1000));
+
+                // The number of votes for each of the formats listed.
+                JSONArray formats = consensus.optJSONArray("formats");
+                JSONArray votes = consensus.optJSONArray("votes");
+                if ((formats != null) && (votes != null)) {
+                    int count = Math.min(formats.length(), votes.length());
+                    int[] consensusFormats = new int[count];
+                    int[] consensusVotes = new int[count];
+                    for (int i = 0; i < count; ++i) {
+                        consensusFormats[i] = formats.optInt(i);
+                        consensusVotes[i] = votes.optInt(i, 1);
+                    }
+                    settings.putIntArray("ConsensusFormats", consensusFormats);
+                    settings.putIntArray("ConsensusVotes", consensusVotes);
+                }
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * Shows the camera under the WebView for the current session.  Stopping the session removes
+     * the scanner again and sends the final error that ends a continuous scan.
+     */
+    private void startEmbeddedScanner(JSONArray args) {
+        final ScanSession session = ScanSession.getCurrent();
+        final CallbackContext callbackContext = mCallbackContext;
+        final Bundle settings = toSettings(args);
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                removeEmbeddedScanner();
+                final EmbeddedScanner scanner = new EmbeddedScanner(cordova.getActivity(),
+                        webView.getView(), settings, session);
+                mEmbeddedScanner = scanner;
+                session.attach(scanner, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mEmbeddedScanner == scanner) {
+                            removeEmbeddedScanner();
+                        }
+                        session.detach(scanner);
+                        ScanSession.end(session);
+                        endTimeline(false);
+                        session.flush();
+                        sendError(callbackContext, "SCAN_STOPPED");
+                    }
+                });
+                scanner.show();
+            }
+        });
+    }
+
+    private void removeEmbeddedScanner() {
+        if (mEmbeddedScanner != null) {
+            mEmbeddedScanner.remove();
+            mEmbeddedScanner = null;
+        }
+    }
+
+    @Override
+    public void onRequestPermissionResult(int requestCode, String[] permissions,
+                                          int[] grantResults) throws JSONException {
+        if (requestCode != RC_CAMERA_PERMISSION) {
+            return;
+        }
+        JSONArray args = mPendingEmbeddedArgs;
+        mPendingEmbeddedArgs = null;
+        ScanSession session = ScanSession.getCurrent();
+        if ((args == null) || (session == null)) {
+            return;
+        }
+
+        if ((grantResults.length > 0) && (grantResults[0] == PackageManager.PERMISSION_GRANTED)) {
+            startEmbeddedScanner(args);
+        } else {
+            ScanSession.end(session);
+            endTimeline(false);
+            sendError(mCallbackContext, "PERMISSION_DENIED");
+        }
+    }
+
+    /**
+     * Stops the camera of an embedded scan while the app is in the background.
+     */
+    @Override
+    public void onPause(boolean multitasking) {
+        super.onPause(multitasking);
+        if (mEmbeddedScanner != null) {
+            mEmbeddedScanner.pause();
+        }
+    }
+
+    @Override
+    public void onResume(boolean multitasking) {
+        super.onResume(multitasking);
+        if (mEmbeddedScanner != null) {
+            mEmbeddedScanner.resume();
+        }
+    }
 
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
-        
-        if (requestCode == RC_BARCODE_CAPTURE) {
+
+        if (requestCode == RC_DIRECT_CAPTURE) {
+            // Hand the result on exactly as the SecondaryActivity would have.
+            data = SecondaryActivity.forwardResult(resultCode, data);
+            resultCode = data.hasExtra("err") ? CommonStatusCodes.ERROR : CommonStatusCodes.SUCCESS;
+        }
+
+        if ((requestCode == RC_BARCODE_CAPTURE) || (requestCode == RC_DIRECT_CAPTURE)) {
+            ScanSession session = ScanSession.getCurrent();
+            ScanSession.end(session);
+
+            ScanTimeline timeline = ScanTimeline.get();
+            timeline.mark(ScanTimeline.ACTIVITY_RESULT);
             if (resultCode == CommonStatusCodes.SUCCESS) {
                 Intent d = new Intent();
                 if (data != null) {
-                    Barcode barcode = data.getParcelableExtra(BarcodeCaptureActivity.BarcodeObject);
-                    JSONArray result = new JSONArray();
-                    result.put(barcode.rawValue);
-                    result.put("");
-                    result.put("");
-                    mCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
-
-                    Log.d("CDVAndroidScanner", "Barcode read: " + barcode.displayValue);
+                    ScanResult result = ScanResult.fromIntent(data);
+                    timeline.mark(ScanTimeline.PLUGIN_RESULT);
+                    mCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK,
+                            result.toJson(endTimeline(true))));
+
+                    Log.d("CDVAndroidScanner", "Barcode read: " + result.getBarcode().displayValue);
                 }
             } else {
+                endTimeline(false);
                 String err = data.getParcelableExtra("err");
-                JSONArray result = new JSONArray();
-                result.put(err);
-                result.put("");
-                result.put("");
-                mCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, result));
+                if (session != null) {
+                    // Results of a continuous scan that are still batched go first.
+                    session.flush();
+                    if (session.isStopped()) {
+                        err = "SCAN_STOPPED";
+                    }
+                }
+                sendError(mCallbackContext, err);
             }
         }
     }
     
+    /**
+     * Sends the error that ends a scan, in the same array shape as a result.
+     */
+    private static void sendError(CallbackContext callbackContext, String err) {
+        JSONArray result = new JSONArray();
+        result.put(err);
+        result.put("");
+        result.put("");
+        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, result));
+    }
+
+    /**
+     * Ends the scan timeline and returns its breakdown, or null if there was no scan running.
+     */
+    static JSONObject endTimeline(boolean succeeded) {
+        try {
+            return ScanTimeline.get().end(succeeded);
+        } catch (JSONException e) {
+            Log.e("CDVAndroidScanner", "Could not build scan timings", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        removeEmbeddedScanner();
+        DetectorPool.releaseIdle();
+    }
+
     @Override
     public void onRestoreStateForActivityResult(Bundle state, CallbackContext callbackContext) {
         mCallbackContext = callbackContext;
@@ -0,0 +1,303 @@
+package com.dealrinc.gmvScanner;
+
+/**
+ * Holds back the reads of a barcode until enough frames agree on its value, so that a single
+ * misread of a 1D barcode isn't returned.  Reads are collected per tracker, and only the reads
+ * within a time window count.  A value is accepted either once the same value was read a number
+ * of times, or, in majority mode, from the most common character at each position across the
+ * reads, which can fix a misread character that no single read got right.
+ * <p/>
+ * The number of reads needed depends on the barcode format: formats with error correction or a
+ * mandatory check character are accepted from a single read by default.
+ * <p/>
+ * Tracks are kept in a fixed table that is reused, so reads don't allocate anything until a value
+ * is accepted.
+ */
+final class ConsensusFilter {
+    /** Accepts a value once it was read the required number of times. */
+    static final int MODE_AGREE = 0;
+    /** Accepts the per-character majority of the required number of reads. */
+    static final int MODE_MAJORITY = 1;
+
+    /** The most reads kept per tracker, and so the most votes that can be asked for. */
+    static final int MAX_READS = 8;
+    // Trackers followed at once; the least recently read one is dropped beyond that.
+    private static final int MAX_TRACKS = 16;
+
+    // Barcode format constants, as in com.google.android.gms.vision.barcode.Barcode.
+    private static final int CODE_39 = 2;
+    private static final int CODABAR = 8;
+    private static final int ITF = 128;
+
+    private final int mMode;
+    private final long mWindowMillis;
+    private final int[] mFormats;
+    private final int[] mVotes;
+
+    // Guarded by this.
+    private final Track[] mTracks = new Track[MAX_TRACKS];
+    private char[] mMajority = new char[32];
+    private long mClock;
+
+    /**
+     * @param mode         {@link #MODE_AGREE} or {@link #MODE_MAJORITY}
+     * @param windowMillis how long a read counts towards a value, at least 1
+     * @param formats      barcode formats whose number of votes is overridden, may be null
+     * @param votes        the number of reads needed for each of the formats
+     */
+    ConsensusFilter(int mode, long windowMillis, int[] formats, int[] votes) {
+        if ((mode != MODE_AGREE) && (mode != MODE_MAJORITY)) {
+            throw new IllegalArgumentException("Invalid mode: " + mode);
+        }
+        if (windowMillis < 1) {
+            throw new IllegalArgumentException("Invalid window: " + windowMillis);
+        }
+        if (formats == null) {
+            formats = new int[0];
+            votes = new int[0];
+        } else if ((votes == null) || (votes.length != formats.length)) {
+            throw new IllegalArgumentException("Each format needs a number of votes.");
+        }
+        mMode = mode;
+        mWindowMillis = windowMillis;
+        mFormats = formats.clone();
+        mVotes = votes.clone();
+        for (int i = 0; i < MAX_TRACKS; ++i) {
+            mTracks[i] = new Track();
+        }
+    }
+
+    /**
+     * Returns the number of reads that a format needs by default.  Code 39, Codabar and ITF have
+     * no mandatory check character, so a misread can still look like a valid barcode.
+     */
+    static int defaultVotes(int format) {
+        switch (format) {
+            case CODE_39:
+                return 3;
+            case CODABAR:
+            case ITF:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Returns the number of reads needed to accept a barcode of the given format, between 1 and
+     * {@link #MAX_READS}.
+     */
+    int votesFor(int format) {
+        int votes = defaultVotes(format);
+        for (int i = 0; i < mFormats.length; ++i) {
+            if (mFormats[i] == format) {
+                votes = mVotes[i];
+                break;
+            }
+        }
+        return Math.max(1, Math.min(votes, MAX_READS));
+    }
+
+    long getWindowMillis() {
+        return mWindowMillis;
+    }
+
+    int getMode() {
+        return mMode;
+    }
+
+    /**
+     * Counts a read, and returns the value agreed on for the tracker, or null while there is no
+     * agreement yet.  In agree mode the value returned is the one read; in majority mode it may
+     * differ from every single read.
+     *
+     * @param trackerId the id of the tracker following the barcode
+     * @param format    the barcode format
+     * @param value     the value read
+     * @param nowMillis the current time, on a monotonic clock
+     */
+    synchronized String accept(int trackerId, int format, String value, long nowMillis) {
+        int votes = votesFor(format);
+        if (votes == 1) {
+            return value;
+        }
+
+        Track track = track(trackerId, format);
+        track.add(value, nowMillis - mWindowMillis, nowMillis);
+        if (track.mCount < votes) {
+            return null;
+        }
+        return mMode == MODE_AGREE ? agree(track, value, votes) : majority(track, votes);
+    }
+
+    /**
+     * Forgets the reads of a tracker once its barcode has left the frame.
+     */
+    synchronized void trackerDone(int trackerId) {
+        for (Track track : mTracks) {
+            if (track.mId == trackerId) {
+                track.reset(Track.NONE, 0);
+            }
+        }
+    }
+
+    private static String agree(Track track, String value, int votes) {
+        int agreeing = 0;
+        for (int i = 0; i < track.mCount; ++i) {
+            if (value.equals(track.read(i))) {
+                ++agreeing;
+            }
+        }
+        return agreeing >= votes ? value : null;
+    }
+
+    /**
+     * Builds the value from the most common character at each position, among the reads of the
+     * most common length.  Every position needs a strict majority of those reads, and there must
+     * be at least votes of them.
+     */
+    private String majority(Track track, int votes) {
+        // Find the most common length.
+        int length = -1;
+        int lengthCount = 0;
+        for (int i = 0; i < track.mCount; ++i) {
+            int candidate = track.read(i).length();
+            int count = 0;
+            for (int j = 0; j < track.mCount; ++j) {
+                if (track.read(j).length() == candidate) {
+                    ++count;
+                }
+            }
+            if (count > lengthCount) {
+                length = candidate;
+                lengthCount = count;
+            }
+        }
+        if (lengthCount < votes) {
+            return null;
+        }
+
+        if (mMajority.length < length) {
+            mMajority = new char[length];
+        }
+        for (int position = 0; position < length; ++position) {
+            char best = 0;
+            int bestCount = 0;
+            for (int i = 0; (i < track.mCount) && (bestCount * 2 <= lengthCount); ++i) {
+                String read = track.read(i);
+                if (read.length() != length) {
+                    continue;
+                }
+                char c = read.charAt(position);
+                int count = 0;
+                for (int j = i; j < track.mCount; ++j) {
+                    String other = track.read(j);
+                    if ((other.length() == length) && (other.charAt(position) == c)) {
+                        ++count;
+                    }
+                }
+                if (count > bestCount) {
+                    best = c;
+                    bestCount = count;
+                }
+            }
+            if (bestCount * 2 <= lengthCount) {
+                return null;
+            }
+            mMajority[position] = best;
+        }
+
+        // Hand out the same string for as long as the majority holds, rather than a new one for
+        // every frame.
+        String accepted = track.mAccepted;
+        if ((accepted == null) || (accepted.length() != length)
+                || !matches(accepted, mMajority)) {
+            accepted = new String(mMajority, 0, length);
+            track.mAccepted = accepted;
+        }
+        return accepted;
+    }
+
+    private static boolean matches(String value, char[] chars) {
+        for (int i = 0; i < value.length(); ++i) {
+            if (value.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the track of a tracker, taking over the least recently read track if it has none.
+     */
+    private Track track(int trackerId, int format) {
+        Track oldest = null;
+        for (Track track : mTracks) {
+            if (track.mId == trackerId) {
+                if (track.mFormat != format) {
+                    track.reset(trackerId, format);
+                }
+                track.mLastUsed = ++mClock;
+                return track;
+            }
+            if ((oldest == null) || (track.mLastUsed < oldest.mLastUsed)) {
+                oldest = track;
+            }
+        }
+        oldest.reset(trackerId, format);
+        oldest.mLastUsed = ++mClock;
+        return oldest;
+    }
+
+    /**
+     * The recent reads of one tracker, oldest first, in a ring buffer.
+     */
+    private static final class Track {
+        static final int NONE = Integer.MIN_VALUE;
+
+        final String[] mReads = new String[MAX_READS];
+        final long[] mTimes = new long[MAX_READS];
+        int mId = NONE;
+        int mFormat;
+        int mStart;
+        int mCount;
+        long mLastUsed;
+        String mAccepted;
+
+        void reset(int id, int format) {
+            mId = id;
+            mFormat = format;
+            mStart = 0;
+            mCount = 0;
+            mLastUsed = 0;
+            mAccepted = null;
+            for (int i = 0; i < MAX_READS; ++i) {
+                mReads[i] = null;
+            }
+        }
+
+        /**
+         * Drops the reads from before the window, then adds a read, dropping the oldest one if
+         * the buffer is full.
+         */
+        void add(String value, long windowStart, long nowMillis) {
+            while ((mCount > 0) && (mTimes[mStart] < windowStart)) {
+                mReads[mStart] = null;
+                mStart = (mStart + 1) % MAX_READS;
+                --mCount;
+            }
+            if (mCount == MAX_READS) {
+                mStart = (mStart + 1) % MAX_READS;
+                --mCount;
+            }
+            int index = (mStart + mCount) % MAX_READS;
+            mReads[index] = value;
+            mTimes[index] = nowMillis;
+            ++mCount;
+        }
+
+        String read(int i) {
+            return mReads[(mStart + i) % MAX_READS];
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.dealrinc.gmvScanner;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.barcode.Barcode;
+import com.google.android.gms.vision.barcode.BarcodeDetector;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Process-wide pool of barcode detectors, keyed by the barcode formats they detect.  Building a
+ * detector and running its first detection pays for loading the native detector, which otherwise
+ * delays the first decoded frame of every scan.  Detectors can be built and warmed up ahead of a
+ * scan with {@link #prepare(int, int)}, and a scan that is done with its detectors hands them back
+ * so the next scan starts with warm ones.
+ * <p/>
+ * Scans borrow detectors through {@link #borrow(int)}.  Releasing a borrowed detector returns the
+ * underlying detector to the pool instead of destroying it.
+ */
+final class DetectorPool {
+    private static final String TAG = "DetectorPool";
+
+    // Frame size used to warm up a detector; just big enough to get the native code going.
+    private static final int WARM_UP_SIZE = 64;
+
+    private static DetectorPool sInstance;
+
+    private final Context mContext;
+    private final int mMaxIdle;
+
+    // Guarded by this.  Idle detectors by barcode formats.
+    private final SparseArray<ArrayDeque<BarcodeDetector>> mIdle = new SparseArray<>();
+
+    private DetectorPool(Context context) {
+        mContext = context.getApplicationContext();
+        // A scan never uses more detectors than there are cores.
+        mMaxIdle = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Returns the pool, creating it on first use.
+     */
+    static synchronized DetectorPool get(Context context) {
+        if (sInstance == null) {
+            sInstance = new DetectorPool(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Releases the idle detectors of the pool, if it was created.  Detectors that are still
+     * borrowed are pooled again when they are released.
+     */
+    static void releaseIdle() {
+        DetectorPool pool;
+        synchronized (DetectorPool.class) {
+            pool = sInstance;
+        }
+        if (pool != null) {
+            pool.clear();
+        }
+    }
+
+    /**
+     * Maps the detection types passed to the scanner to barcode formats: 0 scans VINs, 1234 every
+     * format, and anything else is a bitmask of formats.
+     */
+    static int formatsFor(int detectionTypes) {
+        if (detectionTypes == 0) {
+            return Barcode.CODE_39 | Barcode.DATA_MATRIX;
+        } else if (detectionTypes == 1234) {
+            return Barcode.ALL_FORMATS;
+        }
+        return detectionTypes;
+    }
+
+    /**
+     * Builds and warms up detectors for the given formats until count of them are idle.  This
+     * does the slow part of starting a scan, so call it off the main thread.
+     */
+    void prepare(int formats, int count) {
+        count = Math.min(count, mMaxIdle);
+        while (idleCount(formats) < count) {
+            BarcodeDetector detector = build(formats);
+            warmUp(detector);
+            if (!giveBack(formats, detector)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Lends out a detector for the given formats, warm if one is idle.  The detector must be used
+     * by one thread at a time, and released when the scan is done with it.
+     */
+    Detector<Barcode> borrow(int formats) {
+        BarcodeDetector detector;
+        synchronized (this) {
+            ArrayDeque<BarcodeDetector> idle = mIdle.get(formats);
+            detector = idle != null ? idle.poll() : null;
+        }
+        if (detector == null) {
+            detector = build(formats);
+        }
+        return new PooledDetector(this, formats, detector);
+    }
+
+    /**
+     * Releases all idle detectors.
+     */
+    void clear() {
+        SparseArray<ArrayDeque<BarcodeDetector>> idle;
+        synchronized (this) {
+            idle = mIdle.clone();
+            mIdle.clear();
+        }
+        for (int i = 0; i < idle.size(); ++i) {
+            for (BarcodeDetector detector : idle.valueAt(i)) {
+                detector.release();
+            }
+        }
+    }
+
+    private synchronized int idleCount(int formats) {
+        ArrayDeque<BarcodeDetector> idle = mIdle.get(formats);
+        return idle != null ? idle.size() : 0;
+    }
+
+    /**
+     * Puts a detector back in the pool.  Returns false, releasing the detector, if the pool
+     * already holds as many idle detectors for these formats as a scan can use.
+     */
+    private boolean giveBack(int formats, BarcodeDetector detector) {
+        synchronized (this) {
+            ArrayDeque<BarcodeDetector> idle = mIdle.get(formats);
+            if (idle == null) {
+                idle = new ArrayDeque<>();
+                mIdle.put(formats, idle);
+            }
+            if (idle.size() < mMaxIdle) {
+                idle.push(detector);
+                return true;
+            }
+        }
+        detector.release();
+        return false;
+    }
+
+    private BarcodeDetector build(int formats) {
+        return new BarcodeDetector.Builder(mContext).setBarcodeFormats(formats).build();
+    }
+
+    /**
+     * Runs a detection on a blank frame, so that the native detector is loaded before the first
+     * real frame arrives.  This does nothing until the detector's native libraries have been
+     * downloaded.
+     */
+    private static void warmUp(BarcodeDetector detector) {
+        if (!detector.isOperational()) {
+            Log.w(TAG, "Detector dependencies are not yet available.");
+            return;
+        }
+        byte[] blank = new byte[WARM_UP_SIZE * WARM_UP_SIZE * 3 / 2];
+        Frame frame = new Frame.Builder()
+                .setImageData(ByteBuffer.wrap(blank), WARM_UP_SIZE, WARM_UP_SIZE, ImageFormat.NV21)
+                .build();
+        detector.detect(frame);
+    }
+
+    /**
+     * A detector borrowed from the pool.  It has a processor of its own, while the underlying
+     * detector never gets one, so that it can go back to the pool when this is released.
+     */
+    private static final class PooledDetector extends Detector<Barcode> {
+        private final DetectorPool mPool;
+        private final int mFormats;
+        private BarcodeDetector mDetector;
+
+        PooledDetector(DetectorPool pool, int formats, BarcodeDetector detector) {
+            mPool = pool;
+            mFormats = formats;
+            mDetector = detector;
+        }
+
+        @Override
+        public SparseArray<Barcode> detect(Frame frame) {
+            return mDetector.detect(frame);
+        }
+
+        @Override
+        public boolean isOperational() {
+            return mDetector.isOperational();
+        }
+
+        @Override
+        public void release() {
+            super.release();
+            synchronized (this) {
+                if (mDetector == null) {
+                    return;
+                }
+                mPool.giveBack(mFormats, mDetector);
+                mDetector = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.dealrinc.gmvScanner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Suppresses repeated reads of the same barcode during a continuous scan.  A read is a duplicate
+ * if the tracker that produced it was already reported, or if a barcode with the same format and
+ * raw value was seen within the time to live.  Seeing a barcode again restarts its time to live,
+ * so a label that stays in view is reported once no matter how often the detector picks it up.
+ * <p/>
+ * At most a fixed number of barcodes and tracker ids are remembered; beyond that the least
+ * recently seen ones are forgotten first.
+ */
+final class DuplicateFilter {
+    private final int mMaxEntries;
+    private final long mTtlMillis;
+
+    // Guarded by this.  Last time each barcode was seen, in least recently seen order.
+    private final LinkedHashMap<String, Long> mLastSeen;
+    // Trackers whose barcode was already reported, until they report that they are done.
+    private final LinkedHashMap<Integer, Boolean> mReportedTrackers;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * @param maxEntries the number of barcodes and tracker ids to remember, at least 1
+     * @param ttlMillis  how long a barcode is suppressed after it was last seen; 0 only suppresses
+     *                   reads from trackers that were already reported
+     */
+    DuplicateFilter(final int maxEntries, long ttlMillis) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Invalid size: " + maxEntries);
+        }
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("Invalid time to live: " + ttlMillis);
+        }
+        mMaxEntries = maxEntries;
+        mTtlMillis = ttlMillis;
+        mLastSeen = new LinkedHashMap<String, Long>(16, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        mReportedTrackers = new LinkedHashMap<Integer, Boolean>(16, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns true if a read should be reported, or false if it is a duplicate.
+     *
+     * @param trackerId  the id of the tracker following the barcode
+     * @param format     the barcode format
+     * @param rawValue   the barcode value
+     * @param nowMillis  the current time, on a monotonic clock
+     */
+    synchronized boolean accept(int trackerId, int format, String rawValue, long nowMillis) {
+        String key = format + ":" + rawValue;
+        Long lastSeen = mLastSeen.put(key, nowMillis);
+        boolean reported = mReportedTrackers.put(trackerId, Boolean.TRUE) != null;
+
+        if (reported || ((lastSeen != null) && (nowMillis - lastSeen < mTtlMillis))) {
+            mHits++;
+            return false;
+        }
+        mMisses++;
+        return true;
+    }
+
+    /**
+     * Forgets a tracker once its barcode has left the frame.  The barcode itself stays suppressed
+     * until its time to live runs out.
+     */
+    synchronized void trackerDone(int trackerId) {
+        mReportedTrackers.remove(trackerId);
+    }
+
+    int getMaxEntries() {
+        return mMaxEntries;
+    }
+
+    long getTtlMillis() {
+        return mTtlMillis;
+    }
+
+    synchronized int getEntryCount() {
+        return mLastSeen.size();
+    }
+
+    /**
+     * Returns the number of reads suppressed as duplicates.
+     */
+    synchronized long getHits() {
+        return mHits;
+    }
+
+    /**
+     * Returns the number of reads that were reported.
+     */
+    synchronized long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * Returns the share of reads suppressed as duplicates, between 0 and 1.
+     */
+    synchronized float getHitRate() {
+        long reads = mHits + mMisses;
+        return reads == 0 ? 0 : (float) mHits / reads;
+    }
+}
@@ -0,0 +1,133 @@
+package com.dealrinc.gmvScanner;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.dealrinc.gmvScanner.ui.camera.CameraSourcePreview;
+import com.dealrinc.gmvScanner.ui.camera.GraphicOverlay;
+import com.google.android.gms.vision.barcode.Barcode;
+
+import java.io.IOException;
+
+/**
+ * A scanner that shows the camera preview inside the app's own window, layered under the Cordova
+ * WebView, instead of in a capture activity of its own.  The page stays interactive and draws its
+ * own controls over the preview, which shows through wherever the page is transparent.
+ * <p/>
+ * An embedded scan is always continuous: every accepted barcode is streamed to JavaScript through
+ * the scan session until the session is stopped.  Other than the tracker callbacks, all methods
+ * must be called on the main thread.
+ */
+final class EmbeddedScanner implements BarcodeGraphicTracker.BarcodeUpdateListener {
+    private static final String TAG = "EmbeddedScanner";
+
+    private final View mWebView;
+    private final ScanSession mSession;
+    private final CameraSourcePreview mPreview;
+    private final GraphicOverlay<BarcodeGraphic> mGraphicOverlay;
+    // The WebView's background from before the preview was shown, to put back on removal.
+    private Drawable mWebViewBackground;
+    // Read by the detector thread; null once the scanner was removed.
+    private volatile ScannerPipeline mPipeline;
+
+    /**
+     * @param webView  the view of the Cordova WebView, which the preview is placed under
+     * @param settings the scan settings, as put in the intent extras by the plugin
+     * @param session  the continuous session that accepted barcodes are delivered to
+     */
+    EmbeddedScanner(Activity activity, View webView, Bundle settings,
+                    ScanSession session) {
+        mWebView = webView;
+        mSession = session;
+
+        mPreview = new CameraSourcePreview(activity, null);
+        mPreview.ViewFinderWidth = settings.getDouble("ViewFinderWidth", .5);
+        mPreview.ViewFinderHeight = settings.getDouble("ViewFinderHeight", .7);
+        mGraphicOverlay = new GraphicOverlay<>(activity, null);
+        mPreview.addView(mGraphicOverlay);
+
+        mPipeline = new ScannerPipeline(activity, settings, mGraphicOverlay, this, true, false);
+    }
+
+    /**
+     * Puts the preview under the WebView and starts the camera.  The WebView is made transparent
+     * so that the preview shows through the page; its background is kept to be restored by
+     * {@link #remove()}.
+     */
+    void show() {
+        ViewGroup parent = (ViewGroup) mWebView.getParent();
+        parent.addView(mPreview, 0, new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        mWebViewBackground = mWebView.getBackground();
+        mWebView.setBackgroundColor(Color.TRANSPARENT);
+        resume();
+    }
+
+    /**
+     * Stops the camera while the app is in the background.
+     */
+    void pause() {
+        mPreview.stop();
+    }
+
+    /**
+     * Restarts the camera once the app is back in the foreground.
+     */
+    void resume() {
+        if (mPipeline == null) {
+            return;
+        }
+        try {
+            mPreview.start(mPipeline.getCameraSource(), mGraphicOverlay);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to start camera source.", e);
+        }
+    }
+
+    /**
+     * Releases the camera and the detection pipeline, takes the preview out of the window and
+     * restores the WebView's background.  Does nothing if it was already removed.
+     */
+    @SuppressWarnings("deprecation")
+    void remove() {
+        if (mPipeline == null) {
+            return;
+        }
+        mPreview.release();
+        mPipeline.finishRecording();
+        mPipeline = null;
+
+        ViewGroup parent = (ViewGroup) mPreview.getParent();
+        if (parent != null) {
+            parent.removeView(mPreview);
+        }
+        // setBackground() needs API level 16.
+        mWebView.setBackgroundDrawable(mWebViewBackground);
+        mWebViewBackground = null;
+    }
+
+    @Override
+    public void onBarcodeDetected(int trackerId, Barcode barcode) {
+        ScanTimeline.get().mark(ScanTimeline.FIRST_DETECTION);
+
+        ScannerPipeline pipeline = mPipeline;
+        ScanResult result = pipeline != null ? pipeline.accept(trackerId, barcode) : null;
+        if (result != null) {
+            mSession.deliver(result, pipeline);
+        }
+    }
+
+    @Override
+    public void onBarcodeGone(int trackerId) {
+        ScannerPipeline pipeline = mPipeline;
+        if (pipeline != null) {
+            pipeline.trackerDone(trackerId);
+        }
+        mSession.trackerDone(trackerId);
+    }
+}
@@ -0,0 +1,88 @@
+package com.dealrinc.gmvScanner;
+
+/**
+ * Histogram of latencies with fixed, roughly logarithmic buckets from 1 ms to 20 s, plus an
+ * overflow bucket.  Percentiles are estimated as the upper bound of the bucket they fall in,
+ * capped at the largest recorded value.
+ * <p/>
+ * This class is not thread safe.
+ */
+final class LatencyHistogram {
+    /**
+     * Inclusive upper bounds of the buckets, in milliseconds.  Anything slower goes in a final
+     * overflow bucket.
+     */
+    static final long[] BUCKET_BOUNDS_MILLIS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000
+    };
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final long[] mCounts = new long[BUCKET_BOUNDS_MILLIS.length + 1];
+    private long mCount;
+    private long mTotalNanos;
+    private long mMinNanos = Long.MAX_VALUE;
+    private long mMaxNanos;
+
+    /**
+     * Adds a latency to the histogram.  Negative values are counted as 0.
+     */
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int bucket = 0;
+        while ((bucket < BUCKET_BOUNDS_MILLIS.length) &&
+                (nanos > BUCKET_BOUNDS_MILLIS[bucket] * NANOS_PER_MILLI)) {
+            bucket++;
+        }
+        mCounts[bucket]++;
+        mCount++;
+        mTotalNanos += nanos;
+        mMinNanos = Math.min(mMinNanos, nanos);
+        mMaxNanos = Math.max(mMaxNanos, nanos);
+    }
+
+    long getCount() {
+        return mCount;
+    }
+
+    long getMinNanos() {
+        return mCount == 0 ? 0 : mMinNanos;
+    }
+
+    long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    long getMeanNanos() {
+        return mCount == 0 ? 0 : mTotalNanos / mCount;
+    }
+
+    /**
+     * Returns the number of latencies in a bucket, where bucket {@code BUCKET_BOUNDS_MILLIS.length}
+     * holds everything slower than the last bound.
+     */
+    long getCountInBucket(int bucket) {
+        return mCounts[bucket];
+    }
+
+    /**
+     * Returns an estimate of the given percentile (between 0 and 100), in nanoseconds, or 0 if
+     * nothing was recorded.
+     */
+    long getPercentileNanos(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(mCount * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; ++i) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.min(BUCKET_BOUNDS_MILLIS[i] * NANOS_PER_MILLI, mMaxNanos);
+            }
+        }
+        return mMaxNanos;
+    }
+}
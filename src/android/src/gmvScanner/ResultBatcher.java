@@ -0,0 +1,197 @@
+package com.dealrinc.gmvScanner;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Coalesces the results of a continuous scan into fewer messages over the Cordova bridge.  Each
+ * message to the WebView goes through the bridge and the JavaScript event loop, so a scan that
+ * reads many barcodes in quick succession is cheaper to deliver in batches.
+ * <p/>
+ * Results are held until there are as many as the batch size, or until the first of them has
+ * waited for the batch window, whichever comes first; the window bounds the delay that batching
+ * adds.  A single result is sent as is, while a batch is sent as an array of results, or in the
+ * compact binary form of {@link ScanResult#encode} if asked for.  A batch that carries the phase
+ * breakdown of the scan, which only the first result of a scan does, is always sent as an array.
+ * With a batch size of 1 every result is sent straight away.
+ * <p/>
+ * Results may be added from any thread.
+ */
+final class ResultBatcher {
+    private final CallbackContext mCallbackContext;
+    private final int mMaxCount;
+    private final long mWindowMillis;
+    private final boolean mBinary;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    // Guarded by this.  The results waiting to be sent, their phase breakdowns and when they
+    // were added.
+    private final ScanResult[] mPending;
+    private final JSONObject[] mTimings;
+    private final long[] mAddedNanos;
+    private int mPendingCount;
+    private boolean mPendingTimings;
+    private long mFirstSendNanos;
+    private long mLastSendNanos;
+    private long mBridgeCalls;
+    private long mResults;
+    private long mLatencyNanos;
+    private long mMaxLatencyNanos;
+
+    /**
+     * @param maxCount     the most results sent in one message, at least 1
+     * @param windowMillis the longest a result waits for others to join it
+     * @param binary       whether batches are sent in the compact binary form
+     */
+    ResultBatcher(CallbackContext callbackContext, int maxCount, long windowMillis,
+                  boolean binary) {
+        if (maxCount < 1) {
+            throw new IllegalArgumentException("Invalid batch size: " + maxCount);
+        }
+        mCallbackContext = callbackContext;
+        mMaxCount = maxCount;
+        mWindowMillis = Math.max(0, windowMillis);
+        mBinary = binary;
+        mPending = new ScanResult[maxCount];
+        mTimings = new JSONObject[maxCount];
+        mAddedNanos = new long[maxCount];
+    }
+
+    /**
+     * Queues a result, sending the batch if it is full or batching is off.
+     *
+     * @param timings the phase breakdown of the scan, or null
+     */
+    void add(ScanResult result, JSONObject timings) {
+        boolean first;
+        boolean sent;
+        synchronized (this) {
+            mPending[mPendingCount] = result;
+            mTimings[mPendingCount] = timings;
+            mPendingTimings |= timings != null;
+            mAddedNanos[mPendingCount] = System.nanoTime();
+            mPendingCount++;
+            first = mPendingCount == 1;
+            sent = mPendingCount == mMaxCount;
+            if (sent) {
+                send();
+            }
+        }
+        if (sent) {
+            if (mMaxCount > 1) {
+                mHandler.removeCallbacks(mFlush);
+            }
+        } else if (first) {
+            mHandler.postDelayed(mFlush, mWindowMillis);
+        }
+    }
+
+    /**
+     * Sends the results that are waiting, if any.  Call this before the final message of a scan,
+     * so that no result arrives after it.
+     */
+    void flush() {
+        mHandler.removeCallbacks(mFlush);
+        synchronized (this) {
+            send();
+        }
+    }
+
+    int getMaxCount() {
+        return mMaxCount;
+    }
+
+    long getWindowMillis() {
+        return mWindowMillis;
+    }
+
+    boolean isBinary() {
+        return mBinary;
+    }
+
+    /**
+     * Returns the number of messages sent over the bridge.
+     */
+    synchronized long getBridgeCalls() {
+        return mBridgeCalls;
+    }
+
+    /**
+     * Returns the number of results sent.
+     */
+    synchronized long getResults() {
+        return mResults;
+    }
+
+    /**
+     * Returns the messages sent per second, from the first message to the last one.
+     */
+    synchronized double getBridgeCallsPerSecond() {
+        long span = mLastSendNanos - mFirstSendNanos;
+        return span > 0 ? (mBridgeCalls - 1) * 1e9 / span : 0;
+    }
+
+    /**
+     * Returns the average time from a result being added to it being sent, in nanoseconds.
+     */
+    synchronized long getMeanLatencyNanos() {
+        return mResults > 0 ? mLatencyNanos / mResults : 0;
+    }
+
+    synchronized long getMaxLatencyNanos() {
+        return mMaxLatencyNanos;
+    }
+
+    // Called with the lock held.
+    private void send() {
+        if (mPendingCount == 0) {
+            return;
+        }
+        PluginResult pluginResult;
+        if (mPendingCount == 1) {
+            pluginResult = new PluginResult(PluginResult.Status.OK,
+                    mPending[0].toJson(mTimings[0]));
+        } else if (mBinary && !mPendingTimings) {
+            pluginResult = new PluginResult(PluginResult.Status.OK,
+                    ScanResult.encode(mPending, mPendingCount));
+        } else {
+            JSONArray batch = new JSONArray();
+            for (int i = 0; i < mPendingCount; ++i) {
+                batch.put(mPending[i].toJson(mTimings[i]));
+            }
+            pluginResult = new PluginResult(PluginResult.Status.OK, batch);
+        }
+        pluginResult.setKeepCallback(true);
+        mCallbackContext.sendPluginResult(pluginResult);
+
+        long now = System.nanoTime();
+        if (mBridgeCalls == 0) {
+            mFirstSendNanos = now;
+        }
+        mLastSendNanos = now;
+        mBridgeCalls++;
+        for (int i = 0; i < mPendingCount; ++i) {
+            long latency = now - mAddedNanos[i];
+            mLatencyNanos += latency;
+            mMaxLatencyNanos = Math.max(mMaxLatencyNanos, latency);
+        }
+        mResults += mPendingCount;
+        Arrays.fill(mPending, 0, mPendingCount, null);
+        Arrays.fill(mTimings, 0, mPendingCount, null);
+        mPendingCount = 0;
+        mPendingTimings = false;
+    }
+}
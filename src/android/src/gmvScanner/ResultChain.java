@@ -0,0 +1,219 @@
+package com.dealrinc.gmvScanner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The post-processing that every read of a barcode goes through before it is returned: a chain of
+ * steps that each either pass the value on, possibly transformed, or reject the read.  The chain
+ * runs on the detection thread, so only the reads it accepts are handed to the main thread or
+ * sent to the plugin.
+ * <p/>
+ * Steps must be cheap and must not allocate for reads they pass on unchanged, as they run for
+ * every read of every tracked barcode.  Reads of one scan are processed on one thread at a time.
+ */
+final class ResultChain {
+    /** The read wasn't rejected. */
+    static final int NOT_REJECTED = 0;
+    /**
+     * The read isn't usable yet: it is waiting for other reads to agree with it, or it fails the
+     * VIN check digit.  The barcode was found but not read, so a closer look may help.
+     */
+    static final int REJECTED_UNREAD = 1;
+    /** The read was rejected by one of the filters set by the caller. */
+    static final int REJECTED_FILTERED = 2;
+
+    /**
+     * One step of the chain.
+     */
+    interface Step {
+        /**
+         * Returns the value to pass on to the next step, or null to reject the read.
+         *
+         * @param trackerId the id of the tracker following the barcode
+         * @param format    the barcode format
+         * @param value     the value as passed on by the step before
+         * @param nowMillis the current time, on a monotonic clock
+         */
+        String apply(int trackerId, int format, String value, long nowMillis);
+
+        /**
+         * Called when the barcode followed by a tracker has left the frame.
+         */
+        void trackerDone(int trackerId);
+    }
+
+    private final Step[] mSteps;
+    private final boolean[] mUnreadSteps;
+
+    private int mRejection = NOT_REJECTED;
+
+    private ResultChain(List<Step> steps, List<Boolean> unreadSteps) {
+        mSteps = steps.toArray(new Step[steps.size()]);
+        mUnreadSteps = new boolean[mSteps.length];
+        for (int i = 0; i < mUnreadSteps.length; ++i) {
+            mUnreadSteps[i] = unreadSteps.get(i);
+        }
+    }
+
+    /**
+     * Runs a read through the chain.  Returns the value to return, or null if a step rejected it,
+     * in which case {@link #getRejection()} tells why.
+     */
+    String apply(int trackerId, int format, String value, long nowMillis) {
+        mRejection = value != null ? NOT_REJECTED : REJECTED_FILTERED;
+        for (int i = 0; (i < mSteps.length) && (value != null); ++i) {
+            value = mSteps[i].apply(trackerId, format, value, nowMillis);
+            if (value == null) {
+                mRejection = mUnreadSteps[i] ? REJECTED_UNREAD : REJECTED_FILTERED;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns why the last read was rejected: {@link #REJECTED_UNREAD},
+     * {@link #REJECTED_FILTERED}, or {@link #NOT_REJECTED} if it was passed on.
+     */
+    int getRejection() {
+        return mRejection;
+    }
+
+    /**
+     * Tells every step that the barcode followed by a tracker has left the frame.
+     */
+    void trackerDone(int trackerId) {
+        for (Step step : mSteps) {
+            step.trackerDone(trackerId);
+        }
+    }
+
+    int getStepCount() {
+        return mSteps.length;
+    }
+
+    /**
+     * Builds a chain from steps that run in the order they are added.
+     */
+    static final class Builder {
+        private final List<Step> mSteps = new ArrayList<>();
+        private final List<Boolean> mUnreadSteps = new ArrayList<>();
+
+        /**
+         * Adds a filter: a read it rejects counts as {@link #REJECTED_FILTERED}.
+         */
+        Builder add(Step step) {
+            return add(step, false);
+        }
+
+        private Builder add(Step step, boolean unread) {
+            mSteps.add(step);
+            mUnreadSteps.add(unread);
+            return this;
+        }
+
+        /**
+         * Cleans up VIN reads; see {@link VinValidator#normalize(String)}.
+         */
+        Builder normalizeVin() {
+            return add(new StatelessStep() {
+                @Override
+                public String apply(int trackerId, int format, String value, long nowMillis) {
+                    return value.length() < VinValidator.LENGTH
+                            ? null : VinValidator.normalize(value);
+                }
+            });
+        }
+
+        /**
+         * Only passes on valid VINs.  A VIN that fails the check digit is repaired if exactly one
+         * commonly confused character can be swapped to make it pass.
+         */
+        Builder validateVin() {
+            return add(new StatelessStep() {
+                @Override
+                public String apply(int trackerId, int format, String value, long nowMillis) {
+                    if (VinValidator.validateVin(value)) {
+                        return value;
+                    }
+                    List<String> repairs = VinValidator.repair(value);
+                    return repairs.size() == 1 ? repairs.get(0) : null;
+                }
+            }, true);
+        }
+
+        /**
+         * Holds reads back until enough of them agree; see {@link ConsensusFilter}.
+         */
+        Builder consensus(final ConsensusFilter filter) {
+            return add(new Step() {
+                @Override
+                public String apply(int trackerId, int format, String value, long nowMillis) {
+                    return filter.accept(trackerId, format, value, nowMillis);
+                }
+
+                @Override
+                public void trackerDone(int trackerId) {
+                    filter.trackerDone(trackerId);
+                }
+            }, true);
+        }
+
+        /**
+         * Only passes on values of a length between min and max, inclusive.
+         */
+        Builder length(final int min, final int max) {
+            return add(new StatelessStep() {
+                @Override
+                public String apply(int trackerId, int format, String value, long nowMillis) {
+                    int length = value.length();
+                    return (length >= min) && (length <= max) ? value : null;
+                }
+            });
+        }
+
+        /**
+         * Only passes on values that the regular expression matches in full.  The expression is
+         * compiled once, and its matcher reused.
+         */
+        Builder regex(String regex) {
+            final Matcher matcher = Pattern.compile(regex).matcher("");
+            return add(new StatelessStep() {
+                @Override
+                public String apply(int trackerId, int format, String value, long nowMillis) {
+                    return matcher.reset(value).matches() ? value : null;
+                }
+            });
+        }
+
+        /**
+         * Only passes on values that start with the prefix, optionally with the prefix cut off.
+         */
+        Builder prefix(final String prefix, final boolean strip) {
+            return add(new StatelessStep() {
+                @Override
+                public String apply(int trackerId, int format, String value, long nowMillis) {
+                    if (!value.startsWith(prefix)) {
+                        return null;
+                    }
+                    return strip ? value.substring(prefix.length()) : value;
+                }
+            });
+        }
+
+        ResultChain build() {
+            return new ResultChain(mSteps, mUnreadSteps);
+        }
+    }
+
+    /**
+     * A step that keeps no state per tracker.
+     */
+    private abstract static class StatelessStep implements Step {
+        @Override
+        public void trackerDone(int trackerId) {
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.dealrinc.gmvScanner;
+
+import android.content.Intent;
+import android.graphics.Point;
+import android.graphics.Rect;
+
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.barcode.Barcode;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * An accepted barcode along with where it was found: the tracker that followed it and the frame
+ * it was read from.  Geometry is in the pixel coordinates of the frame that the detector saw,
+ * which is cropped to the viewfinder unless full frame detection is on.  The frame also carries
+ * where that crop starts in the upright preview and the size of the whole upright preview, so
+ * that geometry can be mapped onto the preview by adding the crop's left and top.
+ * <p/>
+ * Results are sent to JavaScript as the array that older versions sent, with the phase breakdown
+ * and the details added at the end, or several at once in a compact binary form.  Both are
+ * written field by field here; main.js decodes them into the same objects.
+ */
+final class ScanResult {
+    // Leads the binary form, followed by its version.
+    private static final byte[] MAGIC = {'G', 'M', 'V'};
+    private static final int BINARY_VERSION = 2;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Barcode mBarcode;
+    private final int mTrackerId;
+    private final int mFrameId;
+    private final long mFrameTimestampMillis;
+    private final int mFrameWidth;
+    private final int mFrameHeight;
+    private final int mFrameRotation;
+    private final int mCropLeft;
+    private final int mCropTop;
+    private final int mPreviewWidth;
+    private final int mPreviewHeight;
+
+    /**
+     * @param frame         the metadata of the frame the barcode was read from, or null if unknown
+     * @param crop          the part of the upright preview that the detector saw, or null if
+     *                      unknown
+     * @param previewWidth  the width of the whole upright preview, or 0 if unknown
+     * @param previewHeight the height of the whole upright preview, or 0 if unknown
+     */
+    ScanResult(Barcode barcode, int trackerId, Frame.Metadata frame, Rect crop, int previewWidth,
+               int previewHeight) {
+        this(barcode, trackerId,
+                frame != null ? frame.getId() : 0,
+                frame != null ? frame.getTimestampMillis() : 0,
+                frame != null ? frame.getWidth() : 0,
+                frame != null ? frame.getHeight() : 0,
+                frame != null ? frame.getRotation() : 0,
+                crop != null ? crop.left : 0,
+                crop != null ? crop.top : 0,
+                previewWidth, previewHeight);
+    }
+
+    private ScanResult(Barcode barcode, int trackerId, int frameId, long frameTimestampMillis,
+                       int frameWidth, int frameHeight, int frameRotation, int cropLeft,
+                       int cropTop, int previewWidth, int previewHeight) {
+        mBarcode = barcode;
+        mTrackerId = trackerId;
+        mFrameId = frameId;
+        mFrameTimestampMillis = frameTimestampMillis;
+        mFrameWidth = frameWidth;
+        mFrameHeight = frameHeight;
+        mFrameRotation = frameRotation;
+        mCropLeft = cropLeft;
+        mCropTop = cropTop;
+        mPreviewWidth = previewWidth;
+        mPreviewHeight = previewHeight;
+    }
+
+    /**
+     * Reads back a result that was put in an activity result with {@link #writeTo(Intent)}.
+     */
+    static ScanResult fromIntent(Intent data) {
+        Barcode barcode = data.getParcelableExtra(BarcodeCaptureActivity.BarcodeObject);
+        return new ScanResult(barcode, data.getIntExtra("TrackerId", 0),
+                data.getIntExtra("FrameId", 0), data.getLongExtra("FrameTimestamp", 0),
+                data.getIntExtra("FrameWidth", 0), data.getIntExtra("FrameHeight", 0),
+                data.getIntExtra("FrameRotation", 0), data.getIntExtra("FrameCropLeft", 0),
+                data.getIntExtra("FrameCropTop", 0), data.getIntExtra("PreviewWidth", 0),
+                data.getIntExtra("PreviewHeight", 0));
+    }
+
+    /**
+     * Puts the result in an activity result.
+     */
+    void writeTo(Intent data) {
+        data.putExtra(BarcodeCaptureActivity.BarcodeObject, mBarcode);
+        data.putExtra("TrackerId", mTrackerId);
+        data.putExtra("FrameId", mFrameId);
+        data.putExtra("FrameTimestamp", mFrameTimestampMillis);
+        data.putExtra("FrameWidth", mFrameWidth);
+        data.putExtra("FrameHeight", mFrameHeight);
+        data.putExtra("FrameRotation", mFrameRotation);
+        data.putExtra("FrameCropLeft", mCropLeft);
+        data.putExtra("FrameCropTop", mCropTop);
+        data.putExtra("PreviewWidth", mPreviewWidth);
+        data.putExtra("PreviewHeight", mPreviewHeight);
+    }
+
+    Barcode getBarcode() {
+        return mBarcode;
+    }
+
+    int getTrackerId() {
+        return mTrackerId;
+    }
+
+    /**
+     * Builds the array that the result is sent to JavaScript as.  The first three elements are
+     * the ones older versions sent, followed by the phase breakdown of the scan, or null, and the
+     * details of the barcode.
+     */
+    JSONArray toJson(JSONObject timings) {
+        JSONArray result = new JSONArray();
+        result.put(mBarcode.rawValue);
+        result.put("");
+        result.put("");
+        result.put(timings != null ? timings : JSONObject.NULL);
+        try {
+            result.put(toDetails());
+        } catch (JSONException e) {
+            // Only thrown for non-finite numbers, which there are none of.
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Builds the details of the barcode.  The frame and the geometry are sent as flat arrays: the
+     * frame as id, timestamp, width, height, rotation, crop left, crop top, preview width and
+     * preview height, the bounding box as left, top, right and bottom, and the corner points as x
+     * and y pairs.
+     */
+    private JSONObject toDetails() throws JSONException {
+        JSONObject details = new JSONObject();
+        details.put("rawValue", mBarcode.rawValue);
+        details.put("displayValue", mBarcode.displayValue);
+        details.put("format", mBarcode.format);
+        details.put("valueFormat", mBarcode.valueFormat);
+        details.put("trackerId", mTrackerId);
+
+        JSONArray frame = new JSONArray();
+        frame.put(mFrameId);
+        frame.put(mFrameTimestampMillis);
+        frame.put(mFrameWidth);
+        frame.put(mFrameHeight);
+        frame.put(mFrameRotation);
+        frame.put(mCropLeft);
+        frame.put(mCropTop);
+        frame.put(mPreviewWidth);
+        frame.put(mPreviewHeight);
+        details.put("frame", frame);
+
+        Rect box = mBarcode.getBoundingBox();
+        if (box != null) {
+            JSONArray boundingBox = new JSONArray();
+            boundingBox.put(box.left);
+            boundingBox.put(box.top);
+            boundingBox.put(box.right);
+            boundingBox.put(box.bottom);
+            details.put("boundingBox", boundingBox);
+        }
+
+        Point[] points = mBarcode.cornerPoints;
+        if (points != null) {
+            JSONArray cornerPoints = new JSONArray();
+            for (Point point : points) {
+                cornerPoints.put(point.x);
+                cornerPoints.put(point.y);
+            }
+            details.put("cornerPoints", cornerPoints);
+        }
+        return details;
+    }
+
+    /**
+     * Encodes results in the compact binary form, big-endian:
+     * <pre>
+     * "GMV" u8 version, u16 count, then per result:
+     *   u16 format, u8 valueFormat, i32 trackerId,
+     *   i32 frameId, f64 frameTimestampMillis, u16 frameWidth, u16 frameHeight, u8 frameRotation,
+     *   i16 cropLeft, i16 cropTop, u16 previewWidth, u16 previewHeight,
+     *   i16 left, i16 top, i16 right, i16 bottom,
+     *   u8 cornerCount, cornerCount times i16 x, i16 y,
+     *   u16 length, UTF-8 rawValue, u16 length, UTF-8 displayValue
+     * </pre>
+     * Values longer than 65535 bytes don't fit and are cut short.
+     */
+    static byte[] encode(ScanResult[] results, int count) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * count);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.write(MAGIC);
+            out.writeByte(BINARY_VERSION);
+            out.writeShort(count);
+            for (int i = 0; i < count; ++i) {
+                results[i].writeBinary(out);
+            }
+        } catch (IOException e) {
+            // Writing to memory doesn't fail.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void writeBinary(DataOutputStream out) throws IOException {
+        out.writeShort(mBarcode.format);
+        out.writeByte(mBarcode.valueFormat);
+        out.writeInt(mTrackerId);
+        out.writeInt(mFrameId);
+        out.writeDouble(mFrameTimestampMillis);
+        out.writeShort(mFrameWidth);
+        out.writeShort(mFrameHeight);
+        out.writeByte(mFrameRotation);
+        out.writeShort(mCropLeft);
+        out.writeShort(mCropTop);
+        out.writeShort(mPreviewWidth);
+        out.writeShort(mPreviewHeight);
+
+        Rect box = mBarcode.getBoundingBox();
+        out.writeShort(box != null ? box.left : 0);
+        out.writeShort(box != null ? box.top : 0);
+        out.writeShort(box != null ? box.right : 0);
+        out.writeShort(box != null ? box.bottom : 0);
+
+        Point[] points = mBarcode.cornerPoints;
+        int corners = points != null ? Math.min(points.length, 255) : 0;
+        out.writeByte(corners);
+        for (int i = 0; i < corners; ++i) {
+            out.writeShort(points[i].x);
+            out.writeShort(points[i].y);
+        }
+
+        writeString(out, mBarcode.rawValue);
+        writeString(out, mBarcode.displayValue);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value != null ? value.getBytes(UTF_8) : new byte[0];
+        int length = Math.min(utf8.length, 0xffff);
+        out.writeShort(length);
+        out.write(utf8, 0, length);
+    }
+}
@@ -0,0 +1,200 @@
+package com.dealrinc.gmvScanner;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.google.android.gms.vision.barcode.Barcode;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONObject;
+
+/**
+ * The scanner that is currently open, shared between the plugin and the capture activity or the
+ * embedded scanner, which all run in the same process.  It lets a continuous scan stream each
+ * accepted barcode straight to JavaScript over a kept-alive callback while the camera stays open,
+ * and lets {@code stopScan} close the scanner from the plugin.
+ */
+final class ScanSession {
+    private static ScanSession sCurrent;
+    private static ScanSession sLast;
+
+    private final CallbackContext mCallbackContext;
+    private final boolean mContinuous;
+    private final DuplicateFilter mDuplicateFilter;
+    private final ResultBatcher mResultBatcher;
+
+    // Guarded by this.
+    private Object mHost;
+    private Runnable mCloser;
+    private boolean mStopped;
+
+    private ScanSession(CallbackContext callbackContext, DuplicateFilter duplicateFilter,
+                        ResultBatcher resultBatcher) {
+        mCallbackContext = callbackContext;
+        mContinuous = duplicateFilter != null;
+        mDuplicateFilter = duplicateFilter;
+        mResultBatcher = resultBatcher;
+    }
+
+    /**
+     * Starts a new session that reports to the given callback, replacing the current one.
+     *
+     * @param duplicateFilter the filter for repeated reads of a continuous scan, or null for a
+     *                        scan that returns a single barcode
+     * @param resultBatcher   the batcher that the results of a continuous scan are sent through,
+     *                        or null for a scan that returns a single barcode
+     */
+    static synchronized ScanSession begin(CallbackContext callbackContext,
+                                          DuplicateFilter duplicateFilter,
+                                          ResultBatcher resultBatcher) {
+        sCurrent = new ScanSession(callbackContext, duplicateFilter, resultBatcher);
+        sLast = sCurrent;
+        return sCurrent;
+    }
+
+    /**
+     * Returns the current session, or null if no scan was started.
+     */
+    static synchronized ScanSession getCurrent() {
+        return sCurrent;
+    }
+
+    /**
+     * Returns the current session, or the one before it if it has ended, or null if no scan was
+     * started yet.
+     */
+    static synchronized ScanSession getLast() {
+        return sLast;
+    }
+
+    /**
+     * Ends the given session, if it is still the current one.
+     */
+    static synchronized void end(ScanSession session) {
+        if (sCurrent == session) {
+            sCurrent = null;
+        }
+    }
+
+    boolean isContinuous() {
+        return mContinuous;
+    }
+
+    /**
+     * Returns the filter for repeated reads of a continuous scan, or null for a single scan.
+     */
+    DuplicateFilter getDuplicateFilter() {
+        return mDuplicateFilter;
+    }
+
+    /**
+     * Returns the batcher that the results of a continuous scan are sent through, or null for a
+     * single scan.
+     */
+    ResultBatcher getResultBatcher() {
+        return mResultBatcher;
+    }
+
+    synchronized boolean isStopped() {
+        return mStopped;
+    }
+
+    /**
+     * Returns true while a scanner is showing the camera for this session.
+     */
+    synchronized boolean isOpen() {
+        return mHost != null;
+    }
+
+    /**
+     * Registers the scanner that shows the camera for this session, either the capture activity
+     * or the embedded scanner.  The closer is run on the main thread when the session is stopped,
+     * straight away if it was stopped before the scanner came up.
+     */
+    synchronized void attach(Object host, Runnable closer) {
+        mHost = host;
+        mCloser = closer;
+        if (mStopped) {
+            close();
+        }
+    }
+
+    synchronized void detach(Object host) {
+        if (mHost == host) {
+            mHost = null;
+            mCloser = null;
+        }
+    }
+
+    /**
+     * Stops the session, sending the results that are still batched and closing its scanner.
+     * Returns false if it was already stopped.
+     */
+    synchronized boolean stop() {
+        if (mStopped) {
+            return false;
+        }
+        mStopped = true;
+        flush();
+        if (mHost != null) {
+            close();
+        }
+        return true;
+    }
+
+    /**
+     * Streams an accepted read of a continuous scan to JavaScript, unless it is a duplicate or
+     * the session was stopped.  This may be called from any thread.
+     */
+    void deliver(ScanResult result, ScannerPipeline pipeline) {
+        Barcode barcode = result.getBarcode();
+        if (isStopped() || !mDuplicateFilter.accept(result.getTrackerId(), barcode.format,
+                barcode.rawValue, SystemClock.elapsedRealtime())) {
+            return;
+        }
+        pipeline.markBarcodeDetected();
+        ScanTimeline.get().mark(ScanTimeline.PLUGIN_RESULT);
+        sendResult(result, CDVAndroidScanner.endTimeline(true));
+    }
+
+    /**
+     * Tells the duplicate filter of a continuous scan that a barcode has left the frame.
+     */
+    void trackerDone(int trackerId) {
+        if (mDuplicateFilter != null) {
+            mDuplicateFilter.trackerDone(trackerId);
+        }
+    }
+
+    /**
+     * Sends a result to JavaScript, through the batcher if there is one, and keeps the callback
+     * open for the next one.  This may be called from any thread.
+     *
+     * @param timings the phase breakdown of the scan, or null
+     */
+    void sendResult(ScanResult result, JSONObject timings) {
+        if (mResultBatcher != null) {
+            mResultBatcher.add(result, timings);
+            return;
+        }
+        PluginResult pluginResult = new PluginResult(PluginResult.Status.OK,
+                result.toJson(timings));
+        pluginResult.setKeepCallback(true);
+        mCallbackContext.sendPluginResult(pluginResult);
+    }
+
+    /**
+     * Sends the results that are still batched.  Call this before the final message of a scan.
+     */
+    void flush() {
+        if (mResultBatcher != null) {
+            mResultBatcher.flush();
+        }
+    }
+
+    private void close() {
+        new Handler(Looper.getMainLooper()).post(mCloser);
+    }
+}
@@ -0,0 +1,262 @@
+package com.dealrinc.gmvScanner;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Timeline of the scan in progress, from the JavaScript call to the result being sent back, and
+ * latency histograms aggregated over every completed scan since the app was started.
+ * <p/>
+ * A scan runs through the plugin, the activities and the camera threads, all in the same process,
+ * so there is a single shared timeline.  Timestamps come from {@link System#nanoTime()}, which is
+ * monotonic, so the breakdown isn't skewed by changes to the wall clock.  Each phase keeps the
+ * first time it was marked, and marks made while no scan is running are ignored.
+ * <p/>
+ * The time spent post-processing reads is aggregated as well, to keep track of how much of it
+ * lands on the main thread.
+ */
+public final class ScanTimeline {
+    public static final int EXECUTE = 0;
+    public static final int THREAD_STARTED = 1;
+    public static final int SECONDARY_ACTIVITY_CREATED = 2;
+    public static final int CAPTURE_ACTIVITY_CREATED = 3;
+    public static final int CAMERA_START = 4;
+    public static final int CAMERA_OPENED = 5;
+    public static final int FIRST_FRAME = 6;
+    public static final int FIRST_SHARP_FRAME = 7;
+    public static final int FIRST_DETECTOR_PASS = 8;
+    public static final int FIRST_DETECTION = 9;
+    public static final int BARCODE_DETECTED = 10;
+    public static final int ACTIVITY_RESULT = 11;
+    public static final int PLUGIN_RESULT = 12;
+
+    private static final String[] PHASE_NAMES = {
+            "execute",
+            "threadStarted",
+            "secondaryActivityCreated",
+            "captureActivityCreated",
+            "cameraStart",
+            "cameraOpened",
+            "firstFrame",
+            "firstSharpFrame",
+            "firstDetectorPass",
+            "firstDetection",
+            "barcodeDetected",
+            "activityResult",
+            "pluginResult"
+    };
+
+    private static final ScanTimeline sInstance = new ScanTimeline();
+
+    // Guarded by this.
+    private final long[] mMarks = new long[PHASE_NAMES.length];
+    private boolean mActive;
+    private final LatencyHistogram[] mPhaseHistograms = new LatencyHistogram[PHASE_NAMES.length];
+    private final LatencyHistogram mTotalHistogram = new LatencyHistogram();
+    private long mCompletedScans;
+    private long mFailedScans;
+    private JSONObject mLastBreakdown;
+    private long mPostProcessedReads;
+    private long mPostProcessingNanos;
+    private long mMaxPostProcessingNanos;
+    private long mMainThreadReads;
+    private long mMainThreadNanos;
+
+    private ScanTimeline() {
+        for (int i = 0; i < mPhaseHistograms.length; ++i) {
+            mPhaseHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public static ScanTimeline get() {
+        return sInstance;
+    }
+
+    /**
+     * Starts the timeline of a new scan, marking {@link #EXECUTE} now.  Any scan that was still
+     * running is abandoned without being counted.
+     */
+    public synchronized void begin() {
+        Arrays.fill(mMarks, 0);
+        mMarks[EXECUTE] = System.nanoTime();
+        mActive = true;
+    }
+
+    /**
+     * Marks a phase of the running scan as reached now.
+     */
+    public void mark(int phase) {
+        mark(phase, System.nanoTime());
+    }
+
+    /**
+     * Marks a phase of the running scan as reached at the given {@link System#nanoTime()}
+     * timestamp, unless it was marked already.  A timestamp of 0 means that the phase wasn't
+     * reached and is ignored.
+     */
+    public synchronized void mark(int phase, long nanos) {
+        if (mActive && (nanos != 0) && (mMarks[phase] == 0)) {
+            mMarks[phase] = nanos;
+        }
+    }
+
+    /**
+     * Records the time spent post-processing a single read, and whether that was on the main
+     * thread, where it holds up drawing and touch handling.
+     */
+    public synchronized void recordPostProcessing(long nanos, boolean mainThread) {
+        mPostProcessedReads++;
+        mPostProcessingNanos += nanos;
+        mMaxPostProcessingNanos = Math.max(mMaxPostProcessingNanos, nanos);
+        if (mainThread) {
+            mMainThreadReads++;
+            mMainThreadNanos += nanos;
+        }
+    }
+
+    /**
+     * Ends the running scan and returns its phase breakdown, or null if no scan was running.
+     * Successful scans are added to the histograms, by the time since {@link #EXECUTE} of each
+     * phase; failed and cancelled scans are only counted.
+     * <p/>
+     * The breakdown lists the phases that were reached in the order they happened, each with the
+     * time since {@link #EXECUTE} and the time since the phase before it, in milliseconds:
+     * <pre>
+     * {
+     *   "totalMillis": 1843.2,
+     *   "phases": [
+     *     {"name": "execute", "atMillis": 0, "durationMillis": 0},
+     *     {"name": "threadStarted", "atMillis": 1.1, "durationMillis": 1.1},
+     *     ...
+     *   ]
+     * }
+     * </pre>
+     */
+    public synchronized JSONObject end(boolean succeeded) throws JSONException {
+        if (!mActive) {
+            return null;
+        }
+        mActive = false;
+
+        int[] order = chronologicalOrder();
+        long start = mMarks[EXECUTE];
+        long previous = start;
+        long last = start;
+        JSONArray phases = new JSONArray();
+        for (int phase : order) {
+            long at = mMarks[phase];
+            JSONObject entry = new JSONObject();
+            entry.put("name", PHASE_NAMES[phase]);
+            entry.put("atMillis", toMillis(at - start));
+            entry.put("durationMillis", toMillis(at - previous));
+            phases.put(entry);
+            if (succeeded && (phase != EXECUTE)) {
+                mPhaseHistograms[phase].record(at - start);
+            }
+            previous = at;
+            last = Math.max(last, at);
+        }
+
+        JSONObject breakdown = new JSONObject();
+        breakdown.put("totalMillis", toMillis(last - start));
+        breakdown.put("phases", phases);
+
+        if (succeeded) {
+            mTotalHistogram.record(last - start);
+            mCompletedScans++;
+            mLastBreakdown = breakdown;
+        } else {
+            mFailedScans++;
+        }
+        return breakdown;
+    }
+
+    /**
+     * Returns the aggregated latencies of all completed scans, along with the breakdown of the
+     * most recent one.  Each phase histogram holds the time from {@link #EXECUTE} to that phase,
+     * and the total histogram the time to the last phase reached.  The phase before a given one
+     * varies from scan to scan, so the time since it would mix different intervals in one
+     * histogram.
+     */
+    public synchronized JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("completedScans", mCompletedScans);
+        stats.put("failedScans", mFailedScans);
+
+        JSONArray bounds = new JSONArray();
+        for (long bound : LatencyHistogram.BUCKET_BOUNDS_MILLIS) {
+            bounds.put(bound);
+        }
+        stats.put("bucketBoundsMillis", bounds);
+
+        stats.put("total", toJson(mTotalHistogram));
+        JSONObject phases = new JSONObject();
+        for (int phase = EXECUTE + 1; phase < PHASE_NAMES.length; ++phase) {
+            if (mPhaseHistograms[phase].getCount() > 0) {
+                phases.put(PHASE_NAMES[phase], toJson(mPhaseHistograms[phase]));
+            }
+        }
+        stats.put("phases", phases);
+        stats.put("lastScan", mLastBreakdown != null ? mLastBreakdown : JSONObject.NULL);
+
+        JSONObject postProcessing = new JSONObject();
+        postProcessing.put("reads", mPostProcessedReads);
+        postProcessing.put("meanMicros", mPostProcessedReads == 0
+                ? 0 : mPostProcessingNanos / mPostProcessedReads / 1000.0);
+        postProcessing.put("maxMicros", mMaxPostProcessingNanos / 1000.0);
+        postProcessing.put("mainThreadReads", mMainThreadReads);
+        postProcessing.put("mainThreadMillis", mMainThreadNanos / 1000000.0);
+        stats.put("postProcessing", postProcessing);
+        return stats;
+    }
+
+    /**
+     * Returns the phases that were marked, sorted by the time they were reached.  Phases aren't
+     * always reached in the order of their constants; a barcode can be found during the very
+     * first detector pass, for example.
+     */
+    private int[] chronologicalOrder() {
+        int[] order = new int[mMarks.length];
+        int count = 0;
+        for (int phase = 0; phase < mMarks.length; ++phase) {
+            if (mMarks[phase] == 0) {
+                continue;
+            }
+            int i = count++;
+            while ((i > 0) && (mMarks[order[i - 1]] > mMarks[phase])) {
+                order[i] = order[i - 1];
+                i--;
+            }
+            order[i] = phase;
+        }
+        return Arrays.copyOf(order, count);
+    }
+
+    private static JSONObject toJson(LatencyHistogram histogram) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("count", histogram.getCount());
+        json.put("minMillis", toMillis(histogram.getMinNanos()));
+        json.put("meanMillis", toMillis(histogram.getMeanNanos()));
+        json.put("maxMillis", toMillis(histogram.getMaxNanos()));
+        json.put("p50Millis", toMillis(histogram.getPercentileNanos(50)));
+        json.put("p90Millis", toMillis(histogram.getPercentileNanos(90)));
+        json.put("p99Millis", toMillis(histogram.getPercentileNanos(99)));
+
+        JSONArray buckets = new JSONArray();
+        for (int i = 0; i <= LatencyHistogram.BUCKET_BOUNDS_MILLIS.length; ++i) {
+            buckets.put(histogram.getCountInBucket(i));
+        }
+        json.put("buckets", buckets);
+        return json;
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds, rounded to a hundredth.
+     */
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 10000.0) / 100.0;
+    }
+}
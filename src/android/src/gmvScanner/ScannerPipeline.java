@@ -0,0 +1,385 @@
+package com.dealrinc.gmvScanner;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.hardware.Camera;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.dealrinc.gmvScanner.ui.camera.CameraSource;
+import com.dealrinc.gmvScanner.ui.camera.FrameDropPolicy;
+import com.dealrinc.gmvScanner.ui.camera.FrameRecorder;
+import com.dealrinc.gmvScanner.ui.camera.GraphicOverlay;
+import com.dealrinc.gmvScanner.ui.camera.ParallelDetector;
+import com.dealrinc.gmvScanner.ui.camera.PipelineStats;
+import com.google.android.gms.common.images.Size;
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.MultiProcessor;
+import com.google.android.gms.vision.barcode.Barcode;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The barcode detection pipeline of a scan: the detectors, the trackers that report barcodes to a
+ * listener, and the camera source that feeds them.  The pipeline is built from the scan settings
+ * that the plugin passes as intent extras, so that the capture activity and the embedded scanner
+ * set up scans the same way.
+ * <p/>
+ * The camera source is started and released through the {@link
+ * com.dealrinc.gmvScanner.ui.camera.CameraSourcePreview} that shows it.
+ */
+final class ScannerPipeline {
+    private static final String TAG = "ScannerPipeline";
+
+    private final Context mContext;
+    private final int mDetectionTypes;
+    private final CameraSource mCameraSource;
+    private final ResultChain mResultChain;
+    private FrameRecorder mFrameRecorder;
+    // The frame whose detections the trackers are being told about.
+    private volatile Frame.Metadata mFrame;
+
+    /**
+     * Builds the pipeline.  Note that this uses a higher resolution in comparison to other
+     * detection examples to enable the barcode detector to detect small barcodes at long
+     * distances.
+     * <p/>
+     * Suppressing InlinedApi since there is a check that the minimum version is met before using
+     * the constant.
+     *
+     * @param settings the scan settings, as put in the intent extras by the plugin
+     * @param overlay  the overlay that the trackers draw on
+     * @param listener receives every read of a tracked barcode
+     */
+    @SuppressLint("InlinedApi")
+    ScannerPipeline(Context context, Bundle settings, GraphicOverlay<BarcodeGraphic> overlay,
+                    BarcodeGraphicTracker.BarcodeUpdateListener listener, boolean autoFocus,
+                    boolean useFlash) {
+        mContext = context.getApplicationContext();
+        if (settings == null) {
+            settings = new Bundle();
+        }
+        mDetectionTypes = settings.getInt("DetectionTypes", 1234);
+        int detectionType = DetectorPool.formatsFor(mDetectionTypes);
+        mResultChain = createResultChain(mDetectionTypes, settings);
+
+        // A barcode detector is created to track barcodes.  An associated multi-processor instance
+        // is set to receive the barcode detection results, track the barcodes, and maintain
+        // graphics for each barcode on screen.  The factory is used by the multi-processor to
+        // create a separate tracker instance for each barcode.
+        //
+        // When more than one detector worker is requested, consecutive frames are detected in
+        // parallel, each worker with a detector of its own.  The results are still handed to the
+        // multi-processor in frame order.
+        //
+        // The detectors are borrowed from a process-wide pool, so a repeat scan, or one that was
+        // prepared ahead of time, gets detectors that are already warm.  Releasing the camera
+        // source hands them back.
+        DetectorPool pool = DetectorPool.get(mContext);
+        int workers = Math.max(1, Math.min(settings.getInt("DetectorWorkers", 1),
+                Runtime.getRuntime().availableProcessors()));
+        Detector<Barcode> barcodeDetector;
+        if (workers > 1) {
+            List<Detector<Barcode>> detectors = new ArrayList<>();
+            for (int i = 0; i < workers; ++i) {
+                detectors.add(pool.borrow(detectionType));
+            }
+            barcodeDetector = new ParallelDetector<>(detectors);
+        } else {
+            barcodeDetector = pool.borrow(detectionType);
+        }
+        BarcodeTrackerFactory barcodeFactory = new BarcodeTrackerFactory(overlay, listener);
+        barcodeDetector.setProcessor(new FrameMetadataProcessor(
+                new MultiProcessor.Builder<>(barcodeFactory).build()));
+
+        if (!barcodeDetector.isOperational()) {
+            // Note: The first time that an app using the barcode or face API is installed on a
+            // device, GMS will download a native libraries to the device in order to do detection.
+            // Usually this completes before the app is run for the first time.  But if that
+            // download has not yet completed, then the above call will not detect any barcodes
+            // and/or faces.
+            //
+            // isOperational() can be used to check if the required native libraries are currently
+            // available.  The detectors will automatically become operational once the library
+            // downloads complete on device.
+            Log.w(TAG, "Detector dependencies are not yet available.");
+
+            // Check for low storage.  If there is low storage, the native library will not be
+            // downloaded, so detection will not become operational.
+            IntentFilter lowstorageFilter = new IntentFilter(Intent.ACTION_DEVICE_STORAGE_LOW);
+            boolean hasLowStorage = mContext.registerReceiver(null, lowstorageFilter) != null;
+
+            if (hasLowStorage) {
+                int message = mContext.getResources().getIdentifier("low_storage_error", "string",
+                        mContext.getPackageName());
+                Toast.makeText(mContext, message, Toast.LENGTH_LONG).show();
+                Log.w(TAG, mContext.getString(message));
+            }
+        }
+
+        int cameraApi = settings.getInt("CameraApi", CameraSource.CAMERA_API_1);
+        CameraSource.Builder builder = new CameraSource.Builder(mContext, barcodeDetector)
+                .setFacing(CameraSource.CAMERA_FACING_BACK)
+                .setCameraApi(cameraApi == CameraSource.CAMERA_API_2
+                        ? CameraSource.CAMERA_API_2 : CameraSource.CAMERA_API_1)
+                .setRequestedPreviewSize(1600, 1024)
+                .setRequestedFps(15.0f)
+                .setCropToViewFinder(!settings.getBoolean("FullFrameDetection", false))
+                .setFrameDropPolicy(createFrameDropPolicy(settings.getString("FrameDropPolicy"),
+                        settings.getInt("FrameDropPolicySize", 1)));
+
+        // Skip frames that are blurred from moving the phone toward the barcode.
+        float sharpnessThreshold = settings.getFloat("SharpnessThreshold", 0);
+        if (sharpnessThreshold > 0) {
+            float maxSkipRatio = settings.getFloat("SharpnessMaxSkipRatio", .75f);
+            builder = builder.setSharpnessGate(Math.min(sharpnessThreshold, 1),
+                    Math.max(0, Math.min(maxSkipRatio, .95f)));
+        }
+
+        // Skip frames while the phone is pointing at an unchanging scene.
+        int staticSceneThreshold = settings.getInt("StaticSceneThreshold", 0);
+        if (staticSceneThreshold > 0) {
+            builder = builder.setStaticSceneGate(Math.min(staticSceneThreshold, 255),
+                    Math.max(1, settings.getInt("StaticSceneRefreshInterval", 1000)));
+        }
+
+        // Keep the lens on the label in the viewfinder rather than on the background, and sweep
+        // focus over it again when nothing has been found for a while.
+        if (settings.getBoolean("ViewFinderFocus", true)) {
+            int refocusTimeout = Math.max(0, settings.getInt("RefocusTimeout", 2000));
+            builder = builder.setViewFinderFocus(autoFocus ? refocusTimeout : 0);
+        }
+
+        // Zoom in on small or distant barcodes that were found but can't be read yet.
+        if (settings.getBoolean("AutoZoom", false)) {
+            float targetFill = settings.getFloat("AutoZoomTargetFill", .4f);
+            builder = builder.setAutoZoom(Math.max(.05f, Math.min(targetFill, 1)),
+                    Math.max(1, settings.getInt("AutoZoomTimeout", 3000)));
+        }
+
+        // Switch the torch on in dim places, unless it was asked to be on all along.
+        if (settings.getBoolean("AutoTorch", false) && !useFlash) {
+            int darkLuma = Math.max(1, Math.min(settings.getInt("AutoTorchDarkLuma", 40), 254));
+            int brightLuma = Math.max(darkLuma + 1,
+                    Math.min(settings.getInt("AutoTorchBrightLuma", 170), 255));
+            builder = builder.setAutoTorch(darkLuma, brightLuma);
+        }
+
+        // make sure that auto focus is an available option
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            builder = builder.setFocusMode(
+                    autoFocus ? Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE : null);
+        }
+
+        mCameraSource = builder
+                .setFlashMode(useFlash ? Camera.Parameters.FLASH_MODE_TORCH : null)
+                .build();
+
+        // Record the session for replaying it through the pipeline offline.
+        String recordFrames = settings.getString("RecordFrames");
+        if ((recordFrames != null) && !recordFrames.isEmpty()) {
+            startFrameRecorder(recordFrames);
+        }
+    }
+
+    CameraSource getCameraSource() {
+        return mCameraSource;
+    }
+
+    /**
+     * Runs a read through the post-processing chain, and returns the result to return to the
+     * caller, with the value to return put in the barcode, or null if the read was rejected.
+     * This is called on the detection thread for every read of a tracked barcode.
+     */
+    ScanResult accept(int trackerId, Barcode barcode) {
+        long start = System.nanoTime();
+        String val = mResultChain.apply(trackerId, barcode.format, barcode.rawValue,
+                SystemClock.elapsedRealtime());
+        ScanTimeline.get().recordPostProcessing(System.nanoTime() - start,
+                Looper.myLooper() == Looper.getMainLooper());
+        if (val == null) {
+            if (mResultChain.getRejection() == ResultChain.REJECTED_UNREAD) {
+                // Found but not read, so far: closing in on it may help.  Reads that the caller's
+                // filters turned down are final, however close the camera gets.
+                mCameraSource.reportUnreadBarcode(barcode.getBoundingBox(), mFrame);
+            }
+            return null;
+        }
+        mCameraSource.reportResult();
+        barcode.rawValue = val;
+
+        // Geometry is relative to the part of the frame the detector saw; say where that is.
+        Frame.Metadata frame = mFrame;
+        Size previewSize = mCameraSource.getPreviewSize();
+        int previewWidth = 0;
+        int previewHeight = 0;
+        if (previewSize != null) {
+            boolean sideways = (frame != null) && ((frame.getRotation() == Frame.ROTATION_90)
+                    || (frame.getRotation() == Frame.ROTATION_270));
+            previewWidth = sideways ? previewSize.getHeight() : previewSize.getWidth();
+            previewHeight = sideways ? previewSize.getWidth() : previewSize.getHeight();
+        }
+        return new ScanResult(barcode, trackerId, frame, mCameraSource.getDetectionRegion(),
+                previewWidth, previewHeight);
+    }
+
+    /**
+     * Forgets the reads of a tracker once its barcode has left the frame.
+     */
+    void trackerDone(int trackerId) {
+        mResultChain.trackerDone(trackerId);
+    }
+
+    /**
+     * Completes the scan timeline with the camera phases recorded by the pipeline, and marks the
+     * barcode that is being returned as detected.
+     */
+    void markBarcodeDetected() {
+        ScanTimeline timeline = ScanTimeline.get();
+        PipelineStats stats = mCameraSource.getStats();
+        timeline.mark(ScanTimeline.CAMERA_START, stats.getCameraStartNanos());
+        timeline.mark(ScanTimeline.CAMERA_OPENED, stats.getCameraOpenedNanos());
+        timeline.mark(ScanTimeline.FIRST_FRAME, stats.getFirstFrameNanos());
+        timeline.mark(ScanTimeline.FIRST_SHARP_FRAME, stats.getFirstSharpFrameNanos());
+        timeline.mark(ScanTimeline.FIRST_DETECTOR_PASS, stats.getFirstDetectionNanos());
+        timeline.mark(ScanTimeline.BARCODE_DETECTED);
+    }
+
+    /**
+     * Finishes the frame recording, if there is one.  Call this once the camera source was
+     * released.
+     */
+    void finishRecording() {
+        if (mFrameRecorder != null) {
+            try {
+                mFrameRecorder.close();
+                Log.i(TAG, "Recorded " + mFrameRecorder.getRecordedFrames() + " frames, skipped "
+                        + mFrameRecorder.getSkippedFrames());
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to finish frame recording.", e);
+            }
+            mFrameRecorder = null;
+        }
+    }
+
+    /**
+     * Starts recording the camera frames to the given file.  Relative names are resolved against
+     * the app's external files directory, so that recordings can be pulled off the device.
+     */
+    private void startFrameRecorder(String name) {
+        File file = new File(name);
+        if (!file.isAbsolute()) {
+            file = new File(mContext.getExternalFilesDir(null), name);
+        }
+        try {
+            mFrameRecorder = new FrameRecorder(file);
+            mCameraSource.setFrameRecorder(mFrameRecorder);
+            Log.i(TAG, "Recording frames to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to record frames to " + file, e);
+        }
+    }
+
+    /**
+     * Builds the post-processing chain of a scan.  Reads of a tracker are held back until enough
+     * of them agree on the value.  A VIN scan only accepts reads that make a valid VIN; the reads
+     * are cleaned up before they are compared, so that the consensus can fix a misread character
+     * the check digit would have rejected.  The filters from the settings run last.
+     */
+    private static ResultChain createResultChain(int detectionTypes, Bundle settings) {
+        ResultChain.Builder builder = new ResultChain.Builder();
+        ConsensusFilter consensus = new ConsensusFilter(
+                "majority".equals(settings.getString("ConsensusMode"))
+                        ? ConsensusFilter.MODE_MAJORITY : ConsensusFilter.MODE_AGREE,
+                Math.max(1, settings.getInt("ConsensusWindow", 1000)),
+                settings.getIntArray("ConsensusFormats"), settings.getIntArray("ConsensusVotes"));
+        if (detectionTypes == 0) {
+            builder.normalizeVin().consensus(consensus).validateVin();
+        } else {
+            builder.consensus(consensus);
+        }
+
+        String filters = settings.getString("Filters");
+        if ((filters == null) || filters.isEmpty()) {
+            return builder.build();
+        }
+        try {
+            JSONArray array = new JSONArray(filters);
+            for (int i = 0; i < array.length(); ++i) {
+                JSONObject filter = array.getJSONObject(i);
+                String type = filter.optString("type");
+                if ("vin".equals(type)) {
+                    builder.normalizeVin().validateVin();
+                } else if ("length".equals(type)) {
+                    builder.length(filter.optInt("min", 0),
+                            filter.optInt("max", Integer.MAX_VALUE));
+                } else if ("regex".equals(type)) {
+                    builder.regex(filter.getString("pattern"));
+                } else if ("prefix".equals(type)) {
+                    builder.prefix(filter.getString("prefix"), filter.optBoolean("strip", false));
+                } else {
+                    Log.w(TAG, "Ignoring unknown filter: " + type);
+                }
+            }
+        } catch (JSONException | PatternSyntaxException e) {
+            Log.e(TAG, "Ignoring invalid filters.", e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Notes the metadata of each frame before handing its detections on to the trackers, which
+     * are called back from within {@link #receiveDetections}, so that a result can tell which
+     * frame it was read from.
+     */
+    private final class FrameMetadataProcessor implements Detector.Processor<Barcode> {
+        private final Detector.Processor<Barcode> mDelegate;
+
+        FrameMetadataProcessor(Detector.Processor<Barcode> delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public void receiveDetections(Detector.Detections<Barcode> detections) {
+            mFrame = detections.getFrameMetadata();
+            if (detections.getDetectedItems().size() > 0) {
+                mCameraSource.markDetected();
+            }
+            mDelegate.receiveDetections(detections);
+        }
+
+        @Override
+        public void release() {
+            mDelegate.release();
+        }
+    }
+
+    /**
+     * Creates the policy for which preview frames to queue for detection from the intent
+     * settings.  Unknown or missing settings fall back to only detecting the latest frame.
+     */
+    private static FrameDropPolicy createFrameDropPolicy(String type, int size) {
+        size = Math.max(1, size);
+        if ("queue".equals(type)) {
+            return FrameDropPolicy.boundedQueue(size);
+        } else if ("everyNth".equals(type)) {
+            return FrameDropPolicy.everyNth(size);
+        }
+        return FrameDropPolicy.latestOnly();
+    }
+}
@@ -25,7 +25,6 @@ import android.widget.CompoundButton;
 import android.widget.TextView;
 
 import com.google.android.gms.common.api.CommonStatusCodes;
-import com.google.android.gms.vision.barcode.Barcode;
 
 /**
  * Main activity demonstrating how to pass extra parameters to an activity that
@@ -45,6 +44,7 @@ public class SecondaryActivity extends Activity implements View.OnClickListener
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        ScanTimeline.get().mark(ScanTimeline.SECONDARY_ACTIVITY_CREATED);
         super.onCreate(savedInstanceState);
         setContentView(getResources().getIdentifier("activity_gmv_barcode_scanner", "layout", getPackageName()));
 
@@ -52,9 +52,8 @@ public class SecondaryActivity extends Activity implements View.OnClickListener
 
         Intent intent = new Intent(this, BarcodeCaptureActivity.class);
 
-        intent.putExtra("DetectionTypes", getIntent().getIntExtra("DetectionTypes", 1234));
-        intent.putExtra("ViewFinderWidth", getIntent().getDoubleExtra("DetectionTypes", .5));
-        intent.putExtra("ViewFinderHeight", getIntent().getDoubleExtra("DetectionTypes", .7));
+        // Forward all of the scan settings on to the capture activity.
+        intent.putExtras(getIntent());
 
         startActivityForResult(intent, RC_BARCODE_CAPTURE);
 
@@ -76,6 +75,25 @@ public class SecondaryActivity extends Activity implements View.OnClickListener
 
     }
 
+    /**
+     * Turns the result of the capture activity into the result handed back to the plugin: the
+     * capture activity's data if it returned a barcode, or otherwise an intent with an "err"
+     * extra.  The plugin applies the same mapping when it launches the capture activity directly.
+     */
+    static Intent forwardResult(int resultCode, Intent data) {
+        if (resultCode == CommonStatusCodes.SUCCESS) {
+            if (data != null) {
+                return data;
+            }
+            Intent d = new Intent();
+            d.putExtra("err", "USER_CANCELLED");
+            return d;
+        }
+        Intent d = new Intent();
+        d.putExtra("err", "There was an error with the barcode reader.");
+        return d;
+    }
+
     /**
      * Called when an activity you launched exits, giving you the requestCode
      * you started it with, the resultCode it returned, and any additional
@@ -102,20 +120,9 @@ public class SecondaryActivity extends Activity implements View.OnClickListener
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         Log.d(TAG, "Activity exited");
         if (requestCode == RC_BARCODE_CAPTURE) {
-            Intent d = new Intent();
-            if (resultCode == CommonStatusCodes.SUCCESS) {
-                if (data != null) {
-                    Barcode barcode = data.getParcelableExtra(BarcodeCaptureActivity.BarcodeObject);
-                    d.putExtra(BarcodeObject, barcode);
-                    setResult(CommonStatusCodes.SUCCESS, data);
-                } else {
-                    d.putExtra("err", "USER_CANCELLED");
-                    setResult(CommonStatusCodes.ERROR, d);
-                }
-            } else {
-                d.putExtra("err", "There was an error with the barcode reader.");
-                setResult(CommonStatusCodes.ERROR, d);
-            }
+            Intent result = forwardResult(resultCode, data);
+            setResult(result.hasExtra("err") ? CommonStatusCodes.ERROR : CommonStatusCodes.SUCCESS,
+                    result);
             finish();
         }
         else {
@@ -0,0 +1,218 @@
+package com.dealrinc.gmvScanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cleans up, validates and repairs 17 character vehicle identification numbers.  The check digit
+ * (the 9th character) is validated through lookup tables, without regular expressions or
+ * intermediate strings, since this runs for every barcode read in VIN mode.
+ * <p/>
+ * A VIN that fails the check digit can be repaired by swapping one character for one it is
+ * commonly confused with, such as 8 for B, when that makes the check digit come out right.
+ */
+final class VinValidator {
+    /** The length of a VIN. */
+    static final int LENGTH = 17;
+    // Index of the check digit.
+    private static final int CHECK_DIGIT = 8;
+
+    private static final int[] WEIGHTS = {8, 7, 6, 5, 4, 3, 2, 10, 0, 9, 8, 7, 6, 5, 4, 3, 2};
+    private static final char[] CHECK_DIGITS = "0123456789X".toCharArray();
+
+    // Transliterated value of each ASCII character, or -1 if it can't appear in a VIN.
+    private static final int[] VALUES = new int[128];
+
+    // Characters that are read as one another, and how likely that is, higher being likelier.
+    private static final String[] CONFUSIONS = {
+            "8B", "5S", "0D", "2Z", "6G", "UV", "MN", "PR", "EF", "CG"};
+    private static final int[] CONFUSION_SCORES = {5, 5, 4, 4, 3, 3, 3, 3, 2, 2};
+    // Per character, the characters it is confused with and the scores, in the order above.
+    private static final char[][] CONFUSED_WITH = new char[128][];
+    private static final int[][] CONFUSED_SCORES = new int[128][];
+
+    static {
+        Arrays.fill(VALUES, -1);
+        String characters = "0123456789.ABCDEFGH..JKLMN.P.R..STUVWXYZ";
+        for (int i = 0; i < characters.length(); ++i) {
+            char c = characters.charAt(i);
+            if (c != '.') {
+                VALUES[c] = i % 10;
+            }
+        }
+
+        for (int i = 0; i < CONFUSIONS.length; ++i) {
+            addConfusion(CONFUSIONS[i].charAt(0), CONFUSIONS[i].charAt(1), CONFUSION_SCORES[i]);
+            addConfusion(CONFUSIONS[i].charAt(1), CONFUSIONS[i].charAt(0), CONFUSION_SCORES[i]);
+        }
+    }
+
+    private VinValidator() {
+    }
+
+    private static void addConfusion(char from, char to, int score) {
+        char[] with = CONFUSED_WITH[from];
+        int[] scores = CONFUSED_SCORES[from];
+        int count = with != null ? with.length : 0;
+        char[] newWith = new char[count + 1];
+        int[] newScores = new int[count + 1];
+        if (count > 0) {
+            System.arraycopy(with, 0, newWith, 0, count);
+            System.arraycopy(scores, 0, newScores, 0, count);
+        }
+        newWith[count] = to;
+        newScores[count] = score;
+        CONFUSED_WITH[from] = newWith;
+        CONFUSED_SCORES[from] = newScores;
+    }
+
+    /**
+     * Returns the value that a character counts for in the check digit, or -1 if the character
+     * can't appear in a VIN.
+     */
+    static int transliterate(char c) {
+        return c < 128 ? VALUES[c] : -1;
+    }
+
+    /**
+     * Returns the check digit of a 17 character VIN, or 0 if it has a character that can't appear
+     * in a VIN.
+     */
+    static char getCheckDigit(CharSequence vin) {
+        int sum = weightedSum(vin);
+        return sum >= 0 ? CHECK_DIGITS[sum % 11] : 0;
+    }
+
+    /**
+     * Returns true if the VIN is 17 valid characters long and its check digit is right.
+     */
+    static boolean validateVin(CharSequence vin) {
+        if (vin.length() != LENGTH) {
+            return false;
+        }
+        int sum = weightedSum(vin);
+        return (sum >= 0) && (CHECK_DIGITS[sum % 11] == vin.charAt(CHECK_DIGIT));
+    }
+
+    /**
+     * Cleans up a VIN as read from a barcode: the letters I, O and Q, which VINs don't use but
+     * labels add, e.g. as an import marker, are dropped, and anything beyond 17 characters is
+     * cut off.  Returns the read itself when it needs no clean up.
+     */
+    static String normalize(String read) {
+        int length = read.length();
+        int kept = 0;
+        int firstDropped = -1;
+        for (int i = 0; (i < length) && (kept < LENGTH); ++i) {
+            if (isDropped(read.charAt(i))) {
+                if (firstDropped < 0) {
+                    firstDropped = i;
+                }
+            } else {
+                ++kept;
+            }
+        }
+        if (firstDropped < 0) {
+            return length > LENGTH ? read.substring(0, LENGTH) : read;
+        }
+
+        char[] vin = new char[kept];
+        read.getChars(0, firstDropped, vin, 0);
+        int count = firstDropped;
+        for (int i = firstDropped + 1; (i < length) && (count < kept); ++i) {
+            char c = read.charAt(i);
+            if (!isDropped(c)) {
+                vin[count++] = c;
+            }
+        }
+        return new String(vin);
+    }
+
+    /**
+     * Returns the VINs that the given VIN could have been misread from, most likely first: each
+     * differs in one character, swapped for one that it is commonly confused with, and passes the
+     * check digit.  Returns an empty list if the VIN is valid already, or isn't 17 valid
+     * characters long.
+     */
+    static List<String> repair(String vin) {
+        if (vin.length() != LENGTH) {
+            return Collections.emptyList();
+        }
+        int sum = weightedSum(vin);
+        if ((sum < 0) || (CHECK_DIGITS[sum % 11] == vin.charAt(CHECK_DIGIT))) {
+            return Collections.emptyList();
+        }
+
+        List<String> candidates = null;
+        List<Integer> scores = null;
+        char check = vin.charAt(CHECK_DIGIT);
+        for (int i = 0; i < LENGTH; ++i) {
+            char c = vin.charAt(i);
+            char[] with = CONFUSED_WITH[c];
+            if (with == null) {
+                continue;
+            }
+            for (int j = 0; j < with.length; ++j) {
+                char replacement = with[j];
+                boolean valid;
+                if (i == CHECK_DIGIT) {
+                    valid = CHECK_DIGITS[sum % 11] == replacement;
+                } else {
+                    int repaired = sum + WEIGHTS[i] * (VALUES[replacement] - VALUES[c]);
+                    valid = CHECK_DIGITS[repaired % 11] == check;
+                }
+                if (!valid) {
+                    continue;
+                }
+
+                if (candidates == null) {
+                    candidates = new ArrayList<>();
+                    scores = new ArrayList<>();
+                }
+                char[] repaired = vin.toCharArray();
+                repaired[i] = replacement;
+                // Keep the candidates ordered by score, then by position.
+                int score = CONFUSED_SCORES[c][j];
+                int at = 0;
+                while ((at < scores.size()) && (scores.get(at) >= score)) {
+                    ++at;
+                }
+                candidates.add(at, new String(repaired));
+                scores.add(at, score);
+            }
+        }
+        return candidates != null ? candidates : Collections.<String>emptyList();
+    }
+
+    /**
+     * Returns the weighted sum of the character values of a 17 character VIN, or -1 if it has a
+     * character that can't appear in a VIN.
+     */
+    private static int weightedSum(CharSequence vin) {
+        int sum = 0;
+        for (int i = 0; i < LENGTH; ++i) {
+            int value = transliterate(vin.charAt(i));
+            if (value < 0) {
+                return -1;
+            }
+            sum += value * WEIGHTS[i];
+        }
+        return sum;
+    }
+
+    private static boolean isDropped(char c) {
+        switch (c) {
+            case 'i':
+            case 'o':
+            case 'q':
+            case 'I':
+            case 'O':
+            case 'Q':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Decides when to switch the torch on or off from the brightness of the preview frames, for
+ * scanning in dim places where nobody thinks of the torch button.
+ * <p/>
+ * Each frame is sampled on a sparse grid of the luma plane, which gives its mean luma and the
+ * luma that 90% of the samples stay below.  Auto exposure keeps the mean of a normally lit scene
+ * at around the middle of the range, so the mean only drops far once the camera runs out of
+ * exposure.  The torch goes on when the frames stay that dark, unless a light source in view
+ * brightens the upper percentile, and it only goes off again once the frames are brighter than
+ * the torch alone makes them, so switching it doesn't flip the decision back.  Both have to hold
+ * for a while, and switches are spaced out, to keep the torch from flickering.
+ * <p/>
+ * Instances are not thread safe and must only be used from the frame processing thread, except
+ * for {@link #setManual()}.
+ */
+final class AutoTorch {
+    static final int NO_CHANGE = 0;
+    static final int TURN_ON = 1;
+    static final int TURN_OFF = 2;
+
+    // Frames are sampled on a GRID_SIZE x GRID_SIZE grid.
+    private static final int GRID_SIZE = 32;
+    private static final int SAMPLES = GRID_SIZE * GRID_SIZE;
+
+    // The percentile reported alongside the mean.
+    private static final int PERCENTILE = 90;
+
+    private final int mDarkLuma;
+    private final int mBrightLuma;
+    private final long mHoldNanos;
+    private final long mMinIntervalNanos;
+
+    private final int[] mHistogram = new int[256];
+    private int mLastMean;
+    private int mLastPercentile;
+
+    private boolean mAvailable;
+    private volatile boolean mManual;
+    private boolean mTorchOn;
+    private long mLastSwitchNanos;
+    // When the frames started calling for a switch, or 0 if they don't.
+    private long mPendingSinceNanos;
+
+    /**
+     * @param darkLuma          the mean luma, from 0 to 255, below which the torch goes on
+     * @param brightLuma        the mean luma above which the torch goes off again, well above
+     *                          darkLuma
+     * @param holdMillis        how long the frames have to call for a switch before it happens
+     * @param minIntervalMillis the shortest time between two switches
+     */
+    AutoTorch(int darkLuma, int brightLuma, int holdMillis, int minIntervalMillis) {
+        if ((darkLuma < 1) || (brightLuma <= darkLuma) || (brightLuma > 255)) {
+            throw new IllegalArgumentException(
+                    "Invalid luma thresholds: " + darkLuma + ", " + brightLuma);
+        }
+        mDarkLuma = darkLuma;
+        mBrightLuma = brightLuma;
+        mHoldNanos = Math.max(0, holdMillis) * 1000000L;
+        mMinIntervalNanos = Math.max(0, minIntervalMillis) * 1000000L;
+    }
+
+    /**
+     * Starts over, for example when the camera is opened.
+     *
+     * @param available whether the camera has a torch
+     * @param torchOn   whether the torch is on
+     */
+    void reset(boolean available, boolean torchOn) {
+        mAvailable = available;
+        mManual = false;
+        mTorchOn = torchOn;
+        mLastSwitchNanos = 0;
+        mPendingSinceNanos = 0;
+    }
+
+    /**
+     * Stops switching the torch until the next reset, because the user switched it by hand.
+     * This may be called from any thread.
+     */
+    void setManual() {
+        mManual = true;
+    }
+
+    boolean isManual() {
+        return mManual;
+    }
+
+    /**
+     * Measures the region of the frame's luma plane and returns {@link #TURN_ON} or
+     * {@link #TURN_OFF} if the torch should be switched now, or {@link #NO_CHANGE}.  The caller
+     * is expected to carry out the switch.
+     */
+    int update(ByteBuffer frame, int rowStride, int left, int top, int width, int height,
+               long nowNanos) {
+        measure(frame, rowStride, left, top, width, height);
+        if (!mAvailable || mManual) {
+            return NO_CHANGE;
+        }
+
+        boolean wanted;
+        if (mTorchOn) {
+            wanted = mLastMean <= mBrightLuma;
+        } else {
+            // A lamp or a lit screen in view brightens the upper percentile, and the torch won't
+            // help against that.
+            wanted = (mLastMean < mDarkLuma) && (mLastPercentile < 2 * mDarkLuma);
+        }
+        if (wanted == mTorchOn) {
+            mPendingSinceNanos = 0;
+            return NO_CHANGE;
+        }
+
+        if (mPendingSinceNanos == 0) {
+            mPendingSinceNanos = nowNanos;
+        }
+        if ((nowNanos - mPendingSinceNanos < mHoldNanos) || ((mLastSwitchNanos != 0)
+                && (nowNanos - mLastSwitchNanos < mMinIntervalNanos))) {
+            return NO_CHANGE;
+        }
+        mTorchOn = wanted;
+        mLastSwitchNanos = nowNanos;
+        mPendingSinceNanos = 0;
+        return wanted ? TURN_ON : TURN_OFF;
+    }
+
+    /**
+     * Returns the mean luma of the last frame measured, from 0 to 255.
+     */
+    int getLastMean() {
+        return mLastMean;
+    }
+
+    /**
+     * Returns the luma that 90% of the samples of the last frame measured stay below.
+     */
+    int getLastPercentile() {
+        return mLastPercentile;
+    }
+
+    private void measure(ByteBuffer frame, int rowStride, int left, int top, int width,
+                         int height) {
+        int[] histogram = mHistogram;
+        Arrays.fill(histogram, 0);
+        int sum = 0;
+        for (int gy = 0; gy < GRID_SIZE; ++gy) {
+            // Sample the centre of each grid cell.
+            int row = (top + (height * (2 * gy + 1)) / (2 * GRID_SIZE)) * rowStride;
+            for (int gx = 0; gx < GRID_SIZE; ++gx) {
+                int value = frame.get(row + left + (width * (2 * gx + 1)) / (2 * GRID_SIZE))
+                        & 0xff;
+                histogram[value]++;
+                sum += value;
+            }
+        }
+        mLastMean = sum / SAMPLES;
+
+        int rank = SAMPLES * PERCENTILE / 100;
+        int count = 0;
+        int value = 0;
+        while (value < 255) {
+            count += histogram[value];
+            if (count > rank) {
+                break;
+            }
+            value++;
+        }
+        mLastPercentile = value;
+    }
+}
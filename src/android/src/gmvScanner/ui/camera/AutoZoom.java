@@ -0,0 +1,129 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+/**
+ * Decides how far to zoom in on barcodes that the detector found but that weren't read yet, such
+ * as a small VIN label that keeps failing its check digit or a 1D code still short of consensus.
+ * Each unread barcode asks for the zoom ratio at which it would span the target fraction of the
+ * frame, and the zoom moves toward that ratio in bounded steps, at most one step per interval, so
+ * that the camera isn't reconfigured on every frame.  The zoom goes back out as soon as a barcode
+ * is read, or once no unread barcode has been seen for the timeout.
+ * <p/>
+ * Zoom ratios are relative to the unzoomed field of view.  Methods may be called from any of the
+ * detection threads.
+ */
+final class AutoZoom {
+    // Digital zoom only adds detail while the sensor has more pixels than the preview, which for
+    // the preview sizes used here runs out at around 3x.
+    static final float MAX_RATIO = 3;
+
+    // Returned when the zoom should stay as it is.
+    static final float NO_CHANGE = 0;
+
+    // The largest change of the zoom ratio in a single step.
+    private static final float MAX_STEP = 1.25f;
+
+    // Changes smaller than this are not worth reconfiguring the camera for.
+    private static final float MIN_STEP = 1.05f;
+
+    private final float mTargetFill;
+    private final long mTimeoutNanos;
+    private final long mStepIntervalNanos;
+
+    // Guarded by this.
+    private float mMaxRatio = 1;
+    private float mRatio = 1;
+    private boolean mManual;
+    private long mLastStepNanos;
+    private long mLastUnreadNanos;
+
+    /**
+     * @param targetFill         the fraction of the frame an unread barcode should span, in
+     *                           (0, 1]
+     * @param timeoutMillis      how long to stay zoomed in without seeing an unread barcode
+     * @param stepIntervalMillis the shortest time between two zoom steps
+     */
+    AutoZoom(float targetFill, int timeoutMillis, int stepIntervalMillis) {
+        if ((targetFill <= 0) || (targetFill > 1)) {
+            throw new IllegalArgumentException("Invalid target fill: " + targetFill);
+        }
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Invalid zoom timeout: " + timeoutMillis);
+        }
+        mTargetFill = targetFill;
+        mTimeoutNanos = timeoutMillis * 1000000L;
+        mStepIntervalNanos = Math.max(0, stepIntervalMillis) * 1000000L;
+    }
+
+    /**
+     * Starts over at the unzoomed field of view, for example when the camera is opened.
+     *
+     * @param maxRatio the largest zoom ratio the camera supports
+     */
+    synchronized void reset(float maxRatio) {
+        mMaxRatio = Math.max(1, Math.min(maxRatio, MAX_RATIO));
+        mRatio = 1;
+        mManual = false;
+        mLastStepNanos = 0;
+        mLastUnreadNanos = 0;
+    }
+
+    /**
+     * Stops zooming until the next reset, because the user zoomed by hand.
+     */
+    synchronized void setManual() {
+        mManual = true;
+    }
+
+    /**
+     * Takes a barcode that was found but not read, spanning the given fraction of the frame on
+     * its longer side.  Returns the zoom ratio to move to, or {@link #NO_CHANGE}.
+     */
+    synchronized float onUnreadBarcode(float fill, long nanos) {
+        if (mManual || (fill <= 0)) {
+            return NO_CHANGE;
+        }
+        mLastUnreadNanos = nanos;
+        if ((mLastStepNanos != 0) && (nanos - mLastStepNanos < mStepIntervalNanos)) {
+            return NO_CHANGE;
+        }
+
+        float ratio = mRatio * mTargetFill / fill;
+        ratio = Math.max(mRatio / MAX_STEP, Math.min(ratio, mRatio * MAX_STEP));
+        ratio = Math.max(1, Math.min(ratio, mMaxRatio));
+        if ((ratio < mRatio * MIN_STEP) && (ratio > mRatio / MIN_STEP)) {
+            return NO_CHANGE;
+        }
+        return step(ratio, nanos);
+    }
+
+    /**
+     * Takes a barcode that was read.  Returns the zoom ratio to move to, or {@link #NO_CHANGE}.
+     */
+    synchronized float onResult(long nanos) {
+        if (mManual || (mRatio == 1)) {
+            return NO_CHANGE;
+        }
+        return step(1, nanos);
+    }
+
+    /**
+     * Called after every detector pass.  Returns the zoom ratio to move to, or
+     * {@link #NO_CHANGE}.
+     */
+    synchronized float onDetectorPass(long nanos) {
+        if (mManual || (mRatio == 1) || (nanos - mLastUnreadNanos < mTimeoutNanos)) {
+            return NO_CHANGE;
+        }
+        return step(1, nanos);
+    }
+
+    synchronized float getRatio() {
+        return mRatio;
+    }
+
+    private float step(float ratio, long nanos) {
+        mRatio = ratio;
+        mLastStepNanos = nanos;
+        return ratio;
+    }
+}
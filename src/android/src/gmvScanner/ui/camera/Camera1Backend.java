@@ -0,0 +1,680 @@
+/*
+ * Copyright (C) The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dealrinc.gmvScanner.ui.camera;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.hardware.Camera;
+import android.hardware.Camera.CameraInfo;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import com.google.android.gms.common.images.Size;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+// Note: This requires Google Play Services 8.1 or higher, due to using indirect byte buffers for
+// storing images.
+
+/**
+ * {@link CameraBackend} on the deprecated {@link android.hardware.Camera} API.  Preview frames are
+ * delivered as NV21 into a ring of preallocated byte arrays through
+ * {@link Camera#setPreviewCallbackWithBuffer}, and a slot is handed back to the camera with
+ * {@link Camera#addCallbackBuffer}.
+ */
+@SuppressWarnings("deprecation")
+final class Camera1Backend implements CameraBackend {
+    private static final String TAG = "OpenCameraSource";
+
+    /**
+     * The dummy surface texture must be assigned a chosen name.  Since we never use an OpenGL
+     * context, we can choose any ID we want here.
+     */
+    private static final int DUMMY_TEXTURE_NAME = 100;
+
+    private final Context mContext;
+    private final int mFacing;
+    private final int mRequestedWidth;
+    private final int mRequestedHeight;
+    private final float mRequestedFps;
+
+    // Written under the camera source's camera lock, read by picture callbacks.
+    private volatile Camera mCamera;
+
+    private Size mPreviewSize;
+    private int mRotation;
+
+    // These instances need to be held onto to avoid GC of their underlying resources.  Even though
+    // these aren't used outside of the method that creates them, they still must have hard
+    // references maintained to them.
+    private SurfaceView mDummySurfaceView;
+    private SurfaceTexture mDummySurfaceTexture;
+
+    /**
+     * Ring of preview buffers, preallocated for the current preview size.  The camera hands back
+     * the array it filled, which is matched to its slot by identity.
+     */
+    private FrameBufferRing mPreviewBuffers;
+
+    Camera1Backend(Context context, int facing, int requestedWidth, int requestedHeight,
+                   float requestedFps) {
+        mContext = context;
+        mFacing = facing;
+        mRequestedWidth = requestedWidth;
+        mRequestedHeight = requestedHeight;
+        mRequestedFps = requestedFps;
+    }
+
+    /**
+     * Opens the camera and applies the user settings.
+     *
+     * @throws RuntimeException if the method fails
+     */
+    @Override
+    @SuppressLint("InlinedApi")
+    public void open(int slotCount, final FrameListener listener) {
+        int requestedCameraId = getIdForRequestedCamera(mFacing);
+        if (requestedCameraId == -1) {
+            throw new RuntimeException("Could not find requested camera.");
+        }
+        Camera camera = Camera.open(requestedCameraId);
+
+        SizePair sizePair = selectSizePair(camera, mRequestedWidth, mRequestedHeight);
+        if (sizePair == null) {
+            throw new RuntimeException("Could not find suitable preview size.");
+        }
+        Size pictureSize = sizePair.pictureSize();
+        mPreviewSize = sizePair.previewSize();
+
+        int[] previewFpsRange = selectPreviewFpsRange(camera, mRequestedFps);
+        if (previewFpsRange == null) {
+            throw new RuntimeException("Could not find suitable preview frames per second range.");
+        }
+
+        Camera.Parameters parameters = camera.getParameters();
+
+        if (pictureSize != null) {
+            parameters.setPictureSize(pictureSize.getWidth(), pictureSize.getHeight());
+        }
+
+        parameters.setPreviewSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+        parameters.setPreviewFpsRange(
+                previewFpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                previewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+        parameters.setPreviewFormat(ImageFormat.NV21);
+
+        setRotation(camera, parameters, requestedCameraId);
+
+        camera.setParameters(parameters);
+
+        // The preview buffers are kept across restarts as long as the preview size stays the same.
+        createPreviewBuffers(mPreviewSize, slotCount);
+        camera.setPreviewCallbackWithBuffer(new Camera.PreviewCallback() {
+            @Override
+            public void onPreviewFrame(byte[] data, Camera camera) {
+                int slot = mPreviewBuffers.slotOf(data);
+                if (slot == -1) {
+                    Log.d(TAG,
+                        "Skipping frame.  Could not find ByteBuffer associated with the image " +
+                        "data from the camera.");
+                    return;
+                }
+                listener.onFrame(slot);
+            }
+        });
+        for (int i = 0; i < mPreviewBuffers.getSlotCount(); ++i) {
+            camera.addCallbackBuffer(mPreviewBuffers.getData(i));
+        }
+
+        mCamera = camera;
+    }
+
+    @Override
+    public void start() throws IOException {
+        startPreview(null);
+    }
+
+    @Override
+    public void startPreview(@Nullable SurfaceHolder surfaceHolder) throws IOException {
+        if (surfaceHolder != null) {
+            mCamera.setPreviewDisplay(surfaceHolder);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            // SurfaceTexture was introduced in Honeycomb (11), so if we are running and
+            // old version of Android. fall back to use SurfaceView.
+            mDummySurfaceTexture = new SurfaceTexture(DUMMY_TEXTURE_NAME);
+            mCamera.setPreviewTexture(mDummySurfaceTexture);
+        } else {
+            mDummySurfaceView = new SurfaceView(mContext);
+            mCamera.setPreviewDisplay(mDummySurfaceView.getHolder());
+        }
+        mCamera.startPreview();
+    }
+
+    @Override
+    public void close() {
+        Camera camera = mCamera;
+        if (camera == null) {
+            return;
+        }
+
+        camera.stopPreview();
+        camera.setPreviewCallbackWithBuffer(null);
+        try {
+            // We want to be compatible back to Gingerbread, but SurfaceTexture
+            // wasn't introduced until Honeycomb.  Since the interface cannot use a SurfaceTexture, if the
+            // developer wants to display a preview we must use a SurfaceHolder.  If the developer doesn't
+            // want to display a preview we use a SurfaceTexture if we are running at least Honeycomb.
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                camera.setPreviewTexture(null);
+
+            } else {
+                camera.setPreviewDisplay(null);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to clear camera preview: " + e);
+        }
+        camera.release();
+        mCamera = null;
+        mDummySurfaceTexture = null;
+        mDummySurfaceView = null;
+    }
+
+    @Override
+    public int getFrameWidth() {
+        return mPreviewSize.getWidth();
+    }
+
+    @Override
+    public int getFrameHeight() {
+        return mPreviewSize.getHeight();
+    }
+
+    @Override
+    public int getRotation() {
+        return mRotation;
+    }
+
+    @Override
+    public ByteBuffer getFrameData(int slot) {
+        return mPreviewBuffers.getBuffer(slot);
+    }
+
+    @Override
+    public int getRowStride(int slot) {
+        return mPreviewSize.getWidth();
+    }
+
+    @Override
+    public boolean hasChroma() {
+        return true;
+    }
+
+    @Override
+    public void releaseFrame(int slot) {
+        Camera camera = mCamera;
+        if (camera != null) {
+            camera.addCallbackBuffer(mPreviewBuffers.getData(slot));
+        }
+    }
+
+    @Override
+    public int doZoom(float scale) {
+        int currentZoom = 0;
+        int maxZoom;
+        Camera.Parameters parameters = mCamera.getParameters();
+        if (!parameters.isZoomSupported()) {
+            Log.w(TAG, "Zoom is not supported on this device");
+            return currentZoom;
+        }
+        maxZoom = parameters.getMaxZoom();
+
+        currentZoom = parameters.getZoom() + 1;
+        float newZoom;
+        if (scale > 1) {
+            newZoom = currentZoom + scale * (maxZoom / 10);
+        } else {
+            newZoom = currentZoom * scale;
+        }
+        currentZoom = Math.round(newZoom) - 1;
+        if (currentZoom < 0) {
+            currentZoom = 0;
+        } else if (currentZoom > maxZoom) {
+            currentZoom = maxZoom;
+        }
+        parameters.setZoom(currentZoom);
+        mCamera.setParameters(parameters);
+        return currentZoom;
+    }
+
+    @Override
+    public float getMaxZoomRatio() {
+        Camera.Parameters parameters = mCamera.getParameters();
+        if (!parameters.isZoomSupported()) {
+            return 1;
+        }
+        return parameters.getZoomRatios().get(parameters.getMaxZoom()) / 100f;
+    }
+
+    @Override
+    public float setZoomRatio(float ratio) {
+        Camera.Parameters parameters = mCamera.getParameters();
+        if (!parameters.isZoomSupported()) {
+            return 1;
+        }
+
+        // The ratios are listed in ascending order, in hundredths, one for each zoom index.
+        List<Integer> ratios = parameters.getZoomRatios();
+        int requested = Math.round(ratio * 100);
+        int zoom = 0;
+        for (int i = 1; i < ratios.size(); ++i) {
+            if (Math.abs(ratios.get(i) - requested) < Math.abs(ratios.get(zoom) - requested)) {
+                zoom = i;
+            }
+        }
+        if (zoom != parameters.getZoom()) {
+            parameters.setZoom(zoom);
+            try {
+                mCamera.setParameters(parameters);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to set the zoom: " + e);
+                return ratios.get(mCamera.getParameters().getZoom()) / 100f;
+            }
+        }
+        return ratios.get(zoom) / 100f;
+    }
+
+    @Override
+    public boolean setFocusMode(String mode) {
+        Camera.Parameters parameters = mCamera.getParameters();
+        if (parameters.getSupportedFocusModes().contains(mode)) {
+            parameters.setFocusMode(mode);
+            mCamera.setParameters(parameters);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    @Nullable
+    public String getFocusMode() {
+        return mCamera.getParameters().getFocusMode();
+    }
+
+    @Override
+    public boolean setFlashMode(String mode) {
+        Camera.Parameters parameters = mCamera.getParameters();
+        List<String> supportedFlashModes = parameters.getSupportedFlashModes();
+        if ((supportedFlashModes != null) && supportedFlashModes.contains(mode)) {
+            parameters.setFlashMode(mode);
+            mCamera.setParameters(parameters);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    @Nullable
+    public String getFlashMode() {
+        return mCamera.getParameters().getFlashMode();
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    public boolean setMeteringRegion(float left, float top, float right, float bottom) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return false;
+        }
+
+        Camera.Parameters parameters = mCamera.getParameters();
+        boolean focusAreas = parameters.getMaxNumFocusAreas() > 0;
+        boolean meteringAreas = parameters.getMaxNumMeteringAreas() > 0;
+        if (!focusAreas && !meteringAreas) {
+            return false;
+        }
+
+        // Areas are given in -1000..1000 across the field of view, in the orientation of the
+        // sensor, which is also the orientation of the preview frames.  Null restores the
+        // camera's own choice.
+        List<Camera.Area> areas = null;
+        if ((left > 0) || (top > 0) || (right < 1) || (bottom < 1)) {
+            Rect rect = new Rect(toAreaCoordinate(left), toAreaCoordinate(top),
+                    toAreaCoordinate(right), toAreaCoordinate(bottom));
+            if (rect.isEmpty()) {
+                return false;
+            }
+            areas = Collections.singletonList(new Camera.Area(rect, 1000));
+        }
+        if (focusAreas) {
+            parameters.setFocusAreas(areas);
+        }
+        if (meteringAreas) {
+            parameters.setMeteringAreas(areas);
+        }
+        try {
+            mCamera.setParameters(parameters);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to set the focus and metering areas: " + e);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void autoFocus(@Nullable CameraSource.AutoFocusCallback cb) {
+        CameraAutoFocusCallback autoFocusCallback = null;
+        if (cb != null) {
+            autoFocusCallback = new CameraAutoFocusCallback();
+            autoFocusCallback.mDelegate = cb;
+        }
+        mCamera.autoFocus(autoFocusCallback);
+    }
+
+    @Override
+    public void cancelAutoFocus() {
+        mCamera.cancelAutoFocus();
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public boolean setAutoFocusMoveCallback(@Nullable CameraSource.AutoFocusMoveCallback cb) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return false;
+        }
+
+        CameraAutoFocusMoveCallback autoFocusMoveCallback = null;
+        if (cb != null) {
+            autoFocusMoveCallback = new CameraAutoFocusMoveCallback();
+            autoFocusMoveCallback.mDelegate = cb;
+        }
+        mCamera.setAutoFocusMoveCallback(autoFocusMoveCallback);
+        return true;
+    }
+
+    @Override
+    public void takePicture(CameraSource.ShutterCallback shutter,
+                            CameraSource.PictureCallback jpeg) {
+        PictureStartCallback startCallback = new PictureStartCallback();
+        startCallback.mDelegate = shutter;
+        PictureDoneCallback doneCallback = new PictureDoneCallback();
+        doneCallback.mDelegate = jpeg;
+        mCamera.takePicture(startCallback, null, null, doneCallback);
+    }
+
+    /**
+     * Wraps the camera1 shutter callback so that the deprecated API isn't exposed.
+     */
+    private static class PictureStartCallback implements Camera.ShutterCallback {
+        private CameraSource.ShutterCallback mDelegate;
+
+        @Override
+        public void onShutter() {
+            if (mDelegate != null) {
+                mDelegate.onShutter();
+            }
+        }
+    }
+
+    /**
+     * Wraps the final callback in the camera sequence, so that we can automatically turn the camera
+     * preview back on after the picture has been taken.
+     */
+    private class PictureDoneCallback implements Camera.PictureCallback {
+        private CameraSource.PictureCallback mDelegate;
+
+        @Override
+        public void onPictureTaken(byte[] data, Camera camera) {
+            if (mDelegate != null) {
+                mDelegate.onPictureTaken(data);
+            }
+            Camera current = mCamera;
+            if (current != null) {
+                current.startPreview();
+            }
+        }
+    }
+
+    /**
+     * Wraps the camera1 auto focus callback so that the deprecated API isn't exposed.
+     */
+    private static class CameraAutoFocusCallback implements Camera.AutoFocusCallback {
+        private CameraSource.AutoFocusCallback mDelegate;
+
+        @Override
+        public void onAutoFocus(boolean success, Camera camera) {
+            if (mDelegate != null) {
+                mDelegate.onAutoFocus(success);
+            }
+        }
+    }
+
+    /**
+     * Wraps the camera1 auto focus move callback so that the deprecated API isn't exposed.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class CameraAutoFocusMoveCallback implements Camera.AutoFocusMoveCallback {
+        private CameraSource.AutoFocusMoveCallback mDelegate;
+
+        @Override
+        public void onAutoFocusMoving(boolean start, Camera camera) {
+            if (mDelegate != null) {
+                mDelegate.onAutoFocusMoving(start);
+            }
+        }
+    }
+
+    /**
+     * Gets the id for the camera specified by the direction it is facing.  Returns -1 if no such
+     * camera was found.
+     *
+     * @param facing the desired camera (front-facing or rear-facing)
+     */
+    private static int getIdForRequestedCamera(int facing) {
+        CameraInfo cameraInfo = new CameraInfo();
+        for (int i = 0; i < Camera.getNumberOfCameras(); ++i) {
+            Camera.getCameraInfo(i, cameraInfo);
+            if (cameraInfo.facing == facing) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Selects the most suitable preview and picture size, given the desired width and height.
+     * <p/>
+     * Even though we may only need the preview size, it's necessary to find both the preview
+     * size and the picture size of the camera together, because these need to have the same aspect
+     * ratio.  On some hardware, if you would only set the preview size, you will get a distorted
+     * image.
+     *
+     * @param camera        the camera to select a preview size from
+     * @param desiredWidth  the desired width of the camera preview frames
+     * @param desiredHeight the desired height of the camera preview frames
+     * @return the selected preview and picture size pair
+     */
+    private static SizePair selectSizePair(Camera camera, int desiredWidth, int desiredHeight) {
+        int[] sizePairs = generateValidPreviewSizeList(camera);
+        int index = PreviewSizes.selectSizePair(sizePairs, desiredWidth, desiredHeight);
+        return index == -1 ? null : new SizePair(sizePairs, index);
+    }
+
+    /**
+     * Converts a normalized frame coordinate to the -1000..1000 range of camera areas.
+     */
+    private static int toAreaCoordinate(float value) {
+        return Math.max(-1000, Math.min(1000, Math.round(value * 2000 - 1000)));
+    }
+
+    /**
+     * Stores a preview size and a corresponding same-aspect-ratio picture size.  To avoid distorted
+     * preview images on some devices, the picture size must be set to a size that is the same
+     * aspect ratio as the preview size or the preview may end up being distorted.  If the picture
+     * size is null, then there is no picture size with the same aspect ratio as the preview size.
+     */
+    private static class SizePair {
+        private Size mPreview;
+        private Size mPicture;
+
+        /**
+         * Takes the pair at the given index of pairs packed as in {@link PreviewSizes}.
+         */
+        public SizePair(int[] sizePairs, int index) {
+            int offset = index * 4;
+            mPreview = new Size(sizePairs[offset], sizePairs[offset + 1]);
+            if (sizePairs[offset + 2] > 0) {
+                mPicture = new Size(sizePairs[offset + 2], sizePairs[offset + 3]);
+            }
+        }
+
+        public Size previewSize() {
+            return mPreview;
+        }
+
+        @SuppressWarnings("unused")
+        public Size pictureSize() {
+            return mPicture;
+        }
+    }
+
+    /**
+     * Generates the acceptable preview sizes of the camera, paired up with a picture size of the
+     * same aspect ratio (see {@link PreviewSizes#generateValidSizePairs(int[], int[])}).
+     */
+    private static int[] generateValidPreviewSizeList(Camera camera) {
+        Camera.Parameters parameters = camera.getParameters();
+        int[] previewSizes = toArray(parameters.getSupportedPreviewSizes());
+        int[] sizePairs = PreviewSizes.generateValidSizePairs(previewSizes,
+                toArray(parameters.getSupportedPictureSizes()));
+
+        // If there are no picture sizes with the same aspect ratio as any preview sizes, allow all
+        // of the preview sizes and hope that the camera can handle it.  Probably unlikely, but we
+        // still account for it.
+        if (sizePairs.length == 0) {
+            Log.w(TAG, "No preview sizes have a corresponding same-aspect-ratio picture size");
+            sizePairs = PreviewSizes.withoutPictureSizes(previewSizes);
+        }
+
+        return sizePairs;
+    }
+
+    /**
+     * Packs camera sizes as consecutive width, height values.
+     */
+    private static int[] toArray(List<android.hardware.Camera.Size> sizes) {
+        int[] packed = new int[sizes.size() * 2];
+        int i = 0;
+        for (android.hardware.Camera.Size size : sizes) {
+            packed[i++] = size.width;
+            packed[i++] = size.height;
+        }
+        return packed;
+    }
+
+    /**
+     * Selects the most suitable preview frames per second range, given the desired frames per
+     * second.
+     *
+     * @param camera            the camera to select a frames per second range from
+     * @param desiredPreviewFps the desired frames per second for the camera preview frames
+     * @return the selected preview frames per second range
+     */
+    private static int[] selectPreviewFpsRange(Camera camera, float desiredPreviewFps) {
+        // The camera API uses integers scaled by a factor of 1000 instead of floating-point frame
+        // rates.
+        int desiredPreviewFpsScaled = (int) (desiredPreviewFps * 1000.0f);
+
+        // The method for selecting the best range is to minimize the sum of the differences between
+        // the desired value and the upper and lower bounds of the range.  This may select a range
+        // that the desired value is outside of, but this is often preferred.  For example, if the
+        // desired frame rate is 29.97, the range (30, 30) is probably more desirable than the
+        // range (15, 30).
+        int[] selectedFpsRange = null;
+        int minDiff = Integer.MAX_VALUE;
+        List<int[]> previewFpsRangeList = camera.getParameters().getSupportedPreviewFpsRange();
+        for (int[] range : previewFpsRangeList) {
+            int deltaMin = desiredPreviewFpsScaled - range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
+            int deltaMax = desiredPreviewFpsScaled - range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
+            int diff = Math.abs(deltaMin) + Math.abs(deltaMax);
+            if (diff < minDiff) {
+                selectedFpsRange = range;
+                minDiff = diff;
+            }
+        }
+        return selectedFpsRange;
+    }
+
+    /**
+     * Calculates the correct rotation for the given camera id and sets the rotation in the
+     * parameters.  It also sets the camera's display orientation and rotation.
+     *
+     * @param parameters the camera parameters for which to set the rotation
+     * @param cameraId   the camera id to set rotation based on
+     */
+    private void setRotation(Camera camera, Camera.Parameters parameters, int cameraId) {
+        int degrees = CameraSource.getDisplayRotationDegrees(mContext);
+
+        CameraInfo cameraInfo = new CameraInfo();
+        Camera.getCameraInfo(cameraId, cameraInfo);
+
+        int angle;
+        int displayAngle;
+        if (cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+            angle = (cameraInfo.orientation + degrees) % 360;
+            displayAngle = (360 - angle) % 360; // compensate for it being mirrored
+        } else {  // back-facing
+            angle = (cameraInfo.orientation - degrees + 360) % 360;
+            displayAngle = angle;
+        }
+
+        // This corresponds to the rotation constants in {@link Frame}.
+        mRotation = angle / 90;
+
+        camera.setDisplayOrientation(displayAngle);
+        parameters.setRotation(angle);
+    }
+
+    /**
+     * Creates the ring of buffers for the camera preview callback, unless enough buffers of the
+     * right size already exist.  The size of the buffers is based off of the camera preview size
+     * and the format of the camera image.
+     */
+    private void createPreviewBuffers(Size previewSize, int count) {
+        int bitsPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.NV21);
+        long sizeInBits = previewSize.getHeight() * previewSize.getWidth() * bitsPerPixel;
+        int bufferSize = (int) Math.ceil(sizeInBits / 8.0d) + 1;
+
+        if ((mPreviewBuffers != null) && mPreviewBuffers.matches(count, bufferSize)) {
+            return;
+        }
+
+        //
+        // NOTICE: This code only works when using play services v. 8.1 or higher.
+        //
+
+        mPreviewBuffers = new FrameBufferRing(count, bufferSize);
+    }
+}
@@ -0,0 +1,949 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.hardware.Camera;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.MeteringRectangle;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.Range;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+
+import com.google.android.gms.common.images.Size;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link CameraBackend} on {@link android.hardware.camera2}.  Preview frames are streamed as
+ * {@link ImageFormat#YUV_420_888} into an {@link ImageReader} whose image count matches the slot
+ * count, and each acquired {@link Image} is held in a slot until the frame pipeline releases it.
+ * <p/>
+ * The pipeline reads the luma plane of the image in place.  Barcode detection only looks at the
+ * luma plane, so when the plane is tightly packed it is handed to the detector as is, without
+ * ever copying the frame into a byte array.
+ * <p/>
+ * Focus and flash modes are accepted under their {@link Camera.Parameters} names and mapped onto
+ * the matching capture request controls.  Still capture is served from the next preview frame.
+ * Camera2 calls are asynchronous, so they run on a dedicated camera thread, and the calls that
+ * open the camera wait for their callbacks to keep the synchronous {@link CameraSource} API.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+@SuppressWarnings("deprecation")
+final class Camera2Backend implements CameraBackend {
+    private static final String TAG = "Camera2Backend";
+
+    // How long to wait for the camera to open or for a capture session to be configured.
+    private static final long TIMEOUT_MILLIS = 2500;
+
+    // Number of zoom steps, standing in for the zoom index of the Camera1 API.
+    private static final int MAX_ZOOM_INDEX = 99;
+
+    private static final int JPEG_QUALITY = 90;
+
+    private final Context mContext;
+    private final int mFacing;
+    private final int mRequestedWidth;
+    private final int mRequestedHeight;
+    private final float mRequestedFps;
+    private final CameraManager mCameraManager;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private HandlerThread mCameraThread;
+    private Handler mCameraHandler;
+    private CameraDevice mDevice;
+    private CameraCharacteristics mCharacteristics;
+    private CameraCaptureSession mSession;
+    private CaptureRequest.Builder mRequestBuilder;
+    private ImageReader mImageReader;
+
+    private Size mPreviewSize;
+    private int mRotation;
+    private FrameListener mListener;
+
+    // The image held in each slot, or null while the slot is free.  The luma plane and its row
+    // stride are looked up once, when the image is acquired.
+    private AtomicReferenceArray<Image> mImages;
+    private ByteBuffer[] mFrameData;
+    private int[] mRowStrides;
+
+    private String mFocusMode;
+    private String mFlashMode;
+    private int mZoomIndex;
+
+    // The focus and metering region in normalized frame coordinates, or null for the whole frame.
+    private float[] mMeteringRegion;
+
+    private volatile CameraSource.AutoFocusCallback mAutoFocusCallback;
+    private volatile CameraSource.AutoFocusMoveCallback mAutoFocusMoveCallback;
+    private volatile PendingPicture mPendingPicture;
+    private Integer mLastAfState;
+
+    Camera2Backend(Context context, int facing, int requestedWidth, int requestedHeight,
+                   float requestedFps) {
+        mContext = context;
+        mFacing = facing;
+        mRequestedWidth = requestedWidth;
+        mRequestedHeight = requestedHeight;
+        mRequestedFps = requestedFps;
+        mCameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    }
+
+    @Override
+    public void open(int slotCount, FrameListener listener) throws IOException {
+        try {
+            String cameraId = getIdForRequestedCamera(mFacing);
+            if (cameraId == null) {
+                throw new RuntimeException("Could not find requested camera.");
+            }
+            mCharacteristics = mCameraManager.getCameraCharacteristics(cameraId);
+
+            mPreviewSize = selectPreviewSize(mRequestedWidth, mRequestedHeight);
+            if (mPreviewSize == null) {
+                throw new RuntimeException("Could not find suitable preview size.");
+            }
+
+            Range<Integer> fpsRange = selectPreviewFpsRange(mRequestedFps);
+            if (fpsRange == null) {
+                throw new RuntimeException(
+                        "Could not find suitable preview frames per second range.");
+            }
+
+            setRotation(mFacing);
+
+            mCameraThread = new HandlerThread("Camera2Backend");
+            mCameraThread.start();
+            mCameraHandler = new Handler(mCameraThread.getLooper());
+
+            mListener = listener;
+            mImages = new AtomicReferenceArray<>(slotCount);
+            mFrameData = new ByteBuffer[slotCount];
+            mRowStrides = new int[slotCount];
+            mImageReader = ImageReader.newInstance(mPreviewSize.getWidth(),
+                    mPreviewSize.getHeight(), ImageFormat.YUV_420_888, slotCount);
+            mImageReader.setOnImageAvailableListener(new ImageAvailableListener(), mCameraHandler);
+
+            mDevice = openDevice(cameraId);
+            mRequestBuilder = mDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            mRequestBuilder.addTarget(mImageReader.getSurface());
+            mRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+            mFocusMode = null;
+            mFlashMode = null;
+            mZoomIndex = 0;
+        } catch (CameraAccessException e) {
+            close();
+            throw new IOException("Could not open camera.", e);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void start() throws IOException {
+        startPreview(null);
+    }
+
+    @Override
+    public void startPreview(@Nullable SurfaceHolder surfaceHolder) throws IOException {
+        List<Surface> surfaces = new ArrayList<>(2);
+        surfaces.add(mImageReader.getSurface());
+        if (surfaceHolder != null) {
+            // The display surface has to match one of the camera's output sizes.  The camera
+            // takes care of rotating the output to the display orientation.
+            surfaceHolder.setFixedSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+            surfaces.add(surfaceHolder.getSurface());
+            mRequestBuilder.addTarget(surfaceHolder.getSurface());
+        }
+
+        try {
+            mSession = createSession(surfaces);
+        } catch (CameraAccessException e) {
+            throw new IOException("Could not start camera preview.", e);
+        }
+        updatePreview();
+    }
+
+    @Override
+    public void close() {
+        if (mSession != null) {
+            try {
+                mSession.stopRepeating();
+            } catch (CameraAccessException | IllegalStateException e) {
+                Log.d(TAG, "Failed to stop camera preview: " + e);
+            }
+            mSession.close();
+            mSession = null;
+        }
+        if (mDevice != null) {
+            mDevice.close();
+            mDevice = null;
+        }
+        if (mImages != null) {
+            for (int i = 0; i < mImages.length(); ++i) {
+                releaseFrame(i);
+            }
+        }
+        if (mImageReader != null) {
+            mImageReader.close();
+            mImageReader = null;
+        }
+        if (mCameraThread != null) {
+            mCameraThread.quitSafely();
+            try {
+                mCameraThread.join();
+            } catch (InterruptedException e) {
+                Log.d(TAG, "Camera thread interrupted on close.");
+            }
+            mCameraThread = null;
+            mCameraHandler = null;
+        }
+        mRequestBuilder = null;
+        mMeteringRegion = null;
+        mAutoFocusCallback = null;
+        mPendingPicture = null;
+    }
+
+    @Override
+    public int getFrameWidth() {
+        return mPreviewSize.getWidth();
+    }
+
+    @Override
+    public int getFrameHeight() {
+        return mPreviewSize.getHeight();
+    }
+
+    @Override
+    public int getRotation() {
+        return mRotation;
+    }
+
+    @Override
+    public ByteBuffer getFrameData(int slot) {
+        return mFrameData[slot];
+    }
+
+    @Override
+    public int getRowStride(int slot) {
+        return mRowStrides[slot];
+    }
+
+    @Override
+    public boolean hasChroma() {
+        return false;
+    }
+
+    @Override
+    public void releaseFrame(int slot) {
+        Image image = mImages.getAndSet(slot, null);
+        if (image != null) {
+            mFrameData[slot] = null;
+            image.close();
+        }
+    }
+
+    @Override
+    public int doZoom(float scale) {
+        Float maxDigitalZoom =
+                mCharacteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+        Rect activeArray = mCharacteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        if ((maxDigitalZoom == null) || (maxDigitalZoom <= 1) || (activeArray == null)) {
+            Log.w(TAG, "Zoom is not supported on this device");
+            return 0;
+        }
+
+        // Same stepping as the Camera1 backend, over a fixed number of zoom steps.
+        int currentZoom = mZoomIndex + 1;
+        float newZoom;
+        if (scale > 1) {
+            newZoom = currentZoom + scale * (MAX_ZOOM_INDEX / 10);
+        } else {
+            newZoom = currentZoom * scale;
+        }
+        currentZoom = Math.round(newZoom) - 1;
+        if (currentZoom < 0) {
+            currentZoom = 0;
+        } else if (currentZoom > MAX_ZOOM_INDEX) {
+            currentZoom = MAX_ZOOM_INDEX;
+        }
+        mZoomIndex = currentZoom;
+
+        applyZoomRatio(1 + (maxDigitalZoom - 1) * currentZoom / MAX_ZOOM_INDEX, activeArray);
+        return currentZoom;
+    }
+
+    @Override
+    public float getMaxZoomRatio() {
+        Float maxDigitalZoom =
+                mCharacteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+        return (maxDigitalZoom == null) || (maxDigitalZoom <= 1) ? 1 : maxDigitalZoom;
+    }
+
+    @Override
+    public float setZoomRatio(float ratio) {
+        float maxRatio = getMaxZoomRatio();
+        Rect activeArray = mCharacteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        if ((maxRatio <= 1) || (activeArray == null)) {
+            return 1;
+        }
+        ratio = Math.max(1, Math.min(ratio, maxRatio));
+
+        // Keep the zoom index of pinch zooming in line.
+        mZoomIndex = Math.round((ratio - 1) / (maxRatio - 1) * MAX_ZOOM_INDEX);
+        applyZoomRatio(ratio, activeArray);
+        return ratio;
+    }
+
+    @Override
+    public boolean setFocusMode(String mode) {
+        int afMode = toAfMode(mode);
+        if ((afMode == -1) || !contains(
+                mCharacteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES), afMode)) {
+            return false;
+        }
+        if (Camera.Parameters.FOCUS_MODE_FIXED.equals(mode) && hasFocuser()) {
+            return false;
+        }
+
+        mRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, afMode);
+        if (Camera.Parameters.FOCUS_MODE_INFINITY.equals(mode)) {
+            mRequestBuilder.set(CaptureRequest.LENS_FOCUS_DISTANCE, 0f);
+        }
+        mFocusMode = mode;
+        updatePreview();
+        return true;
+    }
+
+    @Override
+    @Nullable
+    public String getFocusMode() {
+        if (mFocusMode != null) {
+            return mFocusMode;
+        }
+        Integer afMode = mRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE);
+        return afMode == null ? null : fromAfMode(afMode);
+    }
+
+    @Override
+    public boolean setFlashMode(String mode) {
+        // Frames only come from the repeating preview request, so only the modes that affect the
+        // preview are supported.
+        if (Camera.Parameters.FLASH_MODE_OFF.equals(mode)) {
+            mRequestBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_OFF);
+        } else if (Camera.Parameters.FLASH_MODE_TORCH.equals(mode) && hasFlash()) {
+            mRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
+            mRequestBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_TORCH);
+        } else {
+            return false;
+        }
+        mFlashMode = mode;
+        updatePreview();
+        return true;
+    }
+
+    @Override
+    @Nullable
+    public String getFlashMode() {
+        if (!hasFlash()) {
+            return null;
+        }
+        return mFlashMode != null ? mFlashMode : Camera.Parameters.FLASH_MODE_OFF;
+    }
+
+    @Override
+    public boolean setMeteringRegion(float left, float top, float right, float bottom) {
+        if ((getMaxRegions(CameraCharacteristics.CONTROL_MAX_REGIONS_AF) == 0)
+                && (getMaxRegions(CameraCharacteristics.CONTROL_MAX_REGIONS_AE) == 0)) {
+            return false;
+        }
+        if ((left > 0) || (top > 0) || (right < 1) || (bottom < 1)) {
+            mMeteringRegion = new float[] {left, top, right, bottom};
+        } else {
+            mMeteringRegion = null;
+        }
+        applyMeteringRegion();
+        updatePreview();
+        return true;
+    }
+
+    @Override
+    public void autoFocus(@Nullable final CameraSource.AutoFocusCallback cb) {
+        Integer afMode = mRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE);
+        if ((afMode == null) || (afMode == CaptureRequest.CONTROL_AF_MODE_OFF)
+                || (afMode == CaptureRequest.CONTROL_AF_MODE_EDOF)) {
+            // Like the Camera1 API, report success right away if there is nothing to focus.
+            if (cb != null) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        cb.onAutoFocus(true);
+                    }
+                });
+            }
+            return;
+        }
+
+        mAutoFocusCallback = cb;
+        triggerAutoFocus(CaptureRequest.CONTROL_AF_TRIGGER_START);
+    }
+
+    @Override
+    public void cancelAutoFocus() {
+        mAutoFocusCallback = null;
+        triggerAutoFocus(CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
+    }
+
+    @Override
+    public boolean setAutoFocusMoveCallback(@Nullable CameraSource.AutoFocusMoveCallback cb) {
+        mAutoFocusMoveCallback = cb;
+        return true;
+    }
+
+    @Override
+    public void takePicture(CameraSource.ShutterCallback shutter,
+                            CameraSource.PictureCallback jpeg) {
+        mPendingPicture = new PendingPicture(shutter, jpeg);
+    }
+
+    //==============================================================================================
+    // Camera thread
+    //==============================================================================================
+
+    /**
+     * Moves each new image into a free slot and hands the slot to the frame listener.
+     */
+    private class ImageAvailableListener implements ImageReader.OnImageAvailableListener {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Image image;
+            try {
+                image = reader.acquireNextImage();
+            } catch (IllegalStateException e) {
+                Log.d(TAG, "Skipping frame.  All image slots are in use.");
+                return;
+            }
+            if (image == null) {
+                return;
+            }
+
+            PendingPicture picture = mPendingPicture;
+            if (picture != null) {
+                mPendingPicture = null;
+                deliverPicture(picture, image);
+            }
+
+            int slot = -1;
+            for (int i = 0; i < mImages.length(); ++i) {
+                if (mImages.compareAndSet(i, null, image)) {
+                    slot = i;
+                    break;
+                }
+            }
+            if (slot == -1) {
+                Log.d(TAG, "Skipping frame.  Could not find a free slot for the image.");
+                image.close();
+                return;
+            }
+
+            Image.Plane luma = image.getPlanes()[0];
+            mFrameData[slot] = luma.getBuffer();
+            mRowStrides[slot] = luma.getRowStride();
+            mListener.onFrame(slot);
+        }
+    }
+
+    /**
+     * Reports auto focus results and auto focus movement from the preview capture results.
+     */
+    private final CameraCaptureSession.CaptureCallback mCaptureCallback =
+            new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(CameraCaptureSession session, CaptureRequest request,
+                                       TotalCaptureResult result) {
+            Integer afState = result.get(CaptureResult.CONTROL_AF_STATE);
+            if ((afState == null) || afState.equals(mLastAfState)) {
+                return;
+            }
+            mLastAfState = afState;
+
+            final CameraSource.AutoFocusCallback focusCallback = mAutoFocusCallback;
+            if ((focusCallback != null)
+                    && ((afState == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED)
+                    || (afState == CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED))) {
+                mAutoFocusCallback = null;
+                final boolean success = afState == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        focusCallback.onAutoFocus(success);
+                    }
+                });
+            }
+
+            final CameraSource.AutoFocusMoveCallback moveCallback = mAutoFocusMoveCallback;
+            if (moveCallback != null) {
+                final boolean moving = afState == CaptureResult.CONTROL_AF_STATE_PASSIVE_SCAN;
+                if (moving || (afState == CaptureResult.CONTROL_AF_STATE_PASSIVE_FOCUSED)
+                        || (afState == CaptureResult.CONTROL_AF_STATE_PASSIVE_UNFOCUSED)) {
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            moveCallback.onAutoFocusMoving(moving);
+                        }
+                    });
+                }
+            }
+        }
+    };
+
+    /**
+     * Encodes the preview image as a JPEG for a pending picture request.
+     */
+    private void deliverPicture(final PendingPicture picture, Image image) {
+        if (picture.mShutter != null) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    picture.mShutter.onShutter();
+                }
+            });
+        }
+        if (picture.mJpeg == null) {
+            return;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        YuvImage yuvImage = new YuvImage(toNv21(image), ImageFormat.NV21, width, height, null);
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        yuvImage.compressToJpeg(new Rect(0, 0, width, height), JPEG_QUALITY, jpeg);
+        final byte[] data = jpeg.toByteArray();
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                picture.mJpeg.onPictureTaken(data);
+            }
+        });
+    }
+
+    private static class PendingPicture {
+        private final CameraSource.ShutterCallback mShutter;
+        private final CameraSource.PictureCallback mJpeg;
+
+        PendingPicture(CameraSource.ShutterCallback shutter, CameraSource.PictureCallback jpeg) {
+            mShutter = shutter;
+            mJpeg = jpeg;
+        }
+    }
+
+    //==============================================================================================
+    // Private
+    //==============================================================================================
+
+    /**
+     * Opens the camera device and waits for it to be ready.
+     *
+     * @throws RuntimeException if the camera could not be opened in time
+     */
+    @SuppressLint("MissingPermission")
+    private CameraDevice openDevice(String cameraId) throws CameraAccessException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final CameraDevice[] opened = new CameraDevice[1];
+        mCameraManager.openCamera(cameraId, new CameraDevice.StateCallback() {
+            @Override
+            public void onOpened(CameraDevice camera) {
+                synchronized (opened) {
+                    if (done.getCount() == 0) {
+                        // Opened after the wait timed out; nobody is going to use it.
+                        camera.close();
+                        return;
+                    }
+                    opened[0] = camera;
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onDisconnected(CameraDevice camera) {
+                camera.close();
+                done.countDown();
+            }
+
+            @Override
+            public void onError(CameraDevice camera, int error) {
+                Log.e(TAG, "Camera error: " + error);
+                camera.close();
+                done.countDown();
+            }
+        }, mCameraHandler);
+
+        await(done);
+        synchronized (opened) {
+            done.countDown();
+            if (opened[0] == null) {
+                throw new RuntimeException("Could not open camera.");
+            }
+            return opened[0];
+        }
+    }
+
+    /**
+     * Creates a capture session for the given outputs and waits for it to be configured.
+     */
+    private CameraCaptureSession createSession(List<Surface> surfaces)
+            throws CameraAccessException, IOException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final CameraCaptureSession[] configured = new CameraCaptureSession[1];
+        mDevice.createCaptureSession(surfaces, new CameraCaptureSession.StateCallback() {
+            @Override
+            public void onConfigured(CameraCaptureSession session) {
+                configured[0] = session;
+                done.countDown();
+            }
+
+            @Override
+            public void onConfigureFailed(CameraCaptureSession session) {
+                done.countDown();
+            }
+        }, mCameraHandler);
+
+        await(done);
+        if (configured[0] == null) {
+            throw new IOException("Could not configure camera session.");
+        }
+        return configured[0];
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Log.d(TAG, "Interrupted while waiting for the camera.");
+        }
+    }
+
+    /**
+     * Applies the current request settings to the running preview, if any.
+     */
+    private void updatePreview() {
+        if (mSession == null) {
+            return;
+        }
+        try {
+            mSession.setRepeatingRequest(mRequestBuilder.build(), mCaptureCallback,
+                    mCameraHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "Failed to update camera preview: " + e);
+        }
+    }
+
+    /**
+     * Crops the sensor to the centre of the active array for the given zoom ratio.
+     */
+    private void applyZoomRatio(float ratio, Rect activeArray) {
+        int cropWidth = (int) (activeArray.width() / ratio);
+        int cropHeight = (int) (activeArray.height() / ratio);
+        int cropLeft = activeArray.left + (activeArray.width() - cropWidth) / 2;
+        int cropTop = activeArray.top + (activeArray.height() - cropHeight) / 2;
+        mRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION,
+                new Rect(cropLeft, cropTop, cropLeft + cropWidth, cropTop + cropHeight));
+        // The regions are relative to the crop, so they move with the zoom.
+        applyMeteringRegion();
+        updatePreview();
+    }
+
+    /**
+     * Sets the focus and metering regions of the request from the normalized region.  Regions
+     * are given in sensor pixels, and the frames show the centre of the crop region at the aspect
+     * ratio of the frames, so the region is mapped through that.
+     */
+    private void applyMeteringRegion() {
+        MeteringRectangle[] regions = null;
+        float[] region = mMeteringRegion;
+        Rect crop = mRequestBuilder.get(CaptureRequest.SCALER_CROP_REGION);
+        if (crop == null) {
+            crop = mCharacteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        }
+        if ((region != null) && (crop != null)) {
+            float frameAspect = (float) mPreviewSize.getWidth() / mPreviewSize.getHeight();
+            float visibleWidth = crop.width();
+            float visibleHeight = crop.height();
+            if (visibleWidth / visibleHeight > frameAspect) {
+                visibleWidth = visibleHeight * frameAspect;
+            } else {
+                visibleHeight = visibleWidth / frameAspect;
+            }
+            float visibleLeft = crop.left + (crop.width() - visibleWidth) / 2;
+            float visibleTop = crop.top + (crop.height() - visibleHeight) / 2;
+
+            int left = Math.round(visibleLeft + region[0] * visibleWidth);
+            int top = Math.round(visibleTop + region[1] * visibleHeight);
+            int right = Math.round(visibleLeft + region[2] * visibleWidth);
+            int bottom = Math.round(visibleTop + region[3] * visibleHeight);
+            if ((right > left) && (bottom > top)) {
+                regions = new MeteringRectangle[] {new MeteringRectangle(left, top,
+                        right - left, bottom - top, MeteringRectangle.METERING_WEIGHT_MAX)};
+            }
+        }
+
+        // Null restores the camera's own choice.
+        if (getMaxRegions(CameraCharacteristics.CONTROL_MAX_REGIONS_AF) > 0) {
+            mRequestBuilder.set(CaptureRequest.CONTROL_AF_REGIONS, regions);
+        }
+        if (getMaxRegions(CameraCharacteristics.CONTROL_MAX_REGIONS_AE) > 0) {
+            mRequestBuilder.set(CaptureRequest.CONTROL_AE_REGIONS, regions);
+        }
+    }
+
+    /**
+     * Sends a single request with the given auto focus trigger.
+     */
+    private void triggerAutoFocus(int trigger) {
+        if (mSession == null) {
+            return;
+        }
+        try {
+            mRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, trigger);
+            mSession.capture(mRequestBuilder.build(), mCaptureCallback, mCameraHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "Failed to trigger auto focus: " + e);
+        } finally {
+            mRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                    CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
+        }
+    }
+
+    /**
+     * Gets the id for the camera facing the given direction, or null if there is none.
+     */
+    private String getIdForRequestedCamera(int facing) throws CameraAccessException {
+        int lensFacing = facing == CameraSource.CAMERA_FACING_FRONT
+                ? CameraCharacteristics.LENS_FACING_FRONT : CameraCharacteristics.LENS_FACING_BACK;
+        for (String id : mCameraManager.getCameraIdList()) {
+            Integer value = mCameraManager.getCameraCharacteristics(id)
+                    .get(CameraCharacteristics.LENS_FACING);
+            if ((value != null) && (value == lensFacing)) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Selects the YUV output size closest to the desired size, preferring sizes that can also be
+     * displayed, by the same measure as the Camera1 backend.
+     */
+    private Size selectPreviewSize(int desiredWidth, int desiredHeight) {
+        StreamConfigurationMap map =
+                mCharacteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (map == null) {
+            return null;
+        }
+        android.util.Size[] frameSizes = map.getOutputSizes(ImageFormat.YUV_420_888);
+        android.util.Size[] displaySizes = map.getOutputSizes(SurfaceHolder.class);
+        if (frameSizes == null) {
+            return null;
+        }
+
+        List<android.util.Size> candidates = new ArrayList<>();
+        if (displaySizes != null) {
+            List<android.util.Size> displayable = Arrays.asList(displaySizes);
+            for (android.util.Size size : frameSizes) {
+                if (displayable.contains(size)) {
+                    candidates.add(size);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates.addAll(Arrays.asList(frameSizes));
+        }
+
+        android.util.Size selected = null;
+        int minDiff = Integer.MAX_VALUE;
+        for (android.util.Size size : candidates) {
+            int diff = Math.abs(size.getWidth() - desiredWidth) +
+                    Math.abs(size.getHeight() - desiredHeight);
+            if (diff < minDiff) {
+                selected = size;
+                minDiff = diff;
+            }
+        }
+        return selected == null ? null : new Size(selected.getWidth(), selected.getHeight());
+    }
+
+    /**
+     * Selects the auto exposure frame rate range closest to the desired frame rate, by the same
+     * measure as the Camera1 backend.
+     */
+    private Range<Integer> selectPreviewFpsRange(float desiredPreviewFps) {
+        Range<Integer>[] ranges =
+                mCharacteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (ranges == null) {
+            return null;
+        }
+
+        Range<Integer> selected = null;
+        int minDiff = Integer.MAX_VALUE;
+        for (Range<Integer> range : ranges) {
+            // Some devices report their ranges scaled by 1000, like the Camera1 API.
+            int desired = range.getUpper() >= 1000
+                    ? (int) (desiredPreviewFps * 1000.0f) : Math.round(desiredPreviewFps);
+            int diff = Math.abs(desired - range.getLower()) + Math.abs(desired - range.getUpper());
+            if (diff < minDiff) {
+                selected = range;
+                minDiff = diff;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Calculates the rotation of the frames from the sensor orientation and the display rotation.
+     * Unlike with the Camera1 API, the display preview is rotated by the camera itself.
+     */
+    private void setRotation(int facing) {
+        int degrees = CameraSource.getDisplayRotationDegrees(mContext);
+        Integer orientation = mCharacteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        int sensorOrientation = orientation == null ? 0 : orientation;
+
+        int angle;
+        if (facing == CameraSource.CAMERA_FACING_FRONT) {
+            angle = (sensorOrientation + degrees) % 360;
+        } else {
+            angle = (sensorOrientation - degrees + 360) % 360;
+        }
+
+        // This corresponds to the rotation constants in {@link Frame}.
+        mRotation = angle / 90;
+    }
+
+    private int getMaxRegions(CameraCharacteristics.Key<Integer> key) {
+        Integer regions = mCharacteristics.get(key);
+        return regions == null ? 0 : regions;
+    }
+
+    private boolean hasFlash() {
+        Boolean available = mCharacteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+        return (available != null) && available;
+    }
+
+    private boolean hasFocuser() {
+        Float minimumFocusDistance =
+                mCharacteristics.get(CameraCharacteristics.LENS_INFO_MINIMUM_FOCUS_DISTANCE);
+        return (minimumFocusDistance != null) && (minimumFocusDistance > 0);
+    }
+
+    private static boolean contains(int[] values, int value) {
+        if (values == null) {
+            return false;
+        }
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Maps a Camera1 focus mode name onto a Camera2 auto focus mode, or -1 if there is none.
+     */
+    private static int toAfMode(String mode) {
+        if (Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE.equals(mode)) {
+            return CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
+        } else if (Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO.equals(mode)) {
+            return CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO;
+        } else if (Camera.Parameters.FOCUS_MODE_AUTO.equals(mode)) {
+            return CaptureRequest.CONTROL_AF_MODE_AUTO;
+        } else if (Camera.Parameters.FOCUS_MODE_MACRO.equals(mode)) {
+            return CaptureRequest.CONTROL_AF_MODE_MACRO;
+        } else if (Camera.Parameters.FOCUS_MODE_EDOF.equals(mode)) {
+            return CaptureRequest.CONTROL_AF_MODE_EDOF;
+        } else if (Camera.Parameters.FOCUS_MODE_FIXED.equals(mode)
+                || Camera.Parameters.FOCUS_MODE_INFINITY.equals(mode)) {
+            return CaptureRequest.CONTROL_AF_MODE_OFF;
+        }
+        return -1;
+    }
+
+    /**
+     * Maps a Camera2 auto focus mode back onto a Camera1 focus mode name.
+     */
+    private static String fromAfMode(int afMode) {
+        switch (afMode) {
+            case CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE:
+                return Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE;
+            case CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO:
+                return Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO;
+            case CaptureRequest.CONTROL_AF_MODE_AUTO:
+                return Camera.Parameters.FOCUS_MODE_AUTO;
+            case CaptureRequest.CONTROL_AF_MODE_MACRO:
+                return Camera.Parameters.FOCUS_MODE_MACRO;
+            case CaptureRequest.CONTROL_AF_MODE_EDOF:
+                return Camera.Parameters.FOCUS_MODE_EDOF;
+            default:
+                return Camera.Parameters.FOCUS_MODE_FIXED;
+        }
+    }
+
+    /**
+     * Converts a YUV_420_888 image into a packed NV21 byte array, honouring the row and pixel
+     * strides of each plane.
+     */
+    private static byte[] toNv21(Image image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] nv21 = new byte[Nv21Utils.bufferSize(width, height)];
+        Image.Plane[] planes = image.getPlanes();
+
+        ByteBuffer luma = planes[0].getBuffer();
+        int lumaStride = planes[0].getRowStride();
+        for (int row = 0; row < height; ++row) {
+            luma.position(row * lumaStride);
+            luma.get(nv21, row * width, width);
+        }
+
+        ByteBuffer u = planes[1].getBuffer();
+        ByteBuffer v = planes[2].getBuffer();
+        int chromaStride = planes[1].getRowStride();
+        int pixelStride = planes[1].getPixelStride();
+        int offset = width * height;
+        for (int row = 0; row < height / 2; ++row) {
+            for (int col = 0; col < width / 2; ++col) {
+                int index = row * chromaStride + col * pixelStride;
+                nv21[offset++] = v.get(index);
+                nv21[offset++] = u.get(index);
+            }
+        }
+        luma.rewind();
+        return nv21;
+    }
+}
@@ -0,0 +1,87 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import android.support.annotation.Nullable;
+import android.view.SurfaceHolder;
+
+import java.io.IOException;
+
+/**
+ * Camera implementation behind a {@link CameraSource}: a {@link FrameSource} whose frames come
+ * from camera preview, with the camera controls on top.  The camera settings requested through
+ * the {@link CameraSource.Builder} are passed to the backend when it is created, and
+ * {@link #open(int, FrameListener)} opens the matching camera.
+ * <p/>
+ * All methods are called under the camera source's camera lock, except for the frame accessors
+ * inherited from {@link FrameSource}.
+ */
+interface CameraBackend extends FrameSource {
+
+    /**
+     * Starts streaming preview frames, displaying them on the supplied surface if it isn't null.
+     * {@link #start()} is the same as passing null.
+     *
+     * @throws IOException if the surface could not be used for the preview
+     */
+    void startPreview(@Nullable SurfaceHolder surfaceHolder) throws IOException;
+
+    /**
+     * Zooms in or out by the given pinch scale factor and returns the resulting zoom index, or 0
+     * if zoom isn't supported.
+     */
+    int doZoom(float scale);
+
+    /**
+     * Returns the largest zoom ratio, relative to the unzoomed field of view, or 1 if zoom isn't
+     * supported.
+     */
+    float getMaxZoomRatio();
+
+    /**
+     * Zooms to the supported ratio closest to the given one, relative to the unzoomed field of
+     * view, and returns the ratio in effect.
+     */
+    float setZoomRatio(float ratio);
+
+    /**
+     * Applies a focus mode, named as in {@link android.hardware.Camera.Parameters}.  Returns false
+     * if the camera doesn't support the mode.
+     */
+    boolean setFocusMode(String mode);
+
+    /**
+     * Returns the focus mode in effect, or null if unknown.
+     */
+    @Nullable
+    String getFocusMode();
+
+    /**
+     * Applies a flash mode, named as in {@link android.hardware.Camera.Parameters}.  Returns false
+     * if the camera doesn't support the mode.
+     */
+    boolean setFlashMode(String mode);
+
+    /**
+     * Returns the flash mode in effect, or null if the camera has no flash.
+     */
+    @Nullable
+    String getFlashMode();
+
+    /**
+     * Focuses and meters on a region of the frame, in normalized frame coordinates (0..1,
+     * relative to the frame as the camera delivers it).  A region covering the whole frame
+     * restores the camera's own choice.  Returns false if the camera supports neither focus nor
+     * metering areas.
+     */
+    boolean setMeteringRegion(float left, float top, float right, float bottom);
+
+    void autoFocus(@Nullable CameraSource.AutoFocusCallback cb);
+
+    void cancelAutoFocus();
+
+    /**
+     * Returns false if auto focus move callbacks aren't supported.
+     */
+    boolean setAutoFocusMoveCallback(@Nullable CameraSource.AutoFocusMoveCallback cb);
+
+    void takePicture(CameraSource.ShutterCallback shutter, CameraSource.PictureCallback jpeg);
+}
@@ -20,18 +20,20 @@ import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.ImageFormat;
-import android.graphics.SurfaceTexture;
+import android.graphics.Rect;
 import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.support.annotation.RequiresPermission;
 import android.support.annotation.StringDef;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.Surface;
 import android.view.SurfaceHolder;
-import android.view.SurfaceView;
 import android.view.WindowManager;
 
 import com.google.android.gms.common.images.Size;
@@ -43,10 +45,9 @@ import java.lang.Thread.State;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 // Note: This requires Google Play Services 8.1 or higher, due to using indirect byte buffers for
 // storing images.
@@ -57,6 +58,12 @@ import java.util.Map;
  * a specified rate, sending those frames to the detector as fast as it is able to process those
  * frames.
  * <p/>
+ * The camera itself is driven by a {@link CameraBackend}, either on the Camera1 API (the default)
+ * or on the Camera2 API (see {@link CameraSource.Builder#setCameraApi(int)}).  Frames can also come
+ * from any other {@link FrameSource}, such as a {@link ReplayFrameSource} playing back a session
+ * recorded with a {@link FrameRecorder} (see {@link CameraSource.Builder#setFrameSource}).  The
+ * camera controls do nothing in that case.
+ * <p/>
  * This camera source makes a best effort to manage processing on preview frames as fast as
  * possible, while at the same time minimizing lag.  As such, frames may be dropped if the detector
  * is unable to keep up with the rate of frames generated by the camera.  You should use
@@ -77,19 +84,13 @@ public class CameraSource {
     @SuppressLint("InlinedApi")
     public static final int CAMERA_FACING_FRONT = CameraInfo.CAMERA_FACING_FRONT;
 
-    private static final String TAG = "OpenCameraSource";
-
     /**
-     * The dummy surface texture must be assigned a chosen name.  Since we never use an OpenGL
-     * context, we can choose any ID we want here.
+     * Camera APIs that frames can be captured with (see {@link Builder#setCameraApi(int)}).
      */
-    private static final int DUMMY_TEXTURE_NAME = 100;
+    public static final int CAMERA_API_1 = 1;
+    public static final int CAMERA_API_2 = 2;
 
-    /**
-     * If the absolute difference between a preview size aspect ratio and a picture size aspect
-     * ratio is less than this tolerance, they are considered to be the same aspect ratio.
-     */
-    private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
+    private static final String TAG = "OpenCameraSource";
 
     @StringDef({
         Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE,
@@ -117,8 +118,15 @@ public class CameraSource {
 
     private final Object mCameraLock = new Object();
 
+    /**
+     * Where frames come from.  mCamera is the same object when the source is a camera, and null
+     * otherwise.
+     */
+    private FrameSource mSource;
+    private CameraBackend mCamera;
+
     // Guarded by mCameraLock
-    private Camera mCamera;
+    private boolean mCameraOpen;
 
     private int mFacing = CAMERA_FACING_BACK;
 
@@ -135,16 +143,76 @@ public class CameraSource {
     private float mRequestedFps = 30.0f;
     private int mRequestedPreviewWidth = 1024;
     private int mRequestedPreviewHeight = 768;
+    private int mCameraApi = CAMERA_API_1;
 
 
     private String mFocusMode = null;
     private String mFlashMode = null;
 
-    // These instances need to be held onto to avoid GC of their underlying resources.  Even though
-    // these aren't used outside of the method that creates them, they still must have hard
-    // references maintained to them.
-    private SurfaceView mDummySurfaceView;
-    private SurfaceTexture mDummySurfaceTexture;
+    /**
+     * Whether frames are cropped to the viewfinder region before being handed to the detector.
+     * The region is supplied by the preview in normalized display coordinates, and is bumped in
+     * version every time it changes so that the processing thread knows to re-map it.
+     */
+    private boolean mCropToViewFinder = false;
+
+    private FrameDropPolicy mFrameDropPolicy = FrameDropPolicy.latestOnly();
+    private float mSharpnessThreshold = 0;
+    private float mMaxSharpnessSkipRatio = 0;
+    private int mStaticSceneThreshold = 0;
+    private int mStaticSceneRefreshMillis = 0;
+    private volatile float mViewFinderLeft = 0;
+    private volatile float mViewFinderTop = 0;
+    private volatile float mViewFinderRight = 1;
+    private volatile float mViewFinderBottom = 1;
+    private volatile int mViewFinderVersion = 0;
+
+    /**
+     * The part of the preview that the detector sees, in the upright preview pixels that
+     * detections are reported in, or null before the camera is opened.  Replaced, never changed,
+     * with mCameraLock held; the crop is worked out in mDetectionImageRegion and mDetectionCrop.
+     */
+    private volatile Rect mDetectionRegion;
+    private final float[] mDetectionImageRegion = new float[4];
+    private final int[] mDetectionCrop = new int[4];
+
+    /**
+     * Whether focus and metering are confined to the viewfinder region, and the watchdog that
+     * re-triggers auto focus on it when detection stalls, if any.  The region is mapped into
+     * frame coordinates in mMeteringRegion.
+     */
+    private boolean mViewFinderFocus = false;
+    private FocusWatchdog mFocusWatchdog;
+    private final float[] mMeteringRegion = new float[4];
+
+    // Guarded by mCameraLock.  Whether a refocus is running, with continuous focus switched to
+    // auto focus for its duration.
+    private boolean mRefocusing;
+
+    // Set once the lens reports that it settled, so that the next frame counts as sharp.
+    private volatile boolean mFocusSettled;
+    private volatile AutoFocusMoveCallback mAutoFocusMoveCallback;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Zooms in on barcodes that were found but not read, if enabled.  The zoom is applied on the
+     * main thread, and a request replaces any that wasn't applied yet.
+     */
+    private AutoZoom mAutoZoom;
+    private volatile float mRequestedZoomRatio;
+    private final AtomicBoolean mZoomPending = new AtomicBoolean();
+
+    /**
+     * Switches the torch by the brightness of the frames, if enabled.  The switch is carried out
+     * on the main thread, and the torch callback told about it.
+     */
+    private AutoTorch mAutoTorch;
+    private volatile boolean mTorchTarget;
+    private final AtomicBoolean mTorchPending = new AtomicBoolean();
+    private volatile TorchCallback mTorchCallback;
+
+    private final PipelineStats mStats = new PipelineStats();
+    private volatile FrameRecorder mFrameRecorder;
 
     /**
      * Dedicated thread and associated runnable for calling into the detector with frames, as the
@@ -154,11 +222,24 @@ public class CameraSource {
     private FrameProcessingRunnable mFrameProcessor;
 
     /**
-     * Map to convert between a byte array, received from the camera, and its associated byte
-     * buffer.  We use byte buffers internally because this is a more efficient way to call into
-     * native code later (avoids a potential copy).
+     * Number of preview buffers that the camera uses to populate future preview images.  On top of
+     * these, buffers are needed for the frames waiting for detection and for the frames being
+     * detected (see {@link #getPreviewBufferCount(int, int)}).
      */
-    private Map<byte[], ByteBuffer> mBytesToByteBuffer = new HashMap<>();
+    private static final int CAMERA_BUFFER_COUNT = 2;
+
+    /**
+     * Shortest time between two auto zoom steps.  The Camera1 API zooms through setParameters,
+     * which holds up the preview for a moment, so steps are spaced out.
+     */
+    private static final int AUTO_ZOOM_STEP_MILLIS = 250;
+
+    /**
+     * How long the frames have to call for the torch to be switched, and the shortest time
+     * between two switches, so that it doesn't flicker.
+     */
+    private static final int AUTO_TORCH_HOLD_MILLIS = 1000;
+    private static final int AUTO_TORCH_INTERVAL_MILLIS = 3000;
 
     //==============================================================================================
     // Builder
@@ -209,6 +290,129 @@ public class CameraSource {
             return this;
         }
 
+        /**
+         * Sets whether preview frames are cropped to the viewfinder region (see
+         * {@link CameraSource#setViewFinderRegion(float, float, float, float)}) before detection.
+         * When disabled the detector receives full frames.  Default: false.
+         */
+        public Builder setCropToViewFinder(boolean crop) {
+            mCameraSource.mCropToViewFinder = crop;
+            return this;
+        }
+
+        /**
+         * Sets the policy that decides which frames are queued for detection when detection
+         * can't keep up with the camera.  Default: {@link FrameDropPolicy#latestOnly()}.
+         */
+        public Builder setFrameDropPolicy(FrameDropPolicy policy) {
+            if (policy == null) {
+                throw new IllegalArgumentException("No frame drop policy supplied.");
+            }
+            mCameraSource.mFrameDropPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Enables a cheap sharpness check in front of the detector that skips frames which are
+         * blurred by motion or defocus, returning them straight to the camera.  A frame is
+         * skipped when its sharpness score falls below the given fraction of the recent peak
+         * score, but never so often that more than maxSkipRatio of the frames are skipped.  The
+         * outcome is reported through {@link CameraSource#getStats()}.  Default: disabled.
+         *
+         * @param threshold    fraction of the recent peak sharpness a frame must reach, in (0, 1]
+         * @param maxSkipRatio largest share of frames that may be skipped, in [0, 1)
+         */
+        public Builder setSharpnessGate(float threshold, float maxSkipRatio) {
+            if ((threshold <= 0) || (threshold > 1)) {
+                throw new IllegalArgumentException("Invalid sharpness threshold: " + threshold);
+            }
+            if ((maxSkipRatio < 0) || (maxSkipRatio >= 1)) {
+                throw new IllegalArgumentException("Invalid skip ratio: " + maxSkipRatio);
+            }
+            mCameraSource.mSharpnessThreshold = threshold;
+            mCameraSource.mMaxSharpnessSkipRatio = maxSkipRatio;
+            return this;
+        }
+
+        /**
+         * Enables a check in front of the detector that skips frames showing the same scene as
+         * the last frame that was detected, so that a phone left pointing at nothing doesn't keep
+         * running full detection.  Frames are compared through a small luma thumbnail, and the
+         * scene counts as changed when the mean absolute difference reaches the threshold.  A frame
+         * is detected anyway once refreshMillis have passed since the last detected frame.  Hits
+         * and misses are reported through {@link CameraSource#getStats()}.  Default: disabled.
+         *
+         * @param threshold     mean absolute luma difference that counts as a change, 1 to 255
+         * @param refreshMillis longest time between detected frames, in milliseconds
+         */
+        public Builder setStaticSceneGate(int threshold, int refreshMillis) {
+            if ((threshold < 1) || (threshold > 255)) {
+                throw new IllegalArgumentException("Invalid scene change threshold: " + threshold);
+            }
+            if (refreshMillis <= 0) {
+                throw new IllegalArgumentException("Invalid refresh interval: " + refreshMillis);
+            }
+            mCameraSource.mStaticSceneThreshold = threshold;
+            mCameraSource.mStaticSceneRefreshMillis = refreshMillis;
+            return this;
+        }
+
+        /**
+         * Focuses and meters on the viewfinder region (see
+         * {@link CameraSource#setViewFinderRegion(float, float, float, float)}) rather than on the
+         * whole frame, on cameras that support focus or metering areas.  If refocusMillis is
+         * above 0, auto focus is also swept over the region again whenever the detector has gone
+         * that long without finding anything (see {@link CameraSource#markDetected()}).
+         * Refocusing is counted in {@link CameraSource#getStats()}.  Default: disabled.
+         *
+         * @param refocusMillis how long detection may stall before refocusing, or 0 to never
+         *                      refocus
+         */
+        public Builder setViewFinderFocus(int refocusMillis) {
+            if (refocusMillis < 0) {
+                throw new IllegalArgumentException("Invalid refocus interval: " + refocusMillis);
+            }
+            mCameraSource.mViewFinderFocus = true;
+            mCameraSource.mFocusWatchdog =
+                    refocusMillis > 0 ? new FocusWatchdog(refocusMillis) : null;
+            return this;
+        }
+
+        /**
+         * Zooms in on barcodes that the detector found but that weren't read yet (see
+         * {@link CameraSource#reportUnreadBarcode(Rect, Frame.Metadata)}), in steps, until they
+         * span targetFill of the detected frame, which is the viewfinder when frames are cropped
+         * to it.  The zoom goes back out once a barcode is read (see
+         * {@link CameraSource#reportResult()}) or when no unread barcode was seen for
+         * timeoutMillis.  Zooming by hand with {@link CameraSource#doZoom(float)} turns this off
+         * until the camera is restarted.  Default: disabled.
+         *
+         * @param targetFill    fraction of the frame an unread barcode should span, in (0, 1]
+         * @param timeoutMillis how long to stay zoomed in without seeing an unread barcode
+         */
+        public Builder setAutoZoom(float targetFill, int timeoutMillis) {
+            mCameraSource.mAutoZoom = new AutoZoom(targetFill, timeoutMillis,
+                    AUTO_ZOOM_STEP_MILLIS);
+            return this;
+        }
+
+        /**
+         * Switches the torch on when the frames stay darker than darkLuma, and off again when
+         * they get brighter than brightLuma, measured on a sparse grid of the part of the frame
+         * the detector sees.  Setting the flash mode with
+         * {@link CameraSource#setFlashMode(String)} turns this off until the camera is
+         * restarted.  Switches are reported to the {@link TorchCallback} and counted in
+         * {@link CameraSource#getStats()}.  Default: disabled.
+         *
+         * @param darkLuma   mean luma below which the torch goes on, 1 to 254
+         * @param brightLuma mean luma above which the torch goes off, above darkLuma and up to 255
+         */
+        public Builder setAutoTorch(int darkLuma, int brightLuma) {
+            mCameraSource.mAutoTorch = new AutoTorch(darkLuma, brightLuma, AUTO_TORCH_HOLD_MILLIS,
+                    AUTO_TORCH_INTERVAL_MILLIS);
+            return this;
+        }
+
         /**
          * Sets the desired width and height of the camera frames in pixels.  If the exact desired
          * values are not available options, the best matching available options are selected.
@@ -228,6 +432,35 @@ public class CameraSource {
             return this;
         }
 
+        /**
+         * Sets the camera API to capture frames with, either {@link #CAMERA_API_1} or
+         * {@link #CAMERA_API_2}.  The Camera2 API streams frames through an image reader and hands
+         * their luma plane to the detector in place.  It requires Lollipop; on older devices the
+         * Camera1 API is used regardless.  Default: {@link #CAMERA_API_1}.
+         */
+        public Builder setCameraApi(int api) {
+            if ((api != CAMERA_API_1) && (api != CAMERA_API_2)) {
+                throw new IllegalArgumentException("Invalid camera API: " + api);
+            }
+            mCameraSource.mCameraApi = api;
+            return this;
+        }
+
+        /**
+         * Sets the source of the frames to run detection on, in place of the camera selected by
+         * {@link #setCameraApi(int)}, {@link #setFacing(int)} and the requested preview size and
+         * frame rate.  This is how a recorded session is played back through the pipeline with a
+         * {@link ReplayFrameSource}.  The camera controls have no effect on sources other than
+         * cameras.  Default: the camera.
+         */
+        public Builder setFrameSource(FrameSource source) {
+            if (source == null) {
+                throw new IllegalArgumentException("No frame source supplied.");
+            }
+            mCameraSource.mSource = source;
+            return this;
+        }
+
         /**
          * Sets the camera to use (either {@link #CAMERA_FACING_BACK} or
          * {@link #CAMERA_FACING_FRONT}). Default: back facing.
@@ -241,12 +474,36 @@ public class CameraSource {
         }
 
         /**
-         * Creates an instance of the camera source.
+         * Creates an instance of the camera source.  If the detector is a
+         * {@link ParallelDetector} with more than one worker, consecutive frames are detected on
+         * separate worker threads and the results are delivered to its processor in frame order.
          */
         public CameraSource build() {
-            mCameraSource.mFrameProcessor = mCameraSource.new FrameProcessingRunnable(mDetector);
+            if (mCameraSource.mSource == null) {
+                mCameraSource.mSource = createBackend();
+            }
+            if (mCameraSource.mSource instanceof CameraBackend) {
+                mCameraSource.mCamera = (CameraBackend) mCameraSource.mSource;
+            }
+            mCameraSource.mFrameProcessor = mCameraSource.new FrameProcessingRunnable(mDetector,
+                    mCameraSource.mFrameDropPolicy);
             return mCameraSource;
         }
+
+        private CameraBackend createBackend() {
+            CameraSource source = mCameraSource;
+            if (source.mCameraApi == CAMERA_API_2) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                    return new Camera2Backend(source.mContext, source.mFacing,
+                            source.mRequestedPreviewWidth, source.mRequestedPreviewHeight,
+                            source.mRequestedFps);
+                }
+                Log.i(TAG, "Camera2 API is not available on this device, using Camera1 instead.");
+            }
+            return new Camera1Backend(source.mContext, source.mFacing,
+                    source.mRequestedPreviewWidth, source.mRequestedPreviewHeight,
+                    source.mRequestedFps);
+        }
     }
 
     //==============================================================================================
@@ -312,6 +569,19 @@ public class CameraSource {
         void onAutoFocusMoving(boolean start);
     }
 
+    /**
+     * Callback interface used to indicate that the torch was switched automatically (see
+     * {@link Builder#setAutoTorch(int, int)}).
+     */
+    public interface TorchCallback {
+        /**
+         * Called on the main thread after the torch was switched.
+         *
+         * @param on true if the torch is now on
+         */
+        void onTorchChanged(boolean on);
+    }
+
     //==============================================================================================
     // Public
     //==============================================================================================
@@ -334,29 +604,7 @@ public class CameraSource {
      */
     @RequiresPermission(Manifest.permission.CAMERA)
     public CameraSource start() throws IOException {
-        synchronized (mCameraLock) {
-            if (mCamera != null) {
-                return this;
-            }
-
-            mCamera = createCamera();
-
-            // SurfaceTexture was introduced in Honeycomb (11), so if we are running and
-            // old version of Android. fall back to use SurfaceView.
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                mDummySurfaceTexture = new SurfaceTexture(DUMMY_TEXTURE_NAME);
-                mCamera.setPreviewTexture(mDummySurfaceTexture);
-            } else {
-                mDummySurfaceView = new SurfaceView(mContext);
-                mCamera.setPreviewDisplay(mDummySurfaceView.getHolder());
-            }
-            mCamera.startPreview();
-
-            mProcessingThread = new Thread(mFrameProcessor);
-            mFrameProcessor.setActive(true);
-            mProcessingThread.start();
-        }
-        return this;
+        return start(null);
     }
 
     /**
@@ -369,13 +617,18 @@ public class CameraSource {
     @RequiresPermission(Manifest.permission.CAMERA)
     public CameraSource start(SurfaceHolder surfaceHolder) throws IOException {
         synchronized (mCameraLock) {
-            if (mCamera != null) {
+            if (mCameraOpen) {
                 return this;
             }
 
-            mCamera = createCamera();
-            mCamera.setPreviewDisplay(surfaceHolder);
-            mCamera.startPreview();
+            mStats.recordCameraStart(System.nanoTime());
+            openCamera();
+            if (mCamera != null) {
+                mCamera.startPreview(surfaceHolder);
+            } else {
+                mSource.start();
+            }
+            mStats.recordCameraOpened(System.nanoTime());
 
             mProcessingThread = new Thread(mFrameProcessor);
             mFrameProcessor.setActive(true);
@@ -408,29 +661,9 @@ public class CameraSource {
                 mProcessingThread = null;
             }
 
-            // clear the buffer to prevent oom exceptions
-            mBytesToByteBuffer.clear();
-
-            if (mCamera != null) {
-                mCamera.stopPreview();
-                mCamera.setPreviewCallbackWithBuffer(null);
-                try {
-                    // We want to be compatible back to Gingerbread, but SurfaceTexture
-                    // wasn't introduced until Honeycomb.  Since the interface cannot use a SurfaceTexture, if the
-                    // developer wants to display a preview we must use a SurfaceHolder.  If the developer doesn't
-                    // want to display a preview we use a SurfaceTexture if we are running at least Honeycomb.
-
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                        mCamera.setPreviewTexture(null);
-
-                    } else {
-                        mCamera.setPreviewDisplay(null);
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to clear camera preview: " + e);
-                }
-                mCamera.release();
-                mCamera = null;
+            if (mCameraOpen) {
+                mSource.close();
+                mCameraOpen = false;
             }
         }
     }
@@ -450,36 +683,112 @@ public class CameraSource {
         return mFacing;
     }
 
-    public int doZoom(float scale) {
+    /**
+     * Sets the region of the preview that is visible inside the on-screen viewfinder, in
+     * normalized display coordinates (0..1, relative to the displayed preview).  If the camera
+     * source was built with {@link Builder#setCropToViewFinder(boolean)}, only this part of each
+     * frame is sent to the detector, which means that barcode positions are reported relative to
+     * the cropped region (see {@link #getDetectionRegion()}).  If it was built with {@link Builder#setViewFinderFocus(int)}, the
+     * camera focuses and meters on this region.
+     */
+    public void setViewFinderRegion(float left, float top, float right, float bottom) {
+        mViewFinderLeft = left;
+        mViewFinderTop = top;
+        mViewFinderRight = right;
+        mViewFinderBottom = bottom;
+        mViewFinderVersion++;
+
         synchronized (mCameraLock) {
-            if (mCamera == null) {
-                return 0;
+            updateDetectionRegion();
+            if (mViewFinderFocus) {
+                applyMeteringRegion();
             }
-            int currentZoom = 0;
-            int maxZoom;
-            Camera.Parameters parameters = mCamera.getParameters();
-            if (!parameters.isZoomSupported()) {
-                Log.w(TAG, "Zoom is not supported on this device");
-                return currentZoom;
-            }
-            maxZoom = parameters.getMaxZoom();
+        }
+    }
 
-            currentZoom = parameters.getZoom() + 1;
-            float newZoom;
-            if (scale > 1) {
-                newZoom = currentZoom + scale * (maxZoom / 10);
-            } else {
-                newZoom = currentZoom * scale;
+    /**
+     * Returns the part of the preview that the detector sees, in the upright preview pixels that
+     * detections are reported in, or null before the camera is started.  Detections are relative
+     * to the top left corner of this region, so adding it maps them onto the whole preview.  It
+     * covers the whole preview unless frames are cropped to the viewfinder (see
+     * {@link Builder#setCropToViewFinder(boolean)}).
+     */
+    @Nullable
+    public Rect getDetectionRegion() {
+        return mDetectionRegion;
+    }
+
+    /**
+     * Tells the camera source that the detector found something, which holds off sweeping auto
+     * focus over the viewfinder again (see {@link Builder#setViewFinderFocus(int)}).  This may be
+     * called from any thread, typically from the detector's processor.
+     */
+    public void markDetected() {
+        if (mFocusWatchdog != null) {
+            mFocusWatchdog.markDetected(System.nanoTime());
+        }
+    }
+
+    /**
+     * Tells the camera source about a barcode that the detector found but that wasn't read, for
+     * example because it failed a check, so that auto zoom can close in on it (see
+     * {@link Builder#setAutoZoom(float, int)}).  This may be called from any thread.
+     *
+     * @param box   the bounding box of the barcode, as reported by the detector
+     * @param frame the frame the barcode was found in
+     */
+    public void reportUnreadBarcode(@Nullable Rect box, @Nullable Frame.Metadata frame) {
+        if ((mAutoZoom == null) || (box == null) || (frame == null)) {
+            return;
+        }
+
+        // Detections are reported upright, while the frame size is that of the unrotated image.
+        boolean rotated = (frame.getRotation() & 1) != 0;
+        int width = rotated ? frame.getHeight() : frame.getWidth();
+        int height = rotated ? frame.getWidth() : frame.getHeight();
+        if ((width <= 0) || (height <= 0)) {
+            return;
+        }
+        float fill = Math.max((float) box.width() / width, (float) box.height() / height);
+        requestZoomRatio(mAutoZoom.onUnreadBarcode(fill, System.nanoTime()));
+    }
+
+    /**
+     * Tells the camera source that a barcode was read, so that auto zoom goes back out (see
+     * {@link Builder#setAutoZoom(float, int)}).  This may be called from any thread.
+     */
+    public void reportResult() {
+        if (mAutoZoom != null) {
+            requestZoomRatio(mAutoZoom.onResult(System.nanoTime()));
+        }
+    }
+
+    /**
+     * Returns the counters for the frame processing pipeline.
+     */
+    public PipelineStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Starts recording every frame that arrives from the frame source, before any frame is
+     * dropped, or stops recording if the recorder is null.  The recording can be played back
+     * later with a {@link ReplayFrameSource}.  Closing the recorder is up to the caller, once it
+     * has been detached again or the camera source has been stopped.
+     */
+    public void setFrameRecorder(@Nullable FrameRecorder recorder) {
+        mFrameRecorder = recorder;
+    }
+
+    public int doZoom(float scale) {
+        synchronized (mCameraLock) {
+            if (!mCameraOpen || (mCamera == null)) {
+                return 0;
             }
-            currentZoom = Math.round(newZoom) - 1;
-            if (currentZoom < 0) {
-                currentZoom = 0;
-            } else if (currentZoom > maxZoom) {
-                currentZoom = maxZoom;
+            if (mAutoZoom != null) {
+                mAutoZoom.setManual();
             }
-            parameters.setZoom(currentZoom);
-            mCamera.setParameters(parameters);
-            return currentZoom;
+            return mCamera.doZoom(scale);
         }
     }
 
@@ -487,19 +796,15 @@ public class CameraSource {
      * Initiates taking a picture, which happens asynchronously.  The camera source should have been
      * activated previously with {@link #start()} or {@link #start(SurfaceHolder)}.  The camera
      * preview is suspended while the picture is being taken, but will resume once picture taking is
-     * done.
+     * done.  With the Camera2 API, the picture is taken from the next preview frame instead.
      *
      * @param shutter the callback for image capture moment, or null
      * @param jpeg    the callback for JPEG image data, or null
      */
     public void takePicture(ShutterCallback shutter, PictureCallback jpeg) {
         synchronized (mCameraLock) {
-            if (mCamera != null) {
-                PictureStartCallback startCallback = new PictureStartCallback();
-                startCallback.mDelegate = shutter;
-                PictureDoneCallback doneCallback = new PictureDoneCallback();
-                doneCallback.mDelegate = jpeg;
-                mCamera.takePicture(startCallback, null, null, doneCallback);
+            if (mCameraOpen && (mCamera != null)) {
+                mCamera.takePicture(shutter, jpeg);
             }
         }
     }
@@ -533,14 +838,11 @@ public class CameraSource {
      */
     public boolean setFocusMode(@FocusMode String mode) {
         synchronized (mCameraLock) {
-            if (mCamera != null && mode != null) {
-                Camera.Parameters parameters = mCamera.getParameters();
-                if (parameters.getSupportedFocusModes().contains(mode)) {
-                    parameters.setFocusMode(mode);
-                    mCamera.setParameters(parameters);
-                    mFocusMode = mode;
-                    return true;
-                }
+            if (mCameraOpen && (mCamera != null) && (mode != null)
+                    && mCamera.setFocusMode(mode)) {
+                mFocusMode = mode;
+                mRefocusing = false;
+                return true;
             }
 
             return false;
@@ -573,20 +875,28 @@ public class CameraSource {
      */
     public boolean setFlashMode(@FlashMode String mode) {
         synchronized (mCameraLock) {
-            if (mCamera != null && mode != null) {
-                Camera.Parameters parameters = mCamera.getParameters();
-                if (parameters.getSupportedFlashModes().contains(mode)) {
-                    parameters.setFlashMode(mode);
-                    mCamera.setParameters(parameters);
-                    mFlashMode = mode;
-                    return true;
-                }
+            if (mAutoTorch != null) {
+                mAutoTorch.setManual();
+            }
+            if (mCameraOpen && (mCamera != null) && (mode != null)
+                    && mCamera.setFlashMode(mode)) {
+                mFlashMode = mode;
+                return true;
             }
 
             return false;
         }
     }
 
+    /**
+     * Sets the callback that is told when the torch is switched automatically.
+     *
+     * @param cb the callback to run, or null
+     */
+    public void setTorchCallback(@Nullable TorchCallback cb) {
+        mTorchCallback = cb;
+    }
+
     /**
      * Starts camera auto-focus and registers a callback function to run when
      * the camera is focused.  This method is only valid when preview is active
@@ -607,13 +917,9 @@ public class CameraSource {
      */
     public void autoFocus(@Nullable AutoFocusCallback cb) {
         synchronized (mCameraLock) {
-            if (mCamera != null) {
-                CameraAutoFocusCallback autoFocusCallback = null;
-                if (cb != null) {
-                    autoFocusCallback = new CameraAutoFocusCallback();
-                    autoFocusCallback.mDelegate = cb;
-                }
-                mCamera.autoFocus(autoFocusCallback);
+            if (mCameraOpen && (mCamera != null)) {
+                endRefocus();
+                mCamera.autoFocus(cb);
             }
         }
     }
@@ -628,7 +934,8 @@ public class CameraSource {
      */
     public void cancelAutoFocus() {
         synchronized (mCameraLock) {
-            if (mCamera != null) {
+            if (mCameraOpen && (mCamera != null)) {
+                endRefocus();
                 mCamera.cancelAutoFocus();
             }
         }
@@ -647,13 +954,10 @@ public class CameraSource {
         }
 
         synchronized (mCameraLock) {
-            if (mCamera != null) {
-                CameraAutoFocusMoveCallback autoFocusMoveCallback = null;
-                if (cb != null) {
-                    autoFocusMoveCallback = new CameraAutoFocusMoveCallback();
-                    autoFocusMoveCallback.mDelegate = cb;
-                }
-                mCamera.setAutoFocusMoveCallback(autoFocusMoveCallback);
+            mAutoFocusMoveCallback = cb;
+            if (mCameraOpen && (mCamera != null)) {
+                // The camera keeps reporting to the internal callback, which passes moves on.
+                return mCamera.setAutoFocusMoveCallback(mFocusMoveCallback);
             }
         }
 
@@ -671,317 +975,256 @@ public class CameraSource {
     }
 
     /**
-     * Wraps the camera1 shutter callback so that the deprecated API isn't exposed.
+     * Opens the frame source and, for a camera, applies the user settings.
+     *
+     * @throws RuntimeException if the method fails
      */
-    private class PictureStartCallback implements Camera.ShutterCallback {
-        private ShutterCallback mDelegate;
-
-        @Override
-        public void onShutter() {
-            if (mDelegate != null) {
-                mDelegate.onShutter();
-            }
+    private void openCamera() throws IOException {
+        mFrameProcessor.reset();
+        mSource.open(mFrameProcessor.getBufferCount(), mFrameProcessor);
+        mCameraOpen = true;
+        mPreviewSize = new Size(mSource.getFrameWidth(), mSource.getFrameHeight());
+        mRotation = mSource.getRotation();
+        updateDetectionRegion();
+
+        if (mCamera == null) {
+            return;
         }
-    }
 
-    /**
-     * Wraps the final callback in the camera sequence, so that we can automatically turn the camera
-     * preview back on after the picture has been taken.
-     */
-    private class PictureDoneCallback implements Camera.PictureCallback {
-        private PictureCallback mDelegate;
-
-        @Override
-        public void onPictureTaken(byte[] data, Camera camera) {
-            if (mDelegate != null) {
-                mDelegate.onPictureTaken(data);
-            }
-            synchronized (mCameraLock) {
-                if (mCamera != null) {
-                    mCamera.startPreview();
-                }
-            }
+        if ((mFocusMode != null) && !mCamera.setFocusMode(mFocusMode)) {
+            Log.i(TAG, "Camera focus mode: " + mFocusMode + " is not supported on this device.");
         }
-    }
 
-    /**
-     * Wraps the camera1 auto focus callback so that the deprecated API isn't exposed.
-     */
-    private class CameraAutoFocusCallback implements Camera.AutoFocusCallback {
-        private AutoFocusCallback mDelegate;
+        // setting mFocusMode to the one in effect
+        mFocusMode = mCamera.getFocusMode();
 
-        @Override
-        public void onAutoFocus(boolean success, Camera camera) {
-            if (mDelegate != null) {
-                mDelegate.onAutoFocus(success);
-            }
+        if ((mFlashMode != null) && !mCamera.setFlashMode(mFlashMode)) {
+            Log.i(TAG, "Camera flash mode: " + mFlashMode + " is not supported on this device.");
         }
-    }
 
-    /**
-     * Wraps the camera1 auto focus move callback so that the deprecated API isn't exposed.
-     */
-    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
-    private class CameraAutoFocusMoveCallback implements Camera.AutoFocusMoveCallback {
-        private AutoFocusMoveCallback mDelegate;
+        // setting mFlashMode to the one in effect
+        mFlashMode = mCamera.getFlashMode();
 
-        @Override
-        public void onAutoFocusMoving(boolean start, Camera camera) {
-            if (mDelegate != null) {
-                mDelegate.onAutoFocusMoving(start);
-            }
+        // Without auto focus the lens never moves, so the very first frame is as sharp as it
+        // gets.  Otherwise the lens reports when it settles.
+        mRefocusing = false;
+        mFocusSettled = !hasAutoFocus(mFocusMode);
+        mCamera.setAutoFocusMoveCallback(mFocusMoveCallback);
+
+        if (mViewFinderFocus) {
+            applyMeteringRegion();
+        }
+        if (mFocusWatchdog != null) {
+            mFocusWatchdog.reset(System.nanoTime());
+        }
+        if (mAutoZoom != null) {
+            mAutoZoom.reset(mCamera.getMaxZoomRatio());
+        }
+        if (mAutoTorch != null) {
+            mAutoTorch.reset(mFlashMode != null,
+                    Camera.Parameters.FLASH_MODE_TORCH.equals(mFlashMode));
         }
     }
 
     /**
-     * Opens the camera and applies the user settings.
-     *
-     * @throws RuntimeException if the method fails
+     * Has the main thread zoom to the given ratio, unless it is {@link AutoZoom#NO_CHANGE}.
+     * The zoom can't be changed from the detection threads, since {@link #stop()} holds the
+     * camera lock while it waits for them.
      */
-    @SuppressLint("InlinedApi")
-    private Camera createCamera() {
-        int requestedCameraId = getIdForRequestedCamera(mFacing);
-        if (requestedCameraId == -1) {
-            throw new RuntimeException("Could not find requested camera.");
-        }
-        Camera camera = Camera.open(requestedCameraId);
-
-        SizePair sizePair = selectSizePair(camera, mRequestedPreviewWidth, mRequestedPreviewHeight);
-        if (sizePair == null) {
-            throw new RuntimeException("Could not find suitable preview size.");
+    private void requestZoomRatio(float ratio) {
+        if (ratio == AutoZoom.NO_CHANGE) {
+            return;
         }
-        Size pictureSize = sizePair.pictureSize();
-        mPreviewSize = sizePair.previewSize();
-
-        int[] previewFpsRange = selectPreviewFpsRange(camera, mRequestedFps);
-        if (previewFpsRange == null) {
-            throw new RuntimeException("Could not find suitable preview frames per second range.");
+        mRequestedZoomRatio = ratio;
+        if (!mZoomPending.getAndSet(true)) {
+            mMainHandler.post(mApplyZoom);
         }
+    }
 
-        Camera.Parameters parameters = camera.getParameters();
-
-        if (pictureSize != null) {
-            parameters.setPictureSize(pictureSize.getWidth(), pictureSize.getHeight());
-        }
-
-        parameters.setPreviewSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
-        parameters.setPreviewFpsRange(
-                previewFpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
-                previewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
-        parameters.setPreviewFormat(ImageFormat.NV21);
-
-        setRotation(camera, parameters, requestedCameraId);
+    private final Runnable mApplyTorch = new Runnable() {
+        @Override
+        public void run() {
+            mTorchPending.set(false);
+            boolean on = mTorchTarget;
+            synchronized (mCameraLock) {
+                // The user may have taken over since the switch was asked for.
+                if (!mCameraOpen || (mCamera == null) || mAutoTorch.isManual()) {
+                    return;
+                }
+                String mode = on ? Camera.Parameters.FLASH_MODE_TORCH
+                        : Camera.Parameters.FLASH_MODE_OFF;
+                if (!mCamera.setFlashMode(mode)) {
+                    return;
+                }
+                mFlashMode = mode;
+                mStats.recordTorchSwitch();
+            }
 
-        if (mFocusMode != null) {
-            if (parameters.getSupportedFocusModes().contains(
-                    mFocusMode)) {
-                parameters.setFocusMode(mFocusMode);
-            } else {
-                Log.i(TAG, "Camera focus mode: " + mFocusMode + " is not supported on this device.");
+            TorchCallback cb = mTorchCallback;
+            if (cb != null) {
+                cb.onTorchChanged(on);
             }
         }
+    };
 
-        // setting mFocusMode to the one set in the params
-        mFocusMode = parameters.getFocusMode();
-
-        if (mFlashMode != null) {
-            if (parameters.getSupportedFlashModes() != null) {
-                if (parameters.getSupportedFlashModes().contains(
-                        mFlashMode)) {
-                    parameters.setFlashMode(mFlashMode);
-                } else {
-                    Log.i(TAG, "Camera flash mode: " + mFlashMode + " is not supported on this device.");
+    private final Runnable mApplyZoom = new Runnable() {
+        @Override
+        public void run() {
+            mZoomPending.set(false);
+            float ratio = mRequestedZoomRatio;
+            synchronized (mCameraLock) {
+                if (mCameraOpen && (mCamera != null)) {
+                    mCamera.setZoomRatio(ratio);
                 }
             }
         }
+    };
 
-        // setting mFlashMode to the one set in the params
-        mFlashMode = parameters.getFlashMode();
-
-        camera.setParameters(parameters);
-
-        // Four frame buffers are needed for working with the camera:
-        //
-        //   one for the frame that is currently being executed upon in doing detection
-        //   one for the next pending frame to process immediately upon completing detection
-        //   two for the frames that the camera uses to populate future preview images
-        camera.setPreviewCallbackWithBuffer(new CameraPreviewCallback());
-        camera.addCallbackBuffer(createPreviewBuffer(mPreviewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(mPreviewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(mPreviewSize));
-        camera.addCallbackBuffer(createPreviewBuffer(mPreviewSize));
+    /**
+     * Works out the part of the preview that the detector sees, the same way the processing
+     * thread crops frames, and maps it to upright preview pixels.  Called with the camera lock
+     * held.
+     */
+    private void updateDetectionRegion() {
+        if (mPreviewSize == null) {
+            return;
+        }
+        int width = mPreviewSize.getWidth();
+        int height = mPreviewSize.getHeight();
+        int[] crop = mDetectionCrop;
+        FrameCropper.toImageRegion(mRotation, mViewFinderLeft, mViewFinderTop, mViewFinderRight,
+                mViewFinderBottom, mDetectionImageRegion);
+        if (!mCropToViewFinder
+                || !FrameCropper.toCrop(width, height, mDetectionImageRegion, crop)) {
+            crop[0] = 0;
+            crop[1] = 0;
+            crop[2] = width;
+            crop[3] = height;
+        }
 
-        return camera;
+        // The frames are displayed rotated clockwise by mRotation * 90 degrees.
+        switch (mRotation) {
+            case Frame.ROTATION_90:
+                mDetectionRegion = new Rect(height - crop[3], crop[0], height - crop[1], crop[2]);
+                break;
+            case Frame.ROTATION_180:
+                mDetectionRegion = new Rect(width - crop[2], height - crop[3], width - crop[0],
+                        height - crop[1]);
+                break;
+            case Frame.ROTATION_270:
+                mDetectionRegion = new Rect(crop[1], width - crop[2], crop[3], width - crop[0]);
+                break;
+            default:
+                mDetectionRegion = new Rect(crop[0], crop[1], crop[2], crop[3]);
+                break;
+        }
     }
 
     /**
-     * Gets the id for the camera specified by the direction it is facing.  Returns -1 if no such
-     * camera was found.
-     *
-     * @param facing the desired camera (front-facing or rear-facing)
+     * Focuses and meters on the viewfinder region, mapped into frame coordinates.  Called with
+     * the camera lock held.
      */
-    private static int getIdForRequestedCamera(int facing) {
-        CameraInfo cameraInfo = new CameraInfo();
-        for (int i = 0; i < Camera.getNumberOfCameras(); ++i) {
-            Camera.getCameraInfo(i, cameraInfo);
-            if (cameraInfo.facing == facing) {
-                return i;
-            }
+    private void applyMeteringRegion() {
+        if (!mCameraOpen || (mCamera == null)) {
+            return;
+        }
+        float[] region = mMeteringRegion;
+        FrameCropper.toImageRegion(mRotation, mViewFinderLeft, mViewFinderTop, mViewFinderRight,
+                mViewFinderBottom, region);
+        if (!mCamera.setMeteringRegion(clamp(region[0]), clamp(region[1]), clamp(region[2]),
+                clamp(region[3]))) {
+            Log.i(TAG, "Focus and metering areas are not supported on this device.");
         }
-        return -1;
     }
 
     /**
-     * Selects the most suitable preview and picture size, given the desired width and height.
-     * <p/>
-     * Even though we may only need the preview size, it's necessary to find both the preview
-     * size and the picture size of the camera together, because these need to have the same aspect
-     * ratio.  On some hardware, if you would only set the preview size, you will get a distorted
-     * image.
-     *
-     * @param camera        the camera to select a preview size from
-     * @param desiredWidth  the desired width of the camera preview frames
-     * @param desiredHeight the desired height of the camera preview frames
-     * @return the selected preview and picture size pair
+     * Sweeps auto focus over the viewfinder once, after detection stalled.  Continuous focus
+     * doesn't search again once it considers the scene focused, so it is switched to auto focus
+     * for the sweep and back once the sweep is done.
      */
-    private static SizePair selectSizePair(Camera camera, int desiredWidth, int desiredHeight) {
-        List<SizePair> validPreviewSizes = generateValidPreviewSizeList(camera);
-
-        // The method for selecting the best size is to minimize the sum of the differences between
-        // the desired values and the actual values for width and height.  This is certainly not the
-        // only way to select the best size, but it provides a decent tradeoff between using the
-        // closest aspect ratio vs. using the closest pixel area.
-        SizePair selectedPair = null;
-        int minDiff = Integer.MAX_VALUE;
-        for (SizePair sizePair : validPreviewSizes) {
-            Size size = sizePair.previewSize();
-            int diff = Math.abs(size.getWidth() - desiredWidth) +
-                    Math.abs(size.getHeight() - desiredHeight);
-            if (diff < minDiff) {
-                selectedPair = sizePair;
-                minDiff = diff;
-            }
-        }
-
-        return selectedPair;
+    private void refocus() {
+        synchronized (mCameraLock) {
+            if (!mCameraOpen || (mCamera == null) || mRefocusing || !hasAutoFocus(mFocusMode)) {
+                return;
+            }
+            if (isContinuousFocus(mFocusMode)
+                    && !mCamera.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO)) {
+                return;
+            }
+            mRefocusing = true;
+            mStats.recordRefocus();
+            mCamera.autoFocus(mRefocusCallback);
+        }
     }
 
     /**
-     * Stores a preview size and a corresponding same-aspect-ratio picture size.  To avoid distorted
-     * preview images on some devices, the picture size must be set to a size that is the same
-     * aspect ratio as the preview size or the preview may end up being distorted.  If the picture
-     * size is null, then there is no picture size with the same aspect ratio as the preview size.
+     * Ends a running refocus, restoring continuous focus.  Called with the camera lock held.
      */
-    private static class SizePair {
-        private Size mPreview;
-        private Size mPicture;
-
-        public SizePair(android.hardware.Camera.Size previewSize,
-                        android.hardware.Camera.Size pictureSize) {
-            mPreview = new Size(previewSize.width, previewSize.height);
-            if (pictureSize != null) {
-                mPicture = new Size(pictureSize.width, pictureSize.height);
-            }
+    private void endRefocus() {
+        if (!mRefocusing) {
+            return;
         }
+        mRefocusing = false;
+        if (mCameraOpen && (mCamera != null) && isContinuousFocus(mFocusMode)) {
+            mCamera.setFocusMode(mFocusMode);
+        }
+    }
 
-        public Size previewSize() {
-            return mPreview;
+    private final Runnable mRefocus = new Runnable() {
+        @Override
+        public void run() {
+            refocus();
         }
+    };
 
-        @SuppressWarnings("unused")
-        public Size pictureSize() {
-            return mPicture;
+    private final AutoFocusCallback mRefocusCallback = new AutoFocusCallback() {
+        @Override
+        public void onAutoFocus(boolean success) {
+            if (success) {
+                mFocusSettled = true;
+            }
+            synchronized (mCameraLock) {
+                endRefocus();
+            }
         }
-    }
+    };
 
     /**
-     * Generates a list of acceptable preview sizes.  Preview sizes are not acceptable if there is
-     * not a corresponding picture size of the same aspect ratio.  If there is a corresponding
-     * picture size of the same aspect ratio, the picture size is paired up with the preview size.
-     * <p/>
-     * This is necessary because even if we don't use still pictures, the still picture size must be
-     * set to a size that is the same aspect ratio as the preview size we choose.  Otherwise, the
-     * preview images may be distorted on some devices.
+     * Notes when the lens settles, for the time to the first sharp frame, and passes the moves
+     * on to the callback set through {@link #setAutoFocusMoveCallback}.
      */
-    private static List<SizePair> generateValidPreviewSizeList(Camera camera) {
-        Camera.Parameters parameters = camera.getParameters();
-        List<android.hardware.Camera.Size> supportedPreviewSizes =
-                parameters.getSupportedPreviewSizes();
-        List<android.hardware.Camera.Size> supportedPictureSizes =
-                parameters.getSupportedPictureSizes();
-        List<SizePair> validPreviewSizes = new ArrayList<>();
-        for (android.hardware.Camera.Size previewSize : supportedPreviewSizes) {
-            float previewAspectRatio = (float) previewSize.width / (float) previewSize.height;
-
-            // By looping through the picture sizes in order, we favor the higher resolutions.
-            // We choose the highest resolution in order to support taking the full resolution
-            // picture later.
-            for (android.hardware.Camera.Size pictureSize : supportedPictureSizes) {
-                float pictureAspectRatio = (float) pictureSize.width / (float) pictureSize.height;
-                if (Math.abs(previewAspectRatio - pictureAspectRatio) < ASPECT_RATIO_TOLERANCE) {
-                    validPreviewSizes.add(new SizePair(previewSize, pictureSize));
-                    break;
-                }
+    private final AutoFocusMoveCallback mFocusMoveCallback = new AutoFocusMoveCallback() {
+        @Override
+        public void onAutoFocusMoving(boolean start) {
+            mFocusSettled = !start;
+            AutoFocusMoveCallback cb = mAutoFocusMoveCallback;
+            if (cb != null) {
+                cb.onAutoFocusMoving(start);
             }
         }
+    };
 
-        // If there are no picture sizes with the same aspect ratio as any preview sizes, allow all
-        // of the preview sizes and hope that the camera can handle it.  Probably unlikely, but we
-        // still account for it.
-        if (validPreviewSizes.size() == 0) {
-            Log.w(TAG, "No preview sizes have a corresponding same-aspect-ratio picture size");
-            for (android.hardware.Camera.Size previewSize : supportedPreviewSizes) {
-                // The null picture size will let us know that we shouldn't set a picture size.
-                validPreviewSizes.add(new SizePair(previewSize, null));
-            }
-        }
+    private static boolean hasAutoFocus(String focusMode) {
+        return Camera.Parameters.FOCUS_MODE_AUTO.equals(focusMode)
+                || Camera.Parameters.FOCUS_MODE_MACRO.equals(focusMode)
+                || isContinuousFocus(focusMode);
+    }
 
-        return validPreviewSizes;
+    private static boolean isContinuousFocus(String focusMode) {
+        return Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE.equals(focusMode)
+                || Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO.equals(focusMode);
     }
 
-    /**
-     * Selects the most suitable preview frames per second range, given the desired frames per
-     * second.
-     *
-     * @param camera            the camera to select a frames per second range from
-     * @param desiredPreviewFps the desired frames per second for the camera preview frames
-     * @return the selected preview frames per second range
-     */
-    private int[] selectPreviewFpsRange(Camera camera, float desiredPreviewFps) {
-        // The camera API uses integers scaled by a factor of 1000 instead of floating-point frame
-        // rates.
-        int desiredPreviewFpsScaled = (int) (desiredPreviewFps * 1000.0f);
-
-        // The method for selecting the best range is to minimize the sum of the differences between
-        // the desired value and the upper and lower bounds of the range.  This may select a range
-        // that the desired value is outside of, but this is often preferred.  For example, if the
-        // desired frame rate is 29.97, the range (30, 30) is probably more desirable than the
-        // range (15, 30).
-        int[] selectedFpsRange = null;
-        int minDiff = Integer.MAX_VALUE;
-        List<int[]> previewFpsRangeList = camera.getParameters().getSupportedPreviewFpsRange();
-        for (int[] range : previewFpsRangeList) {
-            int deltaMin = desiredPreviewFpsScaled - range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
-            int deltaMax = desiredPreviewFpsScaled - range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
-            int diff = Math.abs(deltaMin) + Math.abs(deltaMax);
-            if (diff < minDiff) {
-                selectedFpsRange = range;
-                minDiff = diff;
-            }
-        }
-        return selectedFpsRange;
+    private static float clamp(float value) {
+        return Math.max(0, Math.min(1, value));
     }
 
     /**
-     * Calculates the correct rotation for the given camera id and sets the rotation in the
-     * parameters.  It also sets the camera's display orientation and rotation.
-     *
-     * @param parameters the camera parameters for which to set the rotation
-     * @param cameraId   the camera id to set rotation based on
+     * Returns the rotation of the default display in degrees.
      */
-    private void setRotation(Camera camera, Camera.Parameters parameters, int cameraId) {
+    static int getDisplayRotationDegrees(Context context) {
         WindowManager windowManager =
-                (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
+                (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         int degrees = 0;
         int rotation = windowManager.getDefaultDisplay().getRotation();
         switch (rotation) {
@@ -1000,70 +1243,27 @@ public class CameraSource {
             default:
                 Log.e(TAG, "Bad rotation value: " + rotation);
         }
-
-        CameraInfo cameraInfo = new CameraInfo();
-        Camera.getCameraInfo(cameraId, cameraInfo);
-
-        int angle;
-        int displayAngle;
-        if (cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-            angle = (cameraInfo.orientation + degrees) % 360;
-            displayAngle = (360 - angle) % 360; // compensate for it being mirrored
-        } else {  // back-facing
-            angle = (cameraInfo.orientation - degrees + 360) % 360;
-            displayAngle = angle;
-        }
-
-        // This corresponds to the rotation constants in {@link Frame}.
-        mRotation = angle / 90;
-
-        camera.setDisplayOrientation(displayAngle);
-        parameters.setRotation(angle);
+        return degrees;
     }
 
     /**
-     * Creates one buffer for the camera preview callback.  The size of the buffer is based off of
-     * the camera preview size and the format of the camera image.
+     * Returns the number of preview buffers needed when running the given number of detection
+     * workers with up to queueCapacity frames waiting:
      *
-     * @return a new preview buffer of the appropriate size for the current camera settings
+     *   two for the frames that the camera uses to populate future preview images
+     *   one for each frame waiting to be processed
+     *   one for each frame that is currently being executed upon in doing detection
+     *   with parallel detection, one for the frame the dispatcher holds while waiting for a worker
      */
-    private byte[] createPreviewBuffer(Size previewSize) {
-        int bitsPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.NV21);
-        long sizeInBits = previewSize.getHeight() * previewSize.getWidth() * bitsPerPixel;
-        int bufferSize = (int) Math.ceil(sizeInBits / 8.0d) + 1;
-
-        //
-        // NOTICE: This code only works when using play services v. 8.1 or higher.
-        //
-
-        // Creating the byte array this way and wrapping it, as opposed to using .allocate(),
-        // should guarantee that there will be an array to work with.
-        byte[] byteArray = new byte[bufferSize];
-        ByteBuffer buffer = ByteBuffer.wrap(byteArray);
-        if (!buffer.hasArray() || (buffer.array() != byteArray)) {
-            // I don't think that this will ever happen.  But if it does, then we wouldn't be
-            // passing the preview content to the underlying detector later.
-            throw new IllegalStateException("Failed to create valid buffer for camera source.");
-        }
-
-        mBytesToByteBuffer.put(byteArray, buffer);
-        return byteArray;
+    private static int getPreviewBufferCount(int workers, int queueCapacity) {
+        int count = CAMERA_BUFFER_COUNT + queueCapacity + workers;
+        return workers > 1 ? count + 1 : count;
     }
 
     //==============================================================================================
     // Frame processing
     //==============================================================================================
 
-    /**
-     * Called when the camera has a new preview frame.
-     */
-    private class CameraPreviewCallback implements Camera.PreviewCallback {
-        @Override
-        public void onPreviewFrame(byte[] data, Camera camera) {
-            mFrameProcessor.setNextFrame(data, camera);
-        }
-    }
-
     /**
      * This runnable controls access to the underlying receiver, calling it to process frames when
      * available from the camera.  This is designed to run detection on frames as fast as possible
@@ -1073,22 +1273,113 @@ public class CameraSource {
      * frames come in, the most recent frame is held onto as pending.  As soon as detection and its
      * associated processing are done for the previous frame, detection on the mostly recently
      * received frame will immediately start on the same thread.
+     * <p/>
+     * The camera callback thread is the only producer and the processing thread the only
+     * consumer.  Pending frames are handed over as ring slot indices through a {@link FrameQueue},
+     * and the frame metadata lives in per-slot arrays, so the callback thread never blocks on a
+     * monitor and never allocates.  The {@link FrameDropPolicy} decides on the callback thread
+     * which frames are queued at all, based on the measured frame interval and detection latency.
+     * If a {@link StaticSceneGate} or {@link SharpnessGate} is configured, the processing thread
+     * checks each frame it takes and returns unchanged or blurred frames to the camera before they
+     * reach the detector.
+     * <p/>
+     * With a {@link ParallelDetector}, the processing thread becomes a dispatcher: it hands each
+     * frame to the next idle {@link DetectionWorker} along with a sequence number, and the workers
+     * deliver their results to the detector's processor in sequence order.
      */
-    private class FrameProcessingRunnable implements Runnable {
+    private class FrameProcessingRunnable implements Runnable, FrameSource.FrameListener {
+        private static final int NO_FRAME = FrameQueue.NO_SLOT;
+
         private Detector<?> mDetector;
         private long mStartTimeMillis = SystemClock.elapsedRealtime();
 
-        // This lock guards all of the member variables below.
-        private final Object mLock = new Object();
-        private boolean mActive = true;
+        private volatile boolean mActive = true;
+        private volatile Thread mConsumerThread;
+
+        // The slots of the frames awaiting processing.
+        private final FrameDropPolicy mPolicy;
+        private final FrameQueue mQueue;
+
+        // Frame ID and timestamp of the frame held in each slot, written by the camera thread
+        // before the slot is published through mQueue.
+        private final int[] mSlotFrameIds;
+        private final long[] mSlotTimeMillis;
+        private int mNextFrameId = 0;
+
+        // Moving average of the time between camera frames.  Only touched by the camera thread.
+        private long mLastFrameNanos;
+        private long mFrameIntervalNanos;
+
+        // Only touched from the processing thread.
+        private final FrameCropper mCropper = new FrameCropper();
+        private final FrameGates mGates;
+
+        // Parallel detection state; mWorkers is null when detecting inline.
+        private final ParallelDetector<?> mParallelDetector;
+        private final DetectionWorker[] mWorkers;
+        private final Thread[] mWorkerThreads;
+
+        // Results waiting to be delivered in order, indexed by sequence number modulo the length.
+        // Guarded by mDeliveryLock, except that mDeliveredSequence may be read by the dispatcher.
+        private final Object mDeliveryLock = new Object();
+        private final Frame[] mResultFrames;
+        private final SparseArray<?>[] mResults;
+        private final boolean[] mResultReady;
+        private volatile long mDeliveredSequence;
+        private long mNextSequence;
+
+        FrameProcessingRunnable(Detector<?> detector, FrameDropPolicy policy) {
+            mDetector = detector;
+            mPolicy = policy;
+            mQueue = new FrameQueue(policy.getQueueCapacity(), policy.replacesWaitingFrame());
 
-        // These pending variables hold the state associated with the new frame awaiting processing.
-        private long mPendingTimeMillis;
-        private int mPendingFrameId = 0;
-        private ByteBuffer mPendingFrameData;
+            int workers = 1;
+            if (detector instanceof ParallelDetector) {
+                workers = ((ParallelDetector<?>) detector).getWorkerCount();
+            }
 
-        FrameProcessingRunnable(Detector<?> detector) {
-            mDetector = detector;
+            if (workers > 1) {
+                mParallelDetector = (ParallelDetector<?>) detector;
+                mWorkers = new DetectionWorker[workers];
+                mWorkerThreads = new Thread[workers];
+                for (int i = 0; i < workers; ++i) {
+                    mWorkers[i] = new DetectionWorker(i);
+                }
+
+                // A worker that finishes early can start on a later frame while an earlier one is
+                // still being detected, so allow twice as many results as workers to be in flight.
+                mResultFrames = new Frame[2 * workers];
+                mResults = new SparseArray<?>[2 * workers];
+                mResultReady = new boolean[2 * workers];
+            } else {
+                mParallelDetector = null;
+                mWorkers = null;
+                mWorkerThreads = null;
+                mResultFrames = null;
+                mResults = null;
+                mResultReady = null;
+            }
+
+            mSlotFrameIds = new int[getBufferCount()];
+            mSlotTimeMillis = new long[getBufferCount()];
+
+            mGates = new FrameGates(mSharpnessThreshold > 0
+                    ? new SharpnessGate(mSharpnessThreshold, mMaxSharpnessSkipRatio) : null,
+                    mStaticSceneThreshold > 0
+                            ? new StaticSceneGate(mStaticSceneThreshold,
+                                    mStaticSceneRefreshMillis * 1000000L) : null,
+                    mAutoTorch, mStats);
+        }
+
+        /**
+         * Returns the number of preview buffers this processor needs.
+         */
+        int getBufferCount() {
+            return getPreviewBufferCount(getWorkerCount(), mPolicy.getQueueCapacity());
+        }
+
+        private int getWorkerCount() {
+            return mWorkers == null ? 1 : mWorkers.length;
         }
 
         /**
@@ -1103,51 +1394,84 @@ public class CameraSource {
         }
 
         /**
-         * Marks the runnable as active/not active.  Signals any blocked threads to continue.
+         * Forgets any pending frame.  Called while the camera is (re)created, before any preview
+         * buffers are handed to it.
          */
-        void setActive(boolean active) {
-            synchronized (mLock) {
-                mActive = active;
-                mLock.notifyAll();
-            }
+        void reset() {
+            mQueue.clear();
+            mLastFrameNanos = 0;
+            mFrameIntervalNanos = 0;
+            mGates.reset();
         }
 
         /**
-         * Sets the frame data received from the camera.  This adds the previous unused frame buffer
-         * (if present) back to the camera, and keeps a pending reference to the frame data for
-         * future use.
+         * Marks the runnable as active/not active.  Wakes up the processing thread so that it
+         * notices the change.
          */
-        void setNextFrame(byte[] data, Camera camera) {
-            synchronized (mLock) {
-                if (mPendingFrameData != null) {
-                    camera.addCallbackBuffer(mPendingFrameData.array());
-                    mPendingFrameData = null;
-                }
+        void setActive(boolean active) {
+            mActive = active;
+            LockSupport.unpark(mConsumerThread);
+        }
 
-                if (!mBytesToByteBuffer.containsKey(data)) {
-                    Log.d(TAG,
-                        "Skipping frame.  Could not find ByteBuffer associated with the image " +
-                        "data from the camera.");
-                    return;
-                }
+        /**
+         * Takes a frame slot filled by the camera.  If the drop policy admits the frame, this
+         * queues it for future use and hands any frame that it displaced back to the camera.
+         * Otherwise the frame goes straight back to the camera.
+         */
+        @Override
+        public void onFrame(int slot) {
+            long callbackStart = System.nanoTime();
+            mStats.recordFrameArrival(callbackStart);
+            if (mFocusSettled) {
+                mStats.recordSharpFrameArrival(callbackStart);
+            }
+            FrameRecorder recorder = mFrameRecorder;
+            if (recorder != null) {
+                recorder.record(mSource.getFrameData(slot), mSource.getRowStride(slot),
+                        mPreviewSize.getWidth(), mPreviewSize.getHeight(), mRotation,
+                        mSource.hasChroma(), callbackStart);
+            }
+            if (mLastFrameNanos != 0) {
+                long interval = callbackStart - mLastFrameNanos;
+                mFrameIntervalNanos = mFrameIntervalNanos == 0
+                        ? interval : mFrameIntervalNanos + (interval - mFrameIntervalNanos) / 8;
+            }
+            mLastFrameNanos = callbackStart;
+
+            // Timestamp and frame ID are maintained here, which will give downstream code some
+            // idea of the timing of frames received and when frames were dropped along the way.
+            int frameId = ++mNextFrameId;
+
+            // With several workers, frames are completed that many times faster than the latency.
+            long latencyNanos = mStats.getAverageDetectionNanos() / getWorkerCount();
+            if (!mPolicy.admit(frameId, mQueue.size(), mFrameIntervalNanos, latencyNanos)) {
+                mSource.releaseFrame(slot);
+                mStats.recordDroppedFrame();
+                mStats.recordCallback(System.nanoTime() - callbackStart);
+                return;
+            }
 
-                // Timestamp and frame ID are maintained here, which will give downstream code some
-                // idea of the timing of frames received and when frames were dropped along the way.
-                mPendingTimeMillis = SystemClock.elapsedRealtime() - mStartTimeMillis;
-                mPendingFrameId++;
-                mPendingFrameData = mBytesToByteBuffer.get(data);
+            mSlotTimeMillis[slot] = SystemClock.elapsedRealtime() - mStartTimeMillis;
+            mSlotFrameIds[slot] = frameId;
 
-                // Notify the processor thread if it is waiting on the next frame (see below).
-                mLock.notifyAll();
+            int dropped = mQueue.offer(slot);
+            if (dropped != NO_FRAME) {
+                // Either the processor never got to the previous frame, or there is no room for
+                // this one.  Either way that frame goes straight back.
+                mSource.releaseFrame(dropped);
+                mStats.recordDroppedFrame();
             }
+
+            // Wake the processor thread if it is waiting on the next frame (see below).
+            LockSupport.unpark(mConsumerThread);
+            mStats.recordCallback(System.nanoTime() - callbackStart);
         }
 
         /**
          * As long as the processing thread is active, this executes detection on frames
          * continuously.  The next pending frame is either immediately available or hasn't been
-         * received yet.  Once it is available, we transfer the frame info to local variables and
-         * run detection on that frame.  It immediately loops back for the next frame without
-         * pausing.
+         * received yet.  Once it is available, we take ownership of its slot and run detection on
+         * that frame.  It immediately loops back for the next frame without pausing.
          * <p/>
          * If detection takes longer than the time in between new frames from the camera, this will
          * mean that this loop will run without ever waiting on a frame, avoiding any context
@@ -1158,56 +1482,332 @@ public class CameraSource {
          */
         @Override
         public void run() {
-            Frame outputFrame;
-            ByteBuffer data;
+            mConsumerThread = Thread.currentThread();
+            startWorkers();
+
+            while (mActive) {
+                int slot = mQueue.poll();
+                if (slot == NO_FRAME) {
+                    // Wait for the next frame to be received from the camera, since we don't have
+                    // it yet.  Spurious wake ups just go around the loop again.
+                    LockSupport.park(this);
+                    continue;
+                }
 
-            while (true) {
-                synchronized (mLock) {
-                    while (mActive && (mPendingFrameData == null)) {
-                        try {
-                            // Wait for the next frame to be received from the camera, since we
-                            // don't have it yet.
-                            mLock.wait();
-                        } catch (InterruptedException e) {
-                            Log.d(TAG, "Frame processing loop terminated.", e);
+                if (!shouldDetect(slot)) {
+                    mSource.releaseFrame(slot);
+                    continue;
+                }
+
+                if (mWorkers != null) {
+                    dispatch(slot);
+                    continue;
+                }
+
+                // The slot is now owned by this thread, so the camera can't be handed this buffer
+                // again until we are done using that data.
+                try {
+                    Frame outputFrame = buildFrame(mCropper, slot);
+                    long detectionStart = System.nanoTime();
+                    mDetector.receiveFrame(outputFrame);
+                    mStats.recordDetection(System.nanoTime() - detectionStart);
+                    checkFocusStall();
+                    checkAutoZoom();
+                } catch (Throwable t) {
+                    Log.e(TAG, "Exception thrown from receiver.", t);
+                } finally {
+                    mSource.releaseFrame(slot);
+                }
+            }
+
+            // Exit the loop once this camera source is stopped or released.
+            stopWorkers();
+            mConsumerThread = null;
+        }
+
+        /**
+         * Sweeps auto focus over the viewfinder if the detector has stalled.  The sweep is posted
+         * to the main thread, since {@link #stop()} holds the camera lock while it waits for the
+         * detection threads.
+         */
+        private void checkFocusStall() {
+            if ((mFocusWatchdog != null) && (mCamera != null)
+                    && mFocusWatchdog.shouldRefocus(System.nanoTime())) {
+                mMainHandler.post(mRefocus);
+            }
+        }
+
+        /**
+         * Has the main thread switch the torch if auto torch called for it on the last frame
+         * that went through the gates.
+         */
+        private void checkAutoTorch() {
+            int decision = mGates.getTorchDecision();
+            if (decision != AutoTorch.NO_CHANGE) {
+                mTorchTarget = decision == AutoTorch.TURN_ON;
+                if (!mTorchPending.getAndSet(true)) {
+                    mMainHandler.post(mApplyTorch);
+                }
+            }
+        }
+
+        /**
+         * Zooms back out if auto zoom hasn't seen an unread barcode for a while.
+         */
+        private void checkAutoZoom() {
+            if ((mAutoZoom != null) && (mCamera != null)) {
+                requestZoomRatio(mAutoZoom.onDetectorPass(System.nanoTime()));
+            }
+        }
+
+        /**
+         * Runs the configured pre-detection gates on the part of the frame in the given slot that
+         * the detector would see.  Returns false if the frame should go straight back to the
+         * camera, either because the scene hasn't changed or because the frame is too blurry.
+         */
+        private boolean shouldDetect(int slot) {
+            if (mGates.isEmpty()) {
+                return true;
+            }
+
+            ByteBuffer data = mSource.getFrameData(slot);
+            int rowStride = mSource.getRowStride(slot);
+            int width = mPreviewSize.getWidth();
+            int height = mPreviewSize.getHeight();
+            int left = 0;
+            int top = 0;
+            int regionWidth = width;
+            int regionHeight = height;
+            if (mCropToViewFinder && mCropper.update(mViewFinderVersion, width, height, mRotation,
+                    mViewFinderLeft, mViewFinderTop, mViewFinderRight, mViewFinderBottom)) {
+                left = mCropper.getLeft();
+                top = mCropper.getTop();
+                regionWidth = mCropper.getWidth();
+                regionHeight = mCropper.getHeight();
+            }
+
+            boolean detect = mGates.accept(data, rowStride, left, top, regionWidth, regionHeight,
+                    System.nanoTime());
+            checkAutoTorch();
+            return detect;
+        }
+
+        /**
+         * Builds the frame to send to the detector from the given slot, cropping it to the
+         * viewfinder region if requested.  Uncropped frames are handed over in place, unless
+         * their rows are padded, in which case they are packed through the cropper.
+         */
+        private Frame buildFrame(FrameCropper cropper, int slot) {
+            int width = mPreviewSize.getWidth();
+            int height = mPreviewSize.getHeight();
+            ByteBuffer data = mSource.getFrameData(slot);
+            int rowStride = mSource.getRowStride(slot);
+            Frame.Builder builder = new Frame.Builder()
+                    .setId(mSlotFrameIds[slot])
+                    .setTimestampMillis(mSlotTimeMillis[slot])
+                    .setRotation(mRotation);
+
+            boolean crop = mCropToViewFinder && cropper.update(mViewFinderVersion, width, height,
+                    mRotation, mViewFinderLeft, mViewFinderTop, mViewFinderRight,
+                    mViewFinderBottom);
+            if (!crop && (rowStride != width)) {
+                crop = cropper.update(FrameCropper.FULL_FRAME, width, height, 0, 0, 0, 1, 1);
+            }
+
+            if (crop) {
+                long cropStart = System.nanoTime();
+                ByteBuffer cropped = cropper.crop(data, rowStride, mSource.hasChroma());
+                mStats.recordCrop(System.nanoTime() - cropStart);
+                return builder
+                        .setImageData(cropped, cropper.getWidth(), cropper.getHeight(),
+                                ImageFormat.NV21)
+                        .build();
+            }
+
+            return builder
+                    .setImageData(data, width, height, ImageFormat.NV21)
+                    .build();
+        }
+
+        //==========================================================================================
+        // Parallel detection
+        //==========================================================================================
+
+        private void startWorkers() {
+            if (mWorkers == null) {
+                return;
+            }
+
+            synchronized (mDeliveryLock) {
+                for (int i = 0; i < mResultReady.length; ++i) {
+                    mResultFrames[i] = null;
+                    mResults[i] = null;
+                    mResultReady[i] = false;
+                }
+                mNextSequence = 0;
+                mDeliveredSequence = 0;
+            }
+
+            for (int i = 0; i < mWorkers.length; ++i) {
+                mWorkers[i].mActive = true;
+                mWorkerThreads[i] = new Thread(mWorkers[i]);
+                mWorkerThreads[i].start();
+            }
+        }
+
+        private void stopWorkers() {
+            if (mWorkers == null) {
+                return;
+            }
+
+            for (int i = 0; i < mWorkers.length; ++i) {
+                mWorkers[i].mActive = false;
+                LockSupport.unpark(mWorkerThreads[i]);
+            }
+            for (int i = 0; i < mWorkers.length; ++i) {
+                try {
+                    mWorkerThreads[i].join();
+                } catch (InterruptedException e) {
+                    Log.d(TAG, "Detection worker interrupted on release.");
+                }
+                mWorkerThreads[i] = null;
+            }
+        }
+
+        /**
+         * Hands the frame in the given slot to the next idle worker, waiting for one if they are
+         * all busy.  The frame goes back to the camera if the camera source is stopped meanwhile.
+         */
+        private void dispatch(int slot) {
+            while (mActive) {
+                // Don't get further ahead of the in-order delivery than the results can hold.
+                if (mNextSequence - mDeliveredSequence < mResultReady.length) {
+                    for (DetectionWorker worker : mWorkers) {
+                        if (worker.assign(slot, mNextSequence)) {
+                            mNextSequence++;
                             return;
                         }
                     }
+                }
+                LockSupport.park(this);
+            }
+            mSource.releaseFrame(slot);
+        }
+
+        /**
+         * Stores the result of a worker and delivers every result that is next in sequence.
+         * Results are delivered while holding the delivery lock, so the processor only ever sees
+         * one frame at a time and always in order.
+         */
+        @SuppressWarnings("unchecked")
+        private void complete(long sequence, Frame frame, SparseArray<?> detections) {
+            synchronized (mDeliveryLock) {
+                int index = (int) (sequence % mResultReady.length);
+                mResultFrames[index] = frame;
+                mResults[index] = detections;
+                mResultReady[index] = true;
+
+                while (true) {
+                    index = (int) (mDeliveredSequence % mResultReady.length);
+                    if (!mResultReady[index]) {
+                        break;
+                    }
+
+                    Frame readyFrame = mResultFrames[index];
+                    SparseArray<?> readyDetections = mResults[index];
+                    mResultFrames[index] = null;
+                    mResults[index] = null;
+                    mResultReady[index] = false;
 
-                    if (!mActive) {
-                        // Exit the loop once this camera source is stopped or released.  We check
-                        // this here, immediately after the wait() above, to handle the case where
-                        // setActive(false) had been called, triggering the termination of this
-                        // loop.
-                        return;
+                    // A frame whose detection failed is skipped, just like a dropped frame.
+                    if (readyDetections != null) {
+                        try {
+                            ((ParallelDetector<Object>) mParallelDetector).deliver(readyFrame,
+                                    (SparseArray<Object>) readyDetections);
+                        } catch (Throwable t) {
+                            Log.e(TAG, "Exception thrown from receiver.", t);
+                        }
                     }
+                    mDeliveredSequence++;
+                }
+            }
+
+            // The dispatcher may be waiting for delivery to catch up.
+            LockSupport.unpark(mConsumerThread);
+        }
+
+        /**
+         * Runs detection for frames handed over by the dispatcher on its own thread, using its
+         * own detector and crop buffer.
+         */
+        private class DetectionWorker implements Runnable {
+            private final int mIndex;
+            private final FrameCropper mWorkerCropper = new FrameCropper();
+            private final AtomicInteger mAssignedSlot = new AtomicInteger(NO_FRAME);
+            private volatile long mSequence;
+            private volatile boolean mActive;
+            private volatile Thread mThread;
+
+            DetectionWorker(int index) {
+                mIndex = index;
+            }
 
-                    outputFrame = new Frame.Builder()
-                            .setImageData(mPendingFrameData, mPreviewSize.getWidth(),
-                                    mPreviewSize.getHeight(), ImageFormat.NV21)
-                            .setId(mPendingFrameId)
-                            .setTimestampMillis(mPendingTimeMillis)
-                            .setRotation(mRotation)
-                            .build();
-
-                    // Hold onto the frame data locally, so that we can use this for detection
-                    // below.  We need to clear mPendingFrameData to ensure that this buffer isn't
-                    // recycled back to the camera before we are done using that data.
-                    data = mPendingFrameData;
-                    mPendingFrameData = null;
+            /**
+             * Hands a frame to this worker if it is idle.  Only called by the dispatcher.
+             */
+            boolean assign(int slot, long sequence) {
+                if (mAssignedSlot.get() != NO_FRAME) {
+                    return false;
                 }
+                mSequence = sequence;
+                mAssignedSlot.set(slot);
+                LockSupport.unpark(mThread);
+                return true;
+            }
 
-                // The code below needs to run outside of synchronization, because this will allow
-                // the camera to add pending frame(s) while we are running detection on the current
-                // frame.
+            @Override
+            public void run() {
+                mThread = Thread.currentThread();
 
-                try {
-                    mDetector.receiveFrame(outputFrame);
-                } catch (Throwable t) {
-                    Log.e(TAG, "Exception thrown from receiver.", t);
-                } finally {
-                    mCamera.addCallbackBuffer(data.array());
+                while (mActive) {
+                    int slot = mAssignedSlot.get();
+                    if (slot == NO_FRAME) {
+                        LockSupport.park(this);
+                        continue;
+                    }
+
+                    long sequence = mSequence;
+                    Frame frame = null;
+                    SparseArray<?> detections = null;
+                    try {
+                        frame = buildFrame(mWorkerCropper, slot);
+                        long detectionStart = System.nanoTime();
+                        detections = mParallelDetector.detect(mIndex, frame);
+                        mStats.recordDetection(System.nanoTime() - detectionStart);
+                        checkFocusStall();
+                        checkAutoZoom();
+                    } catch (Throwable t) {
+                        Log.e(TAG, "Exception thrown from detector.", t);
+                    } finally {
+                        mSource.releaseFrame(slot);
+                    }
+
+                    // The frame's image is no longer valid: it wraps either the slot's buffer,
+                    // which just went back to the camera, or this worker's crop buffer, which the
+                    // next frame overwrites.  Delivery only reads the frame's metadata, as the
+                    // detections are precomputed and the processor is only given the metadata,
+                    // so this worker is free to take the next frame before its results are
+                    // delivered.
+                    mAssignedSlot.set(NO_FRAME);
+                    complete(sequence, frame, detections);
+                }
+
+                // A frame assigned just before stopping has to go back to the camera.
+                int slot = mAssignedSlot.getAndSet(NO_FRAME);
+                if (slot != NO_FRAME) {
+                    mSource.releaseFrame(slot);
                 }
+                mThread = null;
             }
         }
     }
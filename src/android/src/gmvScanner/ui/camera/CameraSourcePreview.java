@@ -19,6 +19,7 @@ import android.Manifest;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.graphics.Color;
+import android.graphics.Rect;
 import android.hardware.Camera;
 import android.support.annotation.RequiresPermission;
 import android.util.AttributeSet;
@@ -51,6 +52,12 @@ public class CameraSourcePreview extends ViewGroup {
 
     private GraphicOverlay mOverlay;
 
+    // The viewfinder region in normalized coordinates of the displayed preview surface.
+    private float mViewFinderLeft = 0;
+    private float mViewFinderTop = 0;
+    private float mViewFinderRight = 1;
+    private float mViewFinderBottom = 1;
+
     public CameraSourcePreview(Context context, AttributeSet attrs) {
         super(context, attrs);
         mContext = context;
@@ -76,9 +83,10 @@ public class CameraSourcePreview extends ViewGroup {
             @Override
             public void onClick(View v) {
                 try {
+                        // Switching by hand also stops auto torch for the rest of the scan.
                         mCameraSource.setFlashMode(!mFlashState?Camera.Parameters.FLASH_MODE_TORCH :Camera.Parameters.FLASH_MODE_OFF);
                         mFlashState = !mFlashState;
-                        mTorchButton.setBackgroundResource(getResources().getIdentifier(mFlashState ? "torch_active" : "torch_inactive", "drawable", mContext.getPackageName()));
+                        updateTorchButton();
                 } catch(Exception e) {
 
                 }
@@ -87,6 +95,10 @@ public class CameraSourcePreview extends ViewGroup {
         addView(mTorchButton);
     }
 
+    private void updateTorchButton() {
+        mTorchButton.setBackgroundResource(getResources().getIdentifier(mFlashState ? "torch_active" : "torch_inactive", "drawable", mContext.getPackageName()));
+    }
+
     public int dpToPx(int dp) {
         float density = mContext.getResources()
                 .getDisplayMetrics()
@@ -103,6 +115,14 @@ public class CameraSourcePreview extends ViewGroup {
         mCameraSource = cameraSource;
 
         if (mCameraSource != null) {
+            // Keep the torch button in step when auto torch switches the torch.
+            mCameraSource.setTorchCallback(new CameraSource.TorchCallback() {
+                @Override
+                public void onTorchChanged(boolean on) {
+                    mFlashState = on;
+                    updateTorchButton();
+                }
+            });
             mStartRequested = true;
             startIfReady();
         }
@@ -131,6 +151,10 @@ public class CameraSourcePreview extends ViewGroup {
     private void startIfReady() throws IOException, SecurityException {
         if (mStartRequested && mSurfaceAvailable) {
             mCameraSource.start(mSurfaceView.getHolder());
+            mCameraSource.setViewFinderRegion(mViewFinderLeft, mViewFinderTop,
+                    mViewFinderRight, mViewFinderBottom);
+            mFlashState = Camera.Parameters.FLASH_MODE_TORCH.equals(mCameraSource.getFlashMode());
+            updateTorchButton();
             if (mOverlay != null) {
                 Size size = mCameraSource.getPreviewSize();
                 int min = Math.min(size.getWidth(), size.getHeight());
@@ -142,6 +166,7 @@ public class CameraSourcePreview extends ViewGroup {
                 } else {
                     mOverlay.setCameraInfo(max, min, mCameraSource.getCameraFacing());
                 }
+                updateDetectionOffset();
                 mOverlay.clear();
             }
             mStartRequested = false;
@@ -212,11 +237,39 @@ public class CameraSourcePreview extends ViewGroup {
 
         mSurfaceView.layout(leftOffset, topOffset, childWidth, childHeight);
 
+        // The graphic overlay, and any other view added to the preview, covers the preview
+        // surface, so that graphics scaled from preview coordinates land on the barcodes.
+        for (int i = 0; i < getChildCount(); ++i) {
+            View child = getChildAt(i);
+            if ((child != mSurfaceView) && (child != mViewFinderView) && (child != mTorchButton)) {
+                child.layout(leftOffset, topOffset, childWidth, childHeight);
+            }
+        }
+
 
         int actualWidth = (int) (layoutWidth*ViewFinderWidth);
         int actualHeight = (int) (layoutHeight*ViewFinderHeight);
 
-        mViewFinderView.layout(layoutWidth/2 -actualWidth/2,layoutHeight/2 - actualHeight/2, layoutWidth/2 + actualWidth/2, layoutHeight/2 + actualHeight/2);
+        int viewFinderLeft = layoutWidth/2 - actualWidth/2;
+        int viewFinderTop = layoutHeight/2 - actualHeight/2;
+        int viewFinderRight = layoutWidth/2 + actualWidth/2;
+        int viewFinderBottom = layoutHeight/2 + actualHeight/2;
+
+        mViewFinderView.layout(viewFinderLeft, viewFinderTop, viewFinderRight, viewFinderBottom);
+
+        // Express the viewfinder relative to the preview surface, which is what the camera frames
+        // are scaled to fill, so the camera source can crop frames down to what is in the box.
+        float surfaceWidth = Math.max(1, childWidth - leftOffset);
+        float surfaceHeight = Math.max(1, childHeight - topOffset);
+        mViewFinderLeft = (viewFinderLeft - leftOffset) / surfaceWidth;
+        mViewFinderTop = (viewFinderTop - topOffset) / surfaceHeight;
+        mViewFinderRight = (viewFinderRight - leftOffset) / surfaceWidth;
+        mViewFinderBottom = (viewFinderBottom - topOffset) / surfaceHeight;
+        if (mCameraSource != null) {
+            mCameraSource.setViewFinderRegion(mViewFinderLeft, mViewFinderTop,
+                    mViewFinderRight, mViewFinderBottom);
+            updateDetectionOffset();
+        }
 
         int buttonSize = dpToPx(45);
         int torchLeft = (int) layoutWidth/2 + actualWidth/2 + (layoutWidth - (layoutWidth/2 + actualWidth/2))/2 - buttonSize/2;
@@ -233,6 +286,20 @@ public class CameraSourcePreview extends ViewGroup {
         }
     }
 
+    /**
+     * Has the overlay draw detections where they are in the preview, as the detector may only
+     * see the part of it inside the viewfinder.
+     */
+    private void updateDetectionOffset() {
+        if ((mOverlay == null) || (mCameraSource == null)) {
+            return;
+        }
+        Rect region = mCameraSource.getDetectionRegion();
+        if (region != null) {
+            mOverlay.setDetectionOffset(region.left, region.top);
+        }
+    }
+
     private boolean isPortraitMode() {
         int orientation = mContext.getResources().getConfiguration().orientation;
         if (orientation == Configuration.ORIENTATION_LANDSCAPE) {
@@ -0,0 +1,60 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when to re-trigger auto focus because detection has stalled.  Continuous auto focus
+ * settles on whatever dominates the scene, which is often the background rather than the label
+ * in the viewfinder, and it doesn't search again once it considers the scene focused.  When the
+ * detector hasn't found anything for the stall interval, a single focus sweep on the viewfinder
+ * usually gets it back.
+ * <p/>
+ * Detector passes may be reported from several detection threads at once; at most one of them
+ * is told to refocus per stall interval.
+ */
+final class FocusWatchdog {
+    private final long mStallNanos;
+
+    // The last detection, or the last time the watch was restarted, and the last refocus.
+    private volatile long mLastDetectionNanos;
+    private final AtomicLong mLastRefocusNanos = new AtomicLong();
+
+    /**
+     * @param stallMillis how long the detector may go without finding anything before focus is
+     *                    re-triggered, and how long to wait between refocusing
+     */
+    FocusWatchdog(int stallMillis) {
+        if (stallMillis <= 0) {
+            throw new IllegalArgumentException("Invalid stall interval: " + stallMillis);
+        }
+        mStallNanos = stallMillis * 1000000L;
+    }
+
+    /**
+     * Starts watching afresh, for example when the camera is opened, as a {@link
+     * System#nanoTime()} timestamp.
+     */
+    void reset(long nanos) {
+        mLastDetectionNanos = nanos;
+        mLastRefocusNanos.set(nanos);
+    }
+
+    /**
+     * Notes that the detector found something.
+     */
+    void markDetected(long nanos) {
+        mLastDetectionNanos = nanos;
+    }
+
+    /**
+     * Called after every detector pass.  Returns true if focus should be re-triggered now, in
+     * which case the next refocus is held off for another stall interval.
+     */
+    boolean shouldRefocus(long nanos) {
+        long lastRefocus = mLastRefocusNanos.get();
+        if ((nanos - mLastDetectionNanos < mStallNanos) || (nanos - lastRefocus < mStallNanos)) {
+            return false;
+        }
+        return mLastRefocusNanos.compareAndSet(lastRefocus, nanos);
+    }
+}
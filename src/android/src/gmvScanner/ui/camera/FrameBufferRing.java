@@ -0,0 +1,67 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ring of preallocated frame buffers, indexed by slot.  The byte arrays are what a frame source
+ * fills, and the byte buffers wrap the same arrays because this is a more efficient way to call
+ * into native code later (avoids a potential copy).
+ */
+final class FrameBufferRing {
+    private final byte[][] mData;
+    private final ByteBuffer[] mBuffers;
+
+    /**
+     * Allocates count buffers of size bytes each.
+     */
+    FrameBufferRing(int count, int size) {
+        mData = new byte[count][];
+        mBuffers = new ByteBuffer[count];
+        for (int i = 0; i < count; ++i) {
+            // Creating the byte array this way and wrapping it, as opposed to using .allocate(),
+            // should guarantee that there will be an array to work with.
+            byte[] byteArray = new byte[size];
+            ByteBuffer buffer = ByteBuffer.wrap(byteArray);
+            if (!buffer.hasArray() || (buffer.array() != byteArray)) {
+                // I don't think that this will ever happen.  But if it does, then we wouldn't be
+                // passing the preview content to the underlying detector later.
+                throw new IllegalStateException("Failed to create valid buffer for camera source.");
+            }
+            mData[i] = byteArray;
+            mBuffers[i] = buffer;
+        }
+    }
+
+    /**
+     * Returns true if this ring holds count buffers of size bytes, so that it can be reused.
+     */
+    boolean matches(int count, int size) {
+        return (mData.length == count) && ((count == 0) || (mData[0].length == size));
+    }
+
+    int getSlotCount() {
+        return mData.length;
+    }
+
+    byte[] getData(int slot) {
+        return mData[slot];
+    }
+
+    ByteBuffer getBuffer(int slot) {
+        return mBuffers[slot];
+    }
+
+    /**
+     * Returns the slot of a buffer handed back by a frame source, or -1 if it isn't one of ours.
+     * The ring is tiny, so a scan by identity is cheaper than hashing the array.
+     */
+    int slotOf(byte[] data) {
+        byte[][] buffers = mData;
+        for (int i = 0; i < buffers.length; ++i) {
+            if (buffers[i] == data) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,188 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Crops preview frames down to the region of the image that is visible inside the on-screen
+ * viewfinder, so that the detector only has to look at the pixels the user is aiming at.
+ * <p/>
+ * The region is supplied in normalized display coordinates (0..1, as the user sees the preview)
+ * and is mapped into preview image coordinates using the frame rotation.  The crop buffer is
+ * allocated once per crop size and reused for every frame, so an instance must only be used from
+ * a single processing thread.
+ * <p/>
+ * The same mechanism packs frames with padded rows into the tightly packed layout the detector
+ * expects, by cropping them to the full frame (see {@link #FULL_FRAME}).  For frames that only
+ * carry a luma plane, the chroma part of the crop buffer is filled with neutral grey once.
+ */
+final class FrameCropper {
+    // Regions smaller than this (in preview pixels) are not worth cropping to.
+    private static final int MIN_CROP_SIZE = 32;
+
+    /**
+     * Region version for cropping to the full frame, to pack frames with padded rows.
+     */
+    static final int FULL_FRAME = -2;
+
+    // Value of a chroma sample that carries no colour.
+    private static final byte NEUTRAL_CHROMA = (byte) 128;
+
+    private int mVersion = -1;
+    private boolean mValid;
+
+    private int mFrameWidth;
+    private int mFrameHeight;
+    private int mRotation;
+
+    private int mLeft;
+    private int mTop;
+    private int mWidth;
+    private int mHeight;
+
+    private final float[] mImageRegion = new float[4];
+    private final int[] mCrop = new int[4];
+
+    private byte[] mCropData;
+    private ByteBuffer mCropBuffer;
+    private boolean mNeutralChroma;
+
+    /**
+     * Maps the supplied display region onto a frame of the given size and rotation, unless the
+     * same region version has already been mapped for that frame geometry.  Returns false if the
+     * region does not describe a usable crop, in which case full frames should be used instead.
+     *
+     * @param version  a counter that changes whenever the region changes
+     * @param rotation one of the {@link com.google.android.gms.vision.Frame} rotation constants
+     */
+    boolean update(int version, int frameWidth, int frameHeight, int rotation,
+                   float left, float top, float right, float bottom) {
+        if ((version != mVersion) || (frameWidth != mFrameWidth)
+                || (frameHeight != mFrameHeight) || (rotation != mRotation)) {
+            mVersion = version;
+            mValid = setRegion(frameWidth, frameHeight, rotation, left, top, right, bottom);
+        }
+        return mValid;
+    }
+
+    /**
+     * Maps the supplied display region onto a frame of the given size and rotation.  Returns
+     * false if the region does not describe a usable crop.
+     */
+    boolean setRegion(int frameWidth, int frameHeight, int rotation,
+                      float left, float top, float right, float bottom) {
+        toImageRegion(rotation, left, top, right, bottom, mImageRegion);
+        mFrameWidth = frameWidth;
+        mFrameHeight = frameHeight;
+        mRotation = rotation;
+        if (!toCrop(frameWidth, frameHeight, mImageRegion, mCrop)) {
+            return false;
+        }
+
+        mLeft = mCrop[0];
+        mTop = mCrop[1];
+        mWidth = mCrop[2] - mCrop[0];
+        mHeight = mCrop[3] - mCrop[1];
+
+        int size = Nv21Utils.bufferSize(mWidth, mHeight);
+        if ((mCropData == null) || (mCropData.length < size)) {
+            mCropData = new byte[size];
+            mCropBuffer = ByteBuffer.wrap(mCropData);
+        }
+        mNeutralChroma = false;
+        return true;
+    }
+
+    /**
+     * Maps a region in normalized display coordinates to normalized image coordinates (0..1,
+     * relative to the frame as the camera delivers it), stored in out as left, top, right and
+     * bottom.
+     *
+     * @param rotation one of the {@link com.google.android.gms.vision.Frame} rotation constants
+     */
+    static void toImageRegion(int rotation, float left, float top, float right, float bottom,
+                              float[] out) {
+        // The preview is displayed rotated clockwise by rotation * 90 degrees, so undo that to get
+        // from display coordinates back to image coordinates.
+        switch (rotation) {
+            case 1:
+                out[0] = top;
+                out[1] = 1 - right;
+                out[2] = bottom;
+                out[3] = 1 - left;
+                break;
+            case 2:
+                out[0] = 1 - right;
+                out[1] = 1 - bottom;
+                out[2] = 1 - left;
+                out[3] = 1 - top;
+                break;
+            case 3:
+                out[0] = 1 - bottom;
+                out[1] = left;
+                out[2] = 1 - top;
+                out[3] = right;
+                break;
+            default:
+                out[0] = left;
+                out[1] = top;
+                out[2] = right;
+                out[3] = bottom;
+                break;
+        }
+    }
+
+    /**
+     * Maps a region in normalized image coordinates, as made by {@link #toImageRegion}, onto a
+     * frame of the given size, stored in out as the left, top, right and bottom of the crop in
+     * image pixels.  Returns false if the region does not describe a usable crop.  This is the
+     * crop that {@link #setRegion} uses.
+     */
+    static boolean toCrop(int frameWidth, int frameHeight, float[] imageRegion, int[] out) {
+        // Clamp to the frame and round down to even values so that the chroma samples line up.
+        out[0] = clamp((int) (imageRegion[0] * frameWidth), frameWidth) & ~1;
+        out[1] = clamp((int) (imageRegion[1] * frameHeight), frameHeight) & ~1;
+        out[2] = clamp((int) (imageRegion[2] * frameWidth), frameWidth) & ~1;
+        out[3] = clamp((int) (imageRegion[3] * frameHeight), frameHeight) & ~1;
+        return (out[2] - out[0] >= MIN_CROP_SIZE) && (out[3] - out[1] >= MIN_CROP_SIZE);
+    }
+
+    /**
+     * Copies the region out of the supplied frame into the reusable crop buffer, as a tightly
+     * packed NV21 image.  The returned buffer is only valid until the next call.
+     *
+     * @param rowStride the distance between the starts of consecutive luma rows of the frame
+     * @param hasChroma whether the frame is a complete NV21 image rather than just a luma plane
+     */
+    ByteBuffer crop(ByteBuffer frame, int rowStride, boolean hasChroma) {
+        Nv21Utils.crop(frame, rowStride, mFrameHeight, hasChroma, mLeft, mTop, mWidth, mHeight,
+                mCropData);
+        if (hasChroma) {
+            mNeutralChroma = false;
+        } else if (!mNeutralChroma) {
+            Arrays.fill(mCropData, mWidth * mHeight, mCropData.length, NEUTRAL_CHROMA);
+            mNeutralChroma = true;
+        }
+        return mCropBuffer;
+    }
+
+    int getLeft() {
+        return mLeft;
+    }
+
+    int getTop() {
+        return mTop;
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(value, max));
+    }
+}
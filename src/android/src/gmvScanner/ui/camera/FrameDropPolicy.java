@@ -0,0 +1,138 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+/**
+ * Decides which preview frames a {@link CameraSource} queues up for detection and which go
+ * straight back to the camera.  Policies are driven by a moving average of the detection latency,
+ * so that the pipeline settles at the frame rate that the device can actually sustain instead of
+ * filling buffers with frames that will never be decoded.
+ * <p/>
+ * {@link #admit(long, int, long, long)} is called on the camera callback thread for every frame
+ * and must not block or allocate.
+ */
+public abstract class FrameDropPolicy {
+
+    /**
+     * Keeps only the most recent frame.  A frame that arrives while another is still waiting
+     * replaces it.  This is the default.
+     */
+    public static FrameDropPolicy latestOnly() {
+        return new LatestOnly();
+    }
+
+    /**
+     * Queues up to the given number of frames in arrival order.  Frames that arrive while the queue
+     * is full are dropped.  When detection is slower than the camera, the queue depth is reduced so
+     * that a queued frame waits no longer than about capacity frame intervals.
+     */
+    public static FrameDropPolicy boundedQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid queue capacity: " + capacity);
+        }
+        return new BoundedQueue(capacity);
+    }
+
+    /**
+     * Processes at most one in every n frames.  When detection takes longer than n frame
+     * intervals, the stride is raised automatically to match the detection rate.
+     */
+    public static FrameDropPolicy everyNth(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Invalid frame stride: " + n);
+        }
+        return new EveryNth(n);
+    }
+
+    /**
+     * Returns the maximum number of frames waiting for detection at any time.
+     */
+    abstract int getQueueCapacity();
+
+    /**
+     * Returns true if a newly admitted frame replaces a waiting one when the queue is full, or
+     * false if the new frame is dropped instead.
+     */
+    abstract boolean replacesWaitingFrame();
+
+    /**
+     * Returns true if the frame should be queued for detection.
+     *
+     * @param frameNumber        a counter that increases by one for every camera frame
+     * @param queued             the number of frames currently waiting for detection
+     * @param frameIntervalNanos the average time between camera frames, or 0 if not yet known
+     * @param latencyNanos       the average detection time per frame, or 0 if not yet known
+     */
+    abstract boolean admit(long frameNumber, int queued, long frameIntervalNanos,
+                           long latencyNanos);
+
+    private static class LatestOnly extends FrameDropPolicy {
+        @Override
+        int getQueueCapacity() {
+            return 1;
+        }
+
+        @Override
+        boolean replacesWaitingFrame() {
+            return true;
+        }
+
+        @Override
+        boolean admit(long frameNumber, int queued, long frameIntervalNanos, long latencyNanos) {
+            return true;
+        }
+    }
+
+    private static class BoundedQueue extends FrameDropPolicy {
+        private final int mCapacity;
+
+        BoundedQueue(int capacity) {
+            mCapacity = capacity;
+        }
+
+        @Override
+        int getQueueCapacity() {
+            return mCapacity;
+        }
+
+        @Override
+        boolean replacesWaitingFrame() {
+            return false;
+        }
+
+        @Override
+        boolean admit(long frameNumber, int queued, long frameIntervalNanos, long latencyNanos) {
+            int depth = mCapacity;
+            if ((frameIntervalNanos > 0) && (latencyNanos > frameIntervalNanos)) {
+                depth = (int) Math.max(1, (mCapacity * frameIntervalNanos) / latencyNanos);
+            }
+            return queued < depth;
+        }
+    }
+
+    private static class EveryNth extends FrameDropPolicy {
+        private final int mStride;
+
+        EveryNth(int stride) {
+            mStride = stride;
+        }
+
+        @Override
+        int getQueueCapacity() {
+            return 1;
+        }
+
+        @Override
+        boolean replacesWaitingFrame() {
+            return true;
+        }
+
+        @Override
+        boolean admit(long frameNumber, int queued, long frameIntervalNanos, long latencyNanos) {
+            long stride = mStride;
+            if (frameIntervalNanos > 0) {
+                stride = Math.max(stride,
+                        (latencyNanos + frameIntervalNanos - 1) / frameIntervalNanos);
+            }
+            return frameNumber % stride == 0;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The checks a frame goes through on the processing thread before detection, on the part of the
+ * frame that the detector would see.  Auto torch measures its brightness first, so that it keeps
+ * following the scene while the gates skip frames.  Then the static scene gate skips frames
+ * showing an unchanged scene, and the sharpness gate skips blurred ones.  Each check is optional,
+ * and the outcome of each is recorded in the pipeline stats.
+ * <p/>
+ * Instances are not thread safe and must only be used from the frame processing thread.
+ */
+final class FrameGates {
+    private final SharpnessGate mSharpnessGate;
+    private final StaticSceneGate mStaticSceneGate;
+    private final AutoTorch mAutoTorch;
+    private final PipelineStats mStats;
+
+    private int mTorchDecision = AutoTorch.NO_CHANGE;
+
+    /**
+     * @param sharpnessGate   the sharpness gate, or null
+     * @param staticSceneGate the static scene gate, or null
+     * @param autoTorch       auto torch, or null
+     */
+    FrameGates(SharpnessGate sharpnessGate, StaticSceneGate staticSceneGate,
+               AutoTorch autoTorch, PipelineStats stats) {
+        mSharpnessGate = sharpnessGate;
+        mStaticSceneGate = staticSceneGate;
+        mAutoTorch = autoTorch;
+        mStats = stats;
+    }
+
+    /**
+     * Returns true if there is nothing to check, so every frame goes on to detection.
+     */
+    boolean isEmpty() {
+        return (mSharpnessGate == null) && (mStaticSceneGate == null) && (mAutoTorch == null);
+    }
+
+    /**
+     * Forgets the frames seen so far, for example when the camera is reopened.  Auto torch is
+     * reset along with the camera settings instead.
+     */
+    void reset() {
+        if (mSharpnessGate != null) {
+            mSharpnessGate.reset();
+        }
+        if (mStaticSceneGate != null) {
+            mStaticSceneGate.reset();
+        }
+        mTorchDecision = AutoTorch.NO_CHANGE;
+    }
+
+    /**
+     * Runs the checks on the region of the frame and returns true if it should go on to
+     * detection.  Afterwards {@link #getTorchDecision()} tells whether to switch the torch.
+     */
+    boolean accept(ByteBuffer frame, int rowStride, int left, int top, int width, int height,
+                   long nowNanos) {
+        mTorchDecision = AutoTorch.NO_CHANGE;
+        if (mAutoTorch != null) {
+            mTorchDecision = mAutoTorch.update(frame, rowStride, left, top, width, height,
+                    nowNanos);
+            mStats.recordLuma(mAutoTorch.getLastMean(), mAutoTorch.getLastPercentile());
+        }
+
+        if (mStaticSceneGate != null) {
+            boolean changed = mStaticSceneGate.hasChanged(frame, rowStride, left, top, width,
+                    height, nowNanos);
+            mStats.recordStaticScene(mStaticSceneGate.getLastDifference(), !changed);
+            if (!changed) {
+                return false;
+            }
+        }
+
+        if (mSharpnessGate != null) {
+            boolean sharp = mSharpnessGate.accept(frame, rowStride, left, top, width, height);
+            mStats.recordSharpness(mSharpnessGate.getLastScore(),
+                    mSharpnessGate.getLastThreshold(), !sharp);
+            if (!sharp) {
+                return false;
+            }
+        }
+
+        if (mStaticSceneGate != null) {
+            mStaticSceneGate.markDetected(nowNanos);
+        }
+        return true;
+    }
+
+    /**
+     * Returns what auto torch made of the last frame checked: {@link AutoTorch#TURN_ON},
+     * {@link AutoTorch#TURN_OFF} or {@link AutoTorch#NO_CHANGE}.
+     */
+    int getTorchDecision() {
+        return mTorchDecision;
+    }
+}
@@ -0,0 +1,92 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer/single-consumer queue of preview buffer slots, used to hand frames from the
+ * camera callback thread to the frame processor without locking or allocating.
+ * <p/>
+ * In replacing mode the queue holds a single slot, and offering a new slot displaces the waiting
+ * one.  Otherwise the queue is a bounded ring, and a slot offered while the ring is full is
+ * rejected.  Either way, the slot returned by {@link #offer(int)} belongs to the producer again.
+ */
+final class FrameQueue {
+    static final int NO_SLOT = -1;
+
+    private final boolean mReplacing;
+
+    // Replacing mode: the waiting slot, or NO_SLOT.
+    private final AtomicInteger mWaitingSlot = new AtomicInteger(NO_SLOT);
+
+    // Ring mode.  mTail is only written by the producer and mHead only by the consumer; the slot
+    // written to the ring is published to the consumer by the ordered write of mTail.
+    private final int[] mRing;
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mTail = new AtomicLong();
+
+    FrameQueue(int capacity, boolean replacing) {
+        if (replacing && (capacity != 1)) {
+            throw new IllegalArgumentException("A replacing queue holds exactly one frame.");
+        }
+        mReplacing = replacing;
+        mRing = new int[capacity];
+    }
+
+    /**
+     * Adds a slot to the queue.  Only called by the producer.
+     *
+     * @return the slot that was displaced or rejected, or {@link #NO_SLOT}
+     */
+    int offer(int slot) {
+        if (mReplacing) {
+            return mWaitingSlot.getAndSet(slot);
+        }
+
+        long tail = mTail.get();
+        if (tail - mHead.get() >= mRing.length) {
+            return slot;
+        }
+        mRing[(int) (tail % mRing.length)] = slot;
+        mTail.lazySet(tail + 1);
+        return NO_SLOT;
+    }
+
+    /**
+     * Removes the oldest slot from the queue.  Only called by the consumer.
+     *
+     * @return the slot, or {@link #NO_SLOT} if the queue is empty
+     */
+    int poll() {
+        if (mReplacing) {
+            return mWaitingSlot.getAndSet(NO_SLOT);
+        }
+
+        long head = mHead.get();
+        if (head == mTail.get()) {
+            return NO_SLOT;
+        }
+        int slot = mRing[(int) (head % mRing.length)];
+        mHead.lazySet(head + 1);
+        return slot;
+    }
+
+    /**
+     * Returns the number of slots waiting.  Exact when called by either side while the other side
+     * is idle, otherwise a snapshot.
+     */
+    int size() {
+        if (mReplacing) {
+            return mWaitingSlot.get() == NO_SLOT ? 0 : 1;
+        }
+        return (int) (mTail.get() - mHead.get());
+    }
+
+    /**
+     * Empties the queue.  Only safe while neither side is running.
+     */
+    void clear() {
+        mWaitingSlot.set(NO_SLOT);
+        mHead.set(mTail.get());
+    }
+}
@@ -0,0 +1,232 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records the frames of a live session to a file that a {@link ReplayFrameSource} can play back,
+ * so that real scanning sessions can be replayed through the frame pipeline without a camera.
+ * Attach a recorder with {@link CameraSource#setFrameRecorder(FrameRecorder)}.
+ * <p/>
+ * The file is a big-endian stream made of a header followed by one record per frame:
+ * <pre>
+ *   header: int magic ("GMVF"), int version, int width, int height, int rotation
+ *   frame:  long timestamp in nanoseconds since the first frame, int length, NV21 data
+ * </pre>
+ * Frames are always stored as tightly packed NV21.  Row padding is removed and frames without a
+ * chroma plane get a neutral one, so every record holds {@link Nv21Utils#bufferSize(int, int)}
+ * bytes.
+ * <p/>
+ * {@link #record} copies the frame into one of a few preallocated buffers and returns; the file
+ * is written on a separate thread, so recording doesn't stall the camera.  If the writer falls
+ * behind, frames are skipped rather than queued without bound (see {@link #getSkippedFrames()}).
+ * Only one thread may call {@link #record} at a time.
+ */
+public final class FrameRecorder implements Closeable {
+    static final int MAGIC = 0x474d5646;
+    static final int VERSION = 1;
+
+    // Frames that may be waiting for the writer, on top of the one being written.  The pending
+    // queue also has room for the header and the end marker.
+    private static final int BUFFER_COUNT = 3;
+
+    private static final byte NEUTRAL_CHROMA = (byte) 128;
+
+    // Handed to the writer to make it finish.
+    private static final PendingFrame END = new PendingFrame(null);
+
+    private final DataOutputStream mOutput;
+    private final BlockingQueue<PendingFrame> mFree = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final BlockingQueue<PendingFrame> mPending =
+            new ArrayBlockingQueue<>(BUFFER_COUNT + 2);
+    private final Thread mWriterThread;
+
+    // Only touched by the recording thread.
+    private int mWidth;
+    private int mHeight;
+    private long mFirstTimestampNanos;
+
+    private volatile boolean mClosed;
+
+    private volatile int mRecordedFrames;
+    private volatile int mSkippedFrames;
+    private volatile IOException mError;
+
+    /**
+     * Creates a recorder that writes to the given file, replacing any existing file.
+     *
+     * @throws IOException if the file could not be created
+     */
+    public FrameRecorder(File file) throws IOException {
+        mOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                64 * 1024));
+        mWriterThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeFrames();
+            }
+        }, "FrameRecorder");
+        mWriterThread.start();
+    }
+
+    /**
+     * Records a frame.  The first frame fixes the size of the recording and writes the header;
+     * frames of any other size are skipped.  The frame data is only read during this call.
+     *
+     * @param frame          the frame data, starting with the luma plane
+     * @param rowStride      the distance between the starts of consecutive luma rows
+     * @param width          the width of the frame
+     * @param height         the height of the frame
+     * @param rotation       the rotation of the frame, as a Frame rotation constant
+     * @param hasChroma      whether the chroma plane follows the luma plane
+     * @param timestampNanos when the frame was captured, on a monotonic clock
+     */
+    public void record(ByteBuffer frame, int rowStride, int width, int height, int rotation,
+                       boolean hasChroma, long timestampNanos) {
+        if (mClosed || (mError != null)) {
+            return;
+        }
+
+        if (mWidth == 0) {
+            // The header goes through the writer too, as a frame without data.
+            mWidth = width;
+            mHeight = height;
+            mFirstTimestampNanos = timestampNanos;
+            int size = Nv21Utils.bufferSize(width, height);
+            for (int i = 0; i < BUFFER_COUNT; ++i) {
+                mFree.add(new PendingFrame(new byte[size]));
+            }
+            PendingFrame header = new PendingFrame(null);
+            header.mRotation = rotation;
+            mPending.add(header);
+        } else if ((width != mWidth) || (height != mHeight)) {
+            mSkippedFrames++;
+            return;
+        }
+
+        PendingFrame pending = mFree.poll();
+        if (pending == null) {
+            mSkippedFrames++;
+            return;
+        }
+
+        Nv21Utils.crop(frame, rowStride, height, hasChroma, 0, 0, width, height, pending.mData);
+        if (!hasChroma && !pending.mNeutralChroma) {
+            Arrays.fill(pending.mData, width * height, pending.mData.length, NEUTRAL_CHROMA);
+        }
+        pending.mNeutralChroma = !hasChroma;
+        pending.mTimestampNanos = timestampNanos - mFirstTimestampNanos;
+        mPending.add(pending);
+    }
+
+    /**
+     * Writes out the frames still waiting and closes the file.  Must not be called while a frame
+     * is being recorded.
+     *
+     * @throws IOException if any part of the recording could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (!mClosed) {
+            mClosed = true;
+            mPending.add(END);
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    mWriterThread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                mOutput.close();
+            } catch (IOException e) {
+                if (mError == null) {
+                    mError = e;
+                }
+            }
+        }
+        if (mError != null) {
+            throw mError;
+        }
+    }
+
+    /**
+     * Returns the number of frames written so far.
+     */
+    public int getRecordedFrames() {
+        return mRecordedFrames;
+    }
+
+    /**
+     * Returns the number of frames skipped because the writer fell behind or because their size
+     * didn't match the recording.
+     */
+    public int getSkippedFrames() {
+        return mSkippedFrames;
+    }
+
+    private void writeFrames() {
+        while (true) {
+            PendingFrame pending;
+            try {
+                pending = mPending.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (pending == END) {
+                return;
+            }
+            if (mError != null) {
+                continue;
+            }
+
+            try {
+                if (pending.mData == null) {
+                    mOutput.writeInt(MAGIC);
+                    mOutput.writeInt(VERSION);
+                    mOutput.writeInt(mWidth);
+                    mOutput.writeInt(mHeight);
+                    mOutput.writeInt(pending.mRotation);
+                    continue;
+                }
+
+                mOutput.writeLong(pending.mTimestampNanos);
+                mOutput.writeInt(pending.mData.length);
+                mOutput.write(pending.mData);
+                mRecordedFrames++;
+            } catch (IOException e) {
+                mError = e;
+            }
+            if (pending.mData != null) {
+                mFree.add(pending);
+            }
+        }
+    }
+
+    /**
+     * A frame waiting to be written, or the header if it has no data.
+     */
+    private static final class PendingFrame {
+        final byte[] mData;
+        long mTimestampNanos;
+        int mRotation;
+        boolean mNeutralChroma;
+
+        PendingFrame(byte[] data) {
+            mData = data;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Source of the frames that a {@link CameraSource} runs detection on.  A source streams frames
+ * into a fixed ring of slots and hands each filled slot to a {@link FrameListener}.  A slot
+ * belongs to the frame pipeline until it is handed back through {@link #releaseFrame(int)}, so the
+ * pipeline can read the frame data in place, without copying it.
+ * <p/>
+ * Frame data always starts with the luma plane, one row every {@link #getRowStride(int)} bytes.
+ * If {@link #hasChroma()} is true, the data is a complete NV21 image (row stride equal to the
+ * frame width); otherwise only the luma plane is valid, which is all that barcode detection looks
+ * at.
+ * <p/>
+ * Cameras are sources with extra controls (see {@link CameraBackend}).  Other sources, such as a
+ * {@link ReplayFrameSource} playing back a recorded session, can be supplied through
+ * {@link CameraSource.Builder#setFrameSource(FrameSource)}.
+ * <p/>
+ * {@link #open(int, FrameListener)}, {@link #start()} and {@link #close()} are called under the
+ * camera source's camera lock.  The frame accessors may be called from any thread that holds the
+ * slot.
+ */
+public interface FrameSource {
+
+    /**
+     * Receives filled frame slots from a source.
+     */
+    interface FrameListener {
+        /**
+         * Called on the source's thread when the frame in the given slot is ready.  The listener
+         * must eventually hand the slot back through {@link #releaseFrame(int)}.
+         */
+        void onFrame(int slot);
+    }
+
+    /**
+     * Prepares slotCount frame slots.  Frames are only delivered once the source is started.
+     *
+     * @throws IOException if the source could not be opened
+     */
+    void open(int slotCount, FrameListener listener) throws IOException;
+
+    /**
+     * Starts delivering frames.
+     *
+     * @throws IOException if the source could not be started
+     */
+    void start() throws IOException;
+
+    /**
+     * Stops delivering frames and releases the source.  Must only be called once the frame
+     * pipeline has stopped using the slots.
+     */
+    void close();
+
+    /**
+     * Returns the width of the frames, once the source is open.
+     */
+    int getFrameWidth();
+
+    /**
+     * Returns the height of the frames, once the source is open.
+     */
+    int getFrameHeight();
+
+    /**
+     * Returns the rotation of the frames relative to the display, as one of the
+     * {@link com.google.android.gms.vision.Frame} rotation constants.
+     */
+    int getRotation();
+
+    /**
+     * Returns the data of the frame in the given slot.  Only valid while the slot is held.
+     */
+    ByteBuffer getFrameData(int slot);
+
+    /**
+     * Returns the distance between the starts of consecutive luma rows of the frame in the given
+     * slot, in bytes.
+     */
+    int getRowStride(int slot);
+
+    /**
+     * Returns true if the frame data holds the chroma plane as well as the luma plane.
+     */
+    boolean hasChroma();
+
+    /**
+     * Hands a slot back to the source so that it can be filled again.  May be called from any
+     * thread.
+     */
+    void releaseFrame(int slot);
+}
@@ -15,17 +15,23 @@
  */
 package com.dealrinc.gmvScanner.ui.camera;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.graphics.SurfaceTexture;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.util.AttributeSet;
-import android.view.View;
+import android.view.Choreographer;
+import android.view.TextureView;
 
 import com.google.android.gms.vision.CameraSource;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A view which renders a series of custom graphics to be overlayed on top of an associated preview
@@ -44,15 +50,39 @@ import java.util.Vector;
  * <li>{@link Graphic#translateX(float)} and {@link Graphic#translateY(float)} adjust the coordinate
  * from the preview's coordinate system to the view coordinate system.</li>
  * </ol>
+ * When the detector only sees part of the preview, its detections are relative to that part; the
+ * translation adds the offset set with {@link #setDetectionOffset(int, int)}.
+ * <p>
+ * The graphics are kept in a {@link SnapshotArray}.  Trackers add and remove graphics on the
+ * detection thread now and then, while the overlay draws them on every frame, so drawing reads the
+ * current array without taking a lock and without allocating anything.
+ * <p>
+ * The overlay is a {@link TextureView} that draws on a render thread of its own, so that drawing
+ * doesn't compete with layout and input on the main thread.  It only draws when the graphics
+ * changed, at most once per display refresh, so a burst of detection updates is drawn once.  Like
+ * any texture view it needs a hardware accelerated window, which is the default.
  */
-public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View {
-    private final Object mLock = new Object();
-    private int mPreviewWidth;
-    private float mWidthScaleFactor = 1.0f;
-    private int mPreviewHeight;
-    private float mHeightScaleFactor = 1.0f;
-    private int mFacing = CameraSource.CAMERA_FACING_BACK;
-    private Set<T> mGraphics = new HashSet<>();
+public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends TextureView {
+    private static final Graphic[] NO_GRAPHICS = new Graphic[0];
+    // How often to draw on versions without a Choreographer.
+    private static final long FRAME_INTERVAL_MILLIS = 16;
+
+    private volatile int mPreviewWidth;
+    private volatile float mWidthScaleFactor = 1.0f;
+    private volatile int mPreviewHeight;
+    private volatile float mHeightScaleFactor = 1.0f;
+    private volatile int mFacing = CameraSource.CAMERA_FACING_BACK;
+    private volatile int mDetectionLeft;
+    private volatile int mDetectionTop;
+    private final SnapshotArray<Graphic> mGraphics = new SnapshotArray<>(NO_GRAPHICS);
+
+    // Guards the surface, which the render thread draws on while it is available.
+    private final Object mSurfaceLock = new Object();
+    private boolean mSurfaceAvailable;
+    // Runs while the surface is available.
+    private volatile Renderer mRenderer;
+    // Set while a frame is scheduled, so that updates before it are drawn together.
+    private final AtomicBoolean mRenderRequested = new AtomicBoolean();
 
     /**
      * Base class for a custom graphics object to be rendered within the graphic overlay.  Subclass
@@ -100,6 +130,7 @@ public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View {
          * system.
          */
         public float translateX(float x) {
+            x += mOverlay.mDetectionLeft;
             if (mOverlay.mFacing == CameraSource.CAMERA_FACING_FRONT) {
                 return mOverlay.getWidth() - scaleX(x);
             } else {
@@ -112,56 +143,57 @@ public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View {
          * system.
          */
         public float translateY(float y) {
-            return scaleY(y);
+            return scaleY(y + mOverlay.mDetectionTop);
         }
 
+        /**
+         * Asks for the overlay to be drawn again, e.g. once the graphic changed.
+         */
         public void postInvalidate() {
-            mOverlay.postInvalidate();
+            mOverlay.requestRender();
         }
     }
 
     public GraphicOverlay(Context context, AttributeSet attrs) {
         super(context, attrs);
+        setOpaque(false);
+        setSurfaceTextureListener(new SurfaceListener());
     }
 
     /**
      * Removes all graphics from the overlay.
      */
     public void clear() {
-        synchronized (mLock) {
-            mGraphics.clear();
-        }
-        postInvalidate();
+        mGraphics.clear();
+        requestRender();
     }
 
     /**
      * Adds a graphic to the overlay.
      */
     public void add(T graphic) {
-        synchronized (mLock) {
-            mGraphics.add(graphic);
+        if (mGraphics.add(graphic)) {
+            requestRender();
         }
-        postInvalidate();
     }
 
     /**
      * Removes a graphic from the overlay.
      */
     public void remove(T graphic) {
-        synchronized (mLock) {
-            mGraphics.remove(graphic);
+        if (mGraphics.remove(graphic)) {
+            requestRender();
         }
-        postInvalidate();
     }
 
     /**
-     * Returns a copy (as a list) of the set of all active graphics.
+     * Returns all active graphics, as a snapshot that later changes don't affect.  The list
+     * can't be changed.
      * @return list of all active graphics.
      */
+    @SuppressWarnings("unchecked")
     public List<T> getGraphics() {
-        synchronized (mLock) {
-            return new Vector(mGraphics);
-        }
+        return (List<T>) mGraphics.asList();
     }
 
     /**
@@ -183,30 +215,162 @@ public class GraphicOverlay<T extends GraphicOverlay.Graphic> extends View {
      * image coordinates later.
      */
     public void setCameraInfo(int previewWidth, int previewHeight, int facing) {
-        synchronized (mLock) {
-            mPreviewWidth = previewWidth;
-            mPreviewHeight = previewHeight;
-            mFacing = facing;
+        mPreviewWidth = previewWidth;
+        mPreviewHeight = previewHeight;
+        mFacing = facing;
+        requestRender();
+    }
+
+    /**
+     * Sets where the part of the preview that the detector sees starts, in preview pixels, for
+     * detectors that only see a cropped part of it (see
+     * {@link com.dealrinc.gmvScanner.ui.camera.CameraSource#getDetectionRegion()}).  Zero for
+     * detectors that see the whole preview.
+     */
+    public void setDetectionOffset(int left, int top) {
+        mDetectionLeft = left;
+        mDetectionTop = top;
+        requestRender();
+    }
+
+    /**
+     * Schedules the overlay to be drawn on the render thread at the next display refresh.
+     * Requests made before then are drawn together.  This may be called from any thread.
+     */
+    public void requestRender() {
+        Renderer renderer = mRenderer;
+        if ((renderer != null) && mRenderRequested.compareAndSet(false, true)) {
+            renderer.requestFrame();
         }
-        postInvalidate();
     }
 
     /**
-     * Draws the overlay with its associated graphic objects.
+     * Draws the overlay with its associated graphic objects, on the render thread.
      */
-    @Override
-    protected void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
-
-        synchronized (mLock) {
-            if ((mPreviewWidth != 0) && (mPreviewHeight != 0)) {
-                mWidthScaleFactor = (float) canvas.getWidth() / (float) mPreviewWidth;
-                mHeightScaleFactor = (float) canvas.getHeight() / (float) mPreviewHeight;
+    private void render() {
+        mRenderRequested.set(false);
+        synchronized (mSurfaceLock) {
+            if (!mSurfaceAvailable) {
+                return;
             }
+            Canvas canvas = lockCanvas();
+            if (canvas == null) {
+                return;
+            }
+            try {
+                canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+
+                int previewWidth = mPreviewWidth;
+                int previewHeight = mPreviewHeight;
+                if ((previewWidth != 0) && (previewHeight != 0)) {
+                    mWidthScaleFactor = (float) canvas.getWidth() / (float) previewWidth;
+                    mHeightScaleFactor = (float) canvas.getHeight() / (float) previewHeight;
+                }
+
+                Graphic[] graphics = mGraphics.get();
+                for (int i = 0; i < graphics.length; ++i) {
+                    graphics[i].draw(canvas);
+                }
+            } finally {
+                unlockCanvasAndPost(canvas);
+            }
+        }
+    }
+
+    /**
+     * Runs the render thread while the surface is available.
+     */
+    private class SurfaceListener implements TextureView.SurfaceTextureListener {
+        @Override
+        public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+            synchronized (mSurfaceLock) {
+                mSurfaceAvailable = true;
+            }
+            mRenderRequested.set(false);
+            mRenderer = new Renderer();
+            requestRender();
+        }
+
+        @Override
+        public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
+            requestRender();
+        }
 
-            for (Graphic graphic : mGraphics) {
-                graphic.draw(canvas);
+        @Override
+        public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+            Renderer renderer = mRenderer;
+            mRenderer = null;
+            // Waits for a frame that is being drawn, as the surface is released on returning.
+            synchronized (mSurfaceLock) {
+                mSurfaceAvailable = false;
             }
+            if (renderer != null) {
+                renderer.quit();
+            }
+            return true;
+        }
+
+        @Override
+        public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+        }
+    }
+
+    /**
+     * The render thread.  A requested frame waits for the next display refresh, and is drawn then.
+     */
+    private class Renderer implements Runnable {
+        private final HandlerThread mThread = new HandlerThread("GraphicOverlay");
+        private final Handler mHandler;
+        private final Runnable mRender = new Runnable() {
+            @Override
+            public void run() {
+                render();
+            }
+        };
+        // Only used on the render thread.
+        private FrameCallback mFrameCallback;
+
+        Renderer() {
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper());
+        }
+
+        void requestFrame() {
+            mHandler.post(this);
+        }
+
+        void quit() {
+            mThread.quit();
+        }
+
+        @Override
+        public void run() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                if (mFrameCallback == null) {
+                    mFrameCallback = new FrameCallback();
+                }
+                mFrameCallback.post();
+            } else {
+                mHandler.postDelayed(mRender, FRAME_INTERVAL_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Draws at the next display refresh.  Only used from Jelly Bean, which added the
+     * Choreographer; it must be created on the render thread, whose Choreographer it posts to.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class FrameCallback implements Choreographer.FrameCallback {
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+
+        void post() {
+            mChoreographer.postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            render();
         }
     }
 }
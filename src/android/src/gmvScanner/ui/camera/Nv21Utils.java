@@ -0,0 +1,128 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers for working directly on NV21 preview buffers.  An NV21 image of size w x h is laid out
+ * as w * h luma (Y) bytes followed by (w / 2) * (h / 2) interleaved V/U chroma pairs.
+ * <p/>
+ * Frames that are read in place from a camera may have padded rows, so the helpers that take a
+ * {@link ByteBuffer} also take the row stride of the luma plane.
+ */
+final class Nv21Utils {
+
+    private Nv21Utils() {
+    }
+
+    /**
+     * Returns the number of bytes needed to hold an NV21 image of the given size.
+     */
+    static int bufferSize(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * Copies a rectangular region of an NV21 image into the destination buffer, which is written
+     * as a tightly packed NV21 image of size width x height.  The left, top, width and height of
+     * the region must all be even so that the chroma samples line up with the luma samples.
+     *
+     * @param src       the source NV21 image
+     * @param srcWidth  the width of the source image
+     * @param srcHeight the height of the source image
+     * @param left      the left edge of the region, in source pixels
+     * @param top       the top edge of the region, in source pixels
+     * @param width     the width of the region
+     * @param height    the height of the region
+     * @param dst       the destination buffer, at least {@link #bufferSize(int, int)} bytes
+     */
+    static void crop(byte[] src, int srcWidth, int srcHeight, int left, int top,
+                     int width, int height, byte[] dst) {
+        // Luma plane, one row at a time.
+        int srcOffset = top * srcWidth + left;
+        int dstOffset = 0;
+        for (int row = 0; row < height; ++row) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, width);
+            srcOffset += srcWidth;
+            dstOffset += width;
+        }
+
+        // Interleaved chroma plane, which has half as many rows and the same row stride.
+        srcOffset = srcWidth * srcHeight + (top / 2) * srcWidth + left;
+        for (int row = 0; row < height / 2; ++row) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, width);
+            srcOffset += srcWidth;
+            dstOffset += width;
+        }
+    }
+
+    /**
+     * Copies a rectangular region of a frame into the destination buffer, which is written as a
+     * tightly packed NV21 image of size width x height.  Like
+     * {@link #crop(byte[], int, int, int, int, int, int, byte[])}, but reads from a buffer whose
+     * luma rows are rowStride bytes apart, such as a camera image plane.  If the frame has no
+     * chroma plane, the chroma part of the destination is left untouched.  The position of the
+     * source buffer is preserved.
+     *
+     * @param rowStride the distance between the starts of consecutive source rows
+     * @param hasChroma whether the source is a complete NV21 image rather than just the luma plane
+     */
+    static void crop(ByteBuffer src, int rowStride, int srcHeight, boolean hasChroma,
+                     int left, int top, int width, int height, byte[] dst) {
+        if (hasChroma && src.hasArray() && (src.arrayOffset() == 0)) {
+            crop(src.array(), rowStride, srcHeight, left, top, width, height, dst);
+            return;
+        }
+
+        int position = src.position();
+        int srcOffset = top * rowStride + left;
+        int dstOffset = 0;
+        for (int row = 0; row < height; ++row) {
+            src.position(srcOffset);
+            src.get(dst, dstOffset, width);
+            srcOffset += rowStride;
+            dstOffset += width;
+        }
+
+        if (hasChroma) {
+            srcOffset = rowStride * srcHeight + (top / 2) * rowStride + left;
+            for (int row = 0; row < height / 2; ++row) {
+                src.position(srcOffset);
+                src.get(dst, dstOffset, width);
+                srcOffset += rowStride;
+                dstOffset += width;
+            }
+        }
+        src.position(position);
+    }
+
+    /**
+     * Scores how sharp a region of the luma plane is, as the mean gradient energy (squared
+     * differences to the right and lower neighbours) over a grid of sample points.  In-focus
+     * images have strong local gradients, while motion blur and defocus smear them out, so a
+     * blurred frame scores markedly lower than a sharp frame of the same scene.
+     *
+     * @param frame     the frame, starting with the luma plane
+     * @param rowStride the distance between the starts of consecutive luma rows
+     * @param step      the distance between sample points, in pixels
+     * @return the mean gradient energy, or 0 if the region is too small to sample
+     */
+    static int sharpness(ByteBuffer frame, int rowStride, int left, int top, int width,
+                         int height, int step) {
+        long energy = 0;
+        int samples = 0;
+        int bottom = top + height - 1;
+        int right = left + width - 1;
+        for (int y = top; y < bottom; y += step) {
+            int row = y * rowStride;
+            for (int x = left; x < right; x += step) {
+                int offset = row + x;
+                int luma = frame.get(offset) & 0xff;
+                int dx = (frame.get(offset + 1) & 0xff) - luma;
+                int dy = (frame.get(offset + rowStride) & 0xff) - luma;
+                energy += dx * dx + dy * dy;
+                samples++;
+            }
+        }
+        return samples == 0 ? 0 : (int) (energy / samples);
+    }
+}
@@ -0,0 +1,96 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Detector;
+import com.google.android.gms.vision.Frame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detector that spreads detection over several underlying detectors so that consecutive frames
+ * can be processed on different cores.  When a {@link CameraSource} is built with a parallel
+ * detector, it runs one detection worker per underlying detector and delivers the results to this
+ * detector's processor strictly in frame order, so trackers such as those created by a
+ * {@link com.google.android.gms.vision.MultiProcessor} see the same sequence of detections as they
+ * would with a single detector.
+ * <p/>
+ * Each worker only ever calls into its own detector, so the underlying detectors do not need to
+ * be thread safe.
+ */
+public class ParallelDetector<T> extends Detector<T> {
+    private final List<Detector<T>> mWorkers;
+
+    // The frame currently being delivered and its precomputed detections.  Only touched by the
+    // delivering thread, under the camera source's delivery lock.
+    private Frame mDeliveringFrame;
+    private SparseArray<T> mDeliveringDetections;
+
+    /**
+     * Creates a parallel detector that uses one worker per supplied detector.
+     */
+    public ParallelDetector(List<Detector<T>> workers) {
+        if ((workers == null) || workers.isEmpty()) {
+            throw new IllegalArgumentException("No detectors supplied.");
+        }
+        mWorkers = new ArrayList<>(workers);
+    }
+
+    /**
+     * Returns the number of detection workers.
+     */
+    public int getWorkerCount() {
+        return mWorkers.size();
+    }
+
+    /**
+     * Runs detection for a frame on the given worker's detector.  May be called concurrently for
+     * different workers.
+     */
+    SparseArray<T> detect(int worker, Frame frame) {
+        return mWorkers.get(worker).detect(frame);
+    }
+
+    /**
+     * Hands precomputed detections for a frame to the processor, exactly as if the frame had been
+     * passed to {@link #receiveFrame(Frame)}.  Must be called in frame order, by one thread at a
+     * time.  Only the frame's metadata is read, so its image may already have been reused.
+     */
+    void deliver(Frame frame, SparseArray<T> detections) {
+        mDeliveringFrame = frame;
+        mDeliveringDetections = detections;
+        try {
+            receiveFrame(frame);
+        } finally {
+            mDeliveringFrame = null;
+            mDeliveringDetections = null;
+        }
+    }
+
+    @Override
+    public SparseArray<T> detect(Frame frame) {
+        if ((frame == mDeliveringFrame) && (mDeliveringDetections != null)) {
+            return mDeliveringDetections;
+        }
+        return mWorkers.get(0).detect(frame);
+    }
+
+    @Override
+    public boolean isOperational() {
+        for (Detector<T> worker : mWorkers) {
+            if (!worker.isOperational()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void release() {
+        for (Detector<T> worker : mWorkers) {
+            worker.release();
+        }
+        super.release();
+    }
+}
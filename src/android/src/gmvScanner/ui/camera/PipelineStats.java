@@ -0,0 +1,382 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing the work done by a {@link CameraSource} frame processing pipeline.  These
+ * are written from the camera and processing threads and may be read from any thread.
+ */
+public class PipelineStats {
+    private final AtomicLong mReceivedFrames = new AtomicLong();
+    private final AtomicLong mCallbackNanos = new AtomicLong();
+    private final AtomicLong mDroppedFrames = new AtomicLong();
+    private final AtomicLong mProcessedFrames = new AtomicLong();
+    private final AtomicLong mDetectionNanos = new AtomicLong();
+    private final AtomicLong mCroppedFrames = new AtomicLong();
+    private final AtomicLong mCropNanos = new AtomicLong();
+    private volatile long mLastCropNanos;
+    private final AtomicLong mSharpnessCheckedFrames = new AtomicLong();
+    private final AtomicLong mSharpnessSkippedFrames = new AtomicLong();
+    private volatile int mLastSharpness;
+    private volatile int mSharpnessThreshold;
+    private final AtomicLong mStaticSceneHits = new AtomicLong();
+    private final AtomicLong mStaticSceneMisses = new AtomicLong();
+    private volatile int mLastSceneDifference;
+    private final AtomicLong mCameraStartNanos = new AtomicLong();
+    private final AtomicLong mCameraOpenedNanos = new AtomicLong();
+    private final AtomicLong mFirstFrameNanos = new AtomicLong();
+    private final AtomicLong mFirstDetectionNanos = new AtomicLong();
+    private final AtomicLong mFirstSharpFrameNanos = new AtomicLong();
+    private final AtomicLong mRefocusCount = new AtomicLong();
+    private volatile int mLastMeanLuma;
+    private volatile int mLastLumaPercentile;
+    private final AtomicLong mTorchSwitches = new AtomicLong();
+
+    /**
+     * Records when the camera source was asked to start, as a {@link System#nanoTime()}
+     * timestamp.  Only the first start since the last reset is kept.
+     */
+    void recordCameraStart(long nanos) {
+        recordFirst(mCameraStartNanos, nanos);
+    }
+
+    /**
+     * Records when the camera was open and previewing, as a {@link System#nanoTime()} timestamp.
+     * Only the first time since the last reset is kept.
+     */
+    void recordCameraOpened(long nanos) {
+        recordFirst(mCameraOpenedNanos, nanos);
+    }
+
+    /**
+     * Records when a frame arrived from the camera, as a {@link System#nanoTime()} timestamp.
+     * Only the first frame since the last reset is kept.
+     */
+    void recordFrameArrival(long nanos) {
+        recordFirst(mFirstFrameNanos, nanos);
+    }
+
+    /**
+     * Records when a frame arrived after the lens had settled on a focus, as a {@link
+     * System#nanoTime()} timestamp.  Only the first such frame since the last reset is kept.
+     */
+    void recordSharpFrameArrival(long nanos) {
+        recordFirst(mFirstSharpFrameNanos, nanos);
+    }
+
+    /**
+     * Records that auto focus was re-triggered because detection stalled.
+     */
+    void recordRefocus() {
+        mRefocusCount.incrementAndGet();
+    }
+
+    /**
+     * Records the brightness of a frame measured for auto torch: its mean luma and the luma that
+     * 90% of it stays below.
+     */
+    void recordLuma(int mean, int percentile) {
+        mLastMeanLuma = mean;
+        mLastLumaPercentile = percentile;
+    }
+
+    /**
+     * Records that auto torch switched the torch.
+     */
+    void recordTorchSwitch() {
+        mTorchSwitches.incrementAndGet();
+    }
+
+    /**
+     * Records the time spent on the camera callback thread handing over a single frame.
+     */
+    void recordCallback(long nanos) {
+        mReceivedFrames.incrementAndGet();
+        mCallbackNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Records a frame that was returned to the camera without being processed.
+     */
+    void recordDroppedFrame() {
+        mDroppedFrames.incrementAndGet();
+    }
+
+    /**
+     * Records the time the detector took to process a single frame.
+     */
+    void recordDetection(long nanos) {
+        mProcessedFrames.incrementAndGet();
+        if (mFirstDetectionNanos.get() == 0) {
+            recordFirst(mFirstDetectionNanos, System.nanoTime());
+        }
+
+        // Exponential moving average with a weight of 1/8 for the newest sample.
+        while (true) {
+            long average = mDetectionNanos.get();
+            long updated = average == 0 ? nanos : average + (nanos - average) / 8;
+            if (mDetectionNanos.compareAndSet(average, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records the time spent cropping a single frame to the viewfinder.
+     */
+    void recordCrop(long nanos) {
+        mCroppedFrames.incrementAndGet();
+        mCropNanos.addAndGet(nanos);
+        mLastCropNanos = nanos;
+    }
+
+    /**
+     * Records the sharpness score of a frame, the threshold it was held against and whether it was
+     * skipped as too blurry.
+     */
+    void recordSharpness(int score, int threshold, boolean skipped) {
+        mSharpnessCheckedFrames.incrementAndGet();
+        if (skipped) {
+            mSharpnessSkippedFrames.incrementAndGet();
+        }
+        mLastSharpness = score;
+        mSharpnessThreshold = threshold;
+    }
+
+    /**
+     * Records the difference of a frame to the last detected frame and whether it was skipped as
+     * showing an unchanged scene.
+     */
+    void recordStaticScene(int difference, boolean skipped) {
+        if (skipped) {
+            mStaticSceneHits.incrementAndGet();
+        } else {
+            mStaticSceneMisses.incrementAndGet();
+        }
+        mLastSceneDifference = difference;
+    }
+
+    /**
+     * Returns the number of frames received from the camera.
+     */
+    public long getReceivedFrames() {
+        return mReceivedFrames.get();
+    }
+
+    /**
+     * Returns the average time spent on the camera callback thread per frame, in nanoseconds.
+     */
+    public long getAverageCallbackNanos() {
+        long frames = mReceivedFrames.get();
+        return frames == 0 ? 0 : mCallbackNanos.get() / frames;
+    }
+
+    /**
+     * Returns the number of frames that were dropped without being processed.
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames.get();
+    }
+
+    /**
+     * Returns the number of frames that were handed to the detector.
+     */
+    public long getProcessedFrames() {
+        return mProcessedFrames.get();
+    }
+
+    /**
+     * Returns the moving average of the time the detector takes per frame, in nanoseconds.
+     */
+    public long getAverageDetectionNanos() {
+        return mDetectionNanos.get();
+    }
+
+    /**
+     * Returns the number of frames that were cropped before detection.
+     */
+    public long getCroppedFrames() {
+        return mCroppedFrames.get();
+    }
+
+    /**
+     * Returns the average time spent cropping a frame, in nanoseconds.
+     */
+    public long getAverageCropNanos() {
+        long frames = mCroppedFrames.get();
+        return frames == 0 ? 0 : mCropNanos.get() / frames;
+    }
+
+    /**
+     * Returns the time spent cropping the most recent frame, in nanoseconds.
+     */
+    public long getLastCropNanos() {
+        return mLastCropNanos;
+    }
+
+    /**
+     * Returns the number of frames that were scored by the sharpness gate.
+     */
+    public long getSharpnessCheckedFrames() {
+        return mSharpnessCheckedFrames.get();
+    }
+
+    /**
+     * Returns the number of frames that the sharpness gate skipped as too blurry.
+     */
+    public long getSharpnessSkippedFrames() {
+        return mSharpnessSkippedFrames.get();
+    }
+
+    /**
+     * Returns the share of scored frames that the sharpness gate skipped, between 0 and 1.
+     */
+    public float getSharpnessSkipRatio() {
+        long frames = mSharpnessCheckedFrames.get();
+        return frames == 0 ? 0 : (float) mSharpnessSkippedFrames.get() / frames;
+    }
+
+    /**
+     * Returns the sharpness score of the most recently scored frame.
+     */
+    public int getLastSharpness() {
+        return mLastSharpness;
+    }
+
+    /**
+     * Returns the sharpness threshold that the most recently scored frame was held against.
+     */
+    public int getSharpnessThreshold() {
+        return mSharpnessThreshold;
+    }
+
+    /**
+     * Returns the number of frames that the static scene check skipped as unchanged.
+     */
+    public long getStaticSceneHits() {
+        return mStaticSceneHits.get();
+    }
+
+    /**
+     * Returns the number of frames that the static scene check passed on to detection.
+     */
+    public long getStaticSceneMisses() {
+        return mStaticSceneMisses.get();
+    }
+
+    /**
+     * Returns the mean absolute luma difference of the most recently checked frame to the last
+     * detected frame.
+     */
+    public int getLastSceneDifference() {
+        return mLastSceneDifference;
+    }
+
+    /**
+     * Returns when the camera source was first asked to start, as a {@link System#nanoTime()}
+     * timestamp, or 0 if it wasn't.
+     */
+    public long getCameraStartNanos() {
+        return mCameraStartNanos.get();
+    }
+
+    /**
+     * Returns when the camera was first open and previewing, as a {@link System#nanoTime()}
+     * timestamp, or 0 if it wasn't.
+     */
+    public long getCameraOpenedNanos() {
+        return mCameraOpenedNanos.get();
+    }
+
+    /**
+     * Returns when the first frame arrived from the camera, as a {@link System#nanoTime()}
+     * timestamp, or 0 if none did.
+     */
+    public long getFirstFrameNanos() {
+        return mFirstFrameNanos.get();
+    }
+
+    /**
+     * Returns when the detector finished with its first frame, as a {@link System#nanoTime()}
+     * timestamp, or 0 if it didn't.
+     */
+    public long getFirstDetectionNanos() {
+        return mFirstDetectionNanos.get();
+    }
+
+    /**
+     * Returns when the first frame arrived after the lens had settled on a focus, as a {@link
+     * System#nanoTime()} timestamp, or 0 if none did.
+     */
+    public long getFirstSharpFrameNanos() {
+        return mFirstSharpFrameNanos.get();
+    }
+
+    /**
+     * Returns the number of times auto focus was re-triggered because detection stalled.
+     */
+    public long getRefocusCount() {
+        return mRefocusCount.get();
+    }
+
+    /**
+     * Returns the mean luma of the most recently measured frame, from 0 to 255.
+     */
+    public int getLastMeanLuma() {
+        return mLastMeanLuma;
+    }
+
+    /**
+     * Returns the luma that 90% of the most recently measured frame stays below.
+     */
+    public int getLastLumaPercentile() {
+        return mLastLumaPercentile;
+    }
+
+    /**
+     * Returns the number of times auto torch switched the torch.
+     */
+    public long getTorchSwitches() {
+        return mTorchSwitches.get();
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public void reset() {
+        mReceivedFrames.set(0);
+        mCallbackNanos.set(0);
+        mDroppedFrames.set(0);
+        mProcessedFrames.set(0);
+        mDetectionNanos.set(0);
+        mCroppedFrames.set(0);
+        mCropNanos.set(0);
+        mLastCropNanos = 0;
+        mSharpnessCheckedFrames.set(0);
+        mSharpnessSkippedFrames.set(0);
+        mLastSharpness = 0;
+        mSharpnessThreshold = 0;
+        mStaticSceneHits.set(0);
+        mStaticSceneMisses.set(0);
+        mLastSceneDifference = 0;
+        mCameraStartNanos.set(0);
+        mCameraOpenedNanos.set(0);
+        mFirstFrameNanos.set(0);
+        mFirstDetectionNanos.set(0);
+        mFirstSharpFrameNanos.set(0);
+        mRefocusCount.set(0);
+        mLastMeanLuma = 0;
+        mLastLumaPercentile = 0;
+        mTorchSwitches.set(0);
+    }
+
+    /**
+     * Keeps the first timestamp recorded.  This is called for every frame, so the plain read
+     * avoids a compare-and-set once the timestamp is in.
+     */
+    private static void recordFirst(AtomicLong timestamp, long nanos) {
+        if (timestamp.get() == 0) {
+            timestamp.compareAndSet(0, nanos);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+/**
+ * Preview size selection for the Camera1 API, on plain arrays of sizes.  Sizes are packed as
+ * consecutive width, height values, and size pairs as preview width, preview height, picture
+ * width, picture height, with a picture size of 0x0 meaning that there is none.
+ */
+final class PreviewSizes {
+    /**
+     * If the absolute difference between a preview size aspect ratio and a picture size aspect
+     * ratio is less than this tolerance, they are considered to be the same aspect ratio.
+     */
+    static final float ASPECT_RATIO_TOLERANCE = 0.01f;
+
+    private PreviewSizes() {
+    }
+
+    /**
+     * Pairs each preview size with the first picture size that has the same aspect ratio.  Preview
+     * sizes without such a picture size are left out.  Returns an empty array if no preview size
+     * has a matching picture size.
+     * <p/>
+     * This is necessary because even if we don't use still pictures, the still picture size must be
+     * set to a size that is the same aspect ratio as the preview size we choose.  Otherwise, the
+     * preview images may be distorted on some devices.
+     */
+    static int[] generateValidSizePairs(int[] previewSizes, int[] pictureSizes) {
+        int[] pairs = new int[previewSizes.length * 2];
+        int count = 0;
+        for (int i = 0; i < previewSizes.length; i += 2) {
+            float previewAspectRatio = (float) previewSizes[i] / (float) previewSizes[i + 1];
+
+            // By looping through the picture sizes in order, we favor the higher resolutions.
+            // We choose the highest resolution in order to support taking the full resolution
+            // picture later.
+            for (int j = 0; j < pictureSizes.length; j += 2) {
+                float pictureAspectRatio = (float) pictureSizes[j] / (float) pictureSizes[j + 1];
+                if (Math.abs(previewAspectRatio - pictureAspectRatio) < ASPECT_RATIO_TOLERANCE) {
+                    pairs[count++] = previewSizes[i];
+                    pairs[count++] = previewSizes[i + 1];
+                    pairs[count++] = pictureSizes[j];
+                    pairs[count++] = pictureSizes[j + 1];
+                    break;
+                }
+            }
+        }
+
+        if (count == pairs.length) {
+            return pairs;
+        }
+        int[] trimmed = new int[count];
+        System.arraycopy(pairs, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    /**
+     * Pairs each preview size with no picture size, for cameras where no preview size has a
+     * matching picture size.
+     */
+    static int[] withoutPictureSizes(int[] previewSizes) {
+        int[] pairs = new int[previewSizes.length * 2];
+        for (int i = 0, j = 0; i < previewSizes.length; i += 2, j += 4) {
+            pairs[j] = previewSizes[i];
+            pairs[j + 1] = previewSizes[i + 1];
+        }
+        return pairs;
+    }
+
+    /**
+     * Returns the index of the size pair whose preview size best matches the desired width and
+     * height, or -1 if there are no pairs.
+     * <p/>
+     * The method for selecting the best size is to minimize the sum of the differences between
+     * the desired values and the actual values for width and height.  This is certainly not the
+     * only way to select the best size, but it provides a decent tradeoff between using the
+     * closest aspect ratio vs. using the closest pixel area.
+     */
+    static int selectSizePair(int[] sizePairs, int desiredWidth, int desiredHeight) {
+        int selected = -1;
+        int minDiff = Integer.MAX_VALUE;
+        for (int i = 0; i < sizePairs.length; i += 4) {
+            int diff = Math.abs(sizePairs[i] - desiredWidth) +
+                    Math.abs(sizePairs[i + 1] - desiredHeight);
+            if (diff < minDiff) {
+                selected = i / 4;
+                minDiff = diff;
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,330 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link FrameSource} that plays back a session recorded by a {@link FrameRecorder}, so that the
+ * frame pipeline can be exercised and measured without a camera, e.g. on a CI machine with the
+ * detector stubbed out.
+ * <p/>
+ * Frames are read from the file straight into the slot buffers on a dedicated thread, at one of
+ * three rates:
+ * <ul>
+ * <li>{@link #RECORDED_RATE}: with the timing of the original session</li>
+ * <li>a fixed number of frames per second</li>
+ * <li>{@link #AS_FAST_AS_POSSIBLE}: the next frame is delivered as soon as a slot is free</li>
+ * </ul>
+ * With a timed rate, a frame that is due while every slot is held by the pipeline is skipped,
+ * just as a camera would skip it.  As fast as possible, the source waits for a slot instead, so
+ * the pipeline sees every frame it has room for and the playback rate measures its throughput.
+ */
+public final class ReplayFrameSource implements FrameSource {
+    /**
+     * Plays frames back with the timing they were recorded with.
+     */
+    public static final float RECORDED_RATE = 0;
+
+    /**
+     * Plays frames back as fast as the pipeline hands slots back.
+     */
+    public static final float AS_FAST_AS_POSSIBLE = -1;
+
+    private final File mFile;
+    private final float mFramesPerSecond;
+    private final boolean mLoop;
+
+    private int mWidth;
+    private int mHeight;
+    private int mRotation;
+
+    private FrameListener mListener;
+    private FrameBufferRing mSlots;
+    // 1 while a slot is held by the listener, 0 while it is free.
+    private AtomicIntegerArray mSlotHeld;
+
+    private volatile Thread mReplayThread;
+    private volatile boolean mActive;
+    private volatile CountDownLatch mFinished = new CountDownLatch(0);
+
+    private volatile int mDeliveredFrames;
+    private volatile int mSkippedFrames;
+    private volatile IOException mError;
+
+    /**
+     * Creates a source that plays back the given recording.
+     *
+     * @param file            a recording made by a {@link FrameRecorder}
+     * @param framesPerSecond the playback rate, {@link #RECORDED_RATE} or
+     *                        {@link #AS_FAST_AS_POSSIBLE}
+     * @param loop            whether to start over at the end of the recording instead of
+     *                        stopping
+     */
+    public ReplayFrameSource(File file, float framesPerSecond, boolean loop) {
+        if (file == null) {
+            throw new IllegalArgumentException("No recording supplied.");
+        }
+        if ((framesPerSecond < 0) && (framesPerSecond != AS_FAST_AS_POSSIBLE)) {
+            throw new IllegalArgumentException("Invalid fps: " + framesPerSecond);
+        }
+        mFile = file;
+        mFramesPerSecond = framesPerSecond;
+        mLoop = loop;
+    }
+
+    /**
+     * Reads the header of the recording and allocates the slots.
+     *
+     * @throws IOException if the file can't be read or isn't a recording
+     */
+    @Override
+    public void open(int slotCount, FrameListener listener) throws IOException {
+        DataInputStream input = openRecording();
+        input.close();
+
+        int size = Nv21Utils.bufferSize(mWidth, mHeight);
+        if ((mSlots == null) || !mSlots.matches(slotCount, size)) {
+            mSlots = new FrameBufferRing(slotCount, size);
+        }
+        mSlotHeld = new AtomicIntegerArray(slotCount);
+        mListener = listener;
+    }
+
+    @Override
+    public void start() {
+        mActive = true;
+        mDeliveredFrames = 0;
+        mSkippedFrames = 0;
+        mError = null;
+        mFinished = new CountDownLatch(1);
+        mReplayThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replay();
+                } catch (IOException e) {
+                    mError = e;
+                } finally {
+                    mFinished.countDown();
+                }
+            }
+        }, "ReplayFrameSource");
+        mReplayThread.start();
+    }
+
+    @Override
+    public void close() {
+        mActive = false;
+        if (mReplayThread != null) {
+            LockSupport.unpark(mReplayThread);
+            try {
+                mReplayThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mReplayThread = null;
+        }
+        mListener = null;
+    }
+
+    @Override
+    public int getFrameWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getFrameHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public int getRotation() {
+        return mRotation;
+    }
+
+    @Override
+    public ByteBuffer getFrameData(int slot) {
+        return mSlots.getBuffer(slot);
+    }
+
+    @Override
+    public int getRowStride(int slot) {
+        return mWidth;
+    }
+
+    @Override
+    public boolean hasChroma() {
+        return true;
+    }
+
+    @Override
+    public void releaseFrame(int slot) {
+        mSlotHeld.set(slot, 0);
+        LockSupport.unpark(mReplayThread);
+    }
+
+    /**
+     * Waits for playback to reach the end of the recording, which never happens when looping.
+     * Returns false if the timeout elapsed first.
+     */
+    public boolean awaitEnd(long timeoutMillis) throws InterruptedException {
+        return mFinished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the number of frames handed to the listener since the source was started.
+     */
+    public int getDeliveredFrames() {
+        return mDeliveredFrames;
+    }
+
+    /**
+     * Returns the number of frames skipped since the source was started, because no slot was
+     * free when they were due.
+     */
+    public int getSkippedFrames() {
+        return mSkippedFrames;
+    }
+
+    /**
+     * Returns the error that stopped playback early, or null.
+     */
+    public IOException getError() {
+        return mError;
+    }
+
+    /**
+     * Opens the recording and reads its header, leaving the stream at the first frame.
+     */
+    private DataInputStream openRecording() throws IOException {
+        DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mFile), 64 * 1024));
+        try {
+            if (input.readInt() != FrameRecorder.MAGIC) {
+                throw new IOException("Not a frame recording: " + mFile);
+            }
+            int version = input.readInt();
+            if (version != FrameRecorder.VERSION) {
+                throw new IOException("Unsupported frame recording version: " + version);
+            }
+            mWidth = input.readInt();
+            mHeight = input.readInt();
+            mRotation = input.readInt();
+            if ((mWidth <= 0) || (mHeight <= 0)) {
+                throw new IOException("Invalid frame size: " + mWidth + "x" + mHeight);
+            }
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        return input;
+    }
+
+    private void replay() throws IOException {
+        long intervalNanos = mFramesPerSecond > 0 ? (long) (1e9 / mFramesPerSecond) : 0;
+        int frameSize = Nv21Utils.bufferSize(mWidth, mHeight);
+
+        DataInputStream input = openRecording();
+        try {
+            long startNanos = System.nanoTime();
+            long frameIndex = 0;
+            while (mActive) {
+                long timestampNanos;
+                try {
+                    timestampNanos = input.readLong();
+                } catch (EOFException e) {
+                    if (!mLoop || (frameIndex == 0)) {
+                        return;
+                    }
+                    input.close();
+                    input = openRecording();
+                    startNanos = System.nanoTime();
+                    frameIndex = 0;
+                    continue;
+                }
+                int length = input.readInt();
+                if (length != frameSize) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+
+                long dueNanos = startNanos;
+                if (mFramesPerSecond == RECORDED_RATE) {
+                    dueNanos += timestampNanos;
+                } else if (intervalNanos > 0) {
+                    dueNanos += frameIndex * intervalNanos;
+                }
+                frameIndex++;
+                if (!waitUntil(dueNanos)) {
+                    return;
+                }
+
+                int slot = acquireSlot(mFramesPerSecond == AS_FAST_AS_POSSIBLE);
+                if (slot == -1) {
+                    skipFully(input, length);
+                    if (mActive) {
+                        mSkippedFrames++;
+                    }
+                    continue;
+                }
+                input.readFully(mSlots.getData(slot), 0, length);
+                mDeliveredFrames++;
+                mListener.onFrame(slot);
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Parks the replay thread until the given time.  Returns false if the source was closed
+     * meanwhile.
+     */
+    private boolean waitUntil(long dueNanos) {
+        while (mActive) {
+            long remaining = dueNanos - System.nanoTime();
+            if (remaining <= 0) {
+                return true;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+        return false;
+    }
+
+    /**
+     * Claims a free slot.  Returns -1 if none is free, unless wait is set, in which case this
+     * parks until one is released or the source is closed.
+     */
+    private int acquireSlot(boolean wait) {
+        while (mActive) {
+            for (int i = 0; i < mSlotHeld.length(); ++i) {
+                if (mSlotHeld.compareAndSet(i, 0, 1)) {
+                    return i;
+                }
+            }
+            if (!wait) {
+                return -1;
+            }
+            LockSupport.park(this);
+        }
+        return -1;
+    }
+
+    private static void skipFully(DataInputStream input, int length) throws IOException {
+        while (length > 0) {
+            int skipped = input.skipBytes(length);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            length -= skipped;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pre-detection stage that skips frames which are noticeably blurrier than the sharpest frames
+ * seen recently, such as frames captured while the phone is still moving toward the label.
+ * <p/>
+ * Each frame is scored with {@link Nv21Utils#sharpness} on a subsampled luma grid.  The threshold
+ * adapts to the scene: it is a fixed ratio of a slowly decaying peak score, so it follows changes
+ * in lighting and texture without needing an absolute calibration.  To avoid starving the detector
+ * on scenes that never get sharp, the share of skipped frames is capped: after a run of skips
+ * that would exceed the maximum skip ratio, the next frame is let through regardless.
+ * <p/>
+ * Instances are not thread safe and must only be used from the frame processing thread.
+ */
+final class SharpnessGate {
+    // Distance between sample points, in pixels.
+    private static final int SAMPLE_STEP = 4;
+
+    // How much of the peak is kept per frame, as a fraction of 1024.
+    private static final int PEAK_DECAY = 1004;
+
+    private final float mThresholdRatio;
+    private final int mMaxConsecutiveSkips;
+
+    private int mPeak;
+    private int mConsecutiveSkips;
+    private int mLastScore;
+    private int mLastThreshold;
+
+    /**
+     * @param thresholdRatio the fraction of the recent peak score a frame must reach
+     * @param maxSkipRatio   the largest share of frames that may be skipped, below 1
+     */
+    SharpnessGate(float thresholdRatio, float maxSkipRatio) {
+        mThresholdRatio = thresholdRatio;
+        // Skipping n frames in a row and then passing one skips n / (n + 1) of them.
+        mMaxConsecutiveSkips = (int) (maxSkipRatio / (1 - maxSkipRatio));
+    }
+
+    /**
+     * Scores the region of the frame and returns true if it is sharp enough to run detection on.
+     */
+    boolean accept(ByteBuffer frame, int rowStride, int left, int top, int width, int height) {
+        int score = Nv21Utils.sharpness(frame, rowStride, left, top, width, height, SAMPLE_STEP);
+
+        mPeak = Math.max(score, (int) (((long) mPeak * PEAK_DECAY) >> 10));
+        int threshold = (int) (mPeak * mThresholdRatio);
+        mLastScore = score;
+        mLastThreshold = threshold;
+
+        if ((score >= threshold) || (mConsecutiveSkips >= mMaxConsecutiveSkips)) {
+            mConsecutiveSkips = 0;
+            return true;
+        }
+        mConsecutiveSkips++;
+        return false;
+    }
+
+    /**
+     * Forgets the peak score, for example when the camera is restarted.
+     */
+    void reset() {
+        mPeak = 0;
+        mConsecutiveSkips = 0;
+    }
+
+    int getLastScore() {
+        return mLastScore;
+    }
+
+    int getLastThreshold() {
+        return mLastThreshold;
+    }
+}
@@ -0,0 +1,95 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A set of items kept in an array that is replaced, never changed, whenever an item is added or
+ * removed.  Changes are rare and take a lock, while readers take the current array without the
+ * lock and without allocating anything, and keep seeing the same items however it changes later.
+ * Items are compared by identity.
+ */
+final class SnapshotArray<E> {
+    private final E[] mEmpty;
+
+    // Guards changes to the array; it is read without it.
+    private final Object mLock = new Object();
+    private volatile E[] mItems;
+
+    /**
+     * @param empty an empty array, whose type the snapshots have
+     */
+    SnapshotArray(E[] empty) {
+        if (empty.length != 0) {
+            throw new IllegalArgumentException("The array must be empty.");
+        }
+        mEmpty = empty;
+        mItems = empty;
+    }
+
+    /**
+     * Returns the current items.  The array must not be changed.
+     */
+    E[] get() {
+        return mItems;
+    }
+
+    /**
+     * Returns the current items as a list that can't be changed.
+     */
+    List<E> asList() {
+        return Collections.unmodifiableList(Arrays.asList(mItems));
+    }
+
+    /**
+     * Adds an item, unless it is there already.  Returns true if it was added.
+     */
+    boolean add(E item) {
+        synchronized (mLock) {
+            E[] items = mItems;
+            if (indexOf(items, item) >= 0) {
+                return false;
+            }
+            E[] added = Arrays.copyOf(items, items.length + 1);
+            added[items.length] = item;
+            mItems = added;
+            return true;
+        }
+    }
+
+    /**
+     * Removes an item.  Returns true if it was there.
+     */
+    boolean remove(E item) {
+        synchronized (mLock) {
+            E[] items = mItems;
+            int index = indexOf(items, item);
+            if (index < 0) {
+                return false;
+            }
+            E[] removed = Arrays.copyOf(items, items.length - 1);
+            System.arraycopy(items, index + 1, removed, index, removed.length - index);
+            mItems = removed;
+            return true;
+        }
+    }
+
+    /**
+     * Removes every item.
+     */
+    void clear() {
+        synchronized (mLock) {
+            mItems = mEmpty;
+        }
+    }
+
+    private static int indexOf(Object[] items, Object item) {
+        for (int i = 0; i < items.length; ++i) {
+            if (items[i] == item) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
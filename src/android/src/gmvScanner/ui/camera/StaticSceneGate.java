@@ -0,0 +1,98 @@
+package com.dealrinc.gmvScanner.ui.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pre-detection stage that skips frames showing the same scene as the last frame that was
+ * detected, such as when the phone lies on a counter pointing at nothing.
+ * <p/>
+ * Each frame is reduced to a small luma thumbnail, and the mean absolute difference to the
+ * thumbnail of the last detected frame decides whether the scene has changed.  Since slow drift
+ * could otherwise keep a scene "unchanged" forever, a frame is let through anyway once the
+ * refresh interval has passed since the last detected frame.  A frame only becomes the new
+ * reference once {@link #markDetected(long)} confirms that it went on to detection, so a frame
+ * rejected by a later stage doesn't hide the frames that follow it.
+ * <p/>
+ * Thumbnails are kept in two preallocated arrays that swap roles, so the gate never allocates.
+ * Instances are not thread safe and must only be used from the frame processing thread.
+ */
+final class StaticSceneGate {
+    // The thumbnail is THUMBNAIL_SIZE x THUMBNAIL_SIZE cells, each the average of 2x2 samples.
+    private static final int THUMBNAIL_SIZE = 16;
+
+    private final int mThreshold;
+    private final long mRefreshIntervalNanos;
+
+    private int[] mReference = new int[THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+    private int[] mCurrent = new int[THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+    private boolean mHasReference;
+    private long mLastDetectedNanos;
+    private int mLastDifference;
+
+    /**
+     * @param threshold            the mean absolute luma difference, from 0 to 255, at or above
+     *                             which the scene counts as changed
+     * @param refreshIntervalNanos the longest time between detected frames
+     */
+    StaticSceneGate(int threshold, long refreshIntervalNanos) {
+        mThreshold = threshold;
+        mRefreshIntervalNanos = refreshIntervalNanos;
+    }
+
+    /**
+     * Compares the region of the frame with the last detected frame and returns true if the scene
+     * has changed enough to run detection on it.
+     */
+    boolean hasChanged(ByteBuffer frame, int rowStride, int left, int top, int width, int height,
+                       long nowNanos) {
+        int[] current = mCurrent;
+        int sum = 0;
+        int cell = 0;
+        for (int cy = 0; cy < THUMBNAIL_SIZE; ++cy) {
+            // Sample each cell at its quarter points.
+            int row0 = (top + (height * (4 * cy + 1)) / (4 * THUMBNAIL_SIZE)) * rowStride;
+            int row1 = (top + (height * (4 * cy + 3)) / (4 * THUMBNAIL_SIZE)) * rowStride;
+            for (int cx = 0; cx < THUMBNAIL_SIZE; ++cx) {
+                int x0 = left + (width * (4 * cx + 1)) / (4 * THUMBNAIL_SIZE);
+                int x1 = left + (width * (4 * cx + 3)) / (4 * THUMBNAIL_SIZE);
+                int value = ((frame.get(row0 + x0) & 0xff) + (frame.get(row0 + x1) & 0xff)
+                        + (frame.get(row1 + x0) & 0xff) + (frame.get(row1 + x1) & 0xff)) >> 2;
+                current[cell] = value;
+                if (mHasReference) {
+                    sum += Math.abs(value - mReference[cell]);
+                }
+                cell++;
+            }
+        }
+        mLastDifference = sum / current.length;
+
+        return !mHasReference
+                || (mLastDifference >= mThreshold)
+                || (nowNanos - mLastDetectedNanos >= mRefreshIntervalNanos);
+    }
+
+    /**
+     * Makes the frame last passed to {@link #hasChanged} the reference for the following frames.
+     */
+    void markDetected(long nowNanos) {
+        int[] reference = mReference;
+        mReference = mCurrent;
+        mCurrent = reference;
+        mHasReference = true;
+        mLastDetectedNanos = nowNanos;
+    }
+
+    /**
+     * Forgets the last detected frame, so that the next frame counts as changed.
+     */
+    void reset() {
+        mHasReference = false;
+    }
+
+    /**
+     * Returns the mean absolute luma difference of the most recent frame to the last detected one.
+     */
+    int getLastDifference() {
+        return mLastDifference;
+    }
+}
@@ -28,6 +28,89 @@ GMVBarcodeScanner.prototype.scan = function(params, callback) {
         detectorSize: {
             width: .5,
             height: .7
+        },
+        // Android only. Set to true to detect barcodes anywhere in the preview rather than only inside the detector box.
+        fullFrameDetection: false,
+        // Android only. Number of threads to run barcode detection on. Values above 1 detect consecutive frames in parallel.
+        detectorWorkers: 1,
+        // Android only. Camera API to capture frames with, 1 or 2. Devices older than Android 5.0 always use 1.
+        cameraApi: 1,
+        // Android only. Which preview frames to keep when detection can't keep up with the camera.
+        // type is one of "latest", "queue" (keep up to size frames) or "everyNth" (detect one in every size frames).
+        frameDropPolicy: {
+            type: "latest",
+            size: 1
+        },
+        // Android only. Skip blurred frames before detection. A frame is skipped when its sharpness is below
+        // threshold times the recent peak sharpness (0 disables), but never more than maxSkipRatio of all frames.
+        sharpnessGate: {
+            threshold: 0,
+            maxSkipRatio: .75
+        },
+        // Android only. Skip detection while the scene doesn't change. The scene counts as changed when the average
+        // brightness difference (0-255) reaches threshold (0 disables). A frame is detected anyway every refreshInterval ms.
+        staticSceneGate: {
+            threshold: 0,
+            refreshInterval: 1000
+        },
+        // Android only. Focus and meter on the detector box rather than the whole preview. Focus is swept over the box
+        // again whenever nothing was found for refocusTimeout ms (0 disables).
+        viewFinderFocus: {
+            enabled: true,
+            refocusTimeout: 2000
+        },
+        // Android only. Zoom in on barcodes that are found but can't be read yet, until they span targetFill of the
+        // detector box. Zooms back out once a barcode is read or after timeout ms without one.
+        autoZoom: {
+            enabled: false,
+            targetFill: .4,
+            timeout: 3000
+        },
+        // Android only. Switch the torch on when the average brightness (0-255) of the detector box stays below darkLuma,
+        // and off again when it rises above brightLuma. Using the torch button turns it off for the rest of the scan.
+        autoTorch: {
+            enabled: false,
+            darkLuma: 40,
+            brightLuma: 170
+        },
+        // Android only. Records the preview frames of the session to this file, for replaying them offline.
+        // Relative names are saved in the app's external files directory. Empty disables recording.
+        recordFrames: "",
+        // Android only. Keep the scanner open and call the callback for every barcode accepted, until stopScan is called
+        // or the user closes the scanner.
+        continuous: false,
+        // Android only. In continuous mode, repeated reads of a barcode are dropped until it hasn't been seen for ttl ms.
+        // Up to size barcodes are remembered.
+        duplicateFilter: {
+            size: 100,
+            ttl: 3000
+        },
+        // Android only. Open the scanner straight from the plugin. Set to false to go through the intermediate activity
+        // that older versions used.
+        directLaunch: true,
+        // Android only. Show the camera under the page instead of opening a scanner screen. The page must have a
+        // transparent background for the camera to show through. Implies continuous; call stopScan to close it.
+        embedded: false,
+        // Android only. Hold back reads until enough frames agree on the value. In "agree" mode a value is accepted once it
+        // was read votes times within window ms; in "majority" mode the most common character at each position across
+        // that many reads is accepted. votes overrides the reads needed per type, e.g. { Code39: 2 }. By default Code39
+        // needs 3, CodaBar and ITF 2, and every other type 1.
+        consensus: {
+            mode: "agree",
+            window: 1000,
+            votes: {}
+        },
+        // Android only. Checks that every read must pass before it is returned, in order. Each is one of
+        // { type: "length", min: 0, max: 100 }, { type: "regex", pattern: "[0-9]+" } (must match the whole value),
+        // { type: "prefix", prefix: "]C1", strip: true } or { type: "vin" }.
+        filters: [],
+        // Android only. In continuous mode, sends up to size barcodes to JavaScript at once, waiting at most window ms for
+        // a batch to fill. The callback is still called once per barcode. A size of 1 sends every barcode straight away.
+        // Set binary to true to send batches in a compact binary form rather than as JSON.
+        batch: {
+            size: 1,
+            window: 100,
+            binary: false
         }
     };
 
@@ -42,30 +125,7 @@ GMVBarcodeScanner.prototype.scan = function(params, callback) {
         return this.scanVIN(callback, settings.detectorSize);
     }
 
-    var detectorTypes = 0;
-
-    // GMVDetectorConstants values allow us to pass an integer sum of all the desired barcode types to the scanner.
-    var detectionTypes = {
-        Code128: 1,
-        Code39: 2,
-        Code93: 4,
-        CodaBar: 8,
-        DataMatrix: 16,
-        EAN13: 32,
-        EAN8: 64,
-        ITF: 128,
-        QRCode: 256,
-        UPCA: 512,
-        UPCE: 1024,
-        PDF417: 2048,
-        Aztec: 4096
-    };
-
-    for(var key in settings.types) {
-        if(detectionTypes.hasOwnProperty(key) && settings.types.hasOwnProperty(key) && settings.types[key] == true) {
-            detectorTypes+=detectionTypes[key];
-        }
-    }
+    var detectorTypes = this.getDetectorTypes(settings.types);
 
     // Order of this settings object is critical. It will be passed in a basic array format and must be in the order shown.
     var stngs = {
@@ -74,7 +134,27 @@ GMVBarcodeScanner.prototype.scan = function(params, callback) {
         //Position 2
         detectorWidth: settings.detectorSize.width,
         //Position 3
-        detectorHeight: settings.detectorSize.height
+        detectorHeight: settings.detectorSize.height,
+        //Position 4
+        options: {
+            fullFrameDetection: settings.fullFrameDetection,
+            detectorWorkers: settings.detectorWorkers,
+            cameraApi: settings.cameraApi,
+            frameDropPolicy: settings.frameDropPolicy,
+            sharpnessGate: settings.sharpnessGate,
+            staticSceneGate: settings.staticSceneGate,
+            viewFinderFocus: settings.viewFinderFocus,
+            autoZoom: settings.autoZoom,
+            autoTorch: settings.autoTorch,
+            recordFrames: settings.recordFrames,
+            continuous: settings.continuous,
+            duplicateFilter: settings.duplicateFilter,
+            directLaunch: settings.directLaunch,
+            embedded: settings.embedded,
+            consensus: this.getConsensusSettings(settings.consensus),
+            filters: settings.filters,
+            batch: settings.batch
+        }
     };
 
     var sendSettings = [];
@@ -87,10 +167,118 @@ GMVBarcodeScanner.prototype.scan = function(params, callback) {
     this.sendScanRequest(sendSettings, callback);
 };
 
+// GMVDetectorConstants values allow us to pass an integer sum of all the desired barcode types to the scanner. They are
+// also the format of a scanned barcode.
+GMVBarcodeScanner.detectionTypes = {
+    Code128: 1,
+    Code39: 2,
+    Code93: 4,
+    CodaBar: 8,
+    DataMatrix: 16,
+    EAN13: 32,
+    EAN8: 64,
+    ITF: 128,
+    QRCode: 256,
+    UPCA: 512,
+    UPCE: 1024,
+    PDF417: 2048,
+    Aztec: 4096
+};
+
+// The kinds of value a barcode can hold, by the valueFormat of a scanned barcode.
+GMVBarcodeScanner.valueFormats = {
+    1: "CONTACT_INFO",
+    2: "EMAIL",
+    3: "ISBN",
+    4: "PHONE",
+    5: "PRODUCT",
+    6: "SMS",
+    7: "TEXT",
+    8: "URL",
+    9: "WIFI",
+    10: "GEO",
+    11: "CALENDAR_EVENT",
+    12: "DRIVER_LICENSE"
+};
+
+GMVBarcodeScanner.prototype.getDetectorTypes = function(types) {
+    var detectorTypes = 0,
+        detectionTypes = GMVBarcodeScanner.detectionTypes;
+
+    for(var key in types) {
+        if(detectionTypes.hasOwnProperty(key) && types.hasOwnProperty(key) && types[key] == true) {
+            detectorTypes+=detectionTypes[key];
+        }
+    }
+
+    return detectorTypes;
+};
+
+// Turns the consensus settings into what the plugin expects, with the votes listed by barcode format.
+GMVBarcodeScanner.prototype.getConsensusSettings = function(consensus) {
+    var formats = [],
+        votes = [];
+
+    for(var type in consensus.votes) {
+        if(consensus.votes.hasOwnProperty(type)) {
+            var types = {};
+            types[type] = true;
+            var format = this.getDetectorTypes(types);
+            if(format) {
+                formats.push(format);
+                votes.push(consensus.votes[type]);
+            }
+        }
+    }
+
+    return {
+        mode: consensus.mode,
+        window: consensus.window,
+        formats: formats,
+        votes: votes
+    };
+};
+
+// Android only. Builds and warms up the barcode detectors of a scan ahead of time, so that the scan decodes its first
+// frame sooner. Takes the types, vinDetector and detectorWorkers settings of the scan to prepare for; scanning every
+// type by default.
+GMVBarcodeScanner.prototype.prepare = function(params, callback) {
+    params = params || {};
+    callback = typeof callback == "function" ? callback : function() {};
+
+    var detectorTypes = 8191;
+    if(params.vinDetector) {
+        detectorTypes = 0;
+    } else if(params.types) {
+        detectorTypes = this.getDetectorTypes(params.types);
+    }
+
+    cordova.exec(function () {
+            callback(null);
+        },
+        function (err) {
+            callback({cancelled: false, message: err});
+        },'cordova-gmv-barcode-scanner','prepare',[detectorTypes, params.detectorWorkers || 1]);
+};
+
 GMVBarcodeScanner.prototype.sendScanRequest = function(settings, callback) {
     callback = typeof callback == "function" ? callback : function() {};
+    var that = this;
     cordova.exec(function (data) {
-            callback(null, data[0]);
+            // A continuous scan on Android may send a batch of results at once, either as an array or in binary.
+            if(data instanceof ArrayBuffer) {
+                var decoded = that.decodeResults(data);
+                for(var j = 0; j < decoded.length; j++) {
+                    callback(null, decoded[j].rawValue, undefined, decoded[j]);
+                }
+                return;
+            }
+            var results = Array.isArray(data[0]) ? data : [data];
+            for(var i = 0; i < results.length; i++) {
+                // Android also sends a breakdown of where the time of the scan went, and the details of the barcode.
+                callback(null, results[i][0], results[i][3] || undefined,
+                    results[i][4] ? that.readDetails(results[i][4]) : undefined);
+            }
         },
         function (err){
             switch(err[0]) {
@@ -98,9 +286,15 @@ GMVBarcodeScanner.prototype.sendScanRequest = function(settings, callback) {
                 case "USER_CANCELLED":
                     callback({cancelled: true, message: "The scan was cancelled."});
                     break;
+                case "SCAN_STOPPED":
+                    callback({cancelled: true, stopped: true, message: "The scan was stopped."});
+                    break;
                 case "SCANNER_OPEN":
                     callback({cancelled: false, message: "Scanner already open."});
                     break;
+                case "PERMISSION_DENIED":
+                    callback({cancelled: false, message: "Camera permission denied."});
+                    break;
                 default:
                     callback({cancelled: false, message: err});
                     break;
@@ -108,6 +302,142 @@ GMVBarcodeScanner.prototype.sendScanRequest = function(settings, callback) {
         },'cordova-gmv-barcode-scanner','startScan',settings);
 };
 
+// Returns the name of a barcode format, or the format itself if it has no name.
+GMVBarcodeScanner.prototype.getFormatName = function(format) {
+    for(var type in GMVBarcodeScanner.detectionTypes) {
+        if(GMVBarcodeScanner.detectionTypes.hasOwnProperty(type) && GMVBarcodeScanner.detectionTypes[type] == format) {
+            return type;
+        }
+    }
+    return format;
+};
+
+// Builds the details of a scanned barcode, from the fields Android sends.
+GMVBarcodeScanner.prototype.createDetails = function(rawValue, displayValue, format, valueFormat, trackerId, frame, box,
+                                                      corners) {
+    var cornerPoints = [];
+    for(var i = 0; i + 1 < corners.length; i += 2) {
+        cornerPoints.push({x: corners[i], y: corners[i + 1]});
+    }
+    return {
+        rawValue: rawValue,
+        displayValue: displayValue,
+        format: this.getFormatName(format),
+        formatId: format,
+        valueFormat: GMVBarcodeScanner.valueFormats[valueFormat] || valueFormat,
+        valueFormatId: valueFormat,
+        trackerId: trackerId,
+        // Geometry is in pixels of the frame that the detector saw, which is cropped to the detector box unless
+        // fullFrameDetection is on. Adding cropLeft and cropTop maps it onto the upright preview.
+        frame: {id: frame[0], timestampMillis: frame[1], width: frame[2], height: frame[3], rotation: frame[4],
+            cropLeft: frame[5], cropTop: frame[6], previewWidth: frame[7], previewHeight: frame[8]},
+        boundingBox: box ? {left: box[0], top: box[1], right: box[2], bottom: box[3]} : null,
+        cornerPoints: cornerPoints
+    };
+};
+
+// Reads the details of a barcode from a result sent as JSON. Geometry comes as flat arrays to keep results small.
+GMVBarcodeScanner.prototype.readDetails = function(details) {
+    return this.createDetails(details.rawValue, details.displayValue, details.format, details.valueFormat,
+        details.trackerId, details.frame || [0, 0, 0, 0, 0, 0, 0, 0, 0], details.boundingBox, details.cornerPoints || []);
+};
+
+// Decodes a batch of results sent in binary, as written by ScanResult.encode on Android: the bytes "GMV", a version and
+// a count, followed by the fields of each result. Returns the details of each barcode.
+GMVBarcodeScanner.prototype.decodeResults = function(buffer) {
+    var view = new DataView(buffer),
+        offset = 0,
+        results = [];
+
+    function readString() {
+        var length = view.getUint16(offset),
+            end = offset + 2 + length,
+            bytes = new Uint8Array(buffer, offset + 2, length),
+            string = "";
+        offset = end;
+        for(var i = 0; i < length; i++) {
+            var b = bytes[i],
+                code = b;
+            if(b >= 0xf0) {
+                code = ((b & 0x07) << 18) | ((bytes[i + 1] & 0x3f) << 12) | ((bytes[i + 2] & 0x3f) << 6) | (bytes[i + 3] & 0x3f);
+                i += 3;
+            } else if(b >= 0xe0) {
+                code = ((b & 0x0f) << 12) | ((bytes[i + 1] & 0x3f) << 6) | (bytes[i + 2] & 0x3f);
+                i += 2;
+            } else if(b >= 0xc0) {
+                code = ((b & 0x1f) << 6) | (bytes[i + 1] & 0x3f);
+                i += 1;
+            }
+            if(code > 0xffff) {
+                code -= 0x10000;
+                string += String.fromCharCode(0xd800 + (code >> 10), 0xdc00 + (code & 0x3ff));
+            } else {
+                string += String.fromCharCode(code);
+            }
+        }
+        return string;
+    }
+
+    if(view.getUint8(0) != 0x47 || view.getUint8(1) != 0x4d || view.getUint8(2) != 0x56 || view.getUint8(3) != 2) {
+        throw new Error("Unsupported result encoding.");
+    }
+    var count = view.getUint16(4);
+    offset = 6;
+    for(var r = 0; r < count; r++) {
+        var format = view.getUint16(offset),
+            valueFormat = view.getUint8(offset + 2),
+            trackerId = view.getInt32(offset + 3),
+            frame = [
+                view.getInt32(offset + 7),
+                view.getFloat64(offset + 11),
+                view.getUint16(offset + 19),
+                view.getUint16(offset + 21),
+                view.getUint8(offset + 23),
+                view.getInt16(offset + 24),
+                view.getInt16(offset + 26),
+                view.getUint16(offset + 28),
+                view.getUint16(offset + 30)
+            ],
+            box = [
+                view.getInt16(offset + 32),
+                view.getInt16(offset + 34),
+                view.getInt16(offset + 36),
+                view.getInt16(offset + 38)
+            ],
+            cornerCount = view.getUint8(offset + 40),
+            corners = [];
+        offset += 41;
+        for(var c = 0; c < cornerCount * 2; c++) {
+            corners.push(view.getInt16(offset));
+            offset += 2;
+        }
+        var rawValue = readString(),
+            displayValue = readString();
+        results.push(this.createDetails(rawValue, displayValue, format, valueFormat, trackerId, frame, box, corners));
+    }
+    return results;
+};
+
+GMVBarcodeScanner.prototype.stopScan = function(callback) {
+    callback = typeof callback == "function" ? callback : function() {};
+    cordova.exec(function (stopped) {
+            callback(null, stopped);
+        },
+        function (err) {
+            callback({cancelled: false, message: err});
+        },'cordova-gmv-barcode-scanner','stopScan',[]);
+};
+
+GMVBarcodeScanner.prototype.getStats = function(callback) {
+    callback = typeof callback == "function" ? callback : function() {};
+    cordova.exec(function (stats) {
+            callback(null, stats);
+        },
+        function (err) {
+            callback({cancelled: false, message: err});
+        },'cordova-gmv-barcode-scanner','getStats',[]);
+};
+
 GMVBarcodeScanner.prototype.scanLicense = function(callback, settings) {
     var width = typeof settings != "undefined" && settings.width ? settings.width : .5,
         height = typeof settings != "undefined" && settings.height ? settings.height : .7;